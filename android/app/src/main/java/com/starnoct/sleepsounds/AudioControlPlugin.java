@@ -4,6 +4,7 @@ import com.getcapacitor.Plugin;
 import com.getcapacitor.PluginCall;
 import com.getcapacitor.PluginMethod;
 import com.getcapacitor.JSObject;
+import com.getcapacitor.JSArray;
 import com.getcapacitor.annotation.CapacitorPlugin;
 import android.content.Intent;
 import android.content.Context;
@@ -11,18 +12,72 @@ import android.content.SharedPreferences;
 import android.app.AlarmManager;
 import android.app.PendingIntent;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import android.provider.Settings;
 import android.net.Uri;
 import androidx.core.content.ContextCompat;
 
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 @CapacitorPlugin(name = "AudioControl")
 public class AudioControlPlugin extends Plugin {
     private static AudioControlPlugin instance;
 
+    // The render engine fades on the sample clock; the alarm only fires if that path failed
+    private static final long SLEEP_TIMER_WATCHDOG_GRACE_MS = 30000L;
+
+    // Level metering: levels are read from the render path's meters at a throttled UI rate
+    private static final String EVENT_LEVELS = "levels";
+    private static final int MIN_LEVEL_INTERVAL_MS = 33;
+    private static final int MAX_LEVEL_INTERVAL_MS = 1000;
+    private final Handler levelHandler = new Handler(Looper.getMainLooper());
+    private int levelIntervalMs = 100;
+    private final Runnable levelPublisher = new Runnable() {
+        @Override
+        public void run() {
+            publishLevels();
+            levelHandler.postDelayed(this, levelIntervalMs);
+        }
+    };
+
+    private static final int MAX_SCENE_FADE_MS = 60_000;
+
+    // Offline renders run one at a time, off the plugin thread
+    // Well inside what a 32-bit WAV header holds at the render rate (~6.7 h at 44.1 kHz)
+    private static final long MAX_MIX_DURATION_MS = 6L * 60L * 60L * 1000L;
+    private final ExecutorService mixExecutor = Executors.newSingleThreadExecutor();
+
     @Override
     public void load() {
         super.load();
         instance = this;
+
+        SharedPreferences prefs = getContext().getSharedPreferences("AudioPrefs", Context.MODE_PRIVATE);
+        if (prefs.getBoolean("METRICS_DUMP_ENABLED", false)) {
+            EngineMetrics.getInstance().setDumpDirectory(getContext().getFilesDir());
+        }
+        PatchRegistry.getInstance().load(getContext().getApplicationContext());
+        // Admission in play() costs layers at the native rate, possibly before the service runs
+        RenderOutput.configure(getContext().getApplicationContext());
+    }
+
+    @Override
+    protected void handleOnDestroy() {
+        // The static reference would otherwise keep the destroyed bridge and its activity alive
+        if (instance == this) instance = null;
+        levelHandler.removeCallbacks(levelPublisher);
+        mixExecutor.shutdownNow();
+        super.handleOnDestroy();
     }
 
     /**
@@ -37,12 +92,34 @@ public class AudioControlPlugin extends Plugin {
         }
     }
 
+    /**
+     * Tells the JS side that the service refused to start a sound, e.g. over the resource budget.
+     */
+    public static void onPlaybackRefused(String soundId, String reason) {
+        if (instance != null) {
+            JSObject ret = new JSObject();
+            ret.put("soundId", soundId);
+            ret.put("reason", reason);
+            instance.notifyListeners("playback_refused", ret);
+        }
+    }
+
     @PluginMethod
     public void play(PluginCall call) {
         String soundId = call.getString("soundId");
         String url = call.getString("url");
         Float volume = call.getFloat("volume", 1.0f);
 
+        // Reject up front when the layer cannot fit; the service re-checks, as layers may race
+        if (soundId != null) {
+            ResourceGovernor.Decision decision = AudioService.admission(getContext(), soundId, url);
+            if (!decision.admitted) {
+                ResourceGovernor.getInstance(getContext()).recordRefusal();
+                call.reject(decision.reason, "RESOURCE_BUDGET");
+                return;
+            }
+        }
+
         Intent intent = new Intent(getContext(), AudioService.class);
         intent.setAction("ACTION_PLAY");
         intent.putExtra("SOUND_ID", soundId);
@@ -63,6 +140,68 @@ public class AudioControlPlugin extends Plugin {
         call.resolve();
     }
 
+    /**
+     * Crossfades from the current mix to a new one. The incoming layers are prepared in the
+     * background and fade in while the outgoing ones fade out; sounds in both mixes keep
+     * playing and glide to their new volume. Outgoing layers report playback_terminated.
+     *
+     * @param call Capacitor plugin call with parameters:
+     *             - layers: [{soundId, url, volume?}], as for play()
+     *             - durationMs: Length of the crossfade (default 3000, at most 60000)
+     */
+    @PluginMethod
+    public void transitionScene(PluginCall call) {
+        JSArray layerArray = call.getArray("layers");
+        int durationMs = call.getInt("durationMs", 3000);
+
+        if (layerArray == null || layerArray.length() == 0) {
+            call.reject("layers must not be empty");
+            return;
+        }
+        if (durationMs < 0 || durationMs > MAX_SCENE_FADE_MS) {
+            call.reject("durationMs must be between 0 and 60000");
+            return;
+        }
+
+        int count = layerArray.length();
+        String[] soundIds = new String[count];
+        String[] urls = new String[count];
+        float[] volumes = new float[count];
+        try {
+            for (int i = 0; i < count; i++) {
+                JSONObject layer = layerArray.getJSONObject(i);
+                soundIds[i] = layer.getString("soundId");
+                urls[i] = layer.getString("url");
+                volumes[i] = (float) layer.optDouble("volume", 1.0);
+                if (soundIds[i].isEmpty()) {
+                    call.reject("soundId is required for every layer");
+                    return;
+                }
+            }
+        } catch (JSONException e) {
+            call.reject("Invalid layers: " + e.getMessage());
+            return;
+        }
+
+        // Reject up front when the scene cannot fit; the service re-checks before it retires anything
+        ResourceGovernor.Decision scene = AudioService.sceneAdmission(getContext(), soundIds, urls)[0];
+        if (!scene.admitted) {
+            ResourceGovernor.getInstance(getContext()).recordRefusal();
+            call.reject(scene.reason, "RESOURCE_BUDGET");
+            return;
+        }
+
+        Intent intent = new Intent(getContext(), AudioService.class);
+        intent.setAction(AudioService.ACTION_TRANSITION_SCENE);
+        intent.putExtra("SOUND_IDS", soundIds);
+        intent.putExtra("URLS", urls);
+        intent.putExtra("VOLUMES", volumes);
+        intent.putExtra("FADE_MS", durationMs);
+
+        ContextCompat.startForegroundService(getContext(), intent);
+        call.resolve();
+    }
+
     @PluginMethod
     public void stopAll(PluginCall call) {
         Intent intent = new Intent(getContext(), AudioService.class);
@@ -88,6 +227,330 @@ public class AudioControlPlugin extends Plugin {
         call.resolve();
     }
 
+    /**
+     * Sets a track's tone shaping. Applies to rendered layers (synth, granular); the setting
+     * is kept per sound id and reapplied whenever the sound plays again.
+     *
+     * @param call Capacitor plugin call with parameters:
+     *             - soundId: Track to shape
+     *             - lowShelfDb: Bass shelf gain at 250 Hz, -12..12 (default 0)
+     *             - highShelfDb: Treble shelf gain at 4 kHz, -12..12 (default 0)
+     *             - lowPassHz: Low-pass cutoff, 200..20000; 0 turns it off (default 0)
+     *             Resolves {applied}: false when the sound is not playing through a render
+     *             stage (file and event layers have none); the setting is still kept for the
+     *             next time it plays through one.
+     */
+    @PluginMethod
+    public void setEq(PluginCall call) {
+        String soundId = call.getString("soundId");
+        if (soundId == null) {
+            call.reject("soundId is required");
+            return;
+        }
+        final float lowShelfDb = call.getFloat("lowShelfDb", 0f);
+        final float highShelfDb = call.getFloat("highShelfDb", 0f);
+        final float lowPassHz = call.getFloat("lowPassHz", 0f);
+        // The players map belongs to the main thread
+        levelHandler.post(() -> {
+            boolean applied = false;
+            AudioService service = AudioService.getInstance();
+            if (service != null) {
+                applied = service.setTrackEq(soundId, new TrackEq.Settings(lowShelfDb, highShelfDb, lowPassHz));
+            } else {
+                Intent intent = new Intent(getContext(), AudioService.class);
+                intent.setAction("ACTION_SET_EQ");
+                intent.putExtra("SOUND_ID", soundId);
+                intent.putExtra("LOW_SHELF_DB", lowShelfDb);
+                intent.putExtra("HIGH_SHELF_DB", highShelfDb);
+                intent.putExtra("LOW_PASS_HZ", lowPassHz);
+                getContext().startService(intent);
+            }
+            JSObject ret = new JSObject();
+            ret.put("applied", applied);
+            call.resolve(ret);
+        });
+    }
+
+    /**
+     * Starts emitting "levels" events with per-track and master RMS/peak levels.
+     *
+     * @param call Capacitor plugin call with parameters:
+     *             - intervalMs: Emission interval, clamped to 33..1000ms (default 100)
+     */
+    @PluginMethod
+    public void startLevelUpdates(PluginCall call) {
+        Integer interval = call.getInt("intervalMs", 100);
+        levelIntervalMs = Math.max(MIN_LEVEL_INTERVAL_MS, Math.min(MAX_LEVEL_INTERVAL_MS, interval));
+        levelHandler.removeCallbacks(levelPublisher);
+        levelHandler.post(levelPublisher);
+        call.resolve();
+    }
+
+    @PluginMethod
+    public void stopLevelUpdates(PluginCall call) {
+        levelHandler.removeCallbacks(levelPublisher);
+        call.resolve();
+    }
+
+    // Runs on the main thread, which owns AudioService's players map
+    private void publishLevels() {
+        if (!hasListeners(EVENT_LEVELS)) return;
+
+        Map<String, float[]> trackLevels = new HashMap<>();
+        float[] master = new float[2];
+        AudioService service = AudioService.getInstance();
+        if (service != null) {
+            master = service.collectLevels(trackLevels);
+        }
+
+        JSObject tracks = new JSObject();
+        for (Map.Entry<String, float[]> entry : trackLevels.entrySet()) {
+            tracks.put(entry.getKey(), levelToJson(entry.getValue()));
+        }
+
+        JSObject ret = new JSObject();
+        ret.put("master", levelToJson(master));
+        ret.put("tracks", tracks);
+        notifyListeners(EVENT_LEVELS, ret);
+    }
+
+    private static JSObject levelToJson(float[] level) {
+        JSObject obj = new JSObject();
+        obj.put("rms", level[0]);
+        obj.put("peak", level[1]);
+        return obj;
+    }
+
+    /**
+     * Returns a snapshot of the engine metrics: per-player render/write time histograms,
+     * underruns and start-to-first-sample latency, plus the periodic layer/heap sample ring.
+     */
+    @PluginMethod
+    public void getEngineMetrics(PluginCall call) {
+        try {
+            JSONObject snapshot = EngineMetrics.getInstance().snapshot(true);
+            snapshot.put("resources", ResourceGovernor.getInstance(getContext()).snapshot());
+            call.resolve(JSObject.fromJSONObject(snapshot));
+        } catch (JSONException e) {
+            call.reject("Failed to build engine metrics: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Overrides the budgets new layers are admitted against. Omitted or non-positive values
+     * restore the device default. Layers already playing are kept.
+     *
+     * @param call Capacitor plugin call with parameters:
+     *             - memoryMb: Estimated memory all layers may use
+     *             - cpuPercent: Estimated share of one CPU core all layers may use
+     *             - maxLayers: Layers that may play at once
+     */
+    @PluginMethod
+    public void setResourceBudget(PluginCall call) {
+        ResourceGovernor governor = ResourceGovernor.getInstance(getContext());
+        governor.setBudgets(call.getInt("memoryMb", 0), call.getInt("cpuPercent", 0), call.getInt("maxLayers", 0));
+        try {
+            call.resolve(JSObject.fromJSONObject(governor.snapshot()));
+        } catch (JSONException e) {
+            call.reject("Failed to read resource budget: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Enables or disables the rolling engine-metrics.jsonl dump in the app's files dir.
+     *
+     * @param call Capacitor plugin call with parameters:
+     *             - enabled: Whether periodic samples should be appended to the dump
+     */
+    @PluginMethod
+    public void setMetricsDump(PluginCall call) {
+        boolean enabled = call.getBoolean("enabled", false);
+        SharedPreferences prefs = getContext().getSharedPreferences("AudioPrefs", Context.MODE_PRIVATE);
+        prefs.edit().putBoolean("METRICS_DUMP_ENABLED", enabled).commit();
+        EngineMetrics.getInstance().setDumpDirectory(enabled ? getContext().getFilesDir() : null);
+        call.resolve();
+    }
+
+    /**
+     * Renders a mix faster than real time to a WAV file in the app's files dir (mixes/).
+     *
+     * @param call Capacitor plugin call with parameters:
+     *             - layers: [{url, volume?, fadeInMs?, fadeOutMs?}], urls as for play()
+     *             - durationSec: Length of the render, at most 6 hours
+     *             - fileName: Output name ending in .wav (default mix-<timestamp>.wav)
+     *             - seed: Seed for procedural layers; the same mix and seed render identically (default 1)
+     */
+    @PluginMethod
+    public void renderMix(PluginCall call) {
+        JSArray layerArray = call.getArray("layers");
+        double durationSec = call.getDouble("durationSec", 0.0);
+        String fileName = call.getString("fileName", "mix-" + System.currentTimeMillis() + ".wav");
+        int seed = call.getInt("seed", 1);
+
+        long durationMs = (long) (durationSec * 1000.0);
+        if (layerArray == null || layerArray.length() == 0) {
+            call.reject("layers must not be empty");
+            return;
+        }
+        if (durationMs <= 0 || durationMs > MAX_MIX_DURATION_MS) {
+            call.reject("durationSec must be between 0 and 6 hours");
+            return;
+        }
+        if (!fileName.matches("[A-Za-z0-9._-]+\\.wav")) {
+            call.reject("fileName must be a plain name ending in .wav");
+            return;
+        }
+
+        List<OfflineMixRenderer.Layer> layers = new ArrayList<>();
+        try {
+            for (int i = 0; i < layerArray.length(); i++) {
+                JSONObject layer = layerArray.getJSONObject(i);
+                String url = layer.getString("url");
+                SynthSources.Factory factory = mixSourceFactory(getContext().getApplicationContext(), url);
+                if (factory == null) {
+                    call.reject("Layer cannot be rendered offline: " + url);
+                    return;
+                }
+                layers.add(new OfflineMixRenderer.Layer(url, factory,
+                        (float) layer.optDouble("volume", 1.0),
+                        layer.optInt("fadeInMs", 0),
+                        layer.optInt("fadeOutMs", 0)));
+            }
+        } catch (JSONException e) {
+            call.reject("Invalid layers: " + e.getMessage());
+            return;
+        }
+
+        File dir = new File(getContext().getFilesDir(), "mixes");
+        File file = new File(dir, fileName);
+        mixExecutor.execute(() -> {
+            try {
+                if (!dir.isDirectory() && !dir.mkdirs()) {
+                    call.reject("Could not create " + dir);
+                    return;
+                }
+                OfflineMixRenderer.Result result = OfflineMixRenderer.render(
+                        layers, durationMs, RenderOutput.DEFAULT_SAMPLE_RATE, seed, file);
+                JSObject ret = new JSObject();
+                ret.put("path", file.getAbsolutePath());
+                ret.put("durationMs", durationMs);
+                ret.put("renderMs", result.renderNanos / 1_000_000L);
+                ret.put("realtimeFactor", result.realtimeFactor());
+                call.resolve(ret);
+            } catch (Exception e) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+                call.reject("Render failed: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    // Same URL conventions as AudioService.playTrack; sparse event layers have no offline form
+    private static SynthSources.Factory mixSourceFactory(Context context, String url) {
+        if (url.startsWith("synthetic://")) {
+            String flavor = url.substring("synthetic://".length()).trim().toLowerCase();
+            return seed -> SynthSources.create(flavor.isEmpty() ? "white" : flavor, seed);
+        }
+        if (url.startsWith(GranularSource.SCHEME)) {
+            String assetUrl = url.substring(GranularSource.SCHEME.length());
+            SoundManifest.Entry info = SoundManifest.get(context).find(assetUrl);
+            float level = info != null ? info.gain() : 1f;
+            // Converted like the live layer, so grains are interpolated at the render rate
+            return seed -> new GranularSource(Resampler.resample(PcmDecoder.decode(context, assetUrl,
+                    GranularSource.EXCERPT_OFFSET_US, GranularSource.EXCERPT_FRAMES),
+                    RenderOutput.DEFAULT_SAMPLE_RATE, Resampler.Quality.BALANCED), level, seed);
+        }
+        if (url.startsWith(EventLayerPlayer.SCHEME)) {
+            return null;
+        }
+        if (FilePlayer.assetPathFor(url) == null && url.toLowerCase().endsWith(".wav")) {
+            return seed -> new PcmStreamSource(new WavReader(new File(url)));
+        }
+        SoundManifest.Entry info = SoundManifest.get(context).find(url);
+        SoundBank.Entry banked = SoundBank.get(context).find(url);
+        if (banked != null) {
+            float gain = info != null ? info.gain() : 1f;
+            return seed -> new PcmLoopSource(banked, gain);
+        }
+        return seed -> new PcmStreamSource(PcmDecoder.open(context, url), info);
+    }
+
+    /**
+     * Starts a wind-down: layers are lowered along an equal-loudness curve, inaudible or
+     * masked layers are dropped, and the engine steps down to cheaper render profiles.
+     *
+     * @param call Capacitor plugin call with parameters:
+     *             - delayMinutes: Minutes before lowering begins (default 0)
+     *             - durationMinutes: Length of the ramp (default 60)
+     *             - endLoudness: Loudness fraction held after the ramp, 0..1 (default 0.25)
+     */
+    @PluginMethod
+    public void startWindDown(PluginCall call) {
+        double delayMinutes = call.getDouble("delayMinutes", 0.0);
+        double durationMinutes = call.getDouble("durationMinutes", 60.0);
+        float endLoudness = call.getFloat("endLoudness", 0.25f);
+
+        if (durationMinutes <= 0) {
+            call.reject("durationMinutes must be positive");
+            return;
+        }
+        if (AudioService.getInstance() == null) {
+            call.reject("Nothing is playing");
+            return;
+        }
+
+        Intent intent = new Intent(getContext(), AudioService.class);
+        intent.setAction("ACTION_START_WIND_DOWN");
+        intent.putExtra("DELAY_MS", (long) (delayMinutes * 60000.0));
+        intent.putExtra("DURATION_MS", (long) (durationMinutes * 60000.0));
+        intent.putExtra("END_LOUDNESS", endLoudness);
+        getContext().startService(intent);
+        call.resolve();
+    }
+
+    @PluginMethod
+    public void cancelWindDown(PluginCall call) {
+        if (AudioService.getInstance() != null) {
+            Intent intent = new Intent(getContext(), AudioService.class);
+            intent.setAction("ACTION_CANCEL_WIND_DOWN");
+            getContext().startService(intent);
+        }
+        call.resolve();
+    }
+
+    /**
+     * Compiles a synth patch (DSP node graph) and stores it for synthetic://<name>.
+     * Layers already playing keep the patch they started with.
+     *
+     * @param call Capacitor plugin call with parameters:
+     *             - name: Patch name, used as the synthetic:// flavor
+     *             - patch: {nodes: [...], output, reducedRate?}; see SynthPatch for node types
+     */
+    @PluginMethod
+    public void registerPatch(PluginCall call) {
+        String name = call.getString("name");
+        JSObject patch = call.getObject("patch");
+        if (name == null || name.trim().isEmpty() || patch == null) {
+            call.reject("name and patch are required");
+            return;
+        }
+        try {
+            PatchRegistry.getInstance().register(getContext().getApplicationContext(), name, patch);
+            call.resolve();
+        } catch (IllegalArgumentException e) {
+            call.reject("Invalid patch: " + e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void unregisterPatch(PluginCall call) {
+        String name = call.getString("name");
+        if (name != null) {
+            PatchRegistry.getInstance().unregister(getContext().getApplicationContext(), name);
+        }
+        call.resolve();
+    }
+
     @PluginMethod
     public void setSleepTimer(PluginCall call) {
         Long targetTimestamp = call.getLong("targetTimestamp", 0L);
@@ -101,17 +564,14 @@ public class AudioControlPlugin extends Plugin {
         SharedPreferences prefs = getContext().getSharedPreferences("AudioPrefs", Context.MODE_PRIVATE);
         prefs.edit().putLong("TIMER_TARGET_MS", targetTimestamp).commit();
 
+        // Arm the sample-clock fade in a running service; a new instance reads TIMER_TARGET_MS
+        sendSleepTimerToService(targetTimestamp);
+        long watchdogTimestamp = targetTimestamp + SLEEP_TIMER_WATCHDOG_GRACE_MS;
+
         AlarmManager am = (AlarmManager) getContext().getSystemService(Context.ALARM_SERVICE);
         
-        // Intent to trigger the SleepTimerReceiver
-        Intent intent = new Intent(getContext(), SleepTimerReceiver.class);
-        intent.setAction(SleepTimerReceiver.ACTION_STOP_SLEEP_TIMER);
-        PendingIntent pendingIntent = PendingIntent.getBroadcast(
-            getContext(), 
-            0, 
-            intent, 
-            PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
-        );
+        // The watchdog triggers the SleepTimerReceiver; the status-bar alarm only shows the target
+        PendingIntent pendingIntent = sleepTimerBroadcast(SleepTimerReceiver.ACTION_STOP_SLEEP_TIMER);
 
         try {
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
@@ -125,13 +585,15 @@ public class AudioControlPlugin extends Plugin {
                     PendingIntent.FLAG_IMMUTABLE
                 );
 
+                // Users see the real stop time; the grace applies to the watchdog alone
                 AlarmManager.AlarmClockInfo info = new AlarmManager.AlarmClockInfo(targetTimestamp, showPendingIntent);
                 if (am != null) {
-                    am.setAlarmClock(info, pendingIntent);
+                    am.setAlarmClock(info, sleepTimerBroadcast(SleepTimerReceiver.ACTION_SLEEP_TIMER_DUE));
+                    am.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, watchdogTimestamp, pendingIntent);
                 }
             } else {
                 if (am != null) {
-                    am.setExact(AlarmManager.RTC_WAKEUP, targetTimestamp, pendingIntent);
+                    am.setExact(AlarmManager.RTC_WAKEUP, watchdogTimestamp, pendingIntent);
                 }
             }
             call.resolve();
@@ -169,22 +631,45 @@ public class AudioControlPlugin extends Plugin {
     private void cancelSleepTimer() {
         SharedPreferences prefs = getContext().getSharedPreferences("AudioPrefs", Context.MODE_PRIVATE);
         prefs.edit().putLong("TIMER_TARGET_MS", 0).commit();
+        sendSleepTimerToService(0L);
 
         AlarmManager am = (AlarmManager) getContext().getSystemService(Context.ALARM_SERVICE);
+        if (am != null) {
+            am.cancel(sleepTimerBroadcast(SleepTimerReceiver.ACTION_STOP_SLEEP_TIMER));
+            am.cancel(sleepTimerBroadcast(SleepTimerReceiver.ACTION_SLEEP_TIMER_DUE));
+        }
+    }
+
+    // Distinct actions make distinct PendingIntents, so both alarms can be armed and cancelled
+    private PendingIntent sleepTimerBroadcast(String action) {
         Intent intent = new Intent(getContext(), SleepTimerReceiver.class);
-        intent.setAction(SleepTimerReceiver.ACTION_STOP_SLEEP_TIMER);
-        PendingIntent pendingIntent = PendingIntent.getBroadcast(
+        intent.setAction(action);
+        return PendingIntent.getBroadcast(
             getContext(), 
             0, 
             intent, 
             PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
         );
+    }
+    
+    private void sendSleepTimerToService(long targetTimestamp) {
+        // Never start the service just for the timer
+        if (AudioService.getInstance() == null) return;
 
-        if (am != null) {
-            am.cancel(pendingIntent);
+        Intent intent = new Intent(getContext(), AudioService.class);
+        if (targetTimestamp > 0) {
+            intent.setAction("ACTION_SET_SLEEP_TIMER");
+            intent.putExtra("TARGET_MS", targetTimestamp);
+        } else {
+            intent.setAction("ACTION_CANCEL_SLEEP_TIMER");
+        }
+        try {
+            getContext().startService(intent);
+        } catch (Exception ignored) {
+            // Intentionally ignored: the persisted target and the watchdog alarm still apply
         }
     }
-    
+
     @PluginMethod
     public void getServiceStatus(PluginCall call) {
         SharedPreferences prefs = getContext().getSharedPreferences("AudioPrefs", Context.MODE_PRIVATE);
@@ -5,25 +5,36 @@ import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.app.Service;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.media.AudioManager;
 import android.os.Build;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.Looper;
+import android.os.PowerManager;
+import android.os.SystemClock;
 import android.support.v4.media.session.MediaSessionCompat;
 import android.support.v4.media.session.PlaybackStateCompat;
+import android.util.Log;
 
 import androidx.core.app.NotificationCompat;
+import androidx.core.content.ContextCompat;
 import androidx.media.app.NotificationCompat.MediaStyle;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 public class AudioService extends Service {
     private static final String TAG = "AudioService";
     public static final String ACTION_FADE_OUT_STOP = "com.starnoct.sleepsounds.ACTION_FADE_OUT_STOP";
+    public static final String ACTION_TRANSITION_SCENE = "com.starnoct.sleepsounds.ACTION_TRANSITION_SCENE";
 
     // Static instance reference for safe access from BroadcastReceiver
     // This allows SleepTimerReceiver to stop the service without starting a new instance
@@ -46,10 +57,20 @@ public class AudioService extends Service {
 
         void setVolume(float volume);
 
+        float getVolume();
+
+        // Engine-side gain applied on top of the user volume (e.g. wind-down)
+        void setLayerGain(float gain);
+
         boolean isPlaying();
+
+        // Levels published by the render path, or null when the player has no render path
+        LevelMeter getLevelMeter();
     }
 
     private final Map<String, AudioPlayer> players = new HashMap<>();
+    // Tone shaping per sound id; kept across stop/play so a re-tapped sound sounds the same
+    private final Map<String, TrackEq.Settings> trackEq = new HashMap<>();
     private static final String CHANNEL_ID = "SleepSoundsChannel";
     private final Handler mainHandler = new Handler(Looper.getMainLooper());
     private AudioManager audioManager;
@@ -61,11 +82,93 @@ public class AudioService extends Service {
     private float currentFadeVolume = 1.0f;
     private Runnable fadeOutRunnable;
 
+    // Sleep timer: render players fade themselves on the sample clock; this Handler only drives
+    // the MediaPlayer fade and a backstop stop. Kept separate so stopAllTracks() cannot cancel it.
+    static final int SLEEP_FADE_MS = 5000;
+    private static final long SLEEP_BACKSTOP_MS = 1000L;
+    private final Handler timerHandler = new Handler(Looper.getMainLooper());
+    private long sleepTimerTargetMs = 0L;
+    private boolean sleepFadeInProgress = false;
+    private final Runnable sleepFadeStarter = this::startSleepTimerFade;
+    private final Runnable sleepTimerBackstop = this::stopAllTracks;
+
+    // Wind-down: a slow control-rate tick lowers layer gains and relaxes the render profile
+    private static final long WIND_DOWN_TICK_MS = 5000L;
+    private final Handler windDownHandler = new Handler(Looper.getMainLooper());
+    private WindDownProfile windDown;
+    private RenderProfile windDownRenderProfile;
+    private final Runnable windDownTicker = new Runnable() {
+        @Override
+        public void run() {
+            tickWindDown();
+            if (windDown != null && !players.isEmpty()) {
+                windDownHandler.postDelayed(this, WIND_DOWN_TICK_MS);
+            }
+        }
+    };
+
+    // Screen-off deep buffering: nobody can touch the controls, so trade latency for fewer wakeups
+    private RenderProfile screenRenderProfile;
+    private final BroadcastReceiver screenStateReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (intent == null) return;
+            onScreenInteractiveChanged(!Intent.ACTION_SCREEN_OFF.equals(intent.getAction()));
+        }
+    };
+
+    // Scene transitions: the incoming mix fades in against the outgoing one on the sample clock.
+    // The lead gives new layers time to create their sources before the fade starts.
+    static final int SCENE_LEAD_MS = 250;
+    private static final long SCENE_RELEASE_GRACE_MS = 500L;
+    private final Handler sceneHandler = new Handler(Looper.getMainLooper());
+    // Layers fading out of the previous scene, already gone from players, with their budget ledger key
+    private final Map<AudioPlayer, String> retiring = new HashMap<>();
+    // Bumped whenever a scene request is superseded; a transition prepared for an older one is dropped
+    private int sceneGeneration = 0;
+
+    // Engine metrics sampling runs on its own Handler so stopAllTracks() cannot cancel it
+    private final Handler metricsHandler = new Handler(Looper.getMainLooper());
+    private final Runnable metricsSampler = new Runnable() {
+        @Override
+        public void run() {
+            EngineMetrics.getInstance().sample(players.size());
+            if (!players.isEmpty()) {
+                metricsHandler.postDelayed(this, EngineMetrics.SAMPLE_INTERVAL_MS);
+            }
+        }
+    };
+
+    // Watches render pipelines for lost progress from the main thread, off the render path
+    private final Handler watchdogHandler = new Handler(Looper.getMainLooper());
+    private final RenderWatchdog watchdog = new RenderWatchdog();
+    private final Runnable watchdogCheck = new Runnable() {
+        @Override
+        public void run() {
+            checkPipelines();
+            if (!players.isEmpty()) {
+                watchdogHandler.postDelayed(this, RenderWatchdog.CHECK_INTERVAL_MS);
+            }
+        }
+    };
+
     @Override
     public void onCreate() {
         super.onCreate();
         instance = this; // Set static instance reference
         audioManager = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
+        // Before any output is created, so tracks open at the native rate
+        RenderOutput.configure(getApplicationContext());
+        // Mapped once here, so starting a sound only looks it up
+        SoundManifest.get(getApplicationContext());
+        SoundBank.get(getApplicationContext());
+        // Cache files are mapped in the background; until then their sounds play from the MP3
+        final DecodedSoundCache cache = DecodedSoundCache.getInstance(this);
+        new Thread(cache::mapAll, "DecodedSoundCache-map").start();
+        // User patches must resolve even when the service is restarted without the UI
+        PatchRegistry.getInstance().load(getApplicationContext());
+        // Event layers sleep between events; the alarm wakes the device for the next one
+        TimingWheel.getInstance().setAlarm(WheelAlarmReceiver.alarmFor(this));
 
         // Initialize MediaSession
         mediaSession = new MediaSessionCompat(this, TAG);
@@ -92,6 +195,21 @@ public class AudioService extends Service {
 
         mediaSession.setActive(true);
 
+        IntentFilter screenFilter = new IntentFilter(Intent.ACTION_SCREEN_OFF);
+        screenFilter.addAction(Intent.ACTION_SCREEN_ON);
+        ContextCompat.registerReceiver(this, screenStateReceiver, screenFilter, ContextCompat.RECEIVER_NOT_EXPORTED);
+        PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
+        if (powerManager != null && !powerManager.isInteractive()) {
+            screenRenderProfile = RenderProfile.DEEP_BUFFER;
+        }
+
+        // Pick up a sleep timer that was set before this service instance was created
+        long persistedTarget = getSharedPreferences("AudioPrefs", Context.MODE_PRIVATE)
+                .getLong("TIMER_TARGET_MS", 0L);
+        if (persistedTarget > System.currentTimeMillis()) {
+            armSleepTimer(persistedTarget);
+        }
+
         focusChangeListener = focusChange -> {
             switch (focusChange) {
                 case AudioManager.AUDIOFOCUS_LOSS:
@@ -116,6 +234,7 @@ public class AudioService extends Service {
                     audioManager.requestAudioFocus(focusChangeListener,
                             AudioManager.STREAM_MUSIC, AudioManager.AUDIOFOCUS_GAIN);
                 }
+                prewarmOutputs();
                 return START_STICKY;
             }
             case "ACTION_PLAY": {
@@ -126,6 +245,18 @@ public class AudioService extends Service {
                 playTrack(id, url, vol);
                 return START_STICKY;
             }
+            case ACTION_TRANSITION_SCENE: {
+                ensureForeground();
+                String[] ids = intent.getStringArrayExtra("SOUND_IDS");
+                String[] urls = intent.getStringArrayExtra("URLS");
+                float[] volumes = intent.getFloatArrayExtra("VOLUMES");
+                if (ids == null || urls == null || volumes == null
+                        || urls.length != ids.length || volumes.length != ids.length) {
+                    return players.isEmpty() ? START_NOT_STICKY : START_STICKY;
+                }
+                prepareScene(ids, urls, volumes, Math.max(0, intent.getIntExtra("FADE_MS", 3000)));
+                return START_STICKY;
+            }
             case "ACTION_STOP": {
                 stopTrack(intent.getStringExtra("SOUND_ID"));
                 // If sounds remain, keep the service in the foreground.
@@ -143,6 +274,13 @@ public class AudioService extends Service {
                 }
                 return START_NOT_STICKY;
             }
+            case "ACTION_SET_EQ": {
+                setTrackEq(intent.getStringExtra("SOUND_ID"), new TrackEq.Settings(
+                        intent.getFloatExtra("LOW_SHELF_DB", 0f),
+                        intent.getFloatExtra("HIGH_SHELF_DB", 0f),
+                        intent.getFloatExtra("LOW_PASS_HZ", 0f)));
+                return players.isEmpty() ? START_NOT_STICKY : START_STICKY;
+            }
             case "ACTION_STOP_ALL": {
                 stopAllTracks();
                 return START_NOT_STICKY;
@@ -155,6 +293,24 @@ public class AudioService extends Service {
                 fadeOutAndStop();
                 return START_NOT_STICKY;
             }
+            case "ACTION_SET_SLEEP_TIMER": {
+                armSleepTimer(intent.getLongExtra("TARGET_MS", 0L));
+                return players.isEmpty() ? START_NOT_STICKY : START_STICKY;
+            }
+            case "ACTION_CANCEL_SLEEP_TIMER": {
+                armSleepTimer(0L);
+                return players.isEmpty() ? START_NOT_STICKY : START_STICKY;
+            }
+            case "ACTION_START_WIND_DOWN": {
+                startWindDown(intent.getLongExtra("DELAY_MS", 0L),
+                        intent.getLongExtra("DURATION_MS", 60L * 60L * 1000L),
+                        intent.getFloatExtra("END_LOUDNESS", 0.25f));
+                return players.isEmpty() ? START_NOT_STICKY : START_STICKY;
+            }
+            case "ACTION_CANCEL_WIND_DOWN": {
+                cancelWindDown();
+                return players.isEmpty() ? START_NOT_STICKY : START_STICKY;
+            }
         }
 
         // Unknown action
@@ -162,6 +318,16 @@ public class AudioService extends Service {
     }
 
     private void playTrack(String id, String url, float targetVolume) {
+        playTrack(id, url, targetVolume, 0L, 0, null);
+    }
+
+    /**
+     * @param sceneStartMs when non-zero, the layer joins a scene transition: it stays silent
+     *                     until this wall time and then fades in over {@code sceneFadeMs}
+     * @param sceneDecision the layer's share of the scene's admission, or null to admit it alone
+     */
+    private void playTrack(String id, String url, float targetVolume, long sceneStartMs, int sceneFadeMs,
+                           ResourceGovernor.Decision sceneDecision) {
         if (id == null) return;
 
         // REQUEST FOCUS NOW
@@ -179,16 +345,45 @@ public class AudioService extends Service {
             return;
         }
 
-        AudioPlayer player;
+        final ResourceGovernor governor = ResourceGovernor.getInstance(this);
+        final ResourceGovernor.Decision decision = sceneDecision != null ? sceneDecision : admission(this, id, url);
+        if (!decision.admitted) {
+            governor.recordRefusal();
+            Log.w(TAG, "Refused " + id + ": " + decision.reason);
+            AudioControlPlugin.onPlaybackRefused(id, decision.reason);
+            // Layers fading out of a scene still need the service
+            if (players.isEmpty() && retiring.isEmpty()) terminateServiceProperly();
+            return;
+        }
+        final boolean asLoop = decision.cost.kind == ResourceGovernor.KIND_LOOP;
+
+        AudioPlayer player = null;
 
         // 1) Detect if it's a Synthetic Sound (White/Pink/Brown Noise)
         // JS convention sends url = synthetic://<flavor>
-        boolean isSynth = (url != null && url.startsWith("synthetic://"))
-                || id.contains("noise")
-                || id.contains("fan")
-                || (url != null && url.startsWith("synthetic"));
+        boolean isSynth = isSyntheticLayer(id, url);
 
-        if (isSynth) {
+        if (url != null && url.startsWith(GranularSource.SCHEME)) {
+            // granular:///sounds/<asset>.mp3 resynthesizes the asset from a short excerpt
+            final String assetUrl = url.substring(GranularSource.SCHEME.length());
+            final Context appContext = getApplicationContext();
+            if (asLoop) {
+                // Over budget: the asset's plain loop costs a fraction of resynthesis
+                player = loopPlayer(id, assetUrl, targetVolume);
+            }
+            if (player == null) {
+                // The excerpt is converted to the output rate once, at decode time
+                final float level = assetGain(assetUrl);
+                player = new SynthPlayer(id, assetUrl, targetVolume, seed -> new GranularSource(
+                        Resampler.resample(PcmDecoder.decode(appContext, assetUrl, GranularSource.EXCERPT_OFFSET_US,
+                                GranularSource.EXCERPT_FRAMES), RenderOutput.nativeSampleRate(),
+                                Resampler.Quality.BALANCED), level, seed));
+            }
+        } else if (url != null && url.startsWith(EventLayerPlayer.SCHEME)) {
+            // events:///sounds/<asset>.mp3 plays the asset's sounds as sparse one-shots
+            player = new EventLayerPlayer(getApplicationContext(),
+                    url.substring(EventLayerPlayer.SCHEME.length()), targetVolume);
+        } else if (isSynth) {
             // Prefer an explicit flavor embedded in the URL when provided
             // e.g. synthetic://pink, synthetic://brown, synthetic://white
             final String synthFlavor = parseSyntheticFlavor(url, id);
@@ -196,7 +391,17 @@ public class AudioService extends Service {
         }
         // 2) Otherwise it's a File (Rain, etc)
         else {
-            player = new FilePlayer(this, url, targetVolume);
+            DecodedSoundCache.getInstance(this).recordPlay(url);
+            if (asLoop) player = loopPlayer(id, url, targetVolume);
+            if (player == null) player = new FilePlayer(this, url, targetVolume);
+        }
+
+        final TrackEq.Settings eqSettings = trackEq.get(id);
+        if (eqSettings != null && player instanceof SynthPlayer) {
+            ((SynthPlayer) player).setEq(eqSettings);
+        }
+        if (sceneStartMs > 0L && player instanceof SynthPlayer) {
+            ((SynthPlayer) player).armSceneFade(sceneStartMs, sceneFadeMs, true, null);
         }
 
         try {
@@ -206,24 +411,455 @@ public class AudioService extends Service {
             player.setVolume(0f);
             player.start();
             players.put(id, player);
+            governor.charge(id, decision);
+            applyRenderProfile();
+            startMetricsSampling();
+            startWatchdog();
+            if (sleepTimerTargetMs > System.currentTimeMillis()) {
+                armPlayerSleepFade(player);
+            }
+            if (windDown != null) {
+                // Join the wind-down where it currently stands instead of starting loud
+                tickWindDown();
+                windDownHandler.removeCallbacks(windDownTicker);
+                windDownHandler.postDelayed(windDownTicker, WIND_DOWN_TICK_MS);
+            }
             
             // Apply smooth fade-in after player exists
-            fadeVolume(player, 0f, targetVolume, 150);
+            if (sceneStartMs > 0L && !(player instanceof SynthPlayer)) {
+                sceneFadeVolume(player, 0f, targetVolume, sceneStartMs, sceneFadeMs);
+            } else {
+                fadeVolume(player, 0f, targetVolume, 150);
+            }
         } catch (Exception e) {
             // Error playing
         }
     }
 
+    /**
+     * Readies the outputs the incoming scene needs off the main thread, then starts the
+     * transition. Sound ids already playing are reused and need none, nor do layers that
+     * play through MediaPlayer or borrow an output per event.
+     */
+    private void prepareScene(String[] ids, String[] urls, float[] volumes, int fadeMs) {
+        int fresh = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] == null || players.containsKey(ids[i])) continue;
+            final int kind = layerKind(this, ids[i], urls[i]);
+            if (kind != ResourceGovernor.KIND_FILE && kind != ResourceGovernor.KIND_EVENTS) fresh++;
+        }
+        final int outputs = fresh;
+        final int generation = ++sceneGeneration;
+        Thread preparer = new Thread(() -> {
+            OutputPool.getInstance().prewarm(outputs);
+            sceneHandler.post(() -> transitionScene(generation, ids, urls, volumes, fadeMs));
+        }, "Scene-prepare");
+        preparer.setDaemon(true);
+        preparer.start();
+    }
+
+    /**
+     * Crossfades from the playing layers to the given scene. Layers in both keep playing and
+     * glide to their new volume; new layers start silent and fade in while the others fade
+     * out, all on one wall-clock timeline. Outgoing layers leave {@link #players} (and JS is
+     * told they terminated) right away, but keep their output and budget until their fade
+     * has been heard.
+     */
+    private void transitionScene(int generation, String[] ids, String[] urls, float[] volumes, int fadeMs) {
+        // A newer scene or a stop came in while the outputs were being prepared
+        if (generation != sceneGeneration) return;
+        // The whole scene is admitted before anything is retired; if it does not fit, the current one plays on
+        final ResourceGovernor.Decision[] decisions = sceneAdmission(this, ids, urls);
+        if (ids.length > 0 && !decisions[0].admitted) {
+            ResourceGovernor.getInstance(this).recordRefusal();
+            Log.w(TAG, "Refused scene: " + decisions[0].reason);
+            for (String id : ids) {
+                if (id != null && !players.containsKey(id)) AudioControlPlugin.onPlaybackRefused(id, decisions[0].reason);
+            }
+            if (players.isEmpty() && retiring.isEmpty()) terminateServiceProperly();
+            return;
+        }
+        final long startMs = System.currentTimeMillis() + SCENE_LEAD_MS;
+        final Set<String> incoming = new HashSet<>(Arrays.asList(ids));
+
+        for (Map.Entry<String, AudioPlayer> entry : new ArrayList<>(players.entrySet())) {
+            if (incoming.contains(entry.getKey())) continue;
+            players.remove(entry.getKey());
+            retire(entry.getKey(), entry.getValue(), startMs, fadeMs);
+            AudioControlPlugin.onPlaybackTerminated(entry.getKey());
+        }
+
+        for (int i = 0; i < ids.length; i++) {
+            final AudioPlayer kept = players.get(ids[i]);
+            if (kept != null) {
+                sceneFadeVolume(kept, kept.getVolume(), volumes[i], startMs, fadeMs);
+            } else {
+                playTrack(ids[i], urls[i], volumes[i], startMs, fadeMs, decisions[i]);
+            }
+        }
+        applyRenderProfile();
+        if (players.isEmpty() && retiring.isEmpty()) terminateServiceProperly();
+    }
+
+    private void retire(String id, AudioPlayer player, long startMs, int fadeMs) {
+        retiring.put(player, ResourceGovernor.getInstance(this).retire(id));
+        if (player instanceof SynthPlayer) {
+            ((SynthPlayer) player).armSceneFade(startMs, fadeMs, false,
+                    () -> sceneHandler.post(() -> releaseRetired(player)));
+        } else {
+            sceneFadeVolume(player, player.getVolume(), 0f, startMs, fadeMs);
+        }
+        // MediaPlayer layers end here, as does a render player whose loop stopped before its fade did
+        sceneHandler.postDelayed(() -> releaseRetired(player),
+                SCENE_LEAD_MS + fadeMs + RenderProfile.MAX_BUFFER_MS + SCENE_RELEASE_GRACE_MS);
+    }
+
+    private void releaseRetired(AudioPlayer player) {
+        if (!retiring.containsKey(player)) return;
+        final String ledgerKey = retiring.remove(player);
+        player.stop();
+        if (ledgerKey != null) ResourceGovernor.getInstance(this).release(ledgerKey);
+        if (players.isEmpty() && retiring.isEmpty()) {
+            terminateServiceProperly();
+        } else {
+            applyRenderProfile();
+        }
+    }
+
+    private void stopRetiring() {
+        sceneHandler.removeCallbacksAndMessages(null);
+        for (Map.Entry<AudioPlayer, String> entry : retiring.entrySet()) {
+            entry.getKey().stop();
+            if (entry.getValue() != null) ResourceGovernor.getInstance(this).release(entry.getValue());
+        }
+        retiring.clear();
+    }
+
+    /**
+     * Stepped volume ramp on the scene timeline for layers without a sample-clock fade
+     * (MediaPlayer, event layers) and for reused layers changing level. Fades to and from
+     * silence follow the same equal-power curves as the render players.
+     */
+    private void sceneFadeVolume(AudioPlayer player, float from, float to, long startMs, int fadeMs) {
+        final long delay = Math.max(0L, startMs - System.currentTimeMillis());
+        final int steps = Math.max(1, Math.min(100, fadeMs / 50));
+        for (int i = 1; i <= steps; i++) {
+            final double x = (double) i / steps;
+            final float vol;
+            if (from == 0f) {
+                vol = to * (float) Math.sin(x * Math.PI / 2);
+            } else if (to == 0f) {
+                vol = from * (float) Math.cos(x * Math.PI / 2);
+            } else {
+                vol = from + (to - from) * (float) x;
+            }
+            sceneHandler.postDelayed(() -> {
+                if (player.isPlaying()) player.setVolume(vol);
+            }, delay + (long) fadeMs * i / steps);
+        }
+    }
+
+    /**
+     * Plays a bundled sound's packed loop, or the one decoded ahead of time, straight from a
+     * mapping: no extractor, no decoder.
+     *
+     * @return null when the sound has neither, or its cache file is not mapped yet
+     */
+    private AudioPlayer loopPlayer(String id, String url, float targetVolume) {
+        final SoundBank.Entry banked = SoundBank.get(this).find(url);
+        final SoundBank.Entry loop = banked != null ? banked : DecodedSoundCache.getInstance(this).mapped(url);
+        if (loop == null) return null;
+        final float gain = assetGain(url);
+        return new SynthPlayer(id, url, targetVolume, seed -> new PcmLoopSource(loop, gain));
+    }
+
+    /**
+     * The manifest's loudness match for a bundled sound; every player applies the same one.
+     */
+    private float assetGain(String url) {
+        final SoundManifest.Entry info = SoundManifest.get(this).find(url);
+        return info != null ? info.gain() : 1f;
+    }
+
+    /**
+     * Asks the {@link ResourceGovernor} whether a layer may start, and as what. Used by
+     * playTrack and, to reject a play before it reaches the service, by the plugin.
+     * Granular layers that do not fit at full cost fall back to their asset's loop.
+     */
+    static ResourceGovernor.Decision admission(Context context, String id, String url) {
+        final ResourceGovernor governor = ResourceGovernor.getInstance(context);
+        final int rate = RenderOutput.nativeSampleRate();
+        final ResourceGovernor.Decision decision = governor.admit(id,
+                ResourceGovernor.estimate(layerKind(context, id, url), flavorOf(id, url), rate));
+        if ((!decision.admitted || decision.reducedRate)
+                && decision.cost.kind == ResourceGovernor.KIND_GRANULAR
+                && hasLoop(context, url.substring(GranularSource.SCHEME.length()))) {
+            final ResourceGovernor.Decision loop = governor.admit(id,
+                    ResourceGovernor.estimate(ResourceGovernor.KIND_LOOP, null, rate));
+            if (loop.admitted) return loop.asDegraded();
+        }
+        return decision;
+    }
+
+    /**
+     * Asks the {@link ResourceGovernor} whether a scene may replace the playing layers, as a
+     * whole and before any of them is retired. Used by transitionScene and, to reject the
+     * transition up front, by the plugin. Like {@link #admission}, granular layers fall back to
+     * their asset's loop when the scene does not fit at full cost.
+     *
+     * @return a decision per layer; all share the verdict
+     */
+    static ResourceGovernor.Decision[] sceneAdmission(Context context, String[] ids, String[] urls) {
+        final ResourceGovernor governor = ResourceGovernor.getInstance(context);
+        final int rate = RenderOutput.nativeSampleRate();
+        final ResourceGovernor.Cost[] costs = new ResourceGovernor.Cost[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] == null) continue;
+            costs[i] = ResourceGovernor.estimate(layerKind(context, ids[i], urls[i]), flavorOf(ids[i], urls[i]), rate);
+        }
+        final ResourceGovernor.Decision[] decisions = governor.admitScene(ids, costs);
+        if (ids.length == 0 || decisions[0].admitted && !decisions[0].reducedRate) return decisions;
+
+        final ResourceGovernor.Cost[] loops = costs.clone();
+        boolean fallback = false;
+        for (int i = 0; i < ids.length; i++) {
+            if (costs[i] != null && costs[i].kind == ResourceGovernor.KIND_GRANULAR
+                    && hasLoop(context, urls[i].substring(GranularSource.SCHEME.length()))) {
+                loops[i] = ResourceGovernor.estimate(ResourceGovernor.KIND_LOOP, null, rate);
+                fallback = true;
+            }
+        }
+        if (!fallback) return decisions;
+        final ResourceGovernor.Decision[] degraded = governor.admitScene(ids, loops);
+        if (!degraded[0].admitted) return decisions;
+        for (int i = 0; i < ids.length; i++) {
+            if (loops[i] != costs[i]) degraded[i] = degraded[i].asDegraded();
+        }
+        return degraded;
+    }
+
+    // How playTrack will render the URL, mirroring its branches
+    private static int layerKind(Context context, String id, String url) {
+        if (url != null && url.startsWith(GranularSource.SCHEME)) return ResourceGovernor.KIND_GRANULAR;
+        if (url != null && url.startsWith(EventLayerPlayer.SCHEME)) return ResourceGovernor.KIND_EVENTS;
+        if (isSyntheticLayer(id, url)) return ResourceGovernor.KIND_SYNTH;
+        return hasLoop(context, url) ? ResourceGovernor.KIND_LOOP : ResourceGovernor.KIND_FILE;
+    }
+
+    private static String flavorOf(String id, String url) {
+        return isSyntheticLayer(id, url) ? parseSyntheticFlavor(url, id) : null;
+    }
+
+    private static boolean hasLoop(Context context, String url) {
+        return SoundBank.get(context).find(url) != null || DecodedSoundCache.getInstance(context).mapped(url) != null;
+    }
+
+    private static boolean isSyntheticLayer(String id, String url) {
+        return (url != null && url.startsWith("synthetic://"))
+                || (id != null && (id.contains("noise") || id.contains("fan")))
+                || (url != null && url.startsWith("synthetic"));
+    }
+
+    /**
+     * Arms (or with {@code targetMs <= 0} cancels) the sleep timer. Render players count frames
+     * toward the target and run a sample-accurate fade from their audio thread; MediaPlayer
+     * layers get the Handler-driven fade. The AlarmManager alarm only acts as a watchdog.
+     */
+    private void armSleepTimer(long targetMs) {
+        timerHandler.removeCallbacks(sleepFadeStarter);
+        timerHandler.removeCallbacks(sleepTimerBackstop);
+        sleepTimerTargetMs = targetMs;
+        sleepFadeInProgress = false;
+
+        final long now = System.currentTimeMillis();
+        if (targetMs <= now) {
+            for (AudioPlayer player : players.values()) {
+                if (player instanceof SynthPlayer) ((SynthPlayer) player).disarmSleepFade();
+            }
+            return;
+        }
+
+        for (AudioPlayer player : players.values()) {
+            armPlayerSleepFade(player);
+        }
+        timerHandler.postDelayed(sleepFadeStarter, Math.max(0L, targetMs - SLEEP_FADE_MS - now));
+        timerHandler.postDelayed(sleepTimerBackstop, targetMs - now + SLEEP_BACKSTOP_MS);
+    }
+
+    private void armPlayerSleepFade(AudioPlayer player) {
+        if (player instanceof SynthPlayer) {
+            ((SynthPlayer) player).armSleepFade(sleepTimerTargetMs, SLEEP_FADE_MS,
+                    () -> timerHandler.post(this::onSleepFadeComplete));
+        }
+    }
+
+    private void startSleepTimerFade() {
+        sleepFadeInProgress = true;
+        // Only MediaPlayer layers need the stepped fade; render players are already on their own
+        for (AudioPlayer player : players.values()) {
+            if (!(player instanceof SynthPlayer)) {
+                fadeOutAndStop();
+                return;
+            }
+        }
+    }
+
+    // Main thread: a render player reached silence at the timer target
+    private void onSleepFadeComplete() {
+        for (AudioPlayer player : players.values()) {
+            if (!(player instanceof SynthPlayer) || !((SynthPlayer) player).isSleepFadeComplete()) {
+                return; // The stepped fade (or another render player) will finish the stop
+            }
+        }
+        stopAllTracks();
+    }
+
+    /**
+     * Starts a wind-down that begins after {@code delayMs} and lowers the mix over
+     * {@code durationMs} toward {@code endLoudness} (a loudness fraction, 0..1).
+     */
+    private void startWindDown(long delayMs, long durationMs, float endLoudness) {
+        windDown = new WindDownProfile(SystemClock.elapsedRealtime() + Math.max(0L, delayMs),
+                durationMs, endLoudness);
+        windDownHandler.removeCallbacks(windDownTicker);
+        windDownHandler.post(windDownTicker);
+    }
+
+    private void cancelWindDown() {
+        windDownHandler.removeCallbacks(windDownTicker);
+        windDown = null;
+        windDownRenderProfile = null;
+        for (AudioPlayer player : players.values()) {
+            player.setLayerGain(1f);
+        }
+        applyRenderProfile();
+    }
+
+    private void tickWindDown() {
+        if (windDown == null) return;
+        final float progress = windDown.progress(SystemClock.elapsedRealtime());
+
+        // Lower every layer along its equal-loudness curve, remembering the loudest result
+        final Map<String, Float> effective = new HashMap<>();
+        float loudest = 0f;
+        float mixLoudest = 0f;
+        for (Map.Entry<String, AudioPlayer> entry : players.entrySet()) {
+            AudioPlayer player = entry.getValue();
+            String flavor = player instanceof SynthPlayer ? ((SynthPlayer) player).getFlavor() : null;
+            float gain = windDown.gainFor(progress, WindDownProfile.lowFrequencyWeight(flavor));
+            player.setLayerGain(gain);
+            float level = gain * player.getVolume();
+            effective.put(entry.getKey(), level);
+            loudest = Math.max(loudest, level);
+            mixLoudest = Math.max(mixLoudest, player.getVolume());
+        }
+
+        // Drop layers the ramp has made inaudible or masked by the loudest one. Volume 0 is
+        // skipped: it is usually a fade-in that has not started ramping yet.
+        for (Map.Entry<String, Float> entry : effective.entrySet()) {
+            float level = entry.getValue();
+            AudioPlayer candidate = players.get(entry.getKey());
+            float mixLevel = candidate != null ? candidate.getVolume() : 0f;
+            if (WindDownProfile.isDroppable(progress, level, loudest, mixLevel, mixLoudest)) {
+                AudioPlayer player = players.remove(entry.getKey());
+                if (player != null) {
+                    player.stop();
+                    ResourceGovernor.getInstance(this).release(entry.getKey());
+                    AudioControlPlugin.onPlaybackTerminated(entry.getKey());
+                }
+            }
+        }
+
+        RenderProfile profile = windDown.renderProfileFor(progress);
+        if (profile != windDownRenderProfile) {
+            windDownRenderProfile = profile;
+            applyRenderProfile();
+        }
+    }
+
+    private void onScreenInteractiveChanged(boolean interactive) {
+        RenderProfile profile = interactive ? null : RenderProfile.DEEP_BUFFER;
+        if (profile == screenRenderProfile) return;
+        screenRenderProfile = profile;
+        applyRenderProfile();
+    }
+
+    /**
+     * Pushes the combined render profile of all engine-wide requirements to every render player.
+     */
+    private void applyRenderProfile() {
+        RenderProfile profile = RenderProfile.INTERACTIVE
+                .merge(windDownRenderProfile)
+                .merge(screenRenderProfile)
+                .merge(ResourceGovernor.getInstance(this).needsReducedRate() ? RenderProfile.REDUCED_RATE : null);
+        for (AudioPlayer player : players.values()) {
+            if (player instanceof SynthPlayer) {
+                ((SynthPlayer) player).setRenderProfile(profile);
+            }
+        }
+    }
+
+    private void startMetricsSampling() {
+        metricsHandler.removeCallbacks(metricsSampler);
+        metricsHandler.post(metricsSampler);
+    }
+
+    private void startWatchdog() {
+        watchdogHandler.removeCallbacks(watchdogCheck);
+        watchdogHandler.postDelayed(watchdogCheck, RenderWatchdog.CHECK_INTERVAL_MS);
+    }
+
+    /**
+     * Rebuilds the output of every render layer that wrote nothing since the last check, and
+     * stops (telling JS) a layer that still writes nothing after repeated rebuilds. Layers
+     * fading out of a scene are left to their release timeout.
+     */
+    private void checkPipelines() {
+        watchdog.retainAll(players.values());
+        for (Map.Entry<String, AudioPlayer> entry : new ArrayList<>(players.entrySet())) {
+            if (!(entry.getValue() instanceof SynthPlayer)) continue;
+            final String id = entry.getKey();
+            final SynthPlayer player = (SynthPlayer) entry.getValue();
+            final String kind = "synth:" + player.getFlavor();
+            switch (watchdog.check(player)) {
+                case RenderWatchdog.RECOVER:
+                    // Rebuilt on the pool's thread, which waits for the old render thread; reported here
+                    player.recover((cause, failure) -> watchdogHandler.post(() -> {
+                        if (failure == null) {
+                            Log.w(TAG, "Rebuilt output for " + id + ": " + cause);
+                            EngineMetrics.getInstance().recordIncident(id, kind, cause, "rebuilt");
+                        } else {
+                            Log.w(TAG, "Could not rebuild output for " + id + " (" + cause + ")", failure);
+                            EngineMetrics.getInstance().recordIncident(id, kind, String.valueOf(failure), "rebuild-failed");
+                        }
+                    }));
+                    break;
+                case RenderWatchdog.GIVE_UP:
+                    Log.w(TAG, "Giving up on " + id + " after " + RenderWatchdog.MAX_ATTEMPTS + " rebuilds");
+                    EngineMetrics.getInstance().recordIncident(id, kind,
+                            "no progress after " + RenderWatchdog.MAX_ATTEMPTS + " rebuilds", "gave-up");
+                    stopTrack(id);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
     private void stopTrack(String id) {
         if (id == null) return;
         AudioPlayer player = players.remove(id);
         if (player != null) {
             // Quick fade out could go here, but for now just stop
             player.stop();
+            ResourceGovernor.getInstance(this).release(id);
             AudioControlPlugin.onPlaybackTerminated(id);
         }
-        if (players.isEmpty()) {
+        if (players.isEmpty() && retiring.isEmpty()) {
             terminateServiceProperly();
+        } else {
+            // The remaining layers may fit at full rate again
+            applyRenderProfile();
         }
     }
 
@@ -235,6 +871,56 @@ public class AudioService extends Service {
         }
     }
 
+    /**
+     * Applies tone shaping to a track and remembers it for the next time the sound plays.
+     * Only render players (synth, granular) have an EQ stage; file and event layers keep
+     * their stored setting until they are played through one. Main thread only.
+     *
+     * @return whether a playing layer took the setting now
+     */
+    boolean setTrackEq(String id, TrackEq.Settings settings) {
+        if (id == null) return false;
+        if (settings.isFlat()) {
+            trackEq.remove(id);
+        } else {
+            trackEq.put(id, settings);
+        }
+        AudioPlayer player = players.get(id);
+        if (player instanceof SynthPlayer) {
+            ((SynthPlayer) player).setEq(settings);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Number of live layers. Main thread only.
+     */
+    int getPlayerCount() {
+        return players.size();
+    }
+
+    /**
+     * Copies the latest per-track levels into {@code out} as {rms, peak} pairs, keyed by sound id,
+     * and returns the combined master level. Tracks without a render path are skipped.
+     * Must be called on the main thread, which owns the players map.
+     */
+    float[] collectLevels(Map<String, float[]> out) {
+        float masterPower = 0f;
+        float masterPeak = 0f;
+        for (Map.Entry<String, AudioPlayer> entry : players.entrySet()) {
+            LevelMeter meter = entry.getValue().getLevelMeter();
+            if (meter == null) continue;
+            float[] level = new float[2];
+            meter.read(level);
+            out.put(entry.getKey(), level);
+            // Layers are uncorrelated noise, so powers add; the summed peak is an upper bound
+            masterPower += level[0] * level[0];
+            masterPeak += level[1];
+        }
+        return new float[]{(float) Math.sqrt(masterPower), Math.min(1f, masterPeak)};
+    }
+
     private void stopAllTracks() {
         // CRITICAL: Stop any pending fade-in loops immediately
         if (mainHandler != null) {
@@ -246,6 +932,9 @@ public class AudioService extends Service {
             AudioControlPlugin.onPlaybackTerminated(entry.getKey());
         }
         players.clear();
+        stopRetiring();
+        sceneGeneration++;
+        ResourceGovernor.getInstance(this).releaseAll();
 
         // If the JS side sent STOP_ALL (pause/clear), treat that as a terminal stop.
         // We should not keep the foreground notification alive when nothing is playing.
@@ -293,13 +982,27 @@ public class AudioService extends Service {
         // Capture current players to avoid ConcurrentModificationException
         final Map<String, AudioPlayer> activePlayers = new HashMap<>(players);
         for (AudioPlayer player : activePlayers.values()) {
+            if (sleepFadeInProgress && player instanceof SynthPlayer
+                    && ((SynthPlayer) player).isSleepFadeArmed()) {
+                continue; // Fading itself on the sample clock
+            }
             if (player.isPlaying()) {
                 player.setVolume(currentFadeVolume);
             }
         }
     }
 
-    private String parseSyntheticFlavor(String url, String fallbackId) {
+    /**
+     * Creates a ready track and render thread in the background, so the first play only has
+     * to bind to it. MediaPlayer layers cannot be prepared before their URL is known.
+     */
+    private void prewarmOutputs() {
+        Thread warmer = new Thread(() -> OutputPool.getInstance().prewarm(1), "OutputPool-prewarm");
+        warmer.setDaemon(true);
+        warmer.start();
+    }
+
+    private static String parseSyntheticFlavor(String url, String fallbackId) {
         try {
             if (url != null && url.startsWith("synthetic://")) {
                 String flavor = url.substring("synthetic://".length());
@@ -382,6 +1085,11 @@ public class AudioService extends Service {
     }
 
     private void terminateServiceProperly() {
+        // Nothing left to fade; a later play re-arms from the persisted target
+        timerHandler.removeCallbacks(sleepFadeStarter);
+        timerHandler.removeCallbacks(sleepTimerBackstop);
+        windDownHandler.removeCallbacks(windDownTicker);
+
         // 1. Update MediaSession state to STOPPED
         updateMediaSessionState(PlaybackStateCompat.STATE_STOPPED);
 
@@ -411,10 +1119,47 @@ public class AudioService extends Service {
     @Override
     public void onDestroy() {
         instance = null; // Clear static instance reference
+        metricsHandler.removeCallbacks(metricsSampler);
+        watchdogHandler.removeCallbacks(watchdogCheck);
+        mainHandler.removeCallbacksAndMessages(null);
+        // A system stop (e.g. onTimeout) can arrive while layers still play; they must not outlive us
+        for (Map.Entry<String, AudioPlayer> entry : players.entrySet()) {
+            entry.getValue().stop();
+            AudioControlPlugin.onPlaybackTerminated(entry.getKey());
+        }
+        players.clear();
+        stopRetiring();
+        sceneGeneration++;
+        ResourceGovernor.getInstance(this).releaseAll();
+        // The stopped layers just handed their outputs back; idle tracks and threads must not outlive us
+        OutputPool.getInstance().drain();
+        TimingWheel.getInstance().setAlarm(null);
+        if (audioManager != null) {
+            // The focus listener references this service; the AudioManager would keep it alive
+            audioManager.abandonAudioFocus(focusChangeListener);
+        }
+        try {
+            unregisterReceiver(screenStateReceiver);
+        } catch (Exception ignored) {
+            // Intentionally ignored: receiver may not have been registered
+        }
         terminateServiceProperly();
         super.onDestroy();
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        ResourceGovernor.getInstance(this).onTrimMemory(level);
+        if (level >= TRIM_MEMORY_RUNNING_LOW && level != TRIM_MEMORY_UI_HIDDEN) {
+            // Idle outputs are only a head start for the next play; the playing layers stay
+            OutputPool.getInstance().drain();
+            // Mapped cache pages compete for the same memory; the warm-up job refills the cache later
+            final DecodedSoundCache cache = DecodedSoundCache.getInstance(this);
+            new Thread(() -> cache.evictTo(cache.getBudgetBytes() / 2), "DecodedSoundCache-trim").start();
+        }
+    }
+
     @Override
     public void onTimeout(int startId, int fgsType) {
         isServiceTimedOut = true;
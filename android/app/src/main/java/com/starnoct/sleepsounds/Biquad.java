@@ -0,0 +1,124 @@
+package com.starnoct.sleepsounds;
+
+/**
+ * One second-order section (RBJ audio-EQ cookbook), direct form I.
+ *
+ * Coefficients are computed in double and run in float. The state is just the last two
+ * inputs and outputs, which stay meaningful under any coefficients, so a filter can be
+ * retuned every few frames while running without the transients transposed forms show.
+ */
+final class Biquad {
+
+    private float b0 = 1f, b1, b2, a1, a2;
+    private float x1, x2, y1, y2;
+
+    void setLowPass(int sampleRate, double freq, double q) {
+        final double w0 = omega(sampleRate, freq);
+        final double cos = Math.cos(w0);
+        final double alpha = Math.sin(w0) / (2.0 * q);
+        set((1.0 - cos) / 2.0, 1.0 - cos, (1.0 - cos) / 2.0, 1.0 + alpha, -2.0 * cos, 1.0 - alpha);
+    }
+
+    void setHighPass(int sampleRate, double freq, double q) {
+        final double w0 = omega(sampleRate, freq);
+        final double cos = Math.cos(w0);
+        final double alpha = Math.sin(w0) / (2.0 * q);
+        set((1.0 + cos) / 2.0, -(1.0 + cos), (1.0 + cos) / 2.0, 1.0 + alpha, -2.0 * cos, 1.0 - alpha);
+    }
+
+    /**
+     * Band-pass with a constant 0 dB peak.
+     */
+    void setBandPass(int sampleRate, double freq, double q) {
+        final double w0 = omega(sampleRate, freq);
+        final double cos = Math.cos(w0);
+        final double alpha = Math.sin(w0) / (2.0 * q);
+        set(alpha, 0.0, -alpha, 1.0 + alpha, -2.0 * cos, 1.0 - alpha);
+    }
+
+    /**
+     * Low shelf with slope 1 (the steepest without overshoot).
+     */
+    void setLowShelf(int sampleRate, double freq, double gainDb) {
+        final double a = Math.pow(10.0, gainDb / 40.0);
+        final double w0 = omega(sampleRate, freq);
+        final double cos = Math.cos(w0);
+        final double beta = 2.0 * Math.sqrt(a) * Math.sin(w0) / 2.0 * Math.sqrt(2.0);
+        set(a * ((a + 1.0) - (a - 1.0) * cos + beta),
+                2.0 * a * ((a - 1.0) - (a + 1.0) * cos),
+                a * ((a + 1.0) - (a - 1.0) * cos - beta),
+                (a + 1.0) + (a - 1.0) * cos + beta,
+                -2.0 * ((a - 1.0) + (a + 1.0) * cos),
+                (a + 1.0) + (a - 1.0) * cos - beta);
+    }
+
+    /**
+     * High shelf with slope 1.
+     */
+    void setHighShelf(int sampleRate, double freq, double gainDb) {
+        final double a = Math.pow(10.0, gainDb / 40.0);
+        final double w0 = omega(sampleRate, freq);
+        final double cos = Math.cos(w0);
+        final double beta = 2.0 * Math.sqrt(a) * Math.sin(w0) / 2.0 * Math.sqrt(2.0);
+        set(a * ((a + 1.0) + (a - 1.0) * cos + beta),
+                -2.0 * a * ((a - 1.0) + (a + 1.0) * cos),
+                a * ((a + 1.0) + (a - 1.0) * cos - beta),
+                (a + 1.0) - (a - 1.0) * cos + beta,
+                2.0 * ((a - 1.0) - (a + 1.0) * cos),
+                (a + 1.0) - (a - 1.0) * cos - beta);
+    }
+
+    /**
+     * Sets the state to the filter's steady response to a constant {@code x}, so a stage
+     * switched in mid-stream continues from the signal instead of stepping from zero.
+     */
+    void primeDc(float x) {
+        final float y = x * (b0 + b1 + b2) / (1f + a1 + a2);
+        x1 = x;
+        x2 = x;
+        y1 = y;
+        y2 = y;
+    }
+
+    void reset() {
+        x1 = 0f;
+        x2 = 0f;
+        y1 = 0f;
+        y2 = 0f;
+    }
+
+    /**
+     * Filters {@code frames} samples in place, starting at {@code offset} and stepping by
+     * {@code stride} (2 for one channel of interleaved stereo).
+     */
+    void process(float[] buffer, int offset, int frames, int stride) {
+        final float b0 = this.b0, b1 = this.b1, b2 = this.b2, a1 = this.a1, a2 = this.a2;
+        float px1 = x1, px2 = x2, py1 = y1, py2 = y2;
+        for (int n = 0, i = offset; n < frames; n++, i += stride) {
+            final float x = buffer[i];
+            final float y = b0 * x + b1 * px1 + b2 * px2 - a1 * py1 - a2 * py2;
+            px2 = px1;
+            px1 = x;
+            py2 = py1;
+            py1 = y;
+            buffer[i] = y;
+        }
+        x1 = px1;
+        x2 = px2;
+        y1 = py1;
+        y2 = py2;
+    }
+
+    private static double omega(int sampleRate, double freq) {
+        // Keep the design below Nyquist, where the cookbook formulas stay stable
+        return 2.0 * Math.PI * Math.max(1.0, Math.min(freq, sampleRate * 0.45)) / sampleRate;
+    }
+
+    private void set(double nb0, double nb1, double nb2, double a0, double na1, double na2) {
+        b0 = (float) (nb0 / a0);
+        b1 = (float) (nb1 / a0);
+        b2 = (float) (nb2 / a0);
+        a1 = (float) (na1 / a0);
+        a2 = (float) (na2 / a0);
+    }
+}
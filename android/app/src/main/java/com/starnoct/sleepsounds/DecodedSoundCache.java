@@ -0,0 +1,408 @@
+package com.starnoct.sleepsounds;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Decoded copies of the sounds the user plays most, kept on disk so that a bedtime play never
+ * waits for a decoder.
+ *
+ * Each file is a one-entry {@link SoundBank} image holding 16-bit PCM: the seamless loop region
+ * of a bundled MP3 from the {@link SoundManifest}, converted to the output's native rate so
+ * playback never resamples. Synth flavors are not cached; they render live for far less than a
+ * decoder costs, and never repeat. Files are mapped ahead of playback, by {@link #mapAll} when
+ * the service starts and after each warm-up, so starting a sound only looks its mapping up
+ * and plays it through {@link PcmLoopSource} exactly like a bank entry. {@link SoundCacheWorker} fills the cache
+ * while the device charges idle. Files are written under a temporary name and renamed when
+ * complete, so a stopped job loses at most the sound it was working on and resumes with the
+ * rest next time.
+ */
+final class DecodedSoundCache {
+
+    private static final String TAG = "DecodedSoundCache";
+    private static final String DIR = "decoded-sounds";
+    private static final String SUFFIX = ".pcm";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String PREFS = "SoundCachePrefs";
+    private static final String PLAYS_PREFIX = "plays:";
+    private static final String BUDGET_KEY = "BUDGET_BYTES";
+
+    static final long DEFAULT_BUDGET_BYTES = 192L << 20;
+    // Only the favourites: a longer tail would churn the budget for sounds rarely played
+    static final int MAX_SOUNDS = 8;
+    private static final int CHUNK_FRAMES = 4096;
+
+    interface StopSignal {
+        boolean isStopped();
+    }
+
+    interface SizeEstimate {
+        /**
+         * Bytes the cached copy of {@code url} will take, or 0 if it cannot be cached.
+         */
+        long bytesFor(String url);
+    }
+
+    interface Writer {
+        /**
+         * Writes the cached copy of {@code url} to {@code out}.
+         *
+         * @return false if {@code stop} interrupted it
+         */
+        boolean write(String url, File out, StopSignal stop) throws IOException;
+    }
+
+    private static volatile DecodedSoundCache instance;
+
+    static DecodedSoundCache getInstance(Context context) {
+        DecodedSoundCache cache = instance;
+        if (cache == null) {
+            synchronized (DecodedSoundCache.class) {
+                cache = instance;
+                if (cache == null) {
+                    cache = new DecodedSoundCache(context.getApplicationContext());
+                    instance = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    private final Context context;
+    private final File dir;
+    private final SharedPreferences prefs;
+    // Cache key to its file's mapping; read on the main thread, filled off it
+    private final Map<String, SoundBank.Entry> mapped = Collections.synchronizedMap(new HashMap<String, SoundBank.Entry>());
+
+    private DecodedSoundCache(Context context) {
+        this.context = context;
+        this.dir = new File(context.getCacheDir(), DIR);
+        this.prefs = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Counts a play of {@code url}; the warm-up job caches the most played sounds first.
+     */
+    void recordPlay(String url) {
+        if (url == null || cacheKey(url) == null) return;
+        final String key = PLAYS_PREFIX + url;
+        prefs.edit().putInt(key, prefs.getInt(key, 0) + 1).apply();
+    }
+
+    /**
+     * Cacheable URLs by descending play count.
+     */
+    List<String> mostPlayed() {
+        final List<Map.Entry<String, Integer>> counts = new ArrayList<>();
+        for (Map.Entry<String, ?> entry : prefs.getAll().entrySet()) {
+            if (entry.getKey().startsWith(PLAYS_PREFIX) && entry.getValue() instanceof Integer) {
+                counts.add(new java.util.AbstractMap.SimpleEntry<>(
+                        entry.getKey().substring(PLAYS_PREFIX.length()), (Integer) entry.getValue()));
+            }
+        }
+        Collections.sort(counts, (a, b) -> Integer.compare(b.getValue(), a.getValue()));
+        final List<String> urls = new ArrayList<>();
+        for (Map.Entry<String, Integer> count : counts) urls.add(count.getKey());
+        return urls;
+    }
+
+    long getBudgetBytes() {
+        return prefs.getLong(BUDGET_KEY, DEFAULT_BUDGET_BYTES);
+    }
+
+    void setBudgetBytes(long bytes) {
+        prefs.edit().putLong(BUDGET_KEY, Math.max(0L, bytes)).apply();
+    }
+
+    /**
+     * Bytes currently on disk, including any unfinished file.
+     */
+    long sizeBytes() {
+        long total = 0L;
+        final File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) total += file.length();
+        }
+        return total;
+    }
+
+    /**
+     * The mapping of {@code url}'s cached copy, if {@link #mapAll} has made it. No I/O, so the
+     * main thread may call it.
+     *
+     * @return the entry, or null when the sound is not cached or not mapped yet
+     */
+    SoundBank.Entry mapped(String url) {
+        final String key = url == null ? null : cacheKey(url);
+        return key == null ? null : mapped.get(key);
+    }
+
+    /**
+     * Maps every cached file not mapped yet and forgets those since deleted. Disk I/O: run it
+     * off the main thread.
+     */
+    void mapAll() {
+        for (String url : mostPlayed()) {
+            final String key = cacheKey(url);
+            if (key != null && !mapped.containsKey(key)) open(url, key);
+        }
+        forgetDeleted();
+    }
+
+    private void open(String url, String key) {
+        final File file = fileFor(key);
+        if (!file.isFile()) return;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            // The mapping stays valid after the file is closed, and even if it is later deleted
+            final SoundBank image = SoundBank.parse(raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0L, raf.length()));
+            final SoundBank.Entry entry = image.size() == 1 ? image.entryAt(0) : null;
+            if (entry != null && key.equals(entry.assetPath)) mapped.put(key, entry);
+        } catch (IOException | IllegalArgumentException e) {
+            Log.w(TAG, "Dropping unusable cache file for " + url, e);
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    // Layers already playing a deleted file keep their mapping; new plays stop finding it
+    private void forgetDeleted() {
+        synchronized (mapped) {
+            final Iterator<String> keys = mapped.keySet().iterator();
+            while (keys.hasNext()) {
+                if (!fileFor(keys.next()).isFile()) keys.remove();
+            }
+        }
+    }
+
+    /**
+     * Deletes cached sounds, least played first, until at most {@code bytes} remain. Mappings
+     * of a deleted file stay valid, so a layer playing it is not disturbed.
+     */
+    void evictTo(long bytes) {
+        final List<String> keep = new ArrayList<>();
+        for (String url : mostPlayed()) {
+            // Counts recorded before a sound joined the bank no longer have a cache file
+            final String key = cacheKey(url);
+            if (key != null) keep.add(fileFor(key).getName());
+        }
+        final File[] files = dir.listFiles();
+        if (files == null) return;
+
+        final List<File> byValue = new ArrayList<>();
+        for (File file : files) byValue.add(file);
+        // Unknown files (stale keys, unfinished writes) go first, then the least played
+        Collections.sort(byValue, (a, b) -> Integer.compare(rank(keep, b), rank(keep, a)));
+        long total = sizeBytes();
+        for (File file : byValue) {
+            if (total <= bytes) break;
+            final long length = file.length();
+            if (file.delete()) total -= length;
+        }
+        forgetDeleted();
+    }
+
+    private static int rank(List<String> keep, File file) {
+        final int index = keep.indexOf(file.getName());
+        return index < 0 ? Integer.MAX_VALUE : index;
+    }
+
+    /**
+     * Brings the cache in line with the current favourites: plans the most played sounds that
+     * fit the budget, deletes everything else and decodes what is missing.
+     * Blocking; run it from a worker.
+     *
+     * @return true when every planned sound is cached, false if {@code stop} interrupted it
+     */
+    boolean warmUp(StopSignal stop) {
+        final Map<String, File> files = new LinkedHashMap<>();
+        for (String url : plan(mostPlayed(), this::estimateBytes, getBudgetBytes(), MAX_SOUNDS)) {
+            files.put(url, fileFor(cacheKey(url)));
+        }
+        final boolean complete = fill(dir, files, this::writeDecoded, stop);
+        mapAll();
+        return complete;
+    }
+
+    /**
+     * The sounds to cache: by play count, up to {@code maxSounds}, skipping any that would
+     * overrun the budget in favour of smaller ones further down.
+     */
+    static List<String> plan(List<String> mostPlayed, SizeEstimate sizes, long budgetBytes, int maxSounds) {
+        final List<String> planned = new ArrayList<>();
+        long total = 0L;
+        for (String url : mostPlayed) {
+            if (planned.size() >= maxSounds) break;
+            final long size = sizes.bytesFor(url);
+            if (size <= 0L || total + size > budgetBytes) continue;
+            planned.add(url);
+            total += size;
+        }
+        return planned;
+    }
+
+    /**
+     * Makes {@code dir} hold exactly the planned files: deletes the rest, including unfinished
+     * writes, and writes what is missing in plan order. Finished files are kept across runs,
+     * so a stopped run resumes with the first missing one.
+     *
+     * @param planned URL to cache file, in the order to write them
+     * @return true when every planned file exists, false if {@code stop} interrupted it
+     */
+    static boolean fill(File dir, Map<String, File> planned, Writer writer, StopSignal stop) {
+        final Set<String> plannedNames = new HashSet<>();
+        for (File file : planned.values()) plannedNames.add(file.getName());
+        final File[] existing = dir.listFiles();
+        if (existing != null) {
+            for (File file : existing) {
+                //noinspection ResultOfMethodCallIgnored
+                if (!plannedNames.contains(file.getName())) file.delete();
+            }
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            Log.w(TAG, "Could not create " + dir);
+            return true;
+        }
+
+        for (Map.Entry<String, File> entry : planned.entrySet()) {
+            if (stop.isStopped()) return false;
+            final String url = entry.getKey();
+            final File file = entry.getValue();
+            if (file.isFile()) continue;
+            final File temp = new File(dir, file.getName() + TEMP_SUFFIX);
+            try {
+                if (!writer.write(url, temp, stop)) {
+                    //noinspection ResultOfMethodCallIgnored
+                    temp.delete();
+                    return false;
+                }
+                if (!temp.renameTo(file)) throw new IOException("Could not rename " + temp);
+            } catch (Exception e) {
+                // One broken sound must not keep the others from being cached
+                Log.w(TAG, "Could not cache " + url, e);
+                //noinspection ResultOfMethodCallIgnored
+                temp.delete();
+            }
+        }
+        return true;
+    }
+
+    private long estimateBytes(String url) {
+        if (cacheKey(url) == null) return 0L;
+        final SoundManifest.Entry info = SoundManifest.get(context).find(url);
+        // Without build-time facts the size is unknown; such sounds stay on the decoder path
+        if (info == null || !info.hasLoop()) return 0L;
+        long frames = info.loopEnd - info.loopStart;
+        if (info.sampleRate > 0) frames = frames * RenderOutput.nativeSampleRate() / info.sampleRate;
+        return frames * (info.channels == 1 ? 2L : 4L);
+    }
+
+    /**
+     * Cache identity of a URL: the asset path for bundled sounds not already in the bank, null
+     * for anything else.
+     */
+    private String cacheKey(String url) {
+        if (url.startsWith("synthetic://")) return null;
+        if (url.startsWith(GranularSource.SCHEME) || url.startsWith(EventLayerPlayer.SCHEME)) return null;
+        final String assetPath = FilePlayer.assetPathFor(url);
+        if (assetPath == null || SoundBank.get(context).find(url) != null) return null;
+        return assetPath;
+    }
+
+    // Named for the output rate too, so copies made for another rate are stale files to the next warm-up
+    private File fileFor(String key) {
+        final String identity = key + "@" + RenderOutput.nativeSampleRate();
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-1").digest(identity.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder name = new StringBuilder(digest.length * 2 + SUFFIX.length());
+            for (byte b : digest) name.append(String.format("%02x", b));
+            return new File(dir, name.append(SUFFIX).toString());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Decodes the manifest's loop region of a bundled sound, converted to the output's rate
+    private boolean writeDecoded(String url, File out, StopSignal stop) throws IOException {
+        final SoundManifest.Entry info = SoundManifest.get(context).find(url);
+        if (info == null || !info.hasLoop()) throw new IOException("No loop points for " + url);
+        final int channels = info.channels == 1 ? 1 : 2;
+        final String key = cacheKey(url);
+        final int rate = RenderOutput.nativeSampleRate();
+
+        try (PcmDecoder decoder = PcmDecoder.open(context, url);
+             RandomAccessFile raf = new RandomAccessFile(out, "rw")) {
+            final FileChannel channel = raf.getChannel();
+            raf.setLength(0L);
+            final ByteBuffer placeholder = SoundBank.singleEntryHeader(key, channels, rate, 0, info.loopStart);
+            final int dataOffset = placeholder.capacity();
+            channel.write(placeholder, 0L);
+
+            final Resampler.LoopStream stream = decoder.sampleRate() == rate ? null
+                    : new Resampler.LoopStream(decoder.sampleRate(), rate, Resampler.Quality.BALANCED);
+            final short[] block = new short[CHUNK_FRAMES * 2];
+            final short[] converted = stream != null ? new short[stream.maxOutput(CHUNK_FRAMES) * 2] : null;
+            final ByteBuffer bytes = ByteBuffer.allocate(
+                    (stream != null ? stream.maxOutput(CHUNK_FRAMES) : CHUNK_FRAMES) * channels * 2);
+            long position = 0L;
+            int decoded = 0;
+            int written = 0;
+            final int wanted = info.loopEnd - info.loopStart;
+            while (decoded < wanted) {
+                if (stop.isStopped()) return false;
+                final int n = decoder.read(block, CHUNK_FRAMES);
+                if (n < 0) break;
+                // Frames before the loop start are skipped, frames past its end never read
+                final int skip = (int) Math.max(0L, Math.min(n, info.loopStart - position));
+                final int take = Math.min(n - skip, wanted - decoded);
+                position += n;
+                if (take <= 0) continue;
+                decoded += take;
+                if (stream == null) {
+                    written += writeFrames(channel, bytes, block, skip, take, channels, dataOffset, written);
+                } else {
+                    final int m = stream.feed(block, skip, take, converted, 0);
+                    written += writeFrames(channel, bytes, converted, 0, m, channels, dataOffset, written);
+                }
+            }
+            if (decoded == 0) throw new IOException("Decoded no audio from " + url);
+            if (stream != null) {
+                final int m = stream.finish(converted, 0);
+                written += writeFrames(channel, bytes, converted, 0, m, channels, dataOffset, written);
+            }
+            channel.write(SoundBank.singleEntryHeader(key, channels, rate, written, info.loopStart), 0L);
+            channel.force(false);
+            return true;
+        }
+    }
+
+    private static int writeFrames(FileChannel channel, ByteBuffer bytes, short[] frames, int from, int count,
+                                   int channels, int dataOffset, int at) throws IOException {
+        bytes.clear();
+        for (int f = from; f < from + count; f++) {
+            bytes.putShort(frames[f * 2]);
+            if (channels == 2) bytes.putShort(frames[f * 2 + 1]);
+        }
+        bytes.flip();
+        channel.write(bytes, dataOffset + (long) at * channels * 2);
+        return count;
+    }
+}
@@ -0,0 +1,240 @@
+package com.starnoct.sleepsounds;
+
+import android.os.Debug;
+import android.os.SystemClock;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Process-wide, always-on engine instrumentation.
+ *
+ * Render players register a {@link RenderStats} while they run. AudioService calls
+ * {@link #sample(int)} at a low fixed rate, which records layer count and heap/allocation
+ * counters into fixed-size ring buffers and, when enabled, appends a line to a rolling
+ * JSONL dump in the app's files dir for bug reports. Pipelines the {@link RenderWatchdog}
+ * had to rebuild are kept as incidents.
+ */
+final class EngineMetrics {
+
+    static final long SAMPLE_INTERVAL_MS = 5000L;
+
+    private static final int SAMPLE_CAPACITY = 120; // 10 minutes at the default interval
+    private static final int RECENT_PLAYERS = 8;
+    private static final int INCIDENT_CAPACITY = 16;
+    private static final String DUMP_FILE = "engine-metrics.jsonl";
+    private static final long DUMP_MAX_BYTES = 256 * 1024;
+
+    private static final EngineMetrics INSTANCE = new EngineMetrics();
+
+    static EngineMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    private final long createdAtMs = SystemClock.elapsedRealtime();
+    private final List<RenderStats> activePlayers = new CopyOnWriteArrayList<>();
+    private final Deque<RenderStats> recentPlayers = new ArrayDeque<>();
+
+    // Sample ring, guarded by "this"
+    private final long[] sampleTimeMs = new long[SAMPLE_CAPACITY];
+    private final int[] sampleLayers = new int[SAMPLE_CAPACITY];
+    private final long[] sampleHeapUsed = new long[SAMPLE_CAPACITY];
+    private final long[] sampleNativeHeap = new long[SAMPLE_CAPACITY];
+    private final long[] sampleBytesAllocated = new long[SAMPLE_CAPACITY];
+    private final long[] sampleGcCount = new long[SAMPLE_CAPACITY];
+    private final double[] sampleWakeupsPerSec = new double[SAMPLE_CAPACITY];
+    private int sampleHead = 0;
+    private int sampleCount = 0;
+
+    // Latest watchdog incidents, newest first, guarded by itself
+    private final Deque<JSONObject> incidents = new ArrayDeque<>();
+    private int incidentTotal = 0;
+
+    private volatile File dumpDir = null;
+    private ExecutorService dumpExecutor;
+
+    private EngineMetrics() {
+    }
+
+    void register(RenderStats stats) {
+        activePlayers.add(stats);
+    }
+
+    void unregister(RenderStats stats) {
+        if (!activePlayers.remove(stats)) return;
+        synchronized (recentPlayers) {
+            recentPlayers.addFirst(stats);
+            while (recentPlayers.size() > RECENT_PLAYERS) recentPlayers.removeLast();
+        }
+    }
+
+    /**
+     * Records a pipeline the watchdog found dead or stalled and what it did about it.
+     *
+     * @param action "rebuilt", "rebuild-failed" or "gave-up"
+     */
+    void recordIncident(String id, String kind, String cause, String action) {
+        final JSONObject incident = new JSONObject();
+        try {
+            incident.put("t", System.currentTimeMillis());
+            incident.put("id", id);
+            incident.put("kind", kind);
+            incident.put("cause", cause);
+            incident.put("action", action);
+        } catch (JSONException ignored) {
+            // Intentionally ignored: only non-finite numbers are rejected
+        }
+        synchronized (incidents) {
+            incidents.addFirst(incident);
+            while (incidents.size() > INCIDENT_CAPACITY) incidents.removeLast();
+            incidentTotal++;
+        }
+    }
+
+    /**
+     * Records one periodic sample. Cheap enough for the main thread; file output,
+     * when enabled, happens on a background executor.
+     */
+    void sample(int activeLayers) {
+        final Runtime rt = Runtime.getRuntime();
+        long wakeups = 0L;
+        for (RenderStats stats : activePlayers) wakeups += stats.wakeupsSinceSample();
+        synchronized (this) {
+            int i = sampleHead;
+            final long now = System.currentTimeMillis();
+            final long previous = sampleCount > 0
+                    ? sampleTimeMs[(i - 1 + SAMPLE_CAPACITY) % SAMPLE_CAPACITY] : 0L;
+            // Render-thread wakeups across all players: what the screen-off profile brings down
+            sampleWakeupsPerSec[i] = previous > 0L && now > previous ? wakeups * 1000.0 / (now - previous) : 0.0;
+            sampleTimeMs[i] = now;
+            sampleLayers[i] = activeLayers;
+            sampleHeapUsed[i] = rt.totalMemory() - rt.freeMemory();
+            sampleNativeHeap[i] = Debug.getNativeHeapAllocatedSize();
+            sampleBytesAllocated[i] = runtimeStat("art.gc.bytes-allocated");
+            sampleGcCount[i] = runtimeStat("art.gc.gc-count");
+            sampleHead = (i + 1) % SAMPLE_CAPACITY;
+            if (sampleCount < SAMPLE_CAPACITY) sampleCount++;
+        }
+
+        if (dumpDir != null) {
+            appendDumpLine();
+        }
+    }
+
+    private static long runtimeStat(String name) {
+        try {
+            String value = Debug.getRuntimeStat(name);
+            return value == null ? -1L : Long.parseLong(value);
+        } catch (Exception e) {
+            return -1L;
+        }
+    }
+
+    /**
+     * Enables or disables the rolling JSONL dump. Passing null disables it.
+     */
+    synchronized void setDumpDirectory(File dir) {
+        dumpDir = dir;
+        if (dir != null && dumpExecutor == null) {
+            dumpExecutor = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "EngineMetrics-dump");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    private synchronized void appendDumpLine() {
+        final File dir = dumpDir;
+        if (dir == null || dumpExecutor == null) return;
+
+        final String line;
+        try {
+            line = snapshot(false).toString();
+        } catch (JSONException e) {
+            return;
+        }
+
+        dumpExecutor.execute(() -> {
+            File file = new File(dir, DUMP_FILE);
+            try {
+                if (file.length() > DUMP_MAX_BYTES) {
+                    File rotated = new File(dir, DUMP_FILE + ".1");
+                    //noinspection ResultOfMethodCallIgnored
+                    rotated.delete();
+                    //noinspection ResultOfMethodCallIgnored
+                    file.renameTo(rotated);
+                }
+                try (FileWriter writer = new FileWriter(file, true)) {
+                    writer.write(line);
+                    writer.write('\n');
+                }
+            } catch (IOException ignored) {
+                // Intentionally ignored: the dump is a best-effort diagnostic aid
+            }
+        });
+    }
+
+    /**
+     * Builds a snapshot of all counters.
+     *
+     * @param includeSamples whether to include the full sample ring (the dump only needs the latest)
+     */
+    JSONObject snapshot(boolean includeSamples) throws JSONException {
+        JSONObject ret = new JSONObject();
+        ret.put("timestamp", System.currentTimeMillis());
+        ret.put("uptimeMs", SystemClock.elapsedRealtime() - createdAtMs);
+        ret.put("renderPlayers", activePlayers.size());
+
+        JSONArray players = new JSONArray();
+        for (RenderStats stats : activePlayers) {
+            players.put(stats.toJson());
+        }
+        List<RenderStats> recent;
+        synchronized (recentPlayers) {
+            recent = new ArrayList<>(recentPlayers);
+        }
+        for (RenderStats stats : recent) {
+            players.put(stats.toJson());
+        }
+        ret.put("players", players);
+
+        JSONArray recentIncidents = new JSONArray();
+        synchronized (incidents) {
+            for (JSONObject incident : incidents) recentIncidents.put(incident);
+            ret.put("incidentTotal", incidentTotal);
+        }
+        ret.put("incidents", recentIncidents);
+
+        JSONArray samples = new JSONArray();
+        synchronized (this) {
+            int count = includeSamples ? sampleCount : Math.min(1, sampleCount);
+            for (int n = count; n > 0; n--) {
+                int i = (sampleHead - n + SAMPLE_CAPACITY) % SAMPLE_CAPACITY;
+                JSONObject s = new JSONObject();
+                s.put("t", sampleTimeMs[i]);
+                s.put("layers", sampleLayers[i]);
+                s.put("heapUsed", sampleHeapUsed[i]);
+                s.put("nativeHeap", sampleNativeHeap[i]);
+                s.put("bytesAllocated", sampleBytesAllocated[i]);
+                s.put("gcCount", sampleGcCount[i]);
+                s.put("wakeupsPerSec", sampleWakeupsPerSec[i]);
+                samples.put(s);
+            }
+        }
+        ret.put("samples", samples);
+        return ret;
+    }
+}
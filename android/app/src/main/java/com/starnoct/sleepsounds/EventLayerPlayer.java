@@ -0,0 +1,381 @@
+package com.starnoct.sleepsounds;
+
+import android.content.Context;
+import android.media.AudioTrack;
+import android.os.PowerManager;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Sparse layer (owl, thunder, seagulls) played as one-shot events instead of a full loop.
+ *
+ * On start the asset is decoded once and its few non-silent stretches are kept as short
+ * clips. The {@link TimingWheel} fires an event at a random interval; the event binds a
+ * pooled {@link RenderOutput} just long enough to play one clip, then hands it back.
+ * Between events the layer holds no track, no thread and no wake lock: the wheel's alarm
+ * wakes the device for the next event, and each event keeps the CPU awake only until its
+ * clip has played out of the track.
+ */
+public class EventLayerPlayer implements AudioService.AudioPlayer {
+    private static final String TAG = "EventLayerPlayer";
+
+    static final String SCHEME = "events://";
+
+    // Decoded once on start; only the sliced clips are kept
+    private static final int SCAN_FRAMES = 45 * 44100;
+    private static final int MAX_CLIPS = 4;
+    private static final int MAX_CLIP_MS = 8000;
+    private static final int MIN_CLIP_MS = 200;
+    private static final int WINDOW_MS = 10;
+    private static final int MERGE_GAP_MS = 300;
+    private static final int PRE_ROLL_MS = 50;
+    private static final int TAIL_MS = 250;
+    private static final int EDGE_FADE_MS = 10;
+    // A window counts as sound when within 20 dB of the loudest window
+    private static final float SILENCE_RATIO = 0.1f;
+
+    private static final long FIRST_EVENT_MIN_MS = 500L;
+    private static final long FIRST_EVENT_MAX_MS = 3000L;
+    private static final long MIN_GAP_MS = 6000L;
+    private static final long MAX_GAP_MS = 30000L;
+
+    private static final int BLOCK_FRAMES = 1024;
+    private static final long STOP_TIMEOUT_MS = 200L;
+
+    private static final ExecutorService LOADER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "EventLayer-loader");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Context context;
+    private final String url;
+    private final PowerManager.WakeLock wakeLock;
+    private final LevelMeter meter = new LevelMeter();
+    private final float[] block = new float[BLOCK_FRAMES * 2];
+
+    private final Object lock = new Object();
+    private volatile boolean running = false;
+    private volatile float volume;
+    private volatile float layerGain = 1f;
+    private volatile List<PcmClip> clips;
+    // Guarded by lock
+    private int generation = 0;
+    private RenderOutput output;
+    private TimingWheel.Timeout pendingTimeout;
+    private final Mulberry32 rnd = new Mulberry32(Mulberry32.freshSeed());
+    private int lastClip = -1;
+
+    EventLayerPlayer(Context context, String url, float initialVol) {
+        this.context = context;
+        this.url = url;
+        this.volume = initialVol;
+        final PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        wakeLock = powerManager != null
+                ? powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "SleepSounds:EventLayer") : null;
+        if (wakeLock != null) wakeLock.setReferenceCounted(false);
+    }
+
+    @Override
+    public void start() {
+        final int gen;
+        synchronized (lock) {
+            running = true;
+            gen = ++generation;
+        }
+        LOADER.execute(() -> {
+            if (clips == null) {
+                try {
+                    // Convert once here, so events play at the output's native rate untouched
+                    final int rate = RenderOutput.nativeSampleRate();
+                    final List<PcmClip> loaded = new ArrayList<>();
+                    for (PcmClip clip : sliceEvents(PcmDecoder.decode(context, url, 0L, SCAN_FRAMES))) {
+                        loaded.add(Resampler.resample(clip, rate, Resampler.Quality.BALANCED));
+                    }
+                    clips = loaded;
+                } catch (Exception e) {
+                    Log.w(TAG, "Could not load events from " + url, e);
+                    return;
+                }
+            }
+            scheduleNext(gen, FIRST_EVENT_MIN_MS, FIRST_EVENT_MAX_MS);
+        });
+    }
+
+    @Override
+    public void stop() {
+        final RenderOutput out;
+        synchronized (lock) {
+            running = false;
+            generation++;
+            TimingWheel.getInstance().cancel(pendingTimeout);
+            pendingTimeout = null;
+            out = output;
+            output = null;
+        }
+        OutputPool.getInstance().recycle(out);
+        meter.reset();
+        releaseWakeLock();
+    }
+
+    private void releaseWakeLock() {
+        if (wakeLock != null && wakeLock.isHeld()) wakeLock.release();
+    }
+
+    /**
+     * How long an event keeps the CPU awake: its clip, then the track's queue draining, then
+     * the wheel ticks until the output is handed back.
+     */
+    static long eventWakeMs(int clipFrames, int queueFrames, int sampleRate) {
+        return (clipFrames + (long) queueFrames) * 1000L / sampleRate + 2 * TimingWheel.TICK_MS;
+    }
+
+    @Override
+    public void setVolume(float v) {
+        volume = v;
+        meter.setGain(v);
+        applyVolume();
+    }
+
+    @Override
+    public float getVolume() {
+        return volume;
+    }
+
+    @Override
+    public void setLayerGain(float gain) {
+        layerGain = gain;
+        applyVolume();
+    }
+
+    private void applyVolume() {
+        synchronized (lock) {
+            if (output != null) output.setVolume(volume * layerGain);
+        }
+    }
+
+    @Override
+    public boolean isPlaying() {
+        // The layer is live between events too; silence is part of the sound
+        return running;
+    }
+
+    @Override
+    public LevelMeter getLevelMeter() {
+        return meter;
+    }
+
+    private void scheduleNext(int gen, long minMs, long maxMs) {
+        synchronized (lock) {
+            if (!running || gen != generation) return;
+            final long delay = minMs + (long) ((maxMs - minMs) * rnd.nextFloat());
+            pendingTimeout = TimingWheel.getInstance().schedule(() -> fire(gen), delay);
+        }
+    }
+
+    // Wheel thread
+    private void fire(int gen) {
+        final List<PcmClip> loaded = clips;
+        if (loaded == null || loaded.isEmpty()) return;
+
+        final RenderOutput out;
+        try {
+            // May create a track when the pool is empty; fine on the wheel thread, never on main
+            out = OutputPool.getInstance().acquire();
+        } catch (Exception e) {
+            scheduleNext(gen, MIN_GAP_MS, MAX_GAP_MS);
+            return;
+        }
+        synchronized (lock) {
+            if (!running || gen != generation || output != null) {
+                OutputPool.getInstance().recycle(out);
+                return;
+            }
+            // Avoid playing the same clip twice in a row when there is a choice
+            int index = (int) (rnd.nextFloat() * loaded.size());
+            if (index == lastClip && loaded.size() > 1) index = (index + 1) % loaded.size();
+            lastClip = index;
+            final PcmClip clip = loaded.get(index);
+            // Events come from slightly different distances
+            final float gain = 0.6f + 0.4f * rnd.nextFloat();
+
+            pendingTimeout = null;
+            output = out;
+            if (wakeLock != null) {
+                // The alarm only woke the device briefly; times out even if the event never finishes
+                wakeLock.acquire(eventWakeMs(clip.frames, out.getCapacityFrames(), clip.sampleRate));
+            }
+            out.setVolume(volume * layerGain);
+            out.start(new EventLoop(gen, clip, gain));
+        }
+    }
+
+    // Wheel thread, once the event's audio has left the track
+    private void finishEvent(int gen, RenderOutput out, String failure) {
+        synchronized (lock) {
+            if (output != out || gen != generation) return; // stop() already took it back
+            output = null;
+        }
+        if (failure != null) {
+            // A dead track must not go back to the pool, nor idle ones on the same route;
+            // the next event opens a fresh output
+            out.release();
+            OutputPool.getInstance().drain();
+            EngineMetrics.getInstance().recordIncident(url, "events", failure, "rebuilt");
+        } else {
+            OutputPool.getInstance().recycle(out);
+        }
+        meter.reset();
+        // Schedules the wheel's alarm for the next event before letting the CPU sleep
+        scheduleNext(gen, MIN_GAP_MS, MAX_GAP_MS);
+        releaseWakeLock();
+    }
+
+    private final class EventLoop implements RenderOutput.RenderLoop {
+        private final int gen;
+        private final PcmClip clip;
+        private final float gain;
+
+        EventLoop(int gen, PcmClip clip, float gain) {
+            this.gen = gen;
+            this.clip = clip;
+            this.gain = gain;
+        }
+
+        @Override
+        public void run(RenderOutput out) {
+            final AudioTrack track = out.getTrack();
+            if (clip.sampleRate != out.getSampleRate()) {
+                try {
+                    // Clip loaded for another rate; the pool resets the track when it comes back
+                    track.setPlaybackRate(clip.sampleRate);
+                } catch (Exception ignored) {
+                    // Intentionally ignored: the clip then plays slightly off pitch
+                }
+            }
+
+            final short[] samples = clip.samples;
+            String failure = null;
+            int pos = 0;
+            while (pos < clip.frames && out.isBound(this)) {
+                final int n = Math.min(BLOCK_FRAMES, clip.frames - pos);
+                final int base = pos * 2;
+                final float scale = gain / 32768f;
+                for (int i = 0; i < n * 2; i++) {
+                    block[i] = samples[base + i] * scale;
+                }
+                meter.process(block, n * 2, 2, clip.sampleRate);
+                try {
+                    final int wrote = out.write(block, n);
+                    if (wrote <= 0) {
+                        failure = "write returned " + wrote;
+                        break;
+                    }
+                } catch (Exception e) {
+                    failure = "write threw " + e;
+                    break;
+                }
+                pos += n;
+            }
+
+            if (out.isBound(this)) {
+                // Writes return once queued; hand the output back after the queue has played out.
+                // A render player's profile may have trimmed the queue below the track's capacity.
+                int queuedFrames = out.getCapacityFrames();
+                try {
+                    final int size = track.getBufferSizeInFrames();
+                    if (size > 0) queuedFrames = size;
+                } catch (Exception ignored) {
+                    // Intentionally ignored: the capacity is an upper bound
+                }
+                final long drainMs = queuedFrames * 1000L / clip.sampleRate + TimingWheel.TICK_MS;
+                final String cause = failure;
+                TimingWheel.getInstance().schedule(() -> finishEvent(gen, out, cause), drainMs);
+            }
+        }
+    }
+
+    /**
+     * Cuts the non-silent stretches out of a decoded asset: windows within 20 dB of the
+     * loudest one, with short gaps merged, a little pre-roll and tail, and faded edges.
+     * Keeps the loudest {@link #MAX_CLIPS}. A recording without clear gaps becomes one clip.
+     */
+    static List<PcmClip> sliceEvents(PcmClip source) {
+        final int rate = source.sampleRate;
+        final int window = Math.max(1, rate * WINDOW_MS / 1000);
+        final int windows = source.frames / window;
+
+        final float[] energy = new float[windows];
+        float loudest = 0f;
+        for (int w = 0; w < windows; w++) {
+            double sum = 0.0;
+            for (int i = w * window * 2, end = (w + 1) * window * 2; i < end; i++) {
+                final float s = source.samples[i];
+                sum += s * s;
+            }
+            energy[w] = (float) (sum / (window * 2));
+            loudest = Math.max(loudest, energy[w]);
+        }
+        final float threshold = loudest * SILENCE_RATIO * SILENCE_RATIO;
+
+        final List<int[]> regions = new ArrayList<>();
+        final int mergeWindows = MERGE_GAP_MS / WINDOW_MS;
+        int start = -1;
+        int lastLoud = -1;
+        for (int w = 0; w <= windows; w++) {
+            final boolean loud = w < windows && energy[w] > threshold;
+            if (loud) {
+                if (start < 0) start = w;
+                lastLoud = w;
+            } else if (start >= 0 && (w == windows || w - lastLoud > mergeWindows)) {
+                regions.add(new int[]{start, lastLoud});
+                start = -1;
+            }
+        }
+
+        final List<float[]> ranked = new ArrayList<>();
+        for (int[] r : regions) {
+            final int from = Math.max(0, r[0] * window - rate * PRE_ROLL_MS / 1000);
+            final int to = Math.min(source.frames, (r[1] + 1) * window + rate * TAIL_MS / 1000);
+            if ((to - from) * 1000L / rate < MIN_CLIP_MS) continue;
+            float regionEnergy = 0f;
+            for (int w = r[0]; w <= r[1]; w++) regionEnergy = Math.max(regionEnergy, energy[w]);
+            ranked.add(new float[]{regionEnergy, from, to});
+        }
+        Collections.sort(ranked, (a, b) -> Float.compare(b[0], a[0]));
+
+        final List<PcmClip> result = new ArrayList<>();
+        if (ranked.isEmpty()) {
+            // No silence to cut around: keep the start of the recording as a single event
+            result.add(copyClip(source, 0, Math.min(source.frames, rate * MAX_CLIP_MS / 1000)));
+            return result;
+        }
+        for (int i = 0; i < ranked.size() && i < MAX_CLIPS; i++) {
+            final int from = (int) ranked.get(i)[1];
+            final int to = Math.min((int) ranked.get(i)[2], from + rate * MAX_CLIP_MS / 1000);
+            result.add(copyClip(source, from, to));
+        }
+        return result;
+    }
+
+    private static PcmClip copyClip(PcmClip source, int from, int to) {
+        final int frames = to - from;
+        final short[] samples = new short[frames * 2];
+        System.arraycopy(source.samples, from * 2, samples, 0, frames * 2);
+        final int fade = Math.min(frames / 2, source.sampleRate * EDGE_FADE_MS / 1000);
+        for (int i = 0; i < fade; i++) {
+            final float g = (float) i / fade;
+            samples[i * 2] = (short) (samples[i * 2] * g);
+            samples[i * 2 + 1] = (short) (samples[i * 2 + 1] * g);
+            final int j = frames - 1 - i;
+            samples[j * 2] = (short) (samples[j * 2] * g);
+            samples[j * 2 + 1] = (short) (samples[j * 2 + 1] * g);
+        }
+        return new PcmClip(samples, frames, source.sampleRate);
+    }
+}
@@ -7,18 +7,24 @@ import android.media.MediaPlayer;
 
 /**
  * Wrapper around MediaPlayer for playing local or asset-based audio files.
+ * Bundled sounds are levelled with the gain from the build-time {@link SoundManifest}.
  */
 public class FilePlayer implements AudioService.AudioPlayer {
     private final Context context;
     private final String url;
     private MediaPlayer mp;
     private float volume;
+    private float layerGain = 1f;
+    // Loudness match from the manifest; MediaPlayer cannot amplify, so quiet sounds stay as they are
+    private final float assetGain;
     private boolean isPrepared = false;
 
     FilePlayer(Context context, String url, float initialVol) {
         this.context = context;
         this.url = url;
         this.volume = initialVol;
+        final SoundManifest.Entry entry = SoundManifest.get(context).find(url);
+        this.assetGain = entry != null ? entry.gain() : 1f;
         try {
             mp = createMediaPlayer();
             if (mp != null) {
@@ -37,32 +43,44 @@ public class FilePlayer implements AudioService.AudioPlayer {
                 .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
                 .build());
         player.setLooping(true);
-        player.setVolume(volume, volume);
+        player.setVolume(volume * assetGain, volume * assetGain);
 
-        if (url.startsWith("http")) {
-            player.setDataSource(url);
-        } else if (url.startsWith("/")) {
-            // Absolute path or asset-like path
-            if (url.startsWith("/sounds/") || url.startsWith("/_next/") || url.startsWith("/public/")) {
-                // Treat as asset
-                String assetPath = "public" + url;
+        String assetPath = assetPathFor(url);
+        try {
+            if (assetPath != null) {
                 AssetFileDescriptor afd = context.getAssets().openFd(assetPath);
                 player.setDataSource(afd.getFileDescriptor(), afd.getStartOffset(), afd.getLength());
                 afd.close();
             } else {
-                // Filesystem path
+                // Remote URL or filesystem path
                 player.setDataSource(url);
             }
-        } else {
-            // Relative asset path
-            AssetFileDescriptor afd = context.getAssets().openFd("public/" + url);
-            player.setDataSource(afd.getFileDescriptor(), afd.getStartOffset(), afd.getLength());
-            afd.close();
+        } catch (Exception e) {
+            // Nobody else holds this player yet; without a release its native side leaks
+            player.release();
+            throw e;
         }
 
         return player;
     }
 
+    /**
+     * Maps a JS sound URL to its path inside the APK assets, or null for remote URLs and
+     * filesystem paths.
+     */
+    static String assetPathFor(String url) {
+        if (url.startsWith("http")) return null;
+        if (url.startsWith("/")) {
+            // Absolute path or asset-like path
+            if (url.startsWith("/sounds/") || url.startsWith("/_next/") || url.startsWith("/public/")) {
+                return "public" + url;
+            }
+            return null;
+        }
+        // Relative asset path
+        return "public/" + url;
+    }
+
     @Override
     public void start() {
         if (mp != null && isPrepared) {
@@ -86,11 +104,33 @@ public class FilePlayer implements AudioService.AudioPlayer {
     @Override
     public void setVolume(float volume) {
         this.volume = volume;
+        applyVolume();
+    }
+
+    @Override
+    public float getVolume() {
+        return volume;
+    }
+
+    @Override
+    public void setLayerGain(float gain) {
+        this.layerGain = gain;
+        applyVolume();
+    }
+
+    private void applyVolume() {
         if (mp != null) {
-            mp.setVolume(volume, volume);
+            float v = volume * layerGain * assetGain;
+            mp.setVolume(v, v);
         }
     }
 
+    @Override
+    public LevelMeter getLevelMeter() {
+        // MediaPlayer decodes and mixes out of process; metering it would need a Visualizer tap
+        return null;
+    }
+
     @Override
     public boolean isPlaying() {
         try {
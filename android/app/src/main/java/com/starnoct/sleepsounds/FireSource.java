@@ -0,0 +1,148 @@
+package com.starnoct.sleepsounds;
+
+/**
+ * Fire: crackle events over a low, flickering rumble.
+ *
+ * Crackles are short high-passed noise bursts with random loudness (mostly small, a few
+ * pops) and pan. They arrive as a Poisson process and sometimes spawn a quick cluster,
+ * the way burning wood snaps several times in a row. A faint hiss rides on the flicker.
+ */
+final class FireSource implements SynthSource {
+
+    private static final int MAX_CRACKLES = 12;
+    private static final float TRIM = 0.6f;
+    private static final float FLICKER_INTERVAL_S = 0.15f;
+
+    private final Mulberry32 rnd;
+    private final float cracklesPerSecond;
+    private final float rumbleLevel;
+
+    private int sampleRate;
+    private float rumbleAlpha;
+    private float hissHighAlpha;
+    private float hissLowAlpha;
+    private float flickerAlpha;
+
+    // Rumble: brown noise through a lowpass, per channel
+    private float brownL, brownR, rumbleL, rumbleR;
+    // Hiss band-pass, mono
+    private float hissHigh, hissLow;
+
+    // Flicker: slow random loudness of the whole fire
+    private float flicker = 0.8f;
+    private float flickerTarget = 0.8f;
+    private int untilFlicker;
+
+    // Crackle voices
+    private final float[] amp = new float[MAX_CRACKLES];
+    private final float[] decay = new float[MAX_CRACKLES];
+    private final float[] last = new float[MAX_CRACKLES];
+    private final float[] panL = new float[MAX_CRACKLES];
+    private final float[] panR = new float[MAX_CRACKLES];
+    private final int[] remaining = new int[MAX_CRACKLES];
+
+    private int untilNextCrackle;
+    private int clusterLeft;
+
+    FireSource(boolean small, int seed) {
+        this.rnd = new Mulberry32(seed);
+        this.cracklesPerSecond = small ? 4f : 8f;
+        this.rumbleLevel = small ? 0.6f : 1f;
+    }
+
+    @Override
+    public void prepare(int sampleRate) {
+        this.sampleRate = sampleRate;
+        rumbleAlpha = SynthSources.onePoleAlpha(180f, sampleRate);
+        hissHighAlpha = SynthSources.onePoleAlpha(8000f, sampleRate);
+        hissLowAlpha = SynthSources.onePoleAlpha(2000f, sampleRate);
+        flickerAlpha = SynthSources.onePoleAlpha(3f, sampleRate);
+        untilNextCrackle = nextCrackleInterval();
+        untilFlicker = (int) (FLICKER_INTERVAL_S * sampleRate);
+    }
+
+    @Override
+    public boolean supportsReducedRate() {
+        return false; // Crackles are broadband transients
+    }
+
+    @Override
+    public void render(float[] out, int frames) {
+        for (int i = 0; i < frames; i++) {
+            if (--untilFlicker <= 0) {
+                flickerTarget = 0.6f + 0.4f * rnd.nextFloat();
+                untilFlicker = (int) (FLICKER_INTERVAL_S * sampleRate);
+            }
+            flicker += flickerAlpha * (flickerTarget - flicker);
+
+            if (--untilNextCrackle <= 0) {
+                triggerCrackle();
+                untilNextCrackle = nextCrackleInterval();
+            }
+
+            final float wl = rnd.nextBipolar();
+            final float wr = rnd.nextBipolar();
+            brownL = (brownL + 0.02f * wl) / 1.02f;
+            brownR = (brownR + 0.02f * wr) / 1.02f;
+            rumbleL += rumbleAlpha * (brownL * 6f - rumbleL);
+            rumbleR += rumbleAlpha * (brownR * 6f - rumbleR);
+
+            hissHigh += hissHighAlpha * (wl - hissHigh);
+            hissLow += hissLowAlpha * (wl - hissLow);
+            final float hiss = (hissHigh - hissLow) * 0.06f * flicker;
+
+            final float body = rumbleLevel * flicker;
+            float l = rumbleL * body + hiss;
+            float r = rumbleR * body + hiss;
+
+            for (int v = 0; v < MAX_CRACKLES; v++) {
+                if (remaining[v] == 0) continue;
+                final float n = rnd.nextBipolar() * amp[v];
+                // First difference keeps only the snap, not the thud
+                final float y = n - last[v];
+                last[v] = n;
+                amp[v] *= decay[v];
+                l += y * panL[v];
+                r += y * panR[v];
+                remaining[v]--;
+            }
+
+            out[i * 2] = l * TRIM;
+            out[i * 2 + 1] = r * TRIM;
+        }
+    }
+
+    private void triggerCrackle() {
+        int voice = 0;
+        for (int v = 0; v < MAX_CRACKLES; v++) {
+            if (remaining[v] < remaining[voice]) voice = v;
+            if (remaining[v] == 0) break;
+        }
+
+        final float u = rnd.nextFloat();
+        amp[voice] = 0.05f + 0.6f * u * u * u * u;
+        final float decaySeconds = 0.0003f + 0.003f * rnd.nextFloat();
+        decay[voice] = (float) Math.exp(-1.0 / (decaySeconds * sampleRate));
+        remaining[voice] = Math.max(1, (int) (decaySeconds * sampleRate * 7f));
+        last[voice] = 0f;
+
+        final double pan = (0.2 + 0.6 * rnd.nextFloat()) * Math.PI / 2.0;
+        panL[voice] = (float) Math.cos(pan);
+        panR[voice] = (float) Math.sin(pan);
+
+        if (clusterLeft == 0 && rnd.nextFloat() < 0.15f) {
+            clusterLeft = 2 + (int) (rnd.nextFloat() * 5f);
+        }
+    }
+
+    private int nextCrackleInterval() {
+        if (clusterLeft > 0) {
+            clusterLeft--;
+            // Snaps within a cluster follow each other by 5-40 ms
+            return Math.max(1, (int) ((0.005f + 0.035f * rnd.nextFloat()) * sampleRate));
+        }
+        final float u = Math.max(1e-6f, rnd.nextFloat());
+        final double seconds = -Math.log(u) / cracklesPerSecond;
+        return Math.max(1, (int) (seconds * sampleRate));
+    }
+}
@@ -0,0 +1,149 @@
+package com.starnoct.sleepsounds;
+
+/**
+ * Endless texture resynthesized from a short {@link PcmClip} by overlapping windowed grains.
+ *
+ * Each grain reads a random stretch of the excerpt with a slight pitch jitter, through a
+ * Hann window looked up from a shared table, and is panned at random. About
+ * {@link #OVERLAP} grains sound at once, started at jittered intervals, so neither the
+ * order nor the spacing ever repeats. The grain pool is fixed: scheduling allocates nothing.
+ */
+final class GranularSource implements SynthSource {
+
+    static final String SCHEME = "granular://";
+    // Only a few seconds of the asset stay in memory instead of the whole loop
+    static final int EXCERPT_FRAMES = 8 * 44100;
+    // Skip the intro, where loops are often faded in
+    static final long EXCERPT_OFFSET_US = 5_000_000L;
+
+    private static final int MAX_GRAINS = 16;
+    private static final int OVERLAP = 4;
+    private static final float MIN_GRAIN_S = 0.08f;
+    private static final float MAX_GRAIN_S = 0.25f;
+    private static final float PITCH_JITTER = 0.02f;
+    // Uncorrelated grains add in power: OVERLAP Hann windows average 0.375 each in energy
+    private static final float NORMALIZE = (float) (1.0 / Math.sqrt(OVERLAP * 0.375));
+
+    private static final int WINDOW_SIZE = 1024;
+    private static final float[] WINDOW = new float[WINDOW_SIZE + 1];
+
+    static {
+        for (int i = 0; i <= WINDOW_SIZE; i++) {
+            WINDOW[i] = (float) (0.5 - 0.5 * Math.cos(2.0 * Math.PI * i / WINDOW_SIZE));
+        }
+    }
+
+    private final Mulberry32 rnd;
+    private final short[] clip;
+    private final int clipFrames;
+    private final int clipRate;
+    // The asset's manifest gain, so grains play as loud as the recording would
+    private final float level;
+
+    private int sampleRate;
+    private float baseStep;
+    private int untilNextGrain;
+
+    // Grain voices: read position in clip frames, window position in table entries
+    private final double[] readPos = new double[MAX_GRAINS];
+    private final float[] readStep = new float[MAX_GRAINS];
+    private final float[] windowPos = new float[MAX_GRAINS];
+    private final float[] windowStep = new float[MAX_GRAINS];
+    private final float[] gainL = new float[MAX_GRAINS];
+    private final float[] gainR = new float[MAX_GRAINS];
+    private final boolean[] active = new boolean[MAX_GRAINS];
+
+    GranularSource(PcmClip clip, float level, int seed) {
+        this.rnd = new Mulberry32(seed);
+        this.level = level;
+        this.clip = clip.samples;
+        this.clipFrames = clip.frames;
+        this.clipRate = clip.sampleRate;
+    }
+
+    @Override
+    public void prepare(int sampleRate) {
+        this.sampleRate = sampleRate;
+        // Reading at the clip's own rate keeps the pitch; grains in flight keep their step
+        baseStep = (float) clipRate / sampleRate;
+        untilNextGrain = 0;
+    }
+
+    @Override
+    public boolean supportsReducedRate() {
+        return false; // Recorded textures are broadband
+    }
+
+    @Override
+    public void render(float[] out, int frames) {
+        final float scale = NORMALIZE / 32768f;
+        for (int i = 0; i < frames; i++) {
+            if (--untilNextGrain <= 0) {
+                startGrain();
+            }
+
+            float l = 0f;
+            float r = 0f;
+            for (int g = 0; g < MAX_GRAINS; g++) {
+                if (!active[g]) continue;
+
+                final float wp = windowPos[g];
+                final int wi = (int) wp;
+                final float w = WINDOW[wi] + (WINDOW[wi + 1] - WINDOW[wi]) * (wp - wi);
+
+                final double pos = readPos[g];
+                final int p = (int) pos;
+                final float frac = (float) (pos - p);
+                final int a = p * 2;
+                final float sl = clip[a] + (clip[a + 2] - clip[a]) * frac;
+                final float sr = clip[a + 1] + (clip[a + 3] - clip[a + 1]) * frac;
+
+                l += sl * w * gainL[g];
+                r += sr * w * gainR[g];
+
+                readPos[g] = pos + readStep[g];
+                final float next = wp + windowStep[g];
+                if (next >= WINDOW_SIZE) {
+                    active[g] = false;
+                } else {
+                    windowPos[g] = next;
+                }
+            }
+
+            out[i * 2] = l * scale;
+            out[i * 2 + 1] = r * scale;
+        }
+    }
+
+    private void startGrain() {
+        final float seconds = MIN_GRAIN_S + (MAX_GRAIN_S - MIN_GRAIN_S) * rnd.nextFloat();
+        final int length = Math.max(2, (int) (seconds * sampleRate));
+        // Next grain start: on average OVERLAP grains in flight, jittered by +-50%
+        untilNextGrain = Math.max(1, (int) (length / (float) OVERLAP * (0.5f + rnd.nextFloat())));
+
+        int voice = -1;
+        for (int g = 0; g < MAX_GRAINS; g++) {
+            if (!active[g]) {
+                voice = g;
+                break;
+            }
+        }
+        if (voice < 0) return; // Pool full: skip this grain rather than cut one off
+
+        final float step = baseStep * (1f + PITCH_JITTER * (rnd.nextFloat() * 2f - 1f));
+        // The last frame read must leave room for the interpolation neighbour
+        final double span = (double) length * step + 2.0;
+        final double room = clipFrames - span;
+        if (room <= 0.0) return;
+
+        readPos[voice] = rnd.nextFloat() * room;
+        readStep[voice] = step;
+        windowPos[voice] = 0f;
+        windowStep[voice] = (float) WINDOW_SIZE / length;
+
+        final double pan = (0.25 + 0.5 * rnd.nextFloat()) * Math.PI / 2.0;
+        gainL[voice] = (float) (Math.cos(pan) * Math.sqrt(2.0)) * level;
+        gainR[voice] = (float) (Math.sin(pan) * Math.sqrt(2.0)) * level;
+        active[voice] = true;
+    }
+}
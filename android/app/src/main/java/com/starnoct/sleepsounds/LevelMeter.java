@@ -0,0 +1,87 @@
+package com.starnoct.sleepsounds;
+
+/**
+ * Lock-free RMS and peak meter fed by a single render thread.
+ *
+ * The render thread calls {@link #process} once per rendered block. The smoothed
+ * levels are packed into one volatile long, so any reader gets a consistent
+ * rms/peak pair without locking and without ever blocking the writer.
+ */
+final class LevelMeter {
+
+    // Meter ballistics: ~300ms RMS integration, peaks fall back at 20 dB per second
+    private static final float RMS_TIME_CONSTANT_SEC = 0.3f;
+    private static final float PEAK_DECAY_DB_PER_SEC = 20f;
+
+    // Writer-only state (render thread)
+    private float meanSquare = 0f;
+    private float peakHold = 0f;
+    private int coeffFrames = -1;
+    private int coeffRate = -1;
+    private float rmsAlpha;
+    private float peakDecay;
+
+    // Published state: rms bits in the high word, peak bits in the low word
+    private volatile long published = 0L;
+
+    // Post-fader gain, applied when reading so the meter reflects what is heard
+    private volatile float gain = 1f;
+
+    /**
+     * Measures one interleaved block of float samples (full scale 1.0) and publishes the
+     * result. Render thread only.
+     */
+    void process(float[] samples, int length, int channels, int sampleRate) {
+        if (length <= 0) return;
+
+        float sumSquares = 0f;
+        float blockPeak = 0f;
+        for (int i = 0; i < length; i++) {
+            final float s = samples[i];
+            sumSquares += s * s;
+            final float a = Math.abs(s);
+            if (a > blockPeak) blockPeak = a;
+        }
+
+        final int frames = length / Math.max(1, channels);
+        if (frames != coeffFrames || sampleRate != coeffRate) {
+            final float blockSec = (float) frames / sampleRate;
+            rmsAlpha = 1f - (float) Math.exp(-blockSec / RMS_TIME_CONSTANT_SEC);
+            peakDecay = (float) Math.pow(10.0, -PEAK_DECAY_DB_PER_SEC * blockSec / 20.0);
+            coeffFrames = frames;
+            coeffRate = sampleRate;
+        }
+
+        final float blockMeanSquare = sumSquares / length;
+        meanSquare += rmsAlpha * (blockMeanSquare - meanSquare);
+
+        peakHold = Math.max(blockPeak, peakHold * peakDecay);
+
+        published = ((long) Float.floatToRawIntBits((float) Math.sqrt(meanSquare)) << 32)
+                | (Float.floatToRawIntBits(peakHold) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Clears the meter, e.g. when the owning player stops. Render thread must not be running.
+     */
+    void reset() {
+        meanSquare = 0f;
+        peakHold = 0f;
+        published = 0L;
+    }
+
+    void setGain(float gain) {
+        this.gain = gain;
+    }
+
+    /**
+     * Reads the latest levels into {@code out[0]} (rms) and {@code out[1]} (peak),
+     * both linear 0..1 and scaled by the current post-fader gain. Safe from any thread.
+     */
+    void read(float[] out) {
+        final long bits = published;
+        final float g = gain;
+        out[0] = Float.intBitsToFloat((int) (bits >>> 32)) * g;
+        out[1] = Float.intBitsToFloat((int) bits) * g;
+    }
+}
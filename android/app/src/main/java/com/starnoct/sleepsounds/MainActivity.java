@@ -1,28 +1,130 @@
 package com.starnoct.sleepsounds;
 
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageInfo;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Trace;
+import android.util.Log;
 import android.webkit.WebSettings;
 
 import com.getcapacitor.BridgeActivity;
 
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
 public class MainActivity extends BridgeActivity {
+    private static final String TAG = "MainActivity";
+    private static final String WEB_ASSET_MANIFEST = "web-asset-manifest.json";
+    private static final String WEB_CACHE_PREFS = "WebCachePrefs";
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         // Register custom AudioControl plugin BEFORE super.onCreate()
         // This ensures the plugin is registered when the Capacitor bridge initializes
         registerPlugin(AudioControlPlugin.class);
-        
+
         super.onCreate(savedInstanceState);
-        
-        // Force WebView cache to be disabled
-        // This ensures fresh assets are always loaded, preventing stale cache issues
+
         if (bridge != null && bridge.getWebView() != null) {
             WebSettings settings = bridge.getWebView().getSettings();
-            // Disable all caching
-            settings.setCacheMode(WebSettings.LOAD_NO_CACHE);
-            
-            // Clear WebView cache on app start (nuclear option)
-            bridge.getWebView().clearCache(true);
+            settings.setCacheMode(WebSettings.LOAD_DEFAULT);
+            validateWebCache();
+        }
+
+        SoundCacheWorker.schedule(this);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        // Pooled outputs only pay off while the user can tap play; let them go once hidden
+        if (level >= TRIM_MEMORY_UI_HIDDEN && AudioService.getInstance() == null) {
+            OutputPool.getInstance().drain();
+        }
+    }
+
+    /**
+     * Keeps the WebView cache across launches and clears it only when the app version or the
+     * bundled web build's content hash changed, so stale assets are still never served.
+     * Hits and misses are logged, counted in WebCachePrefs and visible as a systrace section.
+     */
+    private void validateWebCache() {
+        Trace.beginSection("WebCache.validate");
+        try {
+            String cacheKey = currentWebCacheKey();
+            SharedPreferences prefs = getSharedPreferences(WEB_CACHE_PREFS, Context.MODE_PRIVATE);
+            String storedKey = prefs.getString("CACHE_KEY", null);
+
+            if (cacheKey.equals(storedKey)) {
+                int hits = prefs.getInt("CACHE_HITS", 0) + 1;
+                prefs.edit().putInt("CACHE_HITS", hits).apply();
+                Log.i(TAG, "WebView cache hit (" + cacheKey + "), hits=" + hits);
+                return;
+            }
+
+            Trace.beginSection("WebCache.clear");
+            try {
+                bridge.getWebView().clearCache(true);
+            } finally {
+                Trace.endSection();
+            }
+            int misses = prefs.getInt("CACHE_MISSES", 0) + 1;
+            prefs.edit()
+                    .putString("CACHE_KEY", cacheKey)
+                    .putInt("CACHE_MISSES", misses)
+                    .apply();
+            Log.i(TAG, "WebView cache miss (" + storedKey + " -> " + cacheKey + "), cleared, misses=" + misses);
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    // App version plus the build-time hash of the web assets (or the install time without one)
+    private String currentWebCacheKey() {
+        String version = "unknown";
+        long installedAt = 0L;
+        try {
+            PackageInfo info = getPackageManager().getPackageInfo(getPackageName(), 0);
+            long versionCode;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+                versionCode = info.getLongVersionCode();
+            } else {
+                //noinspection deprecation
+                versionCode = info.versionCode;
+            }
+            version = info.versionName + "-" + versionCode;
+            installedAt = info.lastUpdateTime;
+        } catch (Exception e) {
+            Log.w(TAG, "Could not read package info for the web cache key", e);
+        }
+
+        return webCacheKey(version, readWebAssetHash(), installedAt);
+    }
+
+    /**
+     * The key the WebView cache is valid for. Without a build-time hash every update of the
+     * package counts as a new web build.
+     */
+    static String webCacheKey(String version, String webHash, long installedAt) {
+        return version + ":" + (webHash != null ? webHash : "installed-" + installedAt);
+    }
+
+    private String readWebAssetHash() {
+        try (InputStream in = getAssets().open(WEB_ASSET_MANIFEST)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            String hash = new JSONObject(out.toString("UTF-8")).optString("hash", null);
+            return hash == null || hash.isEmpty() ? null : hash;
+        } catch (Exception e) {
+            return null;
         }
     }
 }
@@ -0,0 +1,42 @@
+package com.starnoct.sleepsounds;
+
+/**
+ * Deterministic 32-bit PRNG, a port of {@code src/core/math/Mulberry32.ts}.
+ *
+ * Used by the render thread instead of {@link java.util.Random}: no atomic update per
+ * draw, and a fixed seed reproduces a source's output exactly.
+ */
+final class Mulberry32 {
+
+    private int a;
+
+    Mulberry32(int seed) {
+        this.a = seed;
+    }
+
+    /**
+     * Seed that differs per call, for sources that should never repeat.
+     */
+    static int freshSeed() {
+        final long n = System.nanoTime();
+        return (int) (n ^ (n >>> 32)) ^ System.identityHashCode(new Object());
+    }
+
+    /**
+     * Next float in [0, 1).
+     */
+    float nextFloat() {
+        a += 0x6D2B79F5;
+        int t = (a ^ (a >>> 15)) * (1 | a);
+        t = t + (t ^ (t >>> 7)) * (61 | t);
+        // Top 24 bits are all a float mantissa can hold
+        return ((t ^ (t >>> 14)) >>> 8) * 0x1.0p-24f;
+    }
+
+    /**
+     * Next float in [-1, 1).
+     */
+    float nextBipolar() {
+        return nextFloat() * 2f - 1f;
+    }
+}
@@ -0,0 +1,173 @@
+package com.starnoct.sleepsounds;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Renders a mix faster than real time into a WAV file, through the same {@link SynthSource}s
+ * the live players use.
+ *
+ * The mix is rendered in fixed-size chunks: every layer renders its chunk in parallel on a
+ * fork-join pool, then the chunks are summed, quantized like {@link SynthPlayer} does and
+ * streamed to disk. Memory stays at a few chunk buffers per layer, however long the mix.
+ * Pure Java: with {@link WavReader} inputs it also runs on a desktop JVM.
+ */
+final class OfflineMixRenderer {
+
+    static final int CHUNK_FRAMES = 16384;
+
+    /**
+     * One layer of the mix: what renders it, its volume and its fades.
+     */
+    static final class Layer {
+        final String label;
+        final SynthSources.Factory factory;
+        final float volume;
+        final int fadeInMs;
+        final int fadeOutMs;
+
+        Layer(String label, SynthSources.Factory factory, float volume, int fadeInMs, int fadeOutMs) {
+            this.label = label;
+            this.factory = factory;
+            this.volume = volume;
+            this.fadeInMs = Math.max(0, fadeInMs);
+            this.fadeOutMs = Math.max(0, fadeOutMs);
+        }
+    }
+
+    static final class Result {
+        final long frames;
+        final int sampleRate;
+        final long renderNanos;
+
+        Result(long frames, int sampleRate, long renderNanos) {
+            this.frames = frames;
+            this.sampleRate = sampleRate;
+            this.renderNanos = renderNanos;
+        }
+
+        double realtimeFactor() {
+            return renderNanos <= 0L ? 0.0 : (frames * 1e9 / sampleRate) / renderNanos;
+        }
+    }
+
+    private OfflineMixRenderer() {
+    }
+
+    /**
+     * Renders {@code durationMs} of the mix to {@code file}. Blocking.
+     * Synth layers are seeded from {@code seed}, so the same mix renders bit-identically.
+     */
+    static Result render(List<Layer> layers, long durationMs, int sampleRate, int seed, File file)
+            throws IOException, InterruptedException {
+        final long totalFrames = durationMs * sampleRate / 1000L;
+        final long started = System.nanoTime();
+        final List<LayerTask> tasks = new ArrayList<>(layers.size());
+        final ForkJoinPool pool = new ForkJoinPool(
+                Math.max(1, Math.min(layers.size(), Runtime.getRuntime().availableProcessors())));
+
+        try {
+            for (int i = 0; i < layers.size(); i++) {
+                final Layer layer = layers.get(i);
+                final SynthSource source;
+                try {
+                    source = layer.factory.create(seed + i);
+                } catch (Exception e) {
+                    throw new IOException("Could not create layer " + layer.label, e);
+                }
+                source.prepare(sampleRate);
+                tasks.add(new LayerTask(layer, source, sampleRate, totalFrames));
+            }
+
+            final float[] mix = new float[CHUNK_FRAMES * 2];
+            final short[] pcm = new short[CHUNK_FRAMES * 2];
+            // Layers are summed in float; this is the only conversion, seeded like the layers
+            final OutputStage stage = new OutputStage(seed);
+            try (WavWriter wav = new WavWriter(file, sampleRate)) {
+                for (long pos = 0L; pos < totalFrames; pos += CHUNK_FRAMES) {
+                    final int frames = (int) Math.min(CHUNK_FRAMES, totalFrames - pos);
+                    for (LayerTask task : tasks) task.setChunk(pos, frames);
+
+                    for (Future<Void> done : pool.invokeAll(tasks)) {
+                        try {
+                            done.get();
+                        } catch (ExecutionException e) {
+                            throw new IOException("Layer failed while rendering", e.getCause());
+                        }
+                    }
+
+                    Arrays.fill(mix, 0, frames * 2, 0f);
+                    for (LayerTask task : tasks) {
+                        final float[] buffer = task.buffer;
+                        for (int i = 0; i < frames * 2; i++) mix[i] += buffer[i];
+                    }
+                    stage.quantize(mix, pcm, frames * 2);
+                    wav.write(pcm, frames);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+            for (LayerTask task : tasks) task.close();
+        }
+        return new Result(totalFrames, sampleRate, System.nanoTime() - started);
+    }
+
+    private static final class LayerTask implements Callable<Void> {
+        private final Layer layer;
+        private final SynthSource source;
+        private final long totalFrames;
+        private final long fadeInFrames;
+        private final long fadeOutFrames;
+        final float[] buffer = new float[CHUNK_FRAMES * 2];
+        // Set before each invokeAll, which publishes them to the worker
+        private long chunkStart;
+        private int chunkFrames;
+
+        LayerTask(Layer layer, SynthSource source, int sampleRate, long totalFrames) {
+            this.layer = layer;
+            this.source = source;
+            this.totalFrames = totalFrames;
+            this.fadeInFrames = (long) layer.fadeInMs * sampleRate / 1000L;
+            this.fadeOutFrames = (long) layer.fadeOutMs * sampleRate / 1000L;
+        }
+
+        void setChunk(long start, int frames) {
+            chunkStart = start;
+            chunkFrames = frames;
+        }
+
+        @Override
+        public Void call() {
+            source.render(buffer, chunkFrames);
+            final float volume = layer.volume;
+            for (int i = 0; i < chunkFrames; i++) {
+                final long frame = chunkStart + i;
+                float gain = volume;
+                if (frame < fadeInFrames) gain *= (float) frame / fadeInFrames;
+                final long left = totalFrames - frame;
+                if (left < fadeOutFrames) gain *= (float) left / fadeOutFrames;
+                buffer[i * 2] *= gain;
+                buffer[i * 2 + 1] *= gain;
+            }
+            return null;
+        }
+
+        void close() {
+            if (source instanceof Closeable) {
+                try {
+                    ((Closeable) source).close();
+                } catch (IOException ignored) {
+                    // Intentionally ignored: the render result does not depend on it
+                }
+            }
+        }
+    }
+}
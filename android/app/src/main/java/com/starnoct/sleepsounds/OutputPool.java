@@ -0,0 +1,170 @@
+package com.starnoct.sleepsounds;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Process-wide pool of idle {@link RenderOutput}s.
+ *
+ * AudioService pre-warms it on ACTION_INITIALIZE so the first play only binds a ready
+ * track and thread. Players hand their output back on stop instead of destroying it,
+ * which also makes re-tapping a sound cheap. Idle outputs cost a parked thread and
+ * a paused track; the pool is drained when the service goes away or memory is tight.
+ *
+ * Nothing here that waits or opens a track runs on the caller's thread: recycling waits for
+ * the render thread on the pool's own thread, and players acquire through it. One thread
+ * keeps the order, so an output recycled by a stop is there for the start that follows.
+ */
+final class OutputPool {
+
+    private static final int MAX_IDLE = 3;
+    private static final long STOP_TIMEOUT_MS = 200L;
+
+    private static final OutputPool INSTANCE = new OutputPool();
+
+    static OutputPool getInstance() {
+        return INSTANCE;
+    }
+
+    private final Deque<RenderOutput> idle = new ArrayDeque<>();
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "OutputPool");
+        t.setDaemon(true);
+        return t;
+    });
+
+    interface Receiver {
+        /**
+         * Takes an acquired output, on the pool's thread.
+         *
+         * @param output null if none could be opened
+         * @param failure why not, when {@code output} is null
+         * @return false to hand the output straight back, e.g. when the player stopped meanwhile
+         */
+        boolean take(RenderOutput output, Exception failure);
+    }
+
+    private OutputPool() {
+    }
+
+    /**
+     * Returns an idle output, creating one if the pool is empty. Outputs opened at a rate
+     * other than the current native one (created before the device was queried) are released.
+     * May open a track; never call it on the main thread.
+     */
+    RenderOutput acquire() {
+        while (true) {
+            RenderOutput output;
+            synchronized (idle) {
+                output = idle.pollFirst();
+            }
+            if (output == null) return new RenderOutput();
+            if (output.getSampleRate() == RenderOutput.nativeSampleRate()) return output;
+            output.release();
+        }
+    }
+
+    /**
+     * Acquires an output on the pool's thread and hands it to {@code receiver} there, after
+     * any recycling already handed to the pool.
+     */
+    void acquire(Receiver receiver) {
+        worker.execute(() -> deliver(receiver));
+    }
+
+    /**
+     * Replaces a dead output on the pool's thread: releases it, waiting up to {@code timeoutMs}
+     * for its render thread to leave, releases the idle outputs too, as they share its route,
+     * and then acquires a fresh one for {@code receiver}. If the render thread is still in the
+     * loop, the receiver gets a {@link TimeoutException} instead of an output.
+     */
+    void replace(RenderOutput dead, long timeoutMs, Receiver receiver) {
+        worker.execute(() -> {
+            if (dead != null && !dead.release(timeoutMs)) {
+                receiver.take(null, new TimeoutException("Render thread did not leave the loop"));
+                return;
+            }
+            releaseIdle();
+            deliver(receiver);
+        });
+    }
+
+    private void deliver(Receiver receiver) {
+        final RenderOutput output;
+        try {
+            output = acquire();
+        } catch (Exception e) {
+            receiver.take(null, e);
+            return;
+        }
+        if (!receiver.take(output, null)) keep(output, true);
+    }
+
+    /**
+     * Unbinds and mutes the output's current loop now, then waits for the render thread on the
+     * pool's thread and keeps the output for reuse when it let go cleanly.
+     */
+    void recycle(RenderOutput output) {
+        if (output == null) return;
+        final RenderOutput.RenderLoop loop = output.unbind();
+        worker.execute(() -> keep(output, output.stop(loop, STOP_TIMEOUT_MS)));
+    }
+
+    private void keep(RenderOutput output, boolean clean) {
+        output.setVolume(0f);
+        synchronized (idle) {
+            if (clean && idle.size() < MAX_IDLE) {
+                idle.addFirst(output);
+                return;
+            }
+        }
+        output.release();
+    }
+
+    /**
+     * Creates outputs until at least {@code count} are idle. Blocking; call off the main thread.
+     */
+    void prewarm(int count) {
+        while (true) {
+            synchronized (idle) {
+                if (idle.size() >= Math.min(count, MAX_IDLE)) return;
+            }
+            RenderOutput output;
+            try {
+                output = new RenderOutput();
+            } catch (Exception e) {
+                return; // No output available right now; the first play will try again
+            }
+            synchronized (idle) {
+                if (idle.size() < MAX_IDLE) {
+                    idle.addLast(output);
+                    continue;
+                }
+            }
+            output.release();
+            return;
+        }
+    }
+
+    /**
+     * Releases every idle output now, and the ones still being recycled once they are done.
+     */
+    void drain() {
+        releaseIdle();
+        worker.execute(this::releaseIdle);
+    }
+
+    private void releaseIdle() {
+        Deque<RenderOutput> drained;
+        synchronized (idle) {
+            drained = new ArrayDeque<>(idle);
+            idle.clear();
+        }
+        for (RenderOutput output : drained) {
+            output.release();
+        }
+    }
+}
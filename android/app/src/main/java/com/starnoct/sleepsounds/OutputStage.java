@@ -0,0 +1,72 @@
+package com.starnoct.sleepsounds;
+
+/**
+ * The one place float audio leaves the engine: a soft clip, and for 16-bit targets TPDF
+ * dither and rounding, in a single pass over the block.
+ *
+ * Everything upstream stays in float at nominal -1..1 with headroom above it, so layers
+ * can be summed and scaled without intermediate clamping. Below {@link #KNEE} samples
+ * pass untouched; above it they bend smoothly towards full scale instead of clipping.
+ * The dither generator is seeded, so offline renders stay reproducible.
+ */
+final class OutputStage {
+
+    static final float KNEE = 0.9f;
+    private static final float INV_RANGE = 1f / (1f - KNEE);
+    private static final float PCM16_SCALE = 32767f;
+    private static final float INV_65536 = 1f / 65536f;
+    private static final float ROUND_OFFSET = 32768.5f;
+
+    private int ditherState;
+
+    OutputStage(int seed) {
+        // xorshift must not start at zero
+        ditherState = seed != 0 ? seed : 0x2545F491;
+    }
+
+    /**
+     * Converts {@code samples} float samples to 16-bit with soft clip and TPDF dither.
+     */
+    void quantize(float[] in, short[] out, int samples) {
+        int s = ditherState;
+        for (int i = 0; i < samples; i++) {
+            s ^= s << 13;
+            s ^= s >>> 17;
+            s ^= s << 5;
+            // Difference of two uniform 16-bit halves: triangular over +-1 LSB
+            final float dither = ((s & 0xFFFF) - (s >>> 16)) * INV_65536;
+
+            float x = in[i];
+            if (x > KNEE || x < -KNEE) x = softClip(x);
+            // Soft clip bounds x to +-1, so the offset keeps the value positive and truncation rounds
+            final int q = (int) (x * PCM16_SCALE + dither + ROUND_OFFSET) - 32768;
+            out[i] = (short) Math.min(Short.MAX_VALUE, q);
+        }
+        ditherState = s;
+    }
+
+    /**
+     * Applies the soft clip in place, for outputs that take float directly.
+     */
+    static void softClip(float[] buffer, int samples) {
+        for (int i = 0; i < samples; i++) {
+            final float x = buffer[i];
+            if (x > KNEE || x < -KNEE) buffer[i] = softClip(x);
+        }
+    }
+
+    static float softClip(float x) {
+        final float a = Math.abs(x);
+        if (a <= KNEE) return x;
+        final float bent = KNEE + (1f - KNEE) * (float) Math.tanh((a - KNEE) * INV_RANGE);
+        return x < 0f ? -bent : bent;
+    }
+
+    /**
+     * Rounds and saturates one value already scaled to 16-bit range. No dither; for data
+     * that stays inside the engine (e.g. resampled clips).
+     */
+    static short toPcm16(float v) {
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(v)));
+    }
+}
@@ -0,0 +1,99 @@
+package com.starnoct.sleepsounds;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * User-defined synth patches, played with {@code synthetic://<name>}.
+ *
+ * Patches are compiled when registered, so a bad one is rejected up front, and persisted
+ * in AudioPrefs so a service restarted without the UI can still play them.
+ */
+final class PatchRegistry {
+    private static final String TAG = "PatchRegistry";
+    private static final String PREFS_KEY = "SYNTH_PATCHES";
+
+    private static final PatchRegistry INSTANCE = new PatchRegistry();
+
+    static PatchRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    private final Map<String, SynthPatch> patches = new ConcurrentHashMap<>();
+    private volatile boolean loaded = false;
+
+    private PatchRegistry() {
+    }
+
+    SynthPatch get(String name) {
+        return name == null ? null : patches.get(name);
+    }
+
+    /**
+     * Compiles and stores a patch under {@code name} (lower-cased, like synthetic:// flavors).
+     *
+     * @throws IllegalArgumentException if the patch does not compile
+     */
+    void register(Context context, String name, JSONObject patch) {
+        final String key = name.trim().toLowerCase();
+        patches.put(key, SynthPatch.fromJson(patch));
+        update(context, key, patch);
+    }
+
+    void unregister(Context context, String name) {
+        final String key = name.trim().toLowerCase();
+        patches.remove(key);
+        update(context, key, null);
+    }
+
+    /**
+     * Compiles the persisted patches once per process. Patches that no longer compile are skipped.
+     */
+    void load(Context context) {
+        if (loaded) return;
+        synchronized (this) {
+            if (loaded) return;
+            final JSONObject stored = readStored(context);
+            final Iterator<String> names = stored.keys();
+            while (names.hasNext()) {
+                final String name = names.next();
+                try {
+                    patches.put(name, SynthPatch.fromJson(stored.getJSONObject(name)));
+                } catch (JSONException | IllegalArgumentException e) {
+                    Log.w(TAG, "Skipping stored patch " + name, e);
+                }
+            }
+            loaded = true;
+        }
+    }
+
+    private synchronized void update(Context context, String key, JSONObject patch) {
+        final JSONObject stored = readStored(context);
+        try {
+            if (patch == null) stored.remove(key);
+            else stored.put(key, patch);
+        } catch (JSONException e) {
+            Log.w(TAG, "Could not persist patch " + key, e);
+            return;
+        }
+        context.getSharedPreferences("AudioPrefs", Context.MODE_PRIVATE)
+                .edit().putString(PREFS_KEY, stored.toString()).apply();
+    }
+
+    private static JSONObject readStored(Context context) {
+        final SharedPreferences prefs = context.getSharedPreferences("AudioPrefs", Context.MODE_PRIVATE);
+        try {
+            return new JSONObject(prefs.getString(PREFS_KEY, "{}"));
+        } catch (JSONException e) {
+            return new JSONObject();
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.starnoct.sleepsounds;
+
+/**
+ * Decoded 16-bit stereo audio held in memory, at the rate it was encoded with.
+ */
+final class PcmClip {
+
+    // Interleaved L/R
+    final short[] samples;
+    final int frames;
+    final int sampleRate;
+
+    PcmClip(short[] samples, int frames, int sampleRate) {
+        this.samples = samples;
+        this.frames = frames;
+        this.sampleRate = sampleRate;
+    }
+
+    long sizeBytes() {
+        return (long) samples.length * 2L;
+    }
+}
@@ -0,0 +1,198 @@
+package com.starnoct.sleepsounds;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/**
+ * Decodes a sound asset with MediaExtractor and MediaCodec, either streamed block by block
+ * as a {@link PcmStream} or (partly) into a {@link PcmClip}.
+ * Blocking; use it from a render or worker thread, never the main thread.
+ * Mono input is duplicated to both channels; extra channels are dropped.
+ */
+final class PcmDecoder implements PcmStream {
+
+    private static final long DEQUEUE_TIMEOUT_US = 10_000L;
+
+    private final MediaExtractor extractor;
+    private final MediaCodec codec;
+    private final MediaFormat format;
+    private final MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+    private int sampleRate;
+    private int channels;
+    private boolean inputDone = false;
+    private boolean outputDone = false;
+
+    // Decoded frames not yet handed out
+    private ShortBuffer pending;
+    private int pendingIndex = -1;
+
+    private PcmDecoder(MediaExtractor extractor, MediaFormat format) throws IOException {
+        this.extractor = extractor;
+        this.format = format;
+        this.sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+        this.channels = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+        this.codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+        codec.configure(format, null, null, 0);
+        codec.start();
+    }
+
+    /**
+     * Opens the first audio track of {@code url} (asset, filesystem path or remote URL).
+     *
+     * @throws IOException if the source cannot be opened or has no audio track
+     */
+    static PcmDecoder open(Context context, String url) throws IOException {
+        final MediaExtractor extractor = new MediaExtractor();
+        try {
+            final String assetPath = FilePlayer.assetPathFor(url);
+            if (assetPath != null) {
+                try (AssetFileDescriptor afd = context.getAssets().openFd(assetPath)) {
+                    extractor.setDataSource(afd.getFileDescriptor(), afd.getStartOffset(), afd.getLength());
+                }
+            } else {
+                extractor.setDataSource(url);
+            }
+
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                final MediaFormat candidate = extractor.getTrackFormat(i);
+                final String mime = candidate.getString(MediaFormat.KEY_MIME);
+                if (mime != null && mime.startsWith("audio/")) {
+                    extractor.selectTrack(i);
+                    return new PcmDecoder(extractor, candidate);
+                }
+            }
+            throw new IOException("No audio track in " + url);
+        } catch (IOException | RuntimeException e) {
+            extractor.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Decodes up to {@code maxFrames} frames starting near {@code startUs}.
+     *
+     * @throws IOException if the source cannot be opened, has no audio track or decodes to nothing
+     */
+    static PcmClip decode(Context context, String url, long startUs, int maxFrames) throws IOException {
+        try (PcmDecoder decoder = open(context, url)) {
+            if (startUs > 0L) {
+                final long durationUs = decoder.format.containsKey(MediaFormat.KEY_DURATION)
+                        ? decoder.format.getLong(MediaFormat.KEY_DURATION) : Long.MAX_VALUE;
+                // Stay far enough from the end to still fill the clip
+                final long latestStartUs = durationUs - (long) maxFrames * 1_000_000L / decoder.sampleRate;
+                final long seekUs = Math.min(startUs, latestStartUs);
+                if (seekUs > 0L) decoder.extractor.seekTo(seekUs, MediaExtractor.SEEK_TO_CLOSEST_SYNC);
+            }
+
+            final short[] samples = new short[maxFrames * 2];
+            final short[] block = new short[4096 * 2];
+            int frames = 0;
+            while (frames < maxFrames) {
+                final int n = decoder.read(block, Math.min(4096, maxFrames - frames));
+                if (n < 0) break;
+                System.arraycopy(block, 0, samples, frames * 2, n * 2);
+                frames += n;
+            }
+
+            if (frames == 0) throw new IOException("Decoded no audio from " + url);
+            return new PcmClip(samples, frames, decoder.sampleRate);
+        }
+    }
+
+    @Override
+    public int sampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public int read(short[] dst, int maxFrames) throws IOException {
+        if (pending == null) {
+            if (outputDone) return -1;
+            decodeStep();
+            if (pending == null) return outputDone ? -1 : 0;
+        }
+
+        final int available = pending.remaining() / channels;
+        final int take = Math.min(available, maxFrames);
+        for (int f = 0; f < take; f++) {
+            final short left = pending.get();
+            dst[f * 2] = left;
+            dst[f * 2 + 1] = channels > 1 ? pending.get() : left;
+            for (int c = 2; c < channels; c++) pending.get();
+        }
+        if (pending.remaining() < channels) {
+            codec.releaseOutputBuffer(pendingIndex, false);
+            pending = null;
+            pendingIndex = -1;
+        }
+        return take;
+    }
+
+    @Override
+    public void rewind() {
+        if (pending != null) {
+            codec.releaseOutputBuffer(pendingIndex, false);
+            pending = null;
+            pendingIndex = -1;
+        }
+        extractor.seekTo(0L, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+        codec.flush();
+        inputDone = false;
+        outputDone = false;
+    }
+
+    @Override
+    public void close() {
+        try {
+            codec.stop();
+        } catch (Exception ignored) {
+            // Intentionally ignored: resource cleanup must continue even if stop fails
+        }
+        codec.release();
+        extractor.release();
+    }
+
+    // Feeds one input buffer and takes at most one output buffer
+    private void decodeStep() {
+        if (!inputDone) {
+            final int in = codec.dequeueInputBuffer(DEQUEUE_TIMEOUT_US);
+            if (in >= 0) {
+                final ByteBuffer buffer = codec.getInputBuffer(in);
+                final int size = buffer == null ? -1 : extractor.readSampleData(buffer, 0);
+                if (size < 0) {
+                    codec.queueInputBuffer(in, 0, 0, 0L, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                    inputDone = true;
+                } else {
+                    codec.queueInputBuffer(in, 0, size, extractor.getSampleTime(), 0);
+                    extractor.advance();
+                }
+            }
+        }
+
+        final int out = codec.dequeueOutputBuffer(info, DEQUEUE_TIMEOUT_US);
+        if (out == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+            final MediaFormat outFormat = codec.getOutputFormat();
+            sampleRate = outFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+            channels = outFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+        } else if (out >= 0) {
+            if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) outputDone = true;
+            final ByteBuffer buffer = codec.getOutputBuffer(out);
+            if (buffer != null && info.size > 0 && channels > 0) {
+                buffer.position(info.offset);
+                buffer.limit(info.offset + info.size);
+                pending = buffer.order(ByteOrder.nativeOrder()).asShortBuffer();
+                pendingIndex = out;
+            } else {
+                codec.releaseOutputBuffer(out, false);
+            }
+        }
+    }
+}
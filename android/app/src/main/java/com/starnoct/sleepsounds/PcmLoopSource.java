@@ -0,0 +1,98 @@
+package com.starnoct.sleepsounds;
+
+/**
+ * Plays a {@link SoundBank} entry as an endless loop. The entry is the sound's seamless loop
+ * region, so wrapping from its last frame to its first needs no special handling.
+ *
+ * At the render rate, blocks are decoded from the mapped bank one at a time and played as
+ * they are. At any other rate, {@link #prepare} converts the whole loop once with the
+ * {@link Resampler}, wrapping the filter around the loop's ends, and plays that copy; the bank
+ * only holds loops up to a minute, so the copy stays a few megabytes. Either way render()
+ * only copies samples, and nothing is opened or allocated after preparation.
+ */
+final class PcmLoopSource implements SynthSource {
+
+    private static final float SCALE = 1f / 32768f;
+
+    private final SoundBank.Entry entry;
+    private final float scale;
+    private final short[] block;
+    // The loop converted to convertedRate, or null while the entry's own rate is the render rate
+    private short[] converted;
+    private int convertedRate;
+    private short[] samples;
+    private int buffered;
+    private int position;
+    private int nextBlock;
+
+    /**
+     * @param gain linear gain, e.g. the manifest's loudness match
+     */
+    PcmLoopSource(SoundBank.Entry entry, float gain) {
+        this.entry = entry;
+        this.scale = SCALE * gain;
+        this.block = new short[entry.blockFrames * 2];
+    }
+
+    @Override
+    public void prepare(int sampleRate) {
+        if (entry.sampleRate == sampleRate) {
+            converted = null;
+        } else if (converted == null || convertedRate != sampleRate) {
+            converted = convert(entry, sampleRate);
+            convertedRate = sampleRate;
+        }
+        // Restart from the top of the loop in whichever form it now plays
+        buffered = 0;
+        position = 0;
+        nextBlock = 0;
+    }
+
+    @Override
+    public boolean supportsReducedRate() {
+        return false; // Recordings are broadband
+    }
+
+    @Override
+    public void render(float[] out, int frames) {
+        int i = 0;
+        while (i < frames) {
+            if (position == buffered) refill();
+            final int n = Math.min(frames - i, buffered - position);
+            for (int s = position * 2, d = i * 2, end = d + n * 2; d < end; s++, d++) {
+                out[d] = samples[s] * scale;
+            }
+            position += n;
+            i += n;
+        }
+    }
+
+    private void refill() {
+        position = 0;
+        if (converted != null) {
+            samples = converted;
+            buffered = converted.length / 2;
+            return;
+        }
+        samples = block;
+        buffered = entry.decodeBlock(nextBlock, block);
+        nextBlock = nextBlock + 1 < entry.blockCount() ? nextBlock + 1 : 0;
+    }
+
+    /**
+     * The whole loop at {@code sampleRate}, as seamless as the original.
+     */
+    static short[] convert(SoundBank.Entry entry, int sampleRate) {
+        final Resampler.LoopStream stream = new Resampler.LoopStream(entry.sampleRate, sampleRate,
+                Resampler.Quality.BALANCED);
+        final short[] block = new short[entry.blockFrames * 2];
+        final short[] loop = new short[stream.outputFrames(entry.frames) * 2];
+        int written = 0;
+        for (int b = 0; b < entry.blockCount(); b++) {
+            final int n = entry.decodeBlock(b, block);
+            written += stream.feed(block, 0, n, loop, written);
+        }
+        stream.finish(loop, written);
+        return loop;
+    }
+}
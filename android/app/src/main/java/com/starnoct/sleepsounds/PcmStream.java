@@ -0,0 +1,25 @@
+package com.starnoct.sleepsounds;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Sequential 16-bit stereo PCM, read a block at a time so a whole sound never has to be
+ * held in memory.
+ */
+interface PcmStream extends Closeable {
+
+    int sampleRate();
+
+    /**
+     * Reads up to {@code maxFrames} interleaved stereo frames into {@code dst}.
+     *
+     * @return frames read, 0 if none are ready yet, or -1 at the end of the stream
+     */
+    int read(short[] dst, int maxFrames) throws IOException;
+
+    /**
+     * Seeks back to the first frame.
+     */
+    void rewind() throws IOException;
+}
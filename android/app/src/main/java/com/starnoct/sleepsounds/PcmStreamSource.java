@@ -0,0 +1,113 @@
+package com.starnoct.sleepsounds;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Plays a {@link PcmStream} as an endless loop, the way FilePlayer loops its MediaPlayer,
+ * converting to the render rate by linear interpolation. Only one small read buffer is
+ * held, whatever the length of the sound. Closing the source closes the stream.
+ *
+ * With a {@link SoundManifest} entry the loop runs between the build-time loop points
+ * instead of the whole stream, and the sound is scaled to the catalog's common loudness.
+ */
+final class PcmStreamSource implements SynthSource, Closeable {
+
+    private static final int READ_FRAMES = 4096;
+    private static final float SCALE = 1f / 32768f;
+
+    private final PcmStream stream;
+    private final float scale;
+    // Loop region in stream frames; loopEnd 0 loops the whole stream
+    private final int loopStart;
+    private final int loopEnd;
+    // Index of the next frame the stream will return
+    private long streamFrame;
+    private final short[] scratch = new short[READ_FRAMES * 2];
+    // Read buffer plus one carried-over frame for interpolation across reads
+    private final short[] buffer = new short[(READ_FRAMES + 1) * 2];
+    private int buffered;
+    private double position;
+    private double step;
+
+    PcmStreamSource(PcmStream stream) {
+        this(stream, null);
+    }
+
+    PcmStreamSource(PcmStream stream, SoundManifest.Entry entry) {
+        this.stream = stream;
+        final boolean loop = entry != null && entry.hasLoop() && entry.sampleRate == stream.sampleRate();
+        this.loopStart = loop ? entry.loopStart : 0;
+        this.loopEnd = loop ? entry.loopEnd : 0;
+        this.scale = entry != null ? SCALE * entry.gain() : SCALE;
+    }
+
+    @Override
+    public void prepare(int sampleRate) {
+        step = (double) stream.sampleRate() / sampleRate;
+    }
+
+    @Override
+    public boolean supportsReducedRate() {
+        return false; // Recordings are broadband
+    }
+
+    @Override
+    public void render(float[] out, int frames) {
+        for (int i = 0; i < frames; i++) {
+            // Frames p and p + 1 must both be buffered
+            while ((int) position + 1 >= buffered) refill();
+
+            final int p = (int) position;
+            final float frac = (float) (position - p);
+            final int a = p * 2;
+            out[i * 2] = (buffer[a] + (buffer[a + 2] - buffer[a]) * frac) * scale;
+            out[i * 2 + 1] = (buffer[a + 1] + (buffer[a + 3] - buffer[a + 1]) * frac) * scale;
+            position += step;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        stream.close();
+    }
+
+    private void refill() {
+        // Carry the last frame over so interpolation stays continuous across reads
+        final int keep = buffered > 0 ? 1 : 0;
+        if (keep == 1) {
+            buffer[0] = buffer[(buffered - 1) * 2];
+            buffer[1] = buffer[(buffered - 1) * 2 + 1];
+            position -= buffered - 1;
+        }
+        try {
+            int n = loopEnd > 0 && streamFrame >= loopEnd ? -1 : stream.read(scratch, readLimit());
+            if (n < 0) {
+                // Loop back to the start, like MediaPlayer.setLooping(true)
+                stream.rewind();
+                streamFrame = 0L;
+                skipToLoopStart();
+                n = stream.read(scratch, readLimit());
+                if (n < 0) throw new IllegalStateException("Stream has no audio");
+            }
+            streamFrame += n;
+            System.arraycopy(scratch, 0, buffer, keep * 2, n * 2);
+            buffered = keep + n;
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read audio", e);
+        }
+    }
+
+    // Never read past the loop end, so the wrap lands exactly on it
+    private int readLimit() {
+        return loopEnd > 0 ? (int) Math.max(1L, Math.min(READ_FRAMES, loopEnd - streamFrame)) : READ_FRAMES;
+    }
+
+    private void skipToLoopStart() throws IOException {
+        while (streamFrame < loopStart) {
+            final int n = stream.read(scratch, (int) Math.min(READ_FRAMES, loopStart - streamFrame));
+            if (n < 0) throw new IllegalStateException("Stream ended before its loop start");
+            streamFrame += n;
+        }
+    }
+}
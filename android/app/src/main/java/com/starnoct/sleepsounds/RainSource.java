@@ -0,0 +1,143 @@
+package com.starnoct.sleepsounds;
+
+/**
+ * Rain: a band-passed noise bed with stochastic droplets on top.
+ *
+ * Each droplet is a decaying two-pole resonator (a tiny bubble ringing at 1.5-4.5 kHz)
+ * excited once and panned at random. Droplets arrive as a Poisson process whose rate
+ * drifts with slow gusts, so the texture never loops.
+ */
+final class RainSource implements SynthSource {
+
+    private static final int MAX_DROPS = 24;
+    private static final float TRIM = 0.6f;
+    // Gusts retarget roughly twice a second and glide over about two seconds
+    private static final float GUST_INTERVAL_S = 0.5f;
+    private static final float GUST_GLIDE_S = 2f;
+
+    private final Mulberry32 rnd;
+    private final float dropsPerSecond;
+    private final float dropLevel;
+    private final float bedLevel;
+
+    private int sampleRate;
+    private float bedHighAlpha;
+    private float bedLowAlpha;
+    private float gustAlpha;
+
+    // Bed band-pass: difference of two one-pole lowpasses per channel
+    private float highL, highR, lowL, lowR;
+
+    // Droplet voices
+    private final float[] c1 = new float[MAX_DROPS];
+    private final float[] c2 = new float[MAX_DROPS];
+    private final float[] y1 = new float[MAX_DROPS];
+    private final float[] y2 = new float[MAX_DROPS];
+    private final float[] panL = new float[MAX_DROPS];
+    private final float[] panR = new float[MAX_DROPS];
+    private final int[] remaining = new int[MAX_DROPS];
+
+    private int untilNextDrop;
+    private float gust = 1f;
+    private float gustTarget = 1f;
+    private int untilGust;
+
+    RainSource(boolean heavy, int seed) {
+        this.rnd = new Mulberry32(seed);
+        this.dropsPerSecond = heavy ? 350f : 90f;
+        this.dropLevel = heavy ? 0.3f : 0.45f;
+        this.bedLevel = heavy ? 0.9f : 0.45f;
+    }
+
+    @Override
+    public void prepare(int sampleRate) {
+        this.sampleRate = sampleRate;
+        bedHighAlpha = SynthSources.onePoleAlpha(5000f, sampleRate);
+        bedLowAlpha = SynthSources.onePoleAlpha(500f, sampleRate);
+        gustAlpha = 1f / (GUST_GLIDE_S * sampleRate);
+        // Voices already ringing finish with their old tuning; they last a few milliseconds
+        untilNextDrop = nextDropInterval();
+        untilGust = (int) (GUST_INTERVAL_S * sampleRate);
+    }
+
+    @Override
+    public boolean supportsReducedRate() {
+        return false; // Droplets ring up to ~4.5 kHz with harmonics well above that
+    }
+
+    @Override
+    public void render(float[] out, int frames) {
+        for (int i = 0; i < frames; i++) {
+            if (--untilGust <= 0) {
+                gustTarget = 0.7f + 0.6f * rnd.nextFloat();
+                untilGust = (int) (GUST_INTERVAL_S * sampleRate);
+            }
+            gust += (gustTarget - gust) * gustAlpha;
+
+            if (--untilNextDrop <= 0) {
+                triggerDrop();
+                untilNextDrop = nextDropInterval();
+            }
+
+            final float wl = rnd.nextBipolar();
+            final float wr = rnd.nextBipolar();
+            highL += bedHighAlpha * (wl - highL);
+            highR += bedHighAlpha * (wr - highR);
+            lowL += bedLowAlpha * (wl - lowL);
+            lowR += bedLowAlpha * (wr - lowR);
+            final float bed = bedLevel * gust;
+            float l = (highL - lowL) * bed;
+            float r = (highR - lowR) * bed;
+
+            for (int v = 0; v < MAX_DROPS; v++) {
+                if (remaining[v] == 0) continue;
+                final float y = c1[v] * y1[v] + c2[v] * y2[v];
+                y2[v] = y1[v];
+                y1[v] = y;
+                l += y * panL[v];
+                r += y * panR[v];
+                remaining[v]--;
+            }
+
+            out[i * 2] = l * TRIM;
+            out[i * 2 + 1] = r * TRIM;
+        }
+    }
+
+    private void triggerDrop() {
+        // Reuse a silent voice, or steal the one closest to finishing
+        int voice = 0;
+        for (int v = 0; v < MAX_DROPS; v++) {
+            if (remaining[v] < remaining[voice]) voice = v;
+            if (remaining[v] == 0) break;
+        }
+
+        final float size = rnd.nextFloat();
+        final float freq = 1500f + 3000f * size * size;
+        final float decaySeconds = 0.002f + 0.010f * rnd.nextFloat();
+        // Many faint drops, a few close ones
+        final float u = rnd.nextFloat();
+        final float amp = dropLevel * (0.1f + 0.9f * u * u * u);
+
+        final double w = 2.0 * Math.PI * freq / sampleRate;
+        final double radius = Math.exp(-1.0 / (decaySeconds * sampleRate));
+        c1[voice] = (float) (2.0 * radius * Math.cos(w));
+        c2[voice] = (float) (-radius * radius);
+        // y[n] = amp * r^n * sin(w (n + 1)): the ring starts at full height with no DC step
+        y1[voice] = (float) (amp * Math.sin(w));
+        y2[voice] = 0f;
+        // About -60 dB after 7 time constants
+        remaining[voice] = (int) (decaySeconds * sampleRate * 7f);
+
+        final double pan = rnd.nextFloat() * Math.PI / 2.0;
+        panL[voice] = (float) Math.cos(pan);
+        panR[voice] = (float) Math.sin(pan);
+    }
+
+    // Exponential inter-arrival time, so drops form a Poisson process
+    private int nextDropInterval() {
+        final float u = Math.max(1e-6f, rnd.nextFloat());
+        final double seconds = -Math.log(u) / (dropsPerSecond * gust);
+        return Math.max(1, (int) (seconds * sampleRate));
+    }
+}
@@ -0,0 +1,412 @@
+package com.starnoct.sleepsounds;
+
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A prepared output: one streaming AudioTrack plus the render thread that feeds it.
+ *
+ * Outputs are created by {@link OutputPool} and outlive the players that use them.
+ * A player binds a {@link RenderLoop} with {@link #start}; the thread runs it until
+ * {@link #stop} unbinds it, then parks with zero cost until the next player arrives.
+ * That makes (re)starting a player a bind plus a single buffer period instead of
+ * creating a track and a thread.
+ *
+ * Tracks open at the device's native output rate once {@link #configure} has run, so the
+ * system mixer takes them as they are instead of resampling every stream. They take
+ * float samples where the device allows it; otherwise {@link #write} converts each block
+ * to 16-bit once, with dither, on its way out.
+ */
+final class RenderOutput {
+
+    interface RenderLoop {
+        /**
+         * Renders and writes blocks while {@link RenderOutput#isBound} holds for this loop.
+         * Runs on the output's render thread.
+         */
+        void run(RenderOutput output);
+    }
+
+    private static final String TAG = "RenderOutput";
+
+    // Used until the device has been queried, and where it reports nothing usable
+    static final int DEFAULT_SAMPLE_RATE = 44100;
+    static final int CHANNELS = 2;
+
+    private static int nextId = 0;
+    private static volatile int nativeSampleRate = DEFAULT_SAMPLE_RATE;
+    private static volatile int framesPerBurst = 0;
+
+    /**
+     * Reads the output's native rate and mixer burst size. Outputs created afterwards use them.
+     */
+    static void configure(Context context) {
+        AudioManager audioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+        if (audioManager == null) return;
+        nativeSampleRate = parsePositive(
+                audioManager.getProperty(AudioManager.PROPERTY_OUTPUT_SAMPLE_RATE), DEFAULT_SAMPLE_RATE);
+        framesPerBurst = parsePositive(
+                audioManager.getProperty(AudioManager.PROPERTY_OUTPUT_FRAMES_PER_BUFFER), 0);
+    }
+
+    static int nativeSampleRate() {
+        return nativeSampleRate;
+    }
+
+    /**
+     * Rounds a block size to whole mixer bursts, so each write lines up with what the mixer
+     * pulls per cycle. Never exceeds {@link RenderProfile#MAX_BLOCK_FRAMES}.
+     */
+    static int alignToBurst(int frames) {
+        final int burst = framesPerBurst;
+        if (burst <= 0 || burst > RenderProfile.MAX_BLOCK_FRAMES) return frames;
+        final int aligned = Math.max(burst, Math.round((float) frames / burst) * burst);
+        return aligned <= RenderProfile.MAX_BLOCK_FRAMES ? aligned : aligned - burst;
+    }
+
+    private static int parsePositive(String value, int fallback) {
+        if (value == null) return fallback;
+        try {
+            final int parsed = Integer.parseInt(value.trim());
+            return parsed > 0 ? parsed : fallback;
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Unexpected audio property value: " + value);
+            return fallback;
+        }
+    }
+
+    private static volatile boolean floatUnsupported = false;
+
+    private final int sampleRate;
+    private final AudioTrack track;
+    private final boolean floatOutput;
+    // 16-bit tracks only: conversion scratch and dither state, owned by the render thread
+    private final short[] pcm;
+    private final OutputStage stage;
+    private final int capacityFrames;
+    private final Thread thread;
+
+    private volatile RenderLoop bound;
+    private volatile RenderLoop running;
+    private volatile boolean released = false;
+    // Bumped by wake() to cut a refill nap short
+    private volatile int wakeRequests = 0;
+
+    // Render thread: frames written since the current loop was bound, and the head position then
+    private long framesSinceBind;
+    private int headAtBind;
+
+    RenderOutput() {
+        sampleRate = nativeSampleRate;
+
+        AudioTrack created = null;
+        if (!floatUnsupported && !floatFormatAccepted(sampleRate)) {
+            // Remembered for the process, so later outputs go straight to 16-bit
+            floatUnsupported = true;
+            Log.w(TAG, "Float output unsupported, using 16-bit");
+        }
+        if (!floatUnsupported) {
+            try {
+                created = openTrack(sampleRate, AudioFormat.ENCODING_PCM_FLOAT);
+            } catch (Exception e) {
+                // Out of tracks, or the route changing: only this output falls back
+                Log.w(TAG, "Float track did not open, using 16-bit for this output", e);
+            }
+        }
+        floatOutput = created != null;
+        if (created == null) {
+            created = openTrack(sampleRate, AudioFormat.ENCODING_PCM_16BIT);
+        }
+        track = created;
+        capacityFrames = bufferBytes(sampleRate, floatOutput ? AudioFormat.ENCODING_PCM_FLOAT
+                : AudioFormat.ENCODING_PCM_16BIT) / bytesPerFrame(floatOutput);
+        pcm = floatOutput ? null : new short[RenderProfile.MAX_BLOCK_FRAMES * CHANNELS];
+        stage = floatOutput ? null : new OutputStage(Mulberry32.freshSeed());
+
+        synchronized (RenderOutput.class) {
+            thread = new Thread(this::threadMain, "RenderOutput-" + (nextId++));
+        }
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static AudioTrack openTrack(int sampleRate, int encoding) {
+        AudioAttributes attrs = new AudioAttributes.Builder()
+                .setUsage(AudioAttributes.USAGE_MEDIA)
+                .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
+                .build();
+        AudioFormat fmt = new AudioFormat.Builder()
+                .setSampleRate(sampleRate)
+                .setEncoding(encoding)
+                .setChannelMask(AudioFormat.CHANNEL_OUT_STEREO)
+                .build();
+
+        AudioTrack track = new AudioTrack(attrs, fmt, bufferBytes(sampleRate, encoding),
+                AudioTrack.MODE_STREAM, AudioManager.AUDIO_SESSION_ID_GENERATE);
+        if (encoding == AudioFormat.ENCODING_PCM_FLOAT && track.getState() != AudioTrack.STATE_INITIALIZED) {
+            track.release();
+            throw new IllegalStateException("Float track did not initialize");
+        }
+        return track;
+    }
+
+    // Whether the platform takes float PCM at all, as opposed to one track failing to open
+    private static boolean floatFormatAccepted(int sampleRate) {
+        try {
+            new AudioFormat.Builder()
+                    .setSampleRate(sampleRate)
+                    .setEncoding(AudioFormat.ENCODING_PCM_FLOAT)
+                    .setChannelMask(AudioFormat.CHANNEL_OUT_STEREO)
+                    .build();
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        return AudioTrack.getMinBufferSize(sampleRate, AudioFormat.CHANNEL_OUT_STEREO,
+                AudioFormat.ENCODING_PCM_FLOAT) > 0;
+    }
+
+    private static int bufferBytes(int sampleRate, int encoding) {
+        final boolean isFloat = encoding == AudioFormat.ENCODING_PCM_FLOAT;
+        final int minBuf = AudioTrack.getMinBufferSize(sampleRate, AudioFormat.CHANNEL_OUT_STEREO, encoding);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            // Allocate the deepest profile's capacity up front; the render thread trims the
+            // queued depth with setBufferSizeInFrames, so profile changes never rebuild the track
+            return Math.max(minBuf, sampleRate * bytesPerFrame(isFloat) * RenderProfile.MAX_BUFFER_MS / 1000);
+        }
+        return Math.max(minBuf, sampleRate * bytesPerFrame(isFloat) / 10); // ~100ms
+    }
+
+    private static int bytesPerFrame(boolean isFloat) {
+        return CHANNELS * (isFloat ? 4 : 2);
+    }
+
+    /**
+     * Writes one interleaved float block through the output stage: soft clip, plus dither
+     * and 16-bit conversion when the track is not float. May modify {@code block}.
+     * Render thread only.
+     *
+     * @return what the track's write returned; zero or less means the write failed
+     */
+    int write(float[] block, int frames) {
+        final int samples = frames * CHANNELS;
+        final int wrote;
+        if (floatOutput) {
+            OutputStage.softClip(block, samples);
+            wrote = track.write(block, 0, samples, AudioTrack.WRITE_BLOCKING);
+        } else {
+            stage.quantize(block, pcm, samples);
+            wrote = track.write(pcm, 0, samples);
+        }
+        if (wrote > 0) framesSinceBind += wrote / CHANNELS;
+        return wrote;
+    }
+
+    /**
+     * Frames the current loop wrote that the track has not played yet, or -1 if the track
+     * cannot tell. Render thread only.
+     */
+    int queuedFrames() {
+        final int head;
+        try {
+            head = track.getPlaybackHeadPosition();
+        } catch (Exception e) {
+            return -1;
+        }
+        // The head is an unsigned frame counter that wraps
+        final long played = (head - headAtBind) & 0xFFFFFFFFL;
+        return (int) Math.max(0L, Math.min(Integer.MAX_VALUE, framesSinceBind - played));
+    }
+
+    /**
+     * How long a loop refilling in batches may sleep before writing {@code frames} more into
+     * a queue of {@code queueFrames} that holds {@code queuedFrames}: nothing while they fit,
+     * otherwise until the track has played the queue down to half. The other half is margin
+     * for a late wakeup, and keeps a refill inside every {@link RenderWatchdog#CHECK_INTERVAL_MS}.
+     */
+    static long refillNapMs(int queuedFrames, int frames, int queueFrames, int sampleRate) {
+        if (queuedFrames < 0 || queuedFrames + frames <= queueFrames) return 0L;
+        return Math.max(0L, (long) (queuedFrames - queueFrames / 2) * 1000L / Math.max(1, sampleRate));
+    }
+
+    /**
+     * Sleeps for {@code napMs} of uptime, or until {@code loop} is unbound, the output is
+     * released or {@link #wake} is called. Render thread only.
+     */
+    void nap(RenderLoop loop, long napMs) {
+        final long wakeAtMs = SystemClock.uptimeMillis() + napMs;
+        final int requests = wakeRequests;
+        long remainingMs = napMs;
+        while (remainingMs > 0L && isBound(loop) && wakeRequests == requests) {
+            LockSupport.parkNanos(this, remainingMs * 1_000_000L);
+            remainingMs = wakeAtMs - SystemClock.uptimeMillis();
+        }
+    }
+
+    /**
+     * Ends a {@link #nap} early, e.g. so a new render profile applies now rather than at the
+     * next refill.
+     */
+    void wake() {
+        wakeRequests++;
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * The rate the track was opened at; render at this to bypass system resampling.
+     */
+    int getSampleRate() {
+        return sampleRate;
+    }
+
+    AudioTrack getTrack() {
+        return track;
+    }
+
+    int getCapacityFrames() {
+        return capacityFrames;
+    }
+
+    boolean isBound(RenderLoop loop) {
+        return bound == loop && !released;
+    }
+
+    boolean isPlaying() {
+        try {
+            return bound != null && track.getPlayState() == AudioTrack.PLAYSTATE_PLAYING;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    void setVolume(float v) {
+        try {
+            track.setVolume(v);
+        } catch (Exception ignored) {
+            // Intentionally ignored: volume operation is non-critical and may fail during teardown
+        }
+    }
+
+    /**
+     * Binds a loop and starts the track. The render thread picks it up immediately.
+     */
+    void start(RenderLoop loop) {
+        bound = loop;
+        track.play();
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Unbinds the current loop and mutes the track at once. The render thread leaves the loop
+     * at its next block boundary; {@link #stop} waits for that.
+     *
+     * @return the loop that was bound, for {@link #stop}
+     */
+    RenderLoop unbind() {
+        final RenderLoop loop = bound;
+        bound = null;
+        setVolume(0f);
+        // A loop napping between refills would otherwise only notice at the end of its nap
+        LockSupport.unpark(thread);
+        return loop;
+    }
+
+    /**
+     * Waits up to {@code timeoutMs} for the render thread to leave {@code loop}, which
+     * {@link #unbind} took away, then pauses and flushes the track so it can be reused.
+     *
+     * @return false if the render thread did not let go in time; the output must not be reused
+     */
+    boolean stop(RenderLoop loop, long timeoutMs) {
+        final boolean idle = awaitLeft(loop, timeoutMs);
+
+        try {
+            track.pause();
+        } catch (Exception ignored) {
+            // Intentionally ignored: resource cleanup must continue even if pause fails
+        }
+        try {
+            track.flush();
+        } catch (Exception ignored) {
+            // Intentionally ignored: resource cleanup must continue even if flush fails
+        }
+        try {
+            track.setPlaybackRate(sampleRate);
+        } catch (Exception ignored) {
+            // Intentionally ignored: a reduced-rate profile may have changed it
+        }
+        return idle;
+    }
+
+    /**
+     * Stops the thread and releases the track. Not reusable afterwards.
+     */
+    void release() {
+        released = true;
+        bound = null;
+        LockSupport.unpark(thread);
+        try {
+            track.stop();
+        } catch (Exception ignored) {
+            // Intentionally ignored: resource cleanup must continue even if stop fails
+        }
+        try {
+            track.release();
+        } catch (Exception ignored) {
+            // Intentionally ignored: resource cleanup must continue even if release fails
+        }
+    }
+
+    /**
+     * Releases like {@link #release()}, then waits up to {@code timeoutMs} for the render
+     * thread to leave the loop it was running.
+     *
+     * @return false if the loop was still running when the time ran out
+     */
+    boolean release(long timeoutMs) {
+        final RenderLoop loop = running;
+        release();
+        return awaitLeft(loop, timeoutMs);
+    }
+
+    private boolean awaitLeft(RenderLoop loop, long timeoutMs) {
+        final long deadline = System.nanoTime() + timeoutMs * 1_000_000L;
+        while (loop != null && running == loop && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(1_000_000L);
+        }
+        return loop == null || running != loop;
+    }
+
+    private void threadMain() {
+        while (!released) {
+            final RenderLoop loop = bound;
+            if (loop == null) {
+                LockSupport.park(this);
+                continue;
+            }
+            running = loop;
+            framesSinceBind = 0L;
+            try {
+                headAtBind = track.getPlaybackHeadPosition();
+            } catch (Exception e) {
+                headAtBind = 0;
+            }
+            try {
+                loop.run(this);
+            } catch (Throwable ignored) {
+                // Intentionally ignored: a failing loop must not kill the pooled thread
+            } finally {
+                running = null;
+                // The loop returned on its own (e.g. the write failed): it no longer owns us
+                if (bound == loop) bound = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.starnoct.sleepsounds;
+
+/**
+ * How a render player feeds its AudioTrack: frames rendered per write, how much audio is
+ * kept queued in the track, and whether low-bandwidth content may render at half rate.
+ *
+ * Bigger blocks and deeper buffers mean fewer render-thread wakeups per second at the
+ * cost of control latency. Profiles are immutable; render threads pick up a new one
+ * at the next block boundary.
+ */
+final class RenderProfile {
+
+    // Largest block any profile may use; render buffers are sized for it once
+    static final int MAX_BLOCK_FRAMES = 8192;
+    // Track capacity on API 24+, so the queued depth can later grow without a rebuild
+    static final int MAX_BUFFER_MS = 2000;
+
+    static final RenderProfile INTERACTIVE = new RenderProfile(1024, 100, false);
+    static final RenderProfile WIND_DOWN = new RenderProfile(4096, 500, false);
+    static final RenderProfile WIND_DOWN_REDUCED_RATE = new RenderProfile(4096, 500, true);
+    // Over the CPU budget: half-rate rendering without giving up interactive latency
+    static final RenderProfile REDUCED_RATE = new RenderProfile(1024, 100, true);
+    // Screen off: the queue is refilled in one go about once a second, so the CPU can stay in deep idle
+    static final RenderProfile DEEP_BUFFER = new RenderProfile(MAX_BLOCK_FRAMES, MAX_BUFFER_MS, false, true);
+
+    final int blockFrames;
+    final int bufferMs;
+    final boolean reducedRate;
+    // Sleep while the queue is full and refill it in a batch, rather than block in each write
+    final boolean refillInBatches;
+
+    RenderProfile(int blockFrames, int bufferMs, boolean reducedRate) {
+        this(blockFrames, bufferMs, reducedRate, false);
+    }
+
+    RenderProfile(int blockFrames, int bufferMs, boolean reducedRate, boolean refillInBatches) {
+        this.blockFrames = Math.min(blockFrames, MAX_BLOCK_FRAMES);
+        this.bufferMs = Math.min(bufferMs, MAX_BUFFER_MS);
+        this.reducedRate = reducedRate;
+        this.refillInBatches = refillInBatches;
+    }
+
+    /**
+     * Combines two requirements, taking the more relaxed value of each.
+     */
+    RenderProfile merge(RenderProfile other) {
+        if (other == null) return this;
+        return new RenderProfile(
+                Math.max(blockFrames, other.blockFrames),
+                Math.max(bufferMs, other.bufferMs),
+                reducedRate || other.reducedRate,
+                refillInBatches || other.refillInBatches);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof RenderProfile)) return false;
+        RenderProfile p = (RenderProfile) o;
+        return blockFrames == p.blockFrames && bufferMs == p.bufferMs && reducedRate == p.reducedRate
+                && refillInBatches == p.refillInBatches;
+    }
+
+    @Override
+    public int hashCode() {
+        return ((blockFrames * 31 + bufferMs) * 2 + (reducedRate ? 1 : 0)) * 2 + (refillInBatches ? 1 : 0);
+    }
+}
@@ -0,0 +1,151 @@
+package com.starnoct.sleepsounds;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Per-player render counters written by a single render thread.
+ *
+ * Timings go into fixed log2 histograms of microseconds (bucket i counts samples in
+ * [2^i, 2^(i+1)) us), so recording a block is a couple of increments and never allocates.
+ * Readers see slightly racy but always individually consistent int/volatile values,
+ * which is all a metrics snapshot needs.
+ */
+final class RenderStats {
+
+    static final int BUCKETS = 20; // up to ~1s, anything slower lands in the last bucket
+
+    private final String id;
+    private final String kind;
+    private final int[] renderHist = new int[BUCKETS];
+    private final int[] writeHist = new int[BUCKETS];
+
+    private volatile long blocks = 0L;
+    private volatile long framesWritten = 0L;
+    private volatile long maxRenderNanos = 0L;
+    private volatile long maxWriteNanos = 0L;
+    private volatile int underruns = 0;
+    private volatile int recoveries = 0;
+    private volatile long wakeups = 0L;
+    // Sampler thread only
+    private long sampledWakeups = 0L;
+    private volatile long startNanos = 0L;
+    private volatile long firstSampleNanos = -1L;
+    private volatile long stoppedAtMs = 0L;
+
+    RenderStats(String id, String kind) {
+        this.id = id;
+        this.kind = kind;
+    }
+
+    String getId() {
+        return id;
+    }
+
+    long getFramesWritten() {
+        return framesWritten;
+    }
+
+    /** Called on start(), before the render thread exists. */
+    void markStarted() {
+        startNanos = System.nanoTime();
+        firstSampleNanos = -1L;
+        stoppedAtMs = 0L;
+    }
+
+    void markStopped() {
+        stoppedAtMs = System.currentTimeMillis();
+    }
+
+    /** Render thread only. */
+    void recordBlock(long renderNanos, long writeNanos, int frames) {
+        renderHist[bucketOf(renderNanos)]++;
+        writeHist[bucketOf(writeNanos)]++;
+        if (renderNanos > maxRenderNanos) maxRenderNanos = renderNanos;
+        if (writeNanos > maxWriteNanos) maxWriteNanos = writeNanos;
+        if (firstSampleNanos < 0) firstSampleNanos = System.nanoTime() - startNanos;
+        framesWritten += frames;
+        blocks++;
+    }
+
+    /**
+     * Render thread only: the thread slept waiting for the queue, in a blocking write that
+     * found it full or in a refill nap, and had to be woken to go on.
+     */
+    void recordWakeup() {
+        wakeups++;
+    }
+
+    /** Sampler thread only: wakeups since the previous call. */
+    long wakeupsSinceSample() {
+        final long total = wakeups;
+        final long delta = total - sampledWakeups;
+        sampledWakeups = total;
+        return delta;
+    }
+
+    /** Render thread only; callers poll the track's counter at a low rate. */
+    void setUnderruns(int count) {
+        underruns = count;
+    }
+
+    /** Main thread, after the watchdog rebuilt the output. */
+    void recordRecovery() {
+        recoveries++;
+    }
+
+    static int bucketOf(long nanos) {
+        long us = nanos / 1000L;
+        if (us <= 0) return 0;
+        int b = 63 - Long.numberOfLeadingZeros(us);
+        return b >= BUCKETS ? BUCKETS - 1 : b;
+    }
+
+    JSONObject toJson() throws JSONException {
+        JSONObject obj = new JSONObject();
+        obj.put("id", id);
+        obj.put("kind", kind);
+        obj.put("active", stoppedAtMs == 0L);
+        obj.put("blocks", blocks);
+        obj.put("framesWritten", framesWritten);
+        obj.put("underruns", underruns);
+        obj.put("recoveries", recoveries);
+        obj.put("wakeups", wakeups);
+        long first = firstSampleNanos;
+        obj.put("firstSampleMs", first < 0 ? -1.0 : first / 1e6);
+        obj.put("renderUs", histogramToJson(renderHist, maxRenderNanos));
+        obj.put("writeUs", histogramToJson(writeHist, maxWriteNanos));
+        return obj;
+    }
+
+    private static JSONObject histogramToJson(int[] hist, long maxNanos) throws JSONException {
+        int[] copy = hist.clone();
+        long total = 0;
+        JSONArray buckets = new JSONArray();
+        for (int count : copy) {
+            total += count;
+            buckets.put(count);
+        }
+
+        JSONObject obj = new JSONObject();
+        obj.put("p50", percentile(copy, total, 0.50));
+        obj.put("p95", percentile(copy, total, 0.95));
+        obj.put("p99", percentile(copy, total, 0.99));
+        obj.put("max", maxNanos / 1000L);
+        obj.put("log2Buckets", buckets);
+        return obj;
+    }
+
+    // Upper bound (in us) of the bucket that contains the requested rank
+    static long percentile(int[] hist, long total, double q) {
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(q * total);
+        long seen = 0;
+        for (int i = 0; i < hist.length; i++) {
+            seen += hist[i];
+            if (seen >= rank) return 1L << (i + 1);
+        }
+        return 1L << hist.length;
+    }
+}
@@ -0,0 +1,75 @@
+package com.starnoct.sleepsounds;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Notices render pipelines that stopped making progress: a write that failed and ended the
+ * loop, an output invalidated by a route change, a write or a decoder that never returns.
+ *
+ * Render threads already publish the frames they have written for {@link EngineMetrics}.
+ * The watchdog only compares that counter between checks on the service's thread, so
+ * detection adds nothing to the render loop. A pipeline without progress across a whole
+ * interval is recovered; one that still makes none after {@link #MAX_ATTEMPTS} recoveries
+ * is given up.
+ */
+final class RenderWatchdog {
+
+    static final long CHECK_INTERVAL_MS = 1500L;
+    static final int MAX_ATTEMPTS = 3;
+
+    static final int HEALTHY = 0;
+    static final int RECOVER = 1;
+    static final int GIVE_UP = 2;
+
+    interface Pipeline {
+        /**
+         * Frames handed to the output so far; only ever grows while the pipeline plays.
+         */
+        long framesWritten();
+
+        /**
+         * Whether the pipeline should be writing now. False while it waits for an output.
+         */
+        boolean expectsProgress();
+    }
+
+    // Per pipeline: frames at the last check, recoveries since it last made progress
+    private final Map<Pipeline, long[]> seen = new HashMap<>();
+
+    /**
+     * Compares a pipeline against the previous check. The first check of a pipeline only
+     * records where it stands.
+     *
+     * @return {@link #HEALTHY}, {@link #RECOVER} or {@link #GIVE_UP}
+     */
+    int check(Pipeline pipeline) {
+        final long frames = pipeline.framesWritten();
+        final long[] state = seen.get(pipeline);
+        if (state == null || !pipeline.expectsProgress()) {
+            seen.put(pipeline, new long[]{frames, 0L});
+            return HEALTHY;
+        }
+        if (frames != state[0]) {
+            state[0] = frames;
+            state[1] = 0L;
+            return HEALTHY;
+        }
+        return ++state[1] > MAX_ATTEMPTS ? GIVE_UP : RECOVER;
+    }
+
+    /**
+     * Drops pipelines that are no longer playing.
+     */
+    void retainAll(Collection<?> live) {
+        for (Iterator<Pipeline> it = seen.keySet().iterator(); it.hasNext(); ) {
+            if (!live.contains(it.next())) it.remove();
+        }
+    }
+
+    void clear() {
+        seen.clear();
+    }
+}
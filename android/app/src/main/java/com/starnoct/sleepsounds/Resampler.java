@@ -0,0 +1,287 @@
+package com.starnoct.sleepsounds;
+
+import java.util.Arrays;
+
+/**
+ * Windowed-sinc polyphase sample-rate converter for decoded clips.
+ *
+ * Clips are converted once, right after decoding, to the rate the output runs at, so the
+ * mixer path never has to resample per callback. The rate ratio is reduced to L/M; each of
+ * the L filter phases holds {@link Quality#taps} Kaiser-windowed sinc coefficients designed
+ * at construction. Ratios with more than {@link #MAX_PHASES} phases round the position to
+ * the nearest of {@link #MAX_PHASES} phases, which stays far below 16-bit resolution.
+ */
+final class Resampler {
+
+    /**
+     * Filter length and stopband trade-offs. Longer filters cost proportionally more CPU
+     * per output sample and keep more of the top octave.
+     */
+    static final class Quality {
+        static final Quality FAST = new Quality(8, 0.80, 5.0);
+        static final Quality BALANCED = new Quality(16, 0.90, 7.0);
+        static final Quality HIGH = new Quality(32, 0.95, 9.0);
+
+        // Taps per phase when upsampling; downsampling widens the filter by the ratio
+        final int taps;
+        // Cutoff as a fraction of the lower of the two Nyquist frequencies
+        final double passband;
+        final double kaiserBeta;
+
+        Quality(int taps, double passband, double kaiserBeta) {
+            this.taps = taps;
+            this.passband = passband;
+            this.kaiserBeta = kaiserBeta;
+        }
+    }
+
+    static final int MAX_PHASES = 1024;
+
+    private final int up;
+    private final int down;
+    private final int phases;
+    private final int taps;
+    // phases * taps, phase-major
+    private final float[] coeffs;
+
+    Resampler(int inRate, int outRate, Quality quality) {
+        if (inRate <= 0 || outRate <= 0) {
+            throw new IllegalArgumentException("Invalid rates " + inRate + " -> " + outRate);
+        }
+        final int g = gcd(inRate, outRate);
+        up = outRate / g;
+        down = inRate / g;
+        phases = Math.min(up, MAX_PHASES);
+
+        final double scale = Math.min(1.0, (double) outRate / inRate) * quality.passband;
+        taps = 2 * (int) Math.ceil(quality.taps / (2.0 * Math.min(1.0, (double) outRate / inRate)));
+        coeffs = new float[phases * taps];
+
+        final double half = taps / 2.0;
+        final double i0Beta = besselI0(quality.kaiserBeta);
+        for (int p = 0; p < phases; p++) {
+            final double frac = (double) p / phases;
+            double sum = 0.0;
+            for (int k = 0; k < taps; k++) {
+                // Time of tap k relative to the output position, in input samples
+                final double t = k - half + 1.0 - frac;
+                final double x = t / half;
+                final double window = Math.abs(x) >= 1.0 ? 0.0
+                        : besselI0(quality.kaiserBeta * Math.sqrt(1.0 - x * x)) / i0Beta;
+                final double c = scale * sinc(scale * t) * window;
+                coeffs[p * taps + k] = (float) c;
+                sum += c;
+            }
+            // Unity gain at DC for every phase, so slow content never picks up a ripple
+            for (int k = 0; k < taps; k++) {
+                coeffs[p * taps + k] = (float) (coeffs[p * taps + k] / sum);
+            }
+        }
+    }
+
+    /**
+     * Returns {@code clip} converted to {@code outRate}, or the clip itself if it already is.
+     */
+    static PcmClip resample(PcmClip clip, int outRate, Quality quality) {
+        if (clip.sampleRate == outRate || clip.frames == 0) return clip;
+        final Resampler resampler = new Resampler(clip.sampleRate, outRate, quality);
+        final int frames = resampler.outputFrames(clip.frames);
+        final short[] out = new short[frames * 2];
+        resampler.process(clip.samples, clip.frames, out, frames);
+        return new PcmClip(out, frames, outRate);
+    }
+
+    int outputFrames(int inputFrames) {
+        return (int) (((long) inputFrames * up + down - 1) / down);
+    }
+
+    /**
+     * Converts interleaved stereo {@code in} into {@code outFrames} frames of {@code out}.
+     * Reads beyond either end of the input repeat the edge frame.
+     */
+    void process(short[] in, int inFrames, short[] out, int outFrames) {
+        convert(in, 0L, inFrames, 0L, out, 0, outFrames);
+    }
+
+    /**
+     * Converts output frames {@code firstOut} onwards of a longer stream into {@code out} from
+     * frame {@code outAt}. {@code in} holds the stream's input frames from {@code inFirst};
+     * reads beyond either end of that window repeat its edge frame.
+     */
+    private void convert(short[] in, long inFirst, int inFrames, long firstOut, short[] out, int outAt, int count) {
+        final int taps = this.taps;
+        final int lead = taps / 2 - 1;
+        final int last = inFrames - 1;
+        for (int n = 0; n < count; n++) {
+            final long t = (firstOut + n) * down;
+            long base = t / up;
+            final long rem = t - base * up;
+            int phase = phases == up ? (int) rem : (int) ((rem * phases + up / 2) / up);
+            if (phase == phases) {
+                phase = 0;
+                base++;
+            }
+
+            final int c0 = phase * taps;
+            final int first = (int) (base - lead - inFirst);
+            float l = 0f;
+            float r = 0f;
+            if (first >= 0 && first + taps - 1 <= last) {
+                for (int k = 0, i = first * 2; k < taps; k++, i += 2) {
+                    final float c = coeffs[c0 + k];
+                    l += c * in[i];
+                    r += c * in[i + 1];
+                }
+            } else {
+                for (int k = 0; k < taps; k++) {
+                    final int i = Math.max(0, Math.min(last, first + k)) * 2;
+                    final float c = coeffs[c0 + k];
+                    l += c * in[i];
+                    r += c * in[i + 1];
+                }
+            }
+            out[(outAt + n) * 2] = OutputStage.toPcm16(l);
+            out[(outAt + n) * 2 + 1] = OutputStage.toPcm16(r);
+        }
+    }
+
+    /**
+     * Converts a seamless loop fed in chunks, with the filter wrapping from the loop's end
+     * back to its start, so the converted loop is seamless too. Only a chunk and a filter
+     * length are held, whatever the loop's length.
+     *
+     * The converted loop starts half a filter length into the original; as a loop it plays
+     * exactly the same. Its length is {@link #outputFrames} of the frames fed, known only
+     * once {@link #finish} is called.
+     */
+    static final class LoopStream {
+        private final Resampler resampler;
+        private final int lead;
+        // The loop's first frames, fed again after its last
+        private final short[] head;
+        private int headFrames;
+        private short[] window = new short[0];
+        // Input frame the window starts at; it always ends at the last frame fed
+        private long windowFirst;
+        private int windowFrames;
+        private long fed;
+        private long nextOut;
+        private int emitted;
+
+        LoopStream(int inRate, int outRate, Quality quality) {
+            resampler = new Resampler(inRate, outRate, quality);
+            lead = resampler.taps / 2 - 1;
+            // Enough for the last output's taps to reach past the loop's end in one pass
+            head = new short[(2 * resampler.taps + resampler.down / resampler.up + 2) * 2];
+            // The first output whose taps all fall inside the loop
+            nextOut = ((long) lead * resampler.up + resampler.down - 1) / resampler.down;
+        }
+
+        /**
+         * Length of the converted loop once {@code loopFrames} frames have been fed.
+         */
+        int outputFrames(int loopFrames) {
+            return resampler.outputFrames(loopFrames);
+        }
+
+        /**
+         * Room {@code out} needs past {@code outAt} for a feed of {@code frames}, or for
+         * {@link #finish} with {@code frames} of 0.
+         */
+        int maxOutput(int frames) {
+            return resampler.outputFrames(frames + resampler.taps) + 1;
+        }
+
+        /**
+         * Appends the next {@code frames} frames of the loop, from frame {@code from} of
+         * {@code in}, and converts all it can.
+         *
+         * @return frames written to {@code out} from frame {@code outAt}
+         */
+        int feed(short[] in, int from, int frames, short[] out, int outAt) {
+            if (headFrames * 2 < head.length) {
+                final int n = Math.min(frames, head.length / 2 - headFrames);
+                System.arraycopy(in, from * 2, head, headFrames * 2, n * 2);
+                headFrames += n;
+            }
+            append(in, from, frames);
+            return drain(out, outAt, Integer.MAX_VALUE);
+        }
+
+        /**
+         * Ends the loop: converts the frames whose filter wraps around to its start.
+         *
+         * @return frames written to {@code out} from frame {@code outAt}
+         */
+        int finish(short[] out, int outAt) {
+            if (fed == 0) return 0;
+            final int total = resampler.outputFrames((int) fed);
+            int written = 0;
+            // A loop shorter than the filter wraps more than once
+            while (emitted < total) {
+                append(head, 0, headFrames);
+                written += drain(out, outAt + written, total);
+            }
+            return written;
+        }
+
+        private void append(short[] in, int from, int frames) {
+            // Input before the next output's first tap is no longer needed
+            final long needed = nextOut * resampler.down / resampler.up - lead;
+            final int drop = (int) Math.max(0L, Math.min(windowFrames, needed - windowFirst));
+            if (drop > 0) {
+                System.arraycopy(window, drop * 2, window, 0, (windowFrames - drop) * 2);
+                windowFirst += drop;
+                windowFrames -= drop;
+            }
+            if ((windowFrames + frames) * 2 > window.length) {
+                window = Arrays.copyOf(window, (windowFrames + frames) * 2);
+            }
+            System.arraycopy(in, from * 2, window, windowFrames * 2, frames * 2);
+            windowFrames += frames;
+            fed += frames;
+        }
+
+        private int drain(short[] out, int outAt, int total) {
+            int count = 0;
+            while (emitted + count < total) {
+                // One past the last tap; a rounded-up phase moves the taps one frame on
+                final long end = (nextOut + count) * resampler.down / resampler.up + 1 - lead + resampler.taps;
+                if (end > windowFirst + windowFrames) break;
+                count++;
+            }
+            resampler.convert(window, windowFirst, windowFrames, nextOut, out, outAt, count);
+            nextOut += count;
+            emitted += count;
+            return count;
+        }
+    }
+
+    private static double sinc(double x) {
+        if (Math.abs(x) < 1e-9) return 1.0;
+        final double px = Math.PI * x;
+        return Math.sin(px) / px;
+    }
+
+    // Zeroth-order modified Bessel function of the first kind, by its power series
+    private static double besselI0(double x) {
+        double sum = 1.0;
+        double term = 1.0;
+        final double q = x * x / 4.0;
+        for (int k = 1; k < 50; k++) {
+            term *= q / ((double) k * k);
+            sum += term;
+            if (term < sum * 1e-12) break;
+        }
+        return sum;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            final int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
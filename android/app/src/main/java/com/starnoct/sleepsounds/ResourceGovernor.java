@@ -0,0 +1,414 @@
+package com.starnoct.sleepsounds;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Admission control for playing layers: every layer is charged an estimated memory and CPU
+ * cost, and a new layer is only started while the totals stay inside the budgets.
+ *
+ * Costs are planning figures, not measurements: per layer kind, scaled by the native rate,
+ * from the render-budget test and heap dumps of each path. When a layer does not fit, the
+ * governor degrades before it refuses: a granular layer falls back to its asset's packed or
+ * cached loop, then the engine renders reduced-rate capable sources at half rate. Only when
+ * neither is enough is the layer refused, with a reason JS can show.
+ *
+ * Memory pressure from onTrimMemory halves the memory budget for {@link #PRESSURE_HOLD_MS};
+ * after that the system's low-memory flag decides, so a single trim does not hold forever.
+ *
+ * Budgets default from the device's memory class and can be overridden from JS. The ledger
+ * is written by AudioService on the main thread; the plugin reads it to reject a play up
+ * front, so access is synchronized.
+ */
+final class ResourceGovernor {
+
+    private static final String PREFS = "AudioPrefs";
+    private static final String MEMORY_KEY = "BUDGET_MEMORY_MB";
+    private static final String CPU_KEY = "BUDGET_CPU_PERCENT";
+    private static final String LAYERS_KEY = "BUDGET_MAX_LAYERS";
+
+    private static final long MB = 1L << 20;
+    private static final int REFERENCE_RATE = 48000;
+
+    // Per-layer planning costs at the reference rate; CPU in per mille of one core
+    private static final long OUTPUT_BYTES = 1024L * 1024L; // 2 s float track plus render buffers
+    private static final long MEDIA_PLAYER_BYTES = 2L * MB; // extractor and codec buffers
+    private static final long SYNTH_STATE_BYTES = 128L * 1024L;
+    private static final int LOOP_CPU = 4;
+    private static final int PATCH_CPU = 2;
+    private static final int PATCH_NODE_CPU = 2;
+    private static final int TEXTURE_CPU = 30;
+    private static final int GRANULAR_CPU = 25;
+    private static final int MEDIA_PLAYER_CPU = 15;
+    private static final int EVENTS_CPU = 3;
+
+    // While memory is critically low, new layers get this share of the memory budget
+    private static final float PRESSURE_MEMORY_SHARE = 0.5f;
+    static final long PRESSURE_HOLD_MS = 60_000L;
+
+    static final int KIND_FILE = 0;
+    static final int KIND_LOOP = 1;
+    static final int KIND_SYNTH = 2;
+    static final int KIND_GRANULAR = 3;
+    static final int KIND_EVENTS = 4;
+
+    // Elapsed time, counting deep sleep; tests pass their own
+    interface Clock {
+        long nowMs();
+    }
+
+    /**
+     * A layer's estimated cost. {@code reducibleCpu} is the part that halves when the engine
+     * renders at reduced rate.
+     */
+    static final class Cost {
+        final int kind;
+        final long memoryBytes;
+        final int cpu;
+        final int reducibleCpu;
+
+        Cost(int kind, long memoryBytes, int cpu, int reducibleCpu) {
+            this.kind = kind;
+            this.memoryBytes = memoryBytes;
+            this.cpu = cpu;
+            this.reducibleCpu = reducibleCpu;
+        }
+
+        int cpuAt(boolean reducedRate) {
+            return reducedRate ? cpu - reducibleCpu / 2 : cpu;
+        }
+    }
+
+    /**
+     * Outcome of {@link #admit}: whether the layer may start, at which cost (a degraded
+     * rendering may have been chosen), whether the engine has to render at reduced rate for
+     * it, and otherwise why not.
+     */
+    static final class Decision {
+        final boolean admitted;
+        final Cost cost;
+        final boolean reducedRate;
+        final boolean degraded;
+        final String reason;
+
+        private Decision(boolean admitted, Cost cost, boolean reducedRate, boolean degraded, String reason) {
+            this.admitted = admitted;
+            this.cost = cost;
+            this.reducedRate = reducedRate;
+            this.degraded = degraded;
+            this.reason = reason;
+        }
+
+        Decision asDegraded() {
+            return new Decision(admitted, cost, reducedRate, true, reason);
+        }
+    }
+
+    private static volatile ResourceGovernor instance;
+
+    static ResourceGovernor getInstance(Context context) {
+        ResourceGovernor governor = instance;
+        if (governor == null) {
+            synchronized (ResourceGovernor.class) {
+                governor = instance;
+                if (governor == null) {
+                    governor = new ResourceGovernor(context.getApplicationContext());
+                    instance = governor;
+                }
+            }
+        }
+        return governor;
+    }
+
+    private final SharedPreferences prefs;
+    private final ActivityManager activityManager;
+    private final Clock clock;
+    private final long defaultMemoryBytes;
+    private final int defaultCpu;
+    private final int defaultMaxLayers;
+
+    // Guarded by this
+    private final Map<String, Cost> layers = new HashMap<>();
+    private boolean reducedRate = false;
+    private boolean memoryPressure = false;
+    private long pressureSinceMs = 0L;
+    private int refusals = 0;
+    private int degradations = 0;
+    private int retired = 0;
+
+    private ResourceGovernor(Context context) {
+        this.prefs = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        final ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        this.activityManager = am;
+        this.clock = SystemClock::elapsedRealtime;
+        final boolean lowRam = am != null && am.isLowRamDevice();
+        final int memoryClassMb = am != null ? am.getMemoryClass() : 64;
+        // A quarter of the heap class leaves the WebView and the rest of the app their room
+        this.defaultMemoryBytes = Math.min(64L, Math.max(16L, memoryClassMb / 4)) * MB;
+        this.defaultCpu = lowRam ? 150 : 300;
+        this.defaultMaxLayers = lowRam ? 4 : 8;
+    }
+
+    ResourceGovernor(long memoryBytes, int cpu, int maxLayers) {
+        this(memoryBytes, cpu, maxLayers, () -> System.nanoTime() / 1_000_000L);
+    }
+
+    ResourceGovernor(long memoryBytes, int cpu, int maxLayers, Clock clock) {
+        this.prefs = null;
+        this.activityManager = null;
+        this.clock = clock;
+        this.defaultMemoryBytes = memoryBytes;
+        this.defaultCpu = cpu;
+        this.defaultMaxLayers = maxLayers;
+    }
+
+    long getMemoryBudgetBytes() {
+        return prefs == null ? defaultMemoryBytes : prefs.getLong(MEMORY_KEY, defaultMemoryBytes / MB) * MB;
+    }
+
+    int getCpuBudget() {
+        return prefs == null ? defaultCpu : prefs.getInt(CPU_KEY, defaultCpu / 10) * 10;
+    }
+
+    int getMaxLayers() {
+        return prefs == null ? defaultMaxLayers : prefs.getInt(LAYERS_KEY, defaultMaxLayers);
+    }
+
+    /**
+     * Overrides budgets; a non-positive value restores that budget's device default.
+     *
+     * @param cpuPercent percent of one core
+     */
+    void setBudgets(int memoryMb, int cpuPercent, int maxLayers) {
+        if (prefs == null) return;
+        final SharedPreferences.Editor editor = prefs.edit();
+        if (memoryMb > 0) editor.putLong(MEMORY_KEY, memoryMb);
+        else editor.remove(MEMORY_KEY);
+        if (cpuPercent > 0) editor.putInt(CPU_KEY, cpuPercent);
+        else editor.remove(CPU_KEY);
+        if (maxLayers > 0) editor.putInt(LAYERS_KEY, maxLayers);
+        else editor.remove(LAYERS_KEY);
+        editor.apply();
+    }
+
+    /**
+     * Estimates a layer's cost.
+     *
+     * @param kind one of the KIND_ constants, as AudioService resolved the URL
+     * @param flavor synth flavor (KIND_SYNTH only), used to tell plain noise from textures
+     * @param sampleRate the native render rate
+     */
+    static Cost estimate(int kind, String flavor, int sampleRate) {
+        final float rateScale = (float) sampleRate / REFERENCE_RATE;
+        final long output = (long) (OUTPUT_BYTES * rateScale);
+        switch (kind) {
+            case KIND_LOOP:
+                // Loop pages are clean file mappings the kernel can drop; only the output counts
+                return new Cost(kind, output, Math.round(LOOP_CPU * rateScale), 0);
+            case KIND_SYNTH:
+                return synthCost(flavor == null ? "white" : flavor, output, rateScale);
+            case KIND_GRANULAR: {
+                // The excerpt is held as 16-bit stereo at the render rate
+                final long excerpt = (long) GranularSource.EXCERPT_FRAMES * 4L * sampleRate / 44100;
+                return new Cost(kind, output + excerpt, Math.round(GRANULAR_CPU * rateScale), 0);
+            }
+            case KIND_EVENTS:
+                // Up to four 8 s clips as 16-bit stereo; an output is only bound during an event
+                return new Cost(kind, 4L * 8L * 44100L * 4L, EVENTS_CPU, 0);
+            default:
+                return new Cost(KIND_FILE, MEDIA_PLAYER_BYTES, MEDIA_PLAYER_CPU, 0);
+        }
+    }
+
+    // Resolves the flavor the way SynthSources.create does
+    private static Cost synthCost(String flavor, long output, float rateScale) {
+        final boolean rain = flavor.contains("rain") || flavor.contains("downpour");
+        final boolean surf = !rain && (flavor.contains("surf") || flavor.contains("wave") || flavor.contains("ocean"));
+        SynthPatch patch = PatchRegistry.getInstance().get(flavor);
+        if (patch == null && !rain && !surf && !flavor.contains("fire")) {
+            patch = SynthPatch.builtIn(flavor);
+        }
+        if (patch != null) {
+            final int cpu = Math.round((PATCH_CPU + PATCH_NODE_CPU * patch.nodeCount()) * rateScale);
+            return new Cost(KIND_SYNTH, output + SYNTH_STATE_BYTES, cpu, patch.allowsReducedRate() ? cpu : 0);
+        }
+        // Rain and fire are broadband; only surf may render at half rate
+        final int cpu = Math.round(TEXTURE_CPU * rateScale);
+        return new Cost(KIND_SYNTH, output + SYNTH_STATE_BYTES, cpu, surf ? cpu : 0);
+    }
+
+    /**
+     * Decides whether a layer with {@code cost} may join the ones already charged. Does not
+     * charge it; call {@link #charge} once the layer has actually started.
+     */
+    synchronized Decision admit(String id, Cost cost) {
+        if (layers.size() >= getMaxLayers() && !layers.containsKey(id)) {
+            return refuse(cost, tooManyLayers());
+        }
+        long memory = cost.memoryBytes;
+        int fullCpu = cost.cpu;
+        int reducedCpu = cost.cpuAt(true);
+        for (Map.Entry<String, Cost> layer : layers.entrySet()) {
+            if (layer.getKey().equals(id)) continue;
+            memory += layer.getValue().memoryBytes;
+            fullCpu += layer.getValue().cpu;
+            reducedCpu += layer.getValue().cpuAt(true);
+        }
+        return check(cost, memory, fullCpu, reducedCpu, "another layer");
+    }
+
+    /**
+     * Decides whether a scene may take over from the charged layers, before any of them is
+     * retired. Layers the scene keeps count at their charge, its new layers at {@code costs},
+     * and every other charged layer is left out: it is outgoing, or already fading out. Does
+     * not charge anything.
+     *
+     * @return a decision per layer, all refused with the same reason if the scene does not fit
+     */
+    synchronized Decision[] admitScene(String[] ids, Cost[] costs) {
+        final Cost[] scene = new Cost[ids.length];
+        final Set<String> counted = new HashSet<>();
+        long memory = 0L;
+        int fullCpu = 0;
+        int reducedCpu = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] == null) continue;
+            final Cost charged = layers.get(ids[i]);
+            scene[i] = charged != null ? charged : costs[i];
+            if (!counted.add(ids[i])) continue;
+            memory += scene[i].memoryBytes;
+            fullCpu += scene[i].cpu;
+            reducedCpu += scene[i].cpuAt(true);
+        }
+        final Decision whole = counted.size() > getMaxLayers() ? refuse(null, tooManyLayers())
+                : check(null, memory, fullCpu, reducedCpu, "this scene");
+        final Decision[] decisions = new Decision[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            decisions[i] = new Decision(whole.admitted, scene[i], whole.reducedRate, whole.degraded, whole.reason);
+        }
+        return decisions;
+    }
+
+    private String tooManyLayers() {
+        return "Too many layers: at most " + getMaxLayers() + " can play at once";
+    }
+
+    private Decision check(Cost cost, long memory, int fullCpu, int reducedCpu, String what) {
+        final long memoryBudget = underMemoryPressure()
+                ? (long) (getMemoryBudgetBytes() * PRESSURE_MEMORY_SHARE) : getMemoryBudgetBytes();
+        if (memory > memoryBudget) {
+            return refuse(cost, "Not enough memory for " + what + " (needs " + (memory + MB - 1) / MB
+                    + " of " + memoryBudget / MB + " MB)");
+        }
+        if (fullCpu <= getCpuBudget()) return new Decision(true, cost, false, false, null);
+        if (reducedCpu <= getCpuBudget()) return new Decision(true, cost, true, true, null);
+        return refuse(cost, "Not enough CPU for " + what + " (needs " + (reducedCpu + 5) / 10
+                + "% of a core, budget " + getCpuBudget() / 10 + "%)");
+    }
+
+    private static Decision refuse(Cost cost, String reason) {
+        return new Decision(false, cost, false, false, reason);
+    }
+
+    synchronized void charge(String id, Decision decision) {
+        layers.put(id, decision.cost);
+        if (decision.degraded) degradations++;
+    }
+
+    /**
+     * Moves a layer's charge to a key of its own, so its sound id can start again while the
+     * old layer is still fading out.
+     *
+     * @return the key to {@link #release} once the layer has stopped, or null if it was not charged
+     */
+    synchronized String retire(String id) {
+        final Cost cost = layers.remove(id);
+        if (cost == null) return null;
+        final String key = id + "#retiring-" + (++retired);
+        layers.put(key, cost);
+        return key;
+    }
+
+    synchronized void release(String id) {
+        layers.remove(id);
+    }
+
+    synchronized void releaseAll() {
+        layers.clear();
+    }
+
+    synchronized void recordRefusal() {
+        refusals++;
+    }
+
+    /**
+     * Whether the charged layers still need the engine at reduced rate. Once enough layers
+     * have stopped, sources go back to full rate.
+     */
+    synchronized boolean needsReducedRate() {
+        int cpu = 0;
+        for (Cost layer : layers.values()) cpu += layer.cpu;
+        reducedRate = cpu > getCpuBudget();
+        return reducedRate;
+    }
+
+    /**
+     * Tracks memory pressure from {@link ComponentCallbacks2#onTrimMemory}.
+     */
+    synchronized void onTrimMemory(int level) {
+        // UI_HIDDEN only says the activity went away; it says nothing about memory
+        if (level == ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) return;
+        memoryPressure = level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW;
+        pressureSinceMs = clock.nowMs();
+    }
+
+    // The system only calls back when pressure rises, so once the hold is over ask it again
+    private boolean underMemoryPressure() {
+        if (!memoryPressure || clock.nowMs() - pressureSinceMs < PRESSURE_HOLD_MS) return memoryPressure;
+        if (activityManager != null) {
+            final ActivityManager.MemoryInfo info = new ActivityManager.MemoryInfo();
+            activityManager.getMemoryInfo(info);
+            if (info.lowMemory) {
+                pressureSinceMs = clock.nowMs();
+                return true;
+            }
+        }
+        memoryPressure = false;
+        return false;
+    }
+
+    /**
+     * Budgets, current usage and counters, for getEngineMetrics.
+     */
+    synchronized JSONObject snapshot() throws JSONException {
+        long memory = 0L;
+        int cpu = 0;
+        for (Cost layer : layers.values()) {
+            memory += layer.memoryBytes;
+            cpu += layer.cpuAt(reducedRate);
+        }
+        final JSONObject ret = new JSONObject();
+        ret.put("memoryBudgetMb", getMemoryBudgetBytes() / MB);
+        ret.put("cpuBudgetPercent", getCpuBudget() / 10);
+        ret.put("maxLayers", getMaxLayers());
+        ret.put("layers", layers.size());
+        ret.put("memoryMb", (double) memory / MB);
+        ret.put("cpuPercent", cpu / 10.0);
+        ret.put("reducedRate", reducedRate);
+        ret.put("memoryPressure", underMemoryPressure());
+        ret.put("degradations", degradations);
+        ret.put("refusals", refusals);
+        return ret;
+    }
+}
@@ -7,6 +7,11 @@ import android.content.Intent;
 /**
  * SleepTimerReceiver handles atomic wakeup events from the Android AlarmManager.
  * Its sole responsibility is to receive the "STOP" intent and stop the AudioService.
+ *
+ * The sleep timer itself runs on the render engine's sample clock (see AudioService#armSleepTimer),
+ * which fades out gracefully without a wakeup. The stopping alarm is scheduled slightly after the
+ * target and acts as a watchdog: it only finds a running service if that path failed. The alarm
+ * clock shown in the status bar is set at the target itself and its broadcast is ignored here.
  * 
  * IMPORTANT: This receiver implements a STOP-ONLY policy to comply with Android 15
  * background service restrictions. It will NOT start a new service instance.
@@ -19,6 +24,8 @@ import android.content.Intent;
 public class SleepTimerReceiver extends BroadcastReceiver {
     private static final String TAG = "SleepTimerReceiver";
     public static final String ACTION_STOP_SLEEP_TIMER = "com.starnoct.sleepsounds.ACTION_STOP_SLEEP_TIMER";
+    // Operation of the displayed alarm clock; AlarmManager requires one, the watchdog does the work
+    public static final String ACTION_SLEEP_TIMER_DUE = "com.starnoct.sleepsounds.ACTION_SLEEP_TIMER_DUE";
 
     @Override
     public void onReceive(Context context, Intent intent) {
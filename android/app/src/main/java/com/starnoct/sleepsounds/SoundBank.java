@@ -0,0 +1,303 @@
+package com.starnoct.sleepsounds;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.util.Log;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The packed sound bank: the loop region of every shorter bundled sound in one uncompressed
+ * asset, as 16-bit PCM or IMA ADPCM, built by the packSoundBank task (sound-manifest.gradle
+ * documents the layout).
+ *
+ * The bank is memory-mapped once. Opening a sound is a binary search of the index plus a
+ * slice of the mapping: no file descriptor, no extractor, no codec. Pages are only read
+ * when a {@link PcmLoopSource} first plays through them. Without the asset (or when a build
+ * compressed it) the bank is empty and sounds play from their MP3s as before.
+ */
+final class SoundBank {
+
+    private static final String TAG = "SoundBank";
+    static final String ASSET = "sound-bank.bin";
+
+    static final int CODEC_PCM16 = 0;
+    static final int CODEC_IMA_ADPCM = 1;
+
+    private static final int MAGIC = 0x53424E4B; // 'SBNK'
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+    private static final int ENTRY_BYTES = 32;
+    private static final int PAGE = 4096;
+    private static final int BLOCK_FRAMES = 2048;
+
+    private static final int[] STEPS = {
+            7, 8, 9, 10, 11, 12, 13, 14, 16, 17, 19, 21, 23, 25, 28, 31, 34, 37, 41, 45,
+            50, 55, 60, 66, 73, 80, 88, 97, 107, 118, 130, 143, 157, 173, 190, 209, 230, 253, 279, 307,
+            337, 371, 408, 449, 494, 544, 598, 658, 724, 796, 876, 963, 1060, 1166, 1282, 1411, 1552, 1707, 1878, 2066,
+            2272, 2499, 2749, 3024, 3327, 3660, 4026, 4428, 4871, 5358, 5894, 6484, 7132, 7845, 8630, 9493, 10442, 11487, 12635, 13899,
+            15289, 16818, 18500, 20350, 22385, 24623, 27086, 29794, 32767,
+    };
+    private static final int[] INDEX_STEP = {-1, -1, -1, -1, 2, 4, 6, 8, -1, -1, -1, -1, 2, 4, 6, 8};
+
+    private static final SoundBank EMPTY = new SoundBank(ByteBuffer.allocate(0), 0);
+    private static volatile SoundBank instance;
+
+    /**
+     * One packed loop. Decodes straight from its slice of the mapping; safe to share between
+     * players because every read is absolute.
+     */
+    static final class Entry {
+        final String assetPath;
+        final int codec;
+        final int channels;
+        final int sampleRate;
+        final int frames;
+        final int blockFrames;
+        // Where the loop starts in the sound's gapless stream
+        final int firstFrame;
+        private final ByteBuffer data;
+
+        Entry(String assetPath, int codec, int channels, int sampleRate, int frames, int blockFrames,
+              int firstFrame, ByteBuffer data) {
+            this.assetPath = assetPath;
+            this.codec = codec;
+            this.channels = channels;
+            this.sampleRate = sampleRate;
+            this.frames = frames;
+            this.blockFrames = blockFrames;
+            this.firstFrame = firstFrame;
+            this.data = data;
+        }
+
+        int blockCount() {
+            return (frames + blockFrames - 1) / blockFrames;
+        }
+
+        /**
+         * Decodes one block into interleaved stereo (mono is duplicated).
+         *
+         * @param dst at least {@code blockFrames * 2} samples
+         * @return frames decoded; only the last block may be short
+         */
+        int decodeBlock(int block, short[] dst) {
+            final int first = block * blockFrames;
+            final int count = Math.min(blockFrames, frames - first);
+            if (codec == CODEC_PCM16) {
+                int at = first * channels * 2;
+                for (int f = 0; f < count; f++) {
+                    final short left = data.getShort(at);
+                    dst[f * 2] = left;
+                    dst[f * 2 + 1] = channels > 1 ? data.getShort(at + 2) : left;
+                    at += channels * 2;
+                }
+                return count;
+            }
+
+            final int channelBytes = 4 + blockFrames / 2;
+            final int base = block * channels * channelBytes;
+            for (int c = 0; c < Math.min(channels, 2); c++) {
+                final int header = base + c * channelBytes;
+                int predictor = data.getShort(header);
+                int index = data.get(header + 2) & 0xFF;
+                if (index > 88) index = 88;
+                for (int f = 0; f < count; f++) {
+                    final int packed = data.get(header + 4 + (f >> 1)) & 0xFF;
+                    final int nibble = (f & 1) == 0 ? packed & 0x0F : packed >> 4;
+                    final int step = STEPS[index];
+                    int delta = step >> 3;
+                    if ((nibble & 4) != 0) delta += step;
+                    if ((nibble & 2) != 0) delta += step >> 1;
+                    if ((nibble & 1) != 0) delta += step >> 2;
+                    predictor += (nibble & 8) != 0 ? -delta : delta;
+                    if (predictor > 32767) predictor = 32767;
+                    else if (predictor < -32768) predictor = -32768;
+                    index += INDEX_STEP[nibble];
+                    if (index < 0) index = 0;
+                    else if (index > 88) index = 88;
+                    dst[f * 2 + c] = (short) predictor;
+                }
+            }
+            if (channels == 1) {
+                for (int f = 0; f < count; f++) dst[f * 2 + 1] = dst[f * 2];
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Returns the process-wide bank, mapping it on first use.
+     */
+    static SoundBank get(Context context) {
+        SoundBank bank = instance;
+        if (bank == null) {
+            synchronized (SoundBank.class) {
+                bank = instance;
+                if (bank == null) {
+                    bank = load(context.getApplicationContext());
+                    instance = bank;
+                }
+            }
+        }
+        return bank;
+    }
+
+    private static SoundBank load(Context context) {
+        try (AssetFileDescriptor afd = context.getAssets().openFd(ASSET);
+             FileInputStream in = afd.createInputStream()) {
+            // The mapping stays valid after the channel is closed
+            return parse(in.getChannel().map(FileChannel.MapMode.READ_ONLY, afd.getStartOffset(), afd.getLength()));
+        } catch (FileNotFoundException e) {
+            // Unlike the small manifest, a compressed bank is not worth inflating onto the heap
+            return EMPTY;
+        } catch (IOException | IllegalArgumentException e) {
+            Log.w(TAG, "Ignoring " + ASSET, e);
+            return EMPTY;
+        }
+    }
+
+    /**
+     * Validates the header and index of a bank image.
+     *
+     * @throws IllegalArgumentException if it is not a bank this code can read
+     */
+    static SoundBank parse(ByteBuffer buffer) {
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("not a sound bank");
+        }
+        final int version = buffer.getShort(4) & 0xFFFF;
+        if (version != VERSION) {
+            throw new IllegalArgumentException("unsupported version " + version);
+        }
+        final int count = buffer.getShort(6) & 0xFFFF;
+        if (HEADER_BYTES + (long) count * ENTRY_BYTES > buffer.capacity()) {
+            throw new IllegalArgumentException("truncated index");
+        }
+        final long namesOffset = HEADER_BYTES + (long) count * ENTRY_BYTES;
+        for (int i = 0; i < count; i++) {
+            final int base = HEADER_BYTES + i * ENTRY_BYTES;
+            final long end = (buffer.getInt(base + 20) & 0xFFFFFFFFL) + (buffer.getInt(base + 24) & 0xFFFFFFFFL);
+            if (end > buffer.capacity()) throw new IllegalArgumentException("entry " + i + " runs past the end");
+            final long nameEnd = namesOffset + (buffer.getInt(base) & 0xFFFFFFFFL) + (buffer.getShort(base + 4) & 0xFFFF);
+            if (nameEnd > buffer.capacity()) throw new IllegalArgumentException("name of entry " + i + " runs past the end");
+        }
+        return new SoundBank(buffer, count);
+    }
+
+    /**
+     * Header, index and name of a one-entry 16-bit PCM bank, padded to the page where the
+     * samples start. Writers stream the interleaved big-endian samples right after it.
+     */
+    static ByteBuffer singleEntryHeader(String name, int channels, int sampleRate, int frames, int firstFrame) {
+        final byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        final int dataOffset = (HEADER_BYTES + ENTRY_BYTES + nameBytes.length + PAGE - 1) / PAGE * PAGE;
+        final ByteBuffer header = ByteBuffer.allocate(dataOffset);
+        header.putInt(MAGIC);
+        header.putShort((short) VERSION);
+        header.putShort((short) 1);
+        header.putInt(0);
+        header.putShort((short) nameBytes.length);
+        header.put((byte) CODEC_PCM16);
+        header.put((byte) channels);
+        header.putInt(sampleRate);
+        header.putInt(frames);
+        header.putInt(BLOCK_FRAMES);
+        header.putInt(dataOffset);
+        header.putInt(frames * channels * 2);
+        header.putInt(firstFrame);
+        header.put(nameBytes);
+        header.clear();
+        return header;
+    }
+
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int namesOffset;
+
+    private SoundBank(ByteBuffer buffer, int count) {
+        this.buffer = buffer;
+        this.count = count;
+        this.namesOffset = HEADER_BYTES + count * ENTRY_BYTES;
+    }
+
+    int size() {
+        return count;
+    }
+
+    /**
+     * Looks a sound up by its JS URL.
+     *
+     * @return the packed loop, or null when the sound is not in the bank
+     */
+    Entry find(String url) {
+        final String assetPath = url == null ? null : FilePlayer.assetPathFor(url);
+        if (assetPath == null || count == 0) return null;
+
+        final byte[] key = assetPath.getBytes(StandardCharsets.UTF_8);
+        int lo = 0;
+        int hi = count - 1;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            final int cmp = compareName(mid, key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return entry(mid, assetPath);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The entry at {@code index} in path order, e.g. the only entry of a cache file.
+     */
+    Entry entryAt(int index) {
+        if (index < 0 || index >= count) throw new IndexOutOfBoundsException("entry " + index);
+        final int base = HEADER_BYTES + index * ENTRY_BYTES;
+        final byte[] name = new byte[buffer.getShort(base + 4) & 0xFFFF];
+        final int offset = namesOffset + buffer.getInt(base);
+        for (int i = 0; i < name.length; i++) name[i] = buffer.get(offset + i);
+        return entry(index, new String(name, StandardCharsets.UTF_8));
+    }
+
+    // Unsigned byte order of the entry's name against key
+    private int compareName(int index, byte[] key) {
+        final int base = HEADER_BYTES + index * ENTRY_BYTES;
+        final int offset = namesOffset + buffer.getInt(base);
+        final int length = buffer.getShort(base + 4) & 0xFFFF;
+        final int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            final int diff = (buffer.get(offset + i) & 0xFF) - (key[i] & 0xFF);
+            if (diff != 0) return diff;
+        }
+        return length - key.length;
+    }
+
+    private Entry entry(int index, String assetPath) {
+        final int base = HEADER_BYTES + index * ENTRY_BYTES;
+        final int offset = buffer.getInt(base + 20);
+        final int length = buffer.getInt(base + 24);
+
+        // Zero-copy view of the entry's bytes
+        final ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.limit(offset + length);
+        final ByteBuffer data = view.slice();
+
+        return new Entry(assetPath,
+                buffer.get(base + 6) & 0xFF,
+                buffer.get(base + 7) & 0xFF,
+                buffer.getInt(base + 8),
+                buffer.getInt(base + 12),
+                buffer.getInt(base + 16),
+                buffer.getInt(base + 28),
+                data);
+    }
+}
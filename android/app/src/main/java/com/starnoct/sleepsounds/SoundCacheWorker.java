@@ -0,0 +1,58 @@
+package com.starnoct.sleepsounds;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.work.Constraints;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fills the {@link DecodedSoundCache} while the phone charges idle, so the first play at
+ * bedtime never waits for a decoder. WorkManager stops the job as soon as the constraints
+ * lapse; the sound being written is dropped, every finished one is kept, and the job
+ * retries later from where it stopped.
+ */
+public class SoundCacheWorker extends Worker {
+
+    private static final String TAG = "SoundCacheWorker";
+    private static final String WORK_NAME = "sound-cache-warmup";
+
+    public SoundCacheWorker(Context context, WorkerParameters params) {
+        super(context, params);
+    }
+
+    /**
+     * Schedules the daily warm-up once; later calls keep the existing schedule.
+     */
+    static void schedule(Context context) {
+        final Constraints constraints = new Constraints.Builder()
+                .setRequiresCharging(true)
+                .setRequiresDeviceIdle(true)
+                .setRequiresStorageNotLow(true)
+                .build();
+        final PeriodicWorkRequest request = new PeriodicWorkRequest.Builder(
+                SoundCacheWorker.class, 1, TimeUnit.DAYS)
+                .setConstraints(constraints)
+                .build();
+        WorkManager.getInstance(context)
+                .enqueueUniquePeriodicWork(WORK_NAME, ExistingPeriodicWorkPolicy.KEEP, request);
+    }
+
+    @Override
+    public Result doWork() {
+        final Context context = getApplicationContext();
+        try {
+            final boolean complete = DecodedSoundCache.getInstance(context).warmUp(this::isStopped);
+            return complete ? Result.success() : Result.retry();
+        } catch (Exception e) {
+            Log.w(TAG, "Sound cache warm-up failed", e);
+            return Result.retry();
+        }
+    }
+}
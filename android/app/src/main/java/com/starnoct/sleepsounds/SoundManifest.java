@@ -0,0 +1,244 @@
+package com.starnoct.sleepsounds;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * What the build learned about each bundled sound, so nothing has to be prepared at runtime
+ * to know it: format, gapless length, encoder delay/padding, integrated loudness, a gain that
+ * brings the sound to the catalog's common loudness, and loop points where it wraps seamlessly.
+ *
+ * The manifest is written by sound-manifest.gradle (which documents the layout) and stored
+ * uncompressed, so it is memory-mapped in place. Lookups binary-search the mapping directly.
+ * A missing or unreadable manifest behaves as an empty one.
+ */
+final class SoundManifest {
+
+    private static final String TAG = "SoundManifest";
+    static final String ASSET = "sound-manifest.bin";
+
+    private static final int MAGIC = 0x534E444D; // 'SNDM'
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+    private static final int ENTRY_BYTES = 40;
+
+    // Mirrors sound-manifest.gradle: the loudness every sound is levelled to. Procedural
+    // flavors are trimmed to the same target.
+    static final float TARGET_LUFS = -16f;
+
+    private static final SoundManifest EMPTY = new SoundManifest(ByteBuffer.allocate(0), 0);
+    private static volatile SoundManifest instance;
+
+    /**
+     * Facts about one sound. Frame positions count from the first frame of the gapless stream,
+     * which is what PcmDecoder produces.
+     */
+    static final class Entry {
+        final String assetPath;
+        final int sampleRate;
+        final int channels;
+        final int frames;
+        final int encoderDelay;
+        final int encoderPadding;
+        final float loudnessLufs;
+        final float peakDb;
+        final float gainDb;
+        final int loopStart;
+        final int loopEnd;
+
+        Entry(String assetPath, int sampleRate, int channels, int frames, int encoderDelay, int encoderPadding,
+              float loudnessLufs, float peakDb, float gainDb, int loopStart, int loopEnd) {
+            this.assetPath = assetPath;
+            this.sampleRate = sampleRate;
+            this.channels = channels;
+            this.frames = frames;
+            this.encoderDelay = encoderDelay;
+            this.encoderPadding = encoderPadding;
+            this.loudnessLufs = loudnessLufs;
+            this.peakDb = peakDb;
+            this.gainDb = gainDb;
+            this.loopStart = loopStart;
+            this.loopEnd = loopEnd;
+        }
+
+        long durationMs() {
+            return sampleRate > 0 ? frames * 1000L / sampleRate : 0L;
+        }
+
+        /**
+         * Linear gain that brings the sound to the common loudness without pushing its peak
+         * past the ceiling. Never above 1: MediaPlayer cannot boost, and a sound must come out
+         * equally loud whichever path plays it.
+         */
+        float gain() {
+            return (float) Math.min(1.0, Math.pow(10.0, gainDb / 20.0));
+        }
+
+        /**
+         * True when the loop points describe a usable region inside the sound.
+         */
+        boolean hasLoop() {
+            return loopStart >= 0 && loopEnd > loopStart && loopEnd <= frames;
+        }
+    }
+
+    /**
+     * Returns the process-wide manifest, mapping it on first use.
+     */
+    static SoundManifest get(Context context) {
+        SoundManifest manifest = instance;
+        if (manifest == null) {
+            synchronized (SoundManifest.class) {
+                manifest = instance;
+                if (manifest == null) {
+                    manifest = load(context.getApplicationContext());
+                    instance = manifest;
+                }
+            }
+        }
+        return manifest;
+    }
+
+    private static SoundManifest load(Context context) {
+        ByteBuffer buffer;
+        try (AssetFileDescriptor afd = context.getAssets().openFd(ASSET);
+             FileInputStream in = afd.createInputStream()) {
+            // The mapping stays valid after the channel is closed
+            buffer = in.getChannel().map(FileChannel.MapMode.READ_ONLY, afd.getStartOffset(), afd.getLength());
+        } catch (FileNotFoundException e) {
+            // Missing, or compressed by a build that did not keep it stored: read it into memory
+            buffer = readFully(context);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not map " + ASSET, e);
+            buffer = readFully(context);
+        }
+        if (buffer == null) return EMPTY;
+
+        try {
+            return parse(buffer);
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Ignoring " + ASSET + ": " + e.getMessage());
+            return EMPTY;
+        }
+    }
+
+    private static ByteBuffer readFully(Context context) {
+        try (InputStream in = context.getAssets().open(ASSET)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] chunk = new byte[4096];
+            int n;
+            while ((n = in.read(chunk)) > 0) {
+                out.write(chunk, 0, n);
+            }
+            return ByteBuffer.wrap(out.toByteArray());
+        } catch (IOException e) {
+            return null; // No manifest in this build; every lookup misses
+        }
+    }
+
+    /**
+     * Validates the header and name table of a manifest image.
+     *
+     * @throws IllegalArgumentException if it is not a manifest this code can read
+     */
+    static SoundManifest parse(ByteBuffer buffer) {
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("not a sound manifest");
+        }
+        final int version = buffer.getShort(4) & 0xFFFF;
+        if (version != VERSION) {
+            throw new IllegalArgumentException("unsupported version " + version);
+        }
+        final int count = buffer.getShort(6) & 0xFFFF;
+        final long namesOffset = HEADER_BYTES + (long) count * ENTRY_BYTES;
+        if (namesOffset > buffer.capacity()) {
+            throw new IllegalArgumentException("truncated entry table");
+        }
+        // Lookups read names without further checks
+        for (int i = 0; i < count; i++) {
+            final int base = HEADER_BYTES + i * ENTRY_BYTES;
+            final long end = namesOffset + (buffer.getInt(base) & 0xFFFFFFFFL) + (buffer.getShort(base + 4) & 0xFFFF);
+            if (end > buffer.capacity()) throw new IllegalArgumentException("name of entry " + i + " runs past the end");
+        }
+        return new SoundManifest(buffer, count);
+    }
+
+    // Read with absolute gets only, so lookups from any thread never disturb each other
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int namesOffset;
+
+    private SoundManifest(ByteBuffer buffer, int count) {
+        this.buffer = buffer;
+        this.count = count;
+        this.namesOffset = HEADER_BYTES + count * ENTRY_BYTES;
+    }
+
+    int size() {
+        return count;
+    }
+
+    /**
+     * Looks a sound up by its JS URL, as FilePlayer would open it.
+     *
+     * @return the entry, or null for remote URLs, filesystem paths and unknown sounds
+     */
+    Entry find(String url) {
+        final String assetPath = url == null ? null : FilePlayer.assetPathFor(url);
+        if (assetPath == null || count == 0) return null;
+
+        final byte[] key = assetPath.getBytes(StandardCharsets.UTF_8);
+        int lo = 0;
+        int hi = count - 1;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            final int cmp = compareName(mid, key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return entry(mid, assetPath);
+            }
+        }
+        return null;
+    }
+
+    // Unsigned byte order of the entry's name against key
+    private int compareName(int index, byte[] key) {
+        final int base = HEADER_BYTES + index * ENTRY_BYTES;
+        final int offset = namesOffset + buffer.getInt(base);
+        final int length = buffer.getShort(base + 4) & 0xFFFF;
+        final int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            final int diff = (buffer.get(offset + i) & 0xFF) - (key[i] & 0xFF);
+            if (diff != 0) return diff;
+        }
+        return length - key.length;
+    }
+
+    private Entry entry(int index, String assetPath) {
+        final int base = HEADER_BYTES + index * ENTRY_BYTES;
+        return new Entry(assetPath,
+                buffer.getInt(base + 8),
+                buffer.getShort(base + 6) & 0xFFFF,
+                buffer.getInt(base + 12),
+                buffer.getShort(base + 16) & 0xFFFF,
+                buffer.getShort(base + 18) & 0xFFFF,
+                buffer.getFloat(base + 20),
+                buffer.getFloat(base + 24),
+                buffer.getFloat(base + 28),
+                buffer.getInt(base + 32),
+                buffer.getInt(base + 36));
+    }
+}
@@ -0,0 +1,129 @@
+package com.starnoct.sleepsounds;
+
+/**
+ * Surf: brown noise shaped by a wave envelope.
+ *
+ * Every wave gets its own randomized period, height and pan. The swell rises smoothly,
+ * opens a lowpass as it builds, and washes out exponentially; a band-passed foam hiss
+ * follows the crest. Nothing in it sits above a quarter of the base rate.
+ */
+final class SurfSource implements SynthSource {
+
+    private static final float TRIM = 0.7f;
+    // The sea never goes fully quiet between waves
+    private static final float ENV_FLOOR = 0.12f;
+    private static final float SWELL_MIN_HZ = 150f;
+    private static final float SWELL_RANGE_HZ = 1650f;
+
+    private final Mulberry32 rnd;
+    private final float minPeriodS;
+    private final float maxPeriodS;
+
+    private int sampleRate;
+    private float twoPiOverRate;
+    private float foamHighAlpha;
+    private float foamLowAlpha;
+
+    // Per-channel brown noise, swell lowpass and foam band-pass
+    private float brownL, brownR;
+    private float swellL, swellR;
+    private float foamHighL, foamHighR, foamLowL, foamLowR;
+
+    // Current wave, in samples at the current rate
+    private int wavePos;
+    private int riseLen;
+    private int fallLen;
+    private float fallDecay;
+    private float envStart;
+    private float height;
+    private float env = ENV_FLOOR;
+    private float gainL = 1f;
+    private float gainR = 1f;
+    private float targetGainL = 1f;
+    private float targetGainR = 1f;
+    private float panAlpha;
+
+    SurfSource(boolean calm, int seed) {
+        this.rnd = new Mulberry32(seed);
+        this.minPeriodS = calm ? 9f : 6f;
+        this.maxPeriodS = calm ? 14f : 10f;
+    }
+
+    @Override
+    public void prepare(int sampleRate) {
+        if (this.sampleRate > 0 && this.sampleRate != sampleRate) {
+            // Keep the wave in progress at the same point in time
+            final float ratio = (float) sampleRate / this.sampleRate;
+            wavePos = (int) (wavePos * ratio);
+            riseLen = Math.max(1, (int) (riseLen * ratio));
+            fallLen = Math.max(1, (int) (fallLen * ratio));
+            fallDecay = (float) Math.exp(-4.0 / fallLen);
+        }
+        this.sampleRate = sampleRate;
+        twoPiOverRate = (float) (2.0 * Math.PI / sampleRate);
+        foamHighAlpha = SynthSources.onePoleAlpha(6000f, sampleRate);
+        foamLowAlpha = SynthSources.onePoleAlpha(1000f, sampleRate);
+        panAlpha = SynthSources.onePoleAlpha(0.5f, sampleRate);
+        if (riseLen == 0) nextWave();
+    }
+
+    @Override
+    public boolean supportsReducedRate() {
+        return true;
+    }
+
+    @Override
+    public void render(float[] out, int frames) {
+        for (int i = 0; i < frames; i++) {
+            if (wavePos < riseLen) {
+                final float x = (float) wavePos / riseLen;
+                env = envStart + (height - envStart) * (x * x * (3f - 2f * x));
+            } else {
+                env = ENV_FLOOR + (env - ENV_FLOOR) * fallDecay;
+            }
+            if (++wavePos >= riseLen + fallLen) nextWave();
+
+            final float wl = rnd.nextBipolar();
+            final float wr = rnd.nextBipolar();
+            brownL = (brownL + 0.02f * wl) / 1.02f;
+            brownR = (brownR + 0.02f * wr) / 1.02f;
+
+            // One-pole lowpass that opens as the wave builds
+            final float w = (SWELL_MIN_HZ + SWELL_RANGE_HZ * env) * twoPiOverRate;
+            final float alpha = w / (1f + w);
+            swellL += alpha * (brownL * 5f - swellL);
+            swellR += alpha * (brownR * 5f - swellR);
+            final float swellGain = 0.2f + 0.8f * env;
+
+            foamHighL += foamHighAlpha * (wl - foamHighL);
+            foamHighR += foamHighAlpha * (wr - foamHighR);
+            foamLowL += foamLowAlpha * (wl - foamLowL);
+            foamLowR += foamLowAlpha * (wr - foamLowR);
+            final float foamGain = 0.35f * env * env * env;
+
+            final float l = swellL * swellGain + (foamHighL - foamLowL) * foamGain;
+            final float r = swellR * swellGain + (foamHighR - foamLowR) * foamGain;
+            gainL += panAlpha * (targetGainL - gainL);
+            gainR += panAlpha * (targetGainR - gainR);
+            out[i * 2] = l * gainL * TRIM;
+            out[i * 2 + 1] = r * gainR * TRIM;
+        }
+    }
+
+    private void nextWave() {
+        final float period = minPeriodS + (maxPeriodS - minPeriodS) * rnd.nextFloat();
+        final float riseFraction = 0.3f + 0.15f * rnd.nextFloat();
+        riseLen = Math.max(1, (int) (period * riseFraction * sampleRate));
+        fallLen = Math.max(1, (int) (period * (1f - riseFraction) * sampleRate));
+        // About 2% of the crest is left when the next wave starts
+        fallDecay = (float) Math.exp(-4.0 / fallLen);
+        envStart = env;
+        height = 0.6f + 0.4f * rnd.nextFloat();
+        wavePos = 0;
+
+        // Waves break a little left or right of center
+        final double pan = (0.5 + 0.3 * (rnd.nextFloat() - 0.5f)) * Math.PI / 2.0;
+        targetGainL = (float) (Math.cos(pan) * Math.sqrt(2.0));
+        targetGainR = (float) (Math.sin(pan) * Math.sqrt(2.0));
+    }
+}
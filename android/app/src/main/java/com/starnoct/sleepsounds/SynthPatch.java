@@ -0,0 +1,669 @@
+package com.starnoct.sleepsounds;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A synth patch: a small graph of DSP nodes (noise, LFO, one-pole and biquad filters,
+ * gain, sum) compiled into a flat, topologically sorted execution plan.
+ *
+ * Patches come from {@link Builder} (the built-in flavors) or from JSON sent by the app:
+ * <pre>
+ * {"nodes": [
+ *    {"id": "n",   "type": "noise",   "color": "brown"},
+ *    {"id": "mod", "type": "lfo",     "rate": 0.5, "depth": 200, "offset": 1000},
+ *    {"id": "lp",  "type": "onepole", "mode": "lowpass", "input": "n", "cutoff": "mod"},
+ *    {"id": "out", "type": "gain",    "input": "lp", "gain": 0.3}],
+ *  "output": "out", "reducedRate": true}
+ * </pre>
+ * Numeric parameters accept either a constant or the id of a node whose output drives
+ * them per sample. A compiled patch is immutable; {@link #newSource} instantiates fresh
+ * node state per player. Nodes process whole blocks, so the per-sample work is a tight loop
+ * per node and rendering allocates nothing.
+ */
+final class SynthPatch {
+
+    static final int MAX_NODES = 64;
+    // Nodes process in sub-blocks of this size, whatever the caller's block size
+    private static final int BLOCK = 256;
+
+    private static final int NOISE = 0;
+    private static final int LFO = 1;
+    private static final int ONE_POLE = 2;
+    private static final int BIQUAD = 3;
+    private static final int GAIN = 4;
+    private static final int SUM = 5;
+
+    /**
+     * A parameter: a constant, or a reference to the node whose output drives it.
+     */
+    private static final class Param {
+        final double constant;
+        final String ref;
+
+        Param(double constant, String ref) {
+            this.constant = constant;
+            this.ref = ref;
+        }
+    }
+
+    private static final class NodeSpec {
+        final String id;
+        final int kind;
+        final String mode;
+        final String[] inputs;
+        final Map<String, Param> params = new HashMap<>();
+        // Resolved by compile()
+        int[] inputIndex;
+        final Map<String, Integer> paramIndex = new HashMap<>();
+
+        NodeSpec(String id, int kind, String mode, String... inputs) {
+            this.id = id;
+            this.kind = kind;
+            this.mode = mode;
+            this.inputs = inputs;
+        }
+
+        NodeSpec param(String name, double value) {
+            params.put(name, new Param(value, null));
+            return this;
+        }
+
+        NodeSpec param(String name, String ref) {
+            params.put(name, new Param(0.0, ref));
+            return this;
+        }
+
+        Param get(String name) {
+            final Param p = params.get(name);
+            if (p == null) throw new IllegalArgumentException("Node '" + id + "' is missing '" + name + "'");
+            return p;
+        }
+    }
+
+    /**
+     * Builds a patch node by node. Inputs and parameter references may name nodes
+     * added later; {@link #build} resolves and orders them.
+     */
+    static final class Builder {
+        private final List<NodeSpec> nodes = new ArrayList<>();
+        private String output;
+        private boolean reducedRate;
+
+        Builder noise(String id, String color) {
+            return add(new NodeSpec(id, NOISE, color));
+        }
+
+        Builder lfo(String id, double rateHz, double depth, double offset) {
+            return add(new NodeSpec(id, LFO, "sine").param("rate", rateHz).param("depth", depth).param("offset", offset));
+        }
+
+        Builder onePole(String id, String mode, String input, double cutoffHz) {
+            return add(new NodeSpec(id, ONE_POLE, mode, input).param("cutoff", cutoffHz));
+        }
+
+        Builder onePole(String id, String mode, String input, String cutoffRef) {
+            return add(new NodeSpec(id, ONE_POLE, mode, input).param("cutoff", cutoffRef));
+        }
+
+        Builder biquad(String id, String mode, String input, double freqHz, double q) {
+            return add(new NodeSpec(id, BIQUAD, mode, input).param("freq", freqHz).param("q", q));
+        }
+
+        Builder gain(String id, String input, double gain) {
+            return add(new NodeSpec(id, GAIN, null, input).param("gain", gain));
+        }
+
+        Builder gain(String id, String input, String gainRef) {
+            return add(new NodeSpec(id, GAIN, null, input).param("gain", gainRef));
+        }
+
+        Builder sum(String id, String... inputs) {
+            return add(new NodeSpec(id, SUM, null, inputs));
+        }
+
+        Builder output(String id) {
+            this.output = id;
+            return this;
+        }
+
+        /**
+         * Declares that the patch has nothing audible above a quarter of the base rate.
+         */
+        Builder reducedRate(boolean allowed) {
+            this.reducedRate = allowed;
+            return this;
+        }
+
+        /**
+         * @throws IllegalArgumentException if the graph is invalid (unknown ids, cycles, bad modes)
+         */
+        SynthPatch build() {
+            return compile(nodes, output, reducedRate);
+        }
+
+        private Builder add(NodeSpec spec) {
+            if (spec.id == null || spec.id.isEmpty()) throw new IllegalArgumentException("Node without id");
+            nodes.add(spec);
+            return this;
+        }
+    }
+
+    private final NodeSpec[] plan;
+    private final boolean reducedRate;
+
+    private SynthPatch(NodeSpec[] plan, boolean reducedRate) {
+        this.plan = plan;
+        this.reducedRate = reducedRate;
+    }
+
+    int nodeCount() {
+        return plan.length;
+    }
+
+    boolean allowsReducedRate() {
+        return reducedRate;
+    }
+
+    /**
+     * The five original flavors as patches, matched by substring like before:
+     * white, pink, brown, box-fan and airplane-cabin, and combinations such as pink-fan.
+     */
+    static SynthPatch builtIn(String flavor) {
+        // Noise colour, filter and trim combine like the original flavors did, so compound
+        // names such as pink-fan or brown-cabin keep their lowpass
+        final boolean pink = flavor.contains("pink");
+        final boolean fan = flavor.contains("fan");
+        final boolean airplane = flavor.contains("airplane") || flavor.contains("cabin");
+        final boolean brown = !pink && (flavor.contains("brown") || airplane);
+
+        final Builder builder = new Builder().noise("n", pink ? "pink" : brown ? "brown" : "white");
+        String last = "n";
+        if (fan) {
+            builder.lfo("sweep", 0.5, 200.0, 1000.0).onePole("lp", "lowpass", "n", "sweep");
+            last = "lp";
+        } else if (airplane) {
+            builder.onePole("lp", "lowpass", "n", 2000.0);
+            last = "lp";
+        }
+        final double trim = pink ? 0.9 : brown ? 0.35 : 0.25;
+        return builder.gain("out", last, trim).output("out")
+                .reducedRate(flavor.contains("brown") || fan || airplane).build();
+    }
+
+    /**
+     * Compiles a JSON patch description (see the class comment).
+     *
+     * @throws IllegalArgumentException if the description is malformed or the graph is invalid
+     */
+    static SynthPatch fromJson(JSONObject json) {
+        try {
+            final Builder builder = new Builder();
+            final JSONArray nodes = json.getJSONArray("nodes");
+            if (nodes.length() > MAX_NODES) throw new IllegalArgumentException("More than " + MAX_NODES + " nodes");
+            for (int i = 0; i < nodes.length(); i++) {
+                final JSONObject n = nodes.getJSONObject(i);
+                final String id = n.getString("id");
+                final String type = n.getString("type");
+                final NodeSpec spec;
+                switch (type) {
+                    case "noise":
+                        spec = new NodeSpec(id, NOISE, n.optString("color", "white"));
+                        break;
+                    case "lfo":
+                        spec = new NodeSpec(id, LFO, "sine");
+                        jsonParam(spec, n, "rate", null);
+                        jsonParam(spec, n, "depth", null);
+                        jsonParam(spec, n, "offset", 0.0);
+                        break;
+                    case "onepole":
+                        spec = new NodeSpec(id, ONE_POLE, n.optString("mode", "lowpass"), n.getString("input"));
+                        jsonParam(spec, n, "cutoff", null);
+                        break;
+                    case "biquad":
+                        spec = new NodeSpec(id, BIQUAD, n.optString("mode", "lowpass"), n.getString("input"));
+                        jsonParam(spec, n, "freq", null);
+                        jsonParam(spec, n, "q", 0.7071);
+                        break;
+                    case "gain":
+                        spec = new NodeSpec(id, GAIN, null, n.getString("input"));
+                        jsonParam(spec, n, "gain", null);
+                        break;
+                    case "sum": {
+                        final JSONArray inputs = n.getJSONArray("inputs");
+                        final String[] ids = new String[inputs.length()];
+                        for (int k = 0; k < ids.length; k++) ids[k] = inputs.getString(k);
+                        spec = new NodeSpec(id, SUM, null, ids);
+                        break;
+                    }
+                    default:
+                        throw new IllegalArgumentException("Unknown node type '" + type + "'");
+                }
+                builder.add(spec);
+            }
+            return builder.output(json.getString("output"))
+                    .reducedRate(json.optBoolean("reducedRate", false))
+                    .build();
+        } catch (JSONException e) {
+            throw new IllegalArgumentException("Malformed patch: " + e.getMessage(), e);
+        }
+    }
+
+    private static void jsonParam(NodeSpec spec, JSONObject n, String name, Double fallback) throws JSONException {
+        final Object value = n.opt(name);
+        if (value instanceof Number) {
+            spec.param(name, ((Number) value).doubleValue());
+        } else if (value instanceof String) {
+            spec.param(name, (String) value);
+        } else if (value == null && fallback != null) {
+            spec.param(name, fallback);
+        } else {
+            throw new JSONException("Node '" + spec.id + "' needs a number or node id for '" + name + "'");
+        }
+    }
+
+    private static SynthPatch compile(List<NodeSpec> nodes, String output, boolean reducedRate) {
+        if (nodes.size() > MAX_NODES) throw new IllegalArgumentException("More than " + MAX_NODES + " nodes");
+        final Map<String, NodeSpec> byId = new HashMap<>();
+        for (NodeSpec spec : nodes) {
+            if (byId.put(spec.id, spec) != null) throw new IllegalArgumentException("Duplicate node id '" + spec.id + "'");
+            validate(spec);
+        }
+        final NodeSpec out = byId.get(output);
+        if (out == null) throw new IllegalArgumentException("Unknown output node '" + output + "'");
+
+        // Depth-first post-order from the output: dependencies first, unreachable nodes dropped
+        final List<NodeSpec> order = new ArrayList<>();
+        final Map<String, Integer> state = new HashMap<>(); // 1 = visiting, 2 = done
+        visit(out, byId, state, order);
+
+        final Map<String, Integer> index = new HashMap<>();
+        for (int i = 0; i < order.size(); i++) index.put(order.get(i).id, i);
+        for (NodeSpec spec : order) {
+            spec.inputIndex = new int[spec.inputs.length];
+            for (int k = 0; k < spec.inputs.length; k++) spec.inputIndex[k] = index.get(spec.inputs[k]);
+            for (Map.Entry<String, Param> e : spec.params.entrySet()) {
+                if (e.getValue().ref != null) spec.paramIndex.put(e.getKey(), index.get(e.getValue().ref));
+            }
+        }
+        return new SynthPatch(order.toArray(new NodeSpec[0]), reducedRate);
+    }
+
+    private static void visit(NodeSpec spec, Map<String, NodeSpec> byId, Map<String, Integer> state, List<NodeSpec> order) {
+        final Integer s = state.get(spec.id);
+        if (s != null) {
+            if (s == 1) throw new IllegalArgumentException("Cycle through node '" + spec.id + "'");
+            return;
+        }
+        state.put(spec.id, 1);
+        for (String input : spec.inputs) visit(resolve(spec, input, byId), byId, state, order);
+        for (Param p : spec.params.values()) {
+            if (p.ref != null) visit(resolve(spec, p.ref, byId), byId, state, order);
+        }
+        state.put(spec.id, 2);
+        order.add(spec);
+    }
+
+    private static NodeSpec resolve(NodeSpec from, String id, Map<String, NodeSpec> byId) {
+        final NodeSpec target = byId.get(id);
+        if (target == null) throw new IllegalArgumentException("Node '" + from.id + "' refers to unknown node '" + id + "'");
+        return target;
+    }
+
+    private static void validate(NodeSpec spec) {
+        switch (spec.kind) {
+            case NOISE:
+                if (!"white".equals(spec.mode) && !"pink".equals(spec.mode) && !"brown".equals(spec.mode)) {
+                    throw new IllegalArgumentException("Node '" + spec.id + "': unknown noise color '" + spec.mode + "'");
+                }
+                break;
+            case ONE_POLE:
+                if (!"lowpass".equals(spec.mode) && !"highpass".equals(spec.mode)) {
+                    throw new IllegalArgumentException("Node '" + spec.id + "': onepole mode must be lowpass or highpass");
+                }
+                spec.get("cutoff");
+                break;
+            case BIQUAD:
+                if (!"lowpass".equals(spec.mode) && !"highpass".equals(spec.mode) && !"bandpass".equals(spec.mode)) {
+                    throw new IllegalArgumentException("Node '" + spec.id + "': biquad mode must be lowpass, highpass or bandpass");
+                }
+                // Coefficients are derived once per rate, so they must be constant
+                if (spec.get("freq").ref != null || spec.get("q").ref != null) {
+                    throw new IllegalArgumentException("Node '" + spec.id + "': biquad freq and q must be numbers");
+                }
+                break;
+            case LFO:
+                if (spec.get("rate").ref != null || spec.get("depth").ref != null || spec.get("offset").ref != null) {
+                    throw new IllegalArgumentException("Node '" + spec.id + "': lfo parameters must be numbers");
+                }
+                break;
+            case GAIN:
+                spec.get("gain");
+                break;
+            case SUM:
+                if (spec.inputs.length == 0) throw new IllegalArgumentException("Node '" + spec.id + "': sum needs inputs");
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Instantiates the patch with fresh state. Noise nodes draw from {@code seed}, {@code seed + 1}, ...
+     * in plan order, so a single-noise patch reproduces the same sequence as any other source
+     * seeded alike.
+     */
+    SynthSource newSource(int seed) {
+        final Node[] nodes = new Node[plan.length];
+        int noiseIndex = 0;
+        for (int i = 0; i < plan.length; i++) {
+            final NodeSpec spec = plan[i];
+            switch (spec.kind) {
+                case NOISE:
+                    nodes[i] = new NoiseNode(spec.mode, new Mulberry32(seed + noiseIndex++));
+                    break;
+                case LFO:
+                    nodes[i] = new LfoNode(spec.get("rate").constant, spec.get("depth").constant, spec.get("offset").constant);
+                    break;
+                case ONE_POLE:
+                    nodes[i] = new OnePoleNode("highpass".equals(spec.mode), nodes[spec.inputIndex[0]].out,
+                            spec.get("cutoff").constant, paramBuffer(spec, "cutoff", nodes));
+                    break;
+                case BIQUAD:
+                    nodes[i] = new BiquadNode(spec.mode, nodes[spec.inputIndex[0]].out,
+                            spec.get("freq").constant, spec.get("q").constant);
+                    break;
+                case GAIN:
+                    nodes[i] = new GainNode(nodes[spec.inputIndex[0]].out,
+                            (float) spec.get("gain").constant, paramBuffer(spec, "gain", nodes));
+                    break;
+                default: {
+                    final float[][] inputs = new float[spec.inputIndex.length][];
+                    for (int k = 0; k < inputs.length; k++) inputs[k] = nodes[spec.inputIndex[k]].out;
+                    nodes[i] = new SumNode(inputs);
+                    break;
+                }
+            }
+        }
+        return new PatchSource(nodes, reducedRate);
+    }
+
+    private static float[] paramBuffer(NodeSpec spec, String name, Node[] nodes) {
+        final Integer index = spec.paramIndex.get(name);
+        return index == null ? null : nodes[index].out;
+    }
+
+    private static final class PatchSource implements SynthSource {
+        private final Node[] nodes;
+        private final int active;
+        private final float[] output;
+        private final float outputGain;
+        private final boolean reducedRate;
+
+        PatchSource(Node[] nodes, boolean reducedRate) {
+            this.nodes = nodes;
+            this.reducedRate = reducedRate;
+            final Node last = nodes[nodes.length - 1];
+            if (last instanceof GainNode && ((GainNode) last).gainMod == null) {
+                // A constant output gain is folded into the interleaving copy
+                this.active = nodes.length - 1;
+                this.output = ((GainNode) last).in;
+                this.outputGain = ((GainNode) last).gain;
+            } else {
+                this.active = nodes.length;
+                this.output = last.out;
+                this.outputGain = 1f;
+            }
+        }
+
+        @Override
+        public void prepare(int sampleRate) {
+            for (Node node : nodes) node.prepare(sampleRate);
+        }
+
+        @Override
+        public boolean supportsReducedRate() {
+            return reducedRate;
+        }
+
+        @Override
+        public void render(float[] out, int frames) {
+            final float gain = outputGain;
+            for (int done = 0; done < frames; ) {
+                final int n = Math.min(BLOCK, frames - done);
+                for (int k = 0; k < active; k++) nodes[k].process(n);
+                for (int i = 0, o = done * 2; i < n; i++, o += 2) {
+                    final float s = output[i] * gain;
+                    out[o] = s;
+                    out[o + 1] = s;
+                }
+                done += n;
+            }
+        }
+    }
+
+    private abstract static class Node {
+        final float[] out = new float[BLOCK];
+
+        void prepare(int sampleRate) {
+        }
+
+        abstract void process(int frames);
+    }
+
+    private static final class NoiseNode extends Node {
+        private static final float BROWN_LEAK = 1f / 1.02f;
+        private final Mulberry32 rnd;
+        private final int color; // 0 white, 1 pink, 2 brown
+        // Pink noise state (Paul Kellet)
+        private float b0, b1, b2, b3, b4, b5, b6;
+        // Brown noise state
+        private float brown;
+
+        NoiseNode(String color, Mulberry32 rnd) {
+            this.rnd = rnd;
+            this.color = "pink".equals(color) ? 1 : "brown".equals(color) ? 2 : 0;
+        }
+
+        @Override
+        void process(int frames) {
+            final float[] o = out;
+            if (color == 1) {
+                float p0 = b0, p1 = b1, p2 = b2, p3 = b3, p4 = b4, p5 = b5, p6 = b6;
+                for (int i = 0; i < frames; i++) {
+                    final float x = rnd.nextBipolar();
+                    p0 = 0.99886f * p0 + x * 0.0555179f;
+                    p1 = 0.99332f * p1 + x * 0.0750759f;
+                    p2 = 0.96900f * p2 + x * 0.1538520f;
+                    p3 = 0.86650f * p3 + x * 0.3104856f;
+                    p4 = 0.55000f * p4 + x * 0.5329522f;
+                    p5 = -0.7616f * p5 - x * 0.0168980f;
+                    final float s = (p0 + p1 + p2 + p3 + p4 + p5 + p6 + x * 0.5362f);
+                    p6 = x * 0.115926f;
+                    o[i] = s * 0.11f;
+                }
+                b0 = p0; b1 = p1; b2 = p2; b3 = p3; b4 = p4; b5 = p5; b6 = p6;
+            } else if (color == 2) {
+                float state = brown;
+                for (int i = 0; i < frames; i++) {
+                    // Leaky integrator (x / 1.02), multiplied rather than divided
+                    state = (state + 0.02f * rnd.nextBipolar()) * BROWN_LEAK;
+                    o[i] = state * 3.5f;
+                }
+                brown = state;
+            } else {
+                for (int i = 0; i < frames; i++) o[i] = rnd.nextBipolar();
+            }
+        }
+    }
+
+    private static final class LfoNode extends Node {
+        private final double rate;
+        private final double depth;
+        private final double offset;
+        // Sine as a rotating phasor: two multiply-adds per sample instead of Math.sin
+        private double sin = 0.0;
+        private double cos = 1.0;
+        private double stepSin;
+        private double stepCos;
+
+        LfoNode(double rate, double depth, double offset) {
+            this.rate = rate;
+            this.depth = depth;
+            this.offset = offset;
+        }
+
+        @Override
+        void prepare(int sampleRate) {
+            final double w = 2.0 * Math.PI * rate / sampleRate;
+            stepSin = Math.sin(w);
+            stepCos = Math.cos(w);
+        }
+
+        @Override
+        void process(int frames) {
+            double s = sin;
+            double c = cos;
+            for (int i = 0; i < frames; i++) {
+                out[i] = (float) (offset + depth * s);
+                final double ns = s * stepCos + c * stepSin;
+                c = c * stepCos - s * stepSin;
+                s = ns;
+            }
+            // Renormalize once per block so rounding never grows or shrinks the amplitude
+            final double norm = 1.0 / Math.sqrt(s * s + c * c);
+            sin = s * norm;
+            cos = c * norm;
+        }
+    }
+
+    private static final class OnePoleNode extends Node {
+        private final boolean highpass;
+        private final float[] in;
+        private final double cutoff;
+        private final float[] cutoffMod;
+        private double twoPiDt;
+        private double minCutoff;
+        private double maxCutoff;
+        private double alpha;
+        private float lp;
+
+        OnePoleNode(boolean highpass, float[] in, double cutoff, float[] cutoffMod) {
+            this.highpass = highpass;
+            this.in = in;
+            this.cutoff = cutoff;
+            this.cutoffMod = cutoffMod;
+        }
+
+        @Override
+        void prepare(int sampleRate) {
+            twoPiDt = 2.0 * Math.PI / sampleRate;
+            minCutoff = 10.0;
+            maxCutoff = sampleRate * 0.45;
+            // RC lowpass: alpha = dt / (RC + dt) = w / (1 + w) with w = 2 pi fc dt
+            final double w = twoPiDt * Math.max(minCutoff, Math.min(maxCutoff, cutoff));
+            alpha = w / (1.0 + w);
+        }
+
+        @Override
+        void process(int frames) {
+            final float[] in = this.in;
+            final float[] out = this.out;
+            float state = lp;
+            if (cutoffMod == null) {
+                // Single-precision recursion keeps the dependency chain short
+                final float a = (float) alpha;
+                for (int i = 0; i < frames; i++) {
+                    state += a * (in[i] - state);
+                    out[i] = state;
+                }
+            } else {
+                for (int i = 0; i < frames; i++) {
+                    double fc = cutoffMod[i];
+                    if (fc < minCutoff) fc = minCutoff;
+                    else if (fc > maxCutoff) fc = maxCutoff;
+                    final double w = twoPiDt * fc;
+                    state = (float) (state + w / (1.0 + w) * (in[i] - state));
+                    out[i] = state;
+                }
+            }
+            lp = state;
+            if (highpass) {
+                for (int i = 0; i < frames; i++) out[i] = in[i] - out[i];
+            }
+        }
+    }
+
+    private static final class BiquadNode extends Node {
+        private final String mode;
+        private final float[] in;
+        private final double freq;
+        private final double q;
+        private final Biquad filter = new Biquad();
+
+        BiquadNode(String mode, float[] in, double freq, double q) {
+            this.mode = mode;
+            this.in = in;
+            this.freq = freq;
+            this.q = Math.max(0.05, q);
+        }
+
+        @Override
+        void prepare(int sampleRate) {
+            if ("highpass".equals(mode)) filter.setHighPass(sampleRate, freq, q);
+            else if ("bandpass".equals(mode)) filter.setBandPass(sampleRate, freq, q);
+            else filter.setLowPass(sampleRate, freq, q);
+        }
+
+        @Override
+        void process(int frames) {
+            System.arraycopy(in, 0, out, 0, frames);
+            filter.process(out, 0, frames, 1);
+        }
+    }
+
+    private static final class GainNode extends Node {
+        private final float[] in;
+        private final float gain;
+        private final float[] gainMod;
+
+        GainNode(float[] in, float gain, float[] gainMod) {
+            this.in = in;
+            this.gain = gain;
+            this.gainMod = gainMod;
+        }
+
+        @Override
+        void process(int frames) {
+            if (gainMod == null) {
+                for (int i = 0; i < frames; i++) out[i] = in[i] * gain;
+            } else {
+                for (int i = 0; i < frames; i++) out[i] = in[i] * gainMod[i];
+            }
+        }
+    }
+
+    private static final class SumNode extends Node {
+        private final float[][] inputs;
+
+        SumNode(float[][] inputs) {
+            this.inputs = inputs;
+        }
+
+        @Override
+        void process(int frames) {
+            final float[] first = inputs[0];
+            for (int i = 0; i < frames; i++) out[i] = first[i];
+            for (int k = 1; k < inputs.length; k++) {
+                final float[] in = inputs[k];
+                for (int i = 0; i < frames; i++) out[i] += in[i];
+            }
+        }
+    }
+}
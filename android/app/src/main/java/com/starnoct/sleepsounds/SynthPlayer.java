@@ -1,215 +1,561 @@
 package com.starnoct.sleepsounds;
 
-import android.media.AudioAttributes;
-import android.media.AudioFormat;
-import android.media.AudioManager;
 import android.media.AudioTrack;
 import android.os.Build;
+import android.util.Log;
 
-import java.util.Random;
+import java.util.concurrent.TimeoutException;
 
 /**
- * Minimal synthetic (noise) player using AudioTrack.
- * Supports flavors: white, pink, brown, box-fan, airplane-cabin.
+ * Synthetic player rendering a procedural {@link SynthSource} into a pooled {@link RenderOutput}.
+ * Supports flavors: white, pink, brown, box-fan, airplane-cabin, plus rain, surf and fire
+ * textures (see {@link SynthSources}).
+ *
+ * The render thread owns all DSP state. Other threads steer it only through volatile
+ * requests (render profile, layer gain, EQ, sleep fade) that it applies at block boundaries.
+ * When the output dies or stalls, the {@link RenderWatchdog} has {@link #recover} rebuild it.
  */
-public class SynthPlayer implements AudioService.AudioPlayer {
+public class SynthPlayer implements AudioService.AudioPlayer, RenderWatchdog.Pipeline {
+    private static final String TAG = "SynthPlayer";
 
-    // Synth flavor constants for consistent detection
-    private static final String FLAVOR_WHITE = "white";
-    private static final String FLAVOR_PINK = "pink";
-    private static final String FLAVOR_BROWN = "brown";
-    private static final String FLAVOR_FAN = "fan";
-    private static final String FLAVOR_AIRPLANE = "airplane";
-    private static final String FLAVOR_CABIN = "cabin";
+    // A rebuilt output comes back with this fade-in instead of a click
+    private static final int RECOVERY_FADE_MS = 300;
+    // How long recover() waits for the old render thread to leave the loop
+    private static final long RECOVERY_RELEASE_TIMEOUT_MS = 200L;
 
     private final String id;
     private final String flavor;
+    private final SynthSources.Factory sourceFactory;
     private volatile boolean shouldRun = false;
-    private Thread thread;
-    private AudioTrack track;
+    private volatile RenderOutput output;
+    // Guards handing an output over from the pool's thread against a stop on the main thread
+    private final Object bindLock = new Object();
+    // Bumped by every start and stop, so an output that arrives for an earlier one goes back
+    private int bindSession = 0;
+    // Between asking the pool for an output and getting it; the layer counts as playing
+    private volatile boolean awaitingOutput = false;
+    private final RenderOutput.RenderLoop renderLoop = this::runLoop;
+    // The output whose loop is still creating and preparing its source; not a stall, however slow
+    private volatile RenderOutput preparingOn;
     private float volume;
+    private final LevelMeter meter = new LevelMeter();
+    private final RenderStats stats;
+
+    // Poll the track's underrun counter about once a second rather than every block
+    private static final int UNDERRUN_POLL_BLOCKS = 43;
+
+    // Sleep-timer fade request, handed to the render thread which converts it into frame positions
+    private volatile long sleepTargetWallMs = 0L;
+    private volatile int sleepFadeMs = 0;
+    private volatile int sleepRequestSeq = 0;
+    private volatile Runnable sleepFadeListener;
+    private volatile boolean sleepFadeComplete = false;
+    private int outputLatencyFrames = 0;
+
+    // Scene crossfade request, converted into frame positions like the sleep fade
+    private volatile long sceneStartWallMs = 0L;
+    private volatile int sceneFadeMs = 0;
+    private volatile boolean sceneFadeIn = false;
+    private volatile int sceneRequestSeq = 0;
+    private volatile Runnable sceneFadeListener;
+
+    // Set by recover(), taken by the next render loop; the failure path records why it ended
+    private volatile boolean fadeInOnStart = false;
+    private volatile String writeFailure;
+
+    // Engine-side controls picked up by the render thread at block boundaries
+    private volatile RenderProfile requestedProfile = RenderProfile.INTERACTIVE;
+    private volatile float layerGain = 1f;
+    private final TrackEq eq = new TrackEq();
 
     SynthPlayer(String id, String flavor, float volume) {
+        this(id, flavor, volume, seed -> SynthSources.create(flavor, seed));
+    }
+
+    /**
+     * @param flavor label for metrics and wind-down weighting; the factory decides what renders
+     */
+    SynthPlayer(String id, String flavor, float volume, SynthSources.Factory sourceFactory) {
         this.id = id;
         this.flavor = flavor;
+        this.sourceFactory = sourceFactory;
         this.volume = volume;
+        this.stats = new RenderStats(id, "synth:" + flavor);
     }
 
     @Override
     public boolean isPlaying() {
-        try {
-            return shouldRun && track != null && track.getPlayState() == AudioTrack.PLAYSTATE_PLAYING;
-        } catch (Exception e) {
-            return false;
-        }
+        final RenderOutput out = output;
+        return shouldRun && (awaitingOutput || out != null && out.isPlaying());
     }
 
     @Override
     public void start() {
         stop();
+        stats.markStarted();
+        writeFailure = null;
+        EngineMetrics.getInstance().register(stats);
+        requestOutput();
+    }
+
+    // A pooled output already has its track and render thread, but a pool miss opens a track;
+    // either way the output is bound on the pool's thread, and the volume set meanwhile applies
+    private void requestOutput() {
+        final int session;
+        synchronized (bindLock) {
+            session = ++bindSession;
+            shouldRun = true;
+            awaitingOutput = true;
+        }
+        OutputPool.getInstance().acquire((out, failure) -> bind(session, out, failure));
+    }
+
+    // Pool thread
+    private boolean bind(int session, RenderOutput out, Exception failure) {
+        synchronized (bindLock) {
+            if (session != bindSession || !shouldRun) return false;
+            awaitingOutput = false;
+            if (out == null) {
+                // Nothing writes now; the watchdog sees that and tries again
+                writeFailure = "could not open an output: " + failure;
+                return false;
+            }
+            outputLatencyFrames = out.getCapacityFrames();
+            out.setVolume(volume);
+            output = out;
+            preparingOn = out;
+            out.start(renderLoop);
+            return true;
+        }
+    }
 
-        final int sampleRate = 44100;
-        final int channelConfig = AudioFormat.CHANNEL_OUT_STEREO;
-        final int encoding = AudioFormat.ENCODING_PCM_16BIT;
+    @Override
+    public long framesWritten() {
+        return stats.getFramesWritten();
+    }
 
-        int minBuf = AudioTrack.getMinBufferSize(sampleRate, channelConfig, encoding);
-        int bufferBytes = Math.max(minBuf, sampleRate * 2 * 4 / 10); // ~100ms
+    @Override
+    public boolean expectsProgress() {
+        final RenderOutput out = output;
+        return shouldRun && !awaitingOutput && (out == null || preparingOn != out);
+    }
 
-        AudioAttributes attrs = new AudioAttributes.Builder()
-                .setUsage(AudioAttributes.USAGE_MEDIA)
-                .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
-                .build();
-        AudioFormat fmt = new AudioFormat.Builder()
-                .setSampleRate(sampleRate)
-                .setEncoding(encoding)
-                .setChannelMask(channelConfig)
-                .build();
+    interface Recovery {
+        /**
+         * Reports a rebuild, on the pool's thread.
+         *
+         * @param cause what went wrong with the old output
+         * @param failure why no new output plays, or null once one does
+         */
+        void done(String cause, Exception failure);
+    }
 
-        track = new AudioTrack(attrs, fmt, bufferBytes, AudioTrack.MODE_STREAM, AudioManager.AUDIO_SESSION_ID_GENERATE);
-        setVolume(volume);
-        track.play();
+    /**
+     * Replaces a dead or stalled output with a fresh track and thread, and resumes rendering
+     * with a short fade-in. Fades in progress continue on the same wall-clock schedule.
+     * The old output is released, never pooled, and so are idle ones: they share its route.
+     * The new loop only starts once the old thread has left, as both use the same meter, EQ
+     * and fade state; that wait and the new track happen on the pool's thread, and the layer
+     * counts as waiting for an output meanwhile. If the old thread does not leave, the layer
+     * keeps the old output and the watchdog tries again.
+     *
+     * @param recovery told how it went, unless the player stops meanwhile
+     * @return false if the player was not running, or is already waiting for an output
+     */
+    boolean recover(Recovery recovery) {
+        final RenderOutput dead;
+        final String cause;
+        final int session;
+        synchronized (bindLock) {
+            if (!shouldRun || awaitingOutput) return false;
+            dead = output;
+            final String failure = writeFailure;
+            cause = failure != null ? failure
+                    : dead == null ? "no output" : dead.isBound(renderLoop) ? "stalled" : "render loop ended";
+            session = ++bindSession;
+            awaitingOutput = true;
+            output = null;
+            writeFailure = null;
+            fadeInOnStart = true;
+        }
 
-        shouldRun = true;
-        thread = new Thread(() -> runLoop(sampleRate), "SynthPlayer-" + id);
-        thread.setDaemon(true);
-        thread.start();
+        // Releasing the track also wakes a render thread blocked in write
+        OutputPool.getInstance().replace(dead, RECOVERY_RELEASE_TIMEOUT_MS, (out, failure) -> {
+            if (failure instanceof TimeoutException) {
+                synchronized (bindLock) {
+                    if (session != bindSession || !shouldRun) return false;
+                    output = dead;
+                    awaitingOutput = false;
+                }
+                recovery.done(cause, failure);
+                return false;
+            }
+            final boolean bound = bind(session, out, failure);
+            if (bound) stats.recordRecovery();
+            // A stop meanwhile needs no report
+            if (bound || failure != null && isCurrent(session)) recovery.done(cause, failure);
+            return bound;
+        });
+        return true;
+    }
+
+    private boolean isCurrent(int session) {
+        synchronized (bindLock) {
+            return session == bindSession && shouldRun;
+        }
+    }
+
+    /**
+     * Arms a fade that the render thread starts by counting frames, reaching silence exactly
+     * at {@code targetWallMs}. {@code onComplete} runs once on the render thread after the fade.
+     * Re-arming replaces any previous request.
+     */
+    void armSleepFade(long targetWallMs, int fadeMs, Runnable onComplete) {
+        sleepFadeListener = onComplete;
+        sleepFadeMs = fadeMs;
+        sleepTargetWallMs = targetWallMs;
+        sleepFadeComplete = false;
+        sleepRequestSeq++;
+    }
+
+    void disarmSleepFade() {
+        sleepTargetWallMs = 0L;
+        sleepFadeListener = null;
+        sleepFadeComplete = false;
+        sleepRequestSeq++;
+    }
+
+    /**
+     * Arms an equal-power scene fade that starts at {@code startWallMs} as heard and lasts
+     * {@code fadeMs}. Players sharing the start time stay aligned although each has its own
+     * track. A fade-in holds silence until the start; a fade-out holds silence after the end
+     * and runs {@code onComplete} once on the render thread when everything it queued before
+     * the end has played. Arm before {@link #start} so the first block is already shaped.
+     */
+    void armSceneFade(long startWallMs, int fadeMs, boolean fadeIn, Runnable onComplete) {
+        sceneFadeListener = onComplete;
+        sceneFadeIn = fadeIn;
+        sceneFadeMs = fadeMs;
+        sceneStartWallMs = startWallMs;
+        sceneRequestSeq++;
+    }
+
+    boolean isSleepFadeArmed() {
+        return sleepTargetWallMs > 0L;
+    }
+
+    boolean isSleepFadeComplete() {
+        return sleepFadeComplete;
+    }
+
+    String getFlavor() {
+        return flavor;
+    }
+
+    /**
+     * Requests a different block size / queue depth / internal rate. Applied seamlessly at the
+     * next block boundary; on API < 24 only the block size and rate can change.
+     * Shrinking the queue never drops audio: writes simply block until it has drained below
+     * the new depth. Track volume is applied after the queue, so it stays immediate.
+     */
+    void setRenderProfile(RenderProfile profile) {
+        RenderProfile next = profile == null ? RenderProfile.INTERACTIVE : profile;
+        if (!next.equals(requestedProfile)) {
+            requestedProfile = next;
+            // A loop napping between batch refills picks it up now, not at the next refill
+            final RenderOutput out = output;
+            if (out != null) out.wake();
+        }
+    }
+
+    @Override
+    public void setLayerGain(float gain) {
+        layerGain = gain;
+    }
+
+    /**
+     * Sets this track's tone shaping; the render thread glides to it without clicks.
+     */
+    void setEq(TrackEq.Settings settings) {
+        eq.set(settings);
+    }
+
+    @Override
+    public float getVolume() {
+        return volume;
+    }
+
+    @Override
+    public LevelMeter getLevelMeter() {
+        return meter;
     }
 
     @Override
     public void setVolume(float v) {
-        this.volume = v;
-        try {
-            if (track == null) return;
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-                track.setVolume(v);
-            } else {
-                //noinspection deprecation
-                track.setStereoVolume(v, v);
-            }
-        } catch (Exception ignored) {
-            // Intentionally ignored: volume operation is non-critical and may fail during teardown
+        final RenderOutput out;
+        synchronized (bindLock) {
+            this.volume = v;
+            out = output;
         }
+        meter.setGain(v);
+        if (out != null) out.setVolume(v);
     }
 
     @Override
     public void stop() {
-        shouldRun = false;
+        final RenderOutput out;
+        synchronized (bindLock) {
+            bindSession++;
+            shouldRun = false;
+            awaitingOutput = false;
+            out = output;
+            output = null;
+        }
         try {
-            if (thread != null) {
-                try {
-                    thread.join(200);
-                } catch (Exception ignored) {
-                    // Intentionally ignored: thread join timeout is acceptable during stop
-                }
-            }
+            // Hands the track and thread back for the next player instead of destroying them
+            OutputPool.getInstance().recycle(out);
         } finally {
-            thread = null;
+            meter.reset();
+            stats.markStopped();
+            EngineMetrics.getInstance().unregister(stats);
         }
+    }
+
+    /**
+     * The frame of a loop's sample clock that is heard at {@code wallMs}, given where the
+     * loop stands now: frames queued in the track are heard after the ones rendered now.
+     */
+    static long frameHeardAt(long wallMs, long nowMs, long framesRendered, int sampleRate, int latencyFrames) {
+        return framesRendered + (wallMs - nowMs) * sampleRate / 1000L - latencyFrames;
+    }
+
+    /**
+     * Sleep fade gain at {@code frame}: unity before the fade, a linear ramp, then silence
+     * from {@code fadeEndFrame} on.
+     */
+    static float sleepFadeGain(long frame, long fadeStartFrame, long fadeEndFrame, float invFadeFrames) {
+        if (frame >= fadeEndFrame) return 0f;
+        if (frame >= fadeStartFrame) return (fadeEndFrame - frame) * invFadeFrames;
+        return 1f;
+    }
 
+    // Layers are uncorrelated, so equal-power curves (in squared plus out squared is one) keep the mix level steady
+    static float sceneFadeGain(long frame, long sceneStartFrame, double invSceneFrames, boolean fadeIn) {
+        final double x = Math.min(1.0, Math.max(0.0, (frame - sceneStartFrame) * invSceneFrames));
+        return (float) (fadeIn ? Math.sin(x * Math.PI / 2) : Math.cos(x * Math.PI / 2));
+    }
+
+    // Frames rendered now are heard after what is queued; batch refills keep it below the buffer size
+    private int framesQueued(RenderOutput out) {
+        final int queued = out.queuedFrames();
+        return queued >= 0 ? queued : outputLatencyFrames;
+    }
+
+    private void runLoop(final RenderOutput out) {
+        final AudioTrack track = out.getTrack();
+        final int baseRate = out.getSampleRate();
+        final float[] block = new float[RenderProfile.MAX_BLOCK_FRAMES * 2];
+
+        int sampleRate = baseRate;
+        final SynthSource source;
         try {
-            if (track != null) {
+            // Fresh seed per start: procedural textures never repeat
+            source = sourceFactory.create(Mulberry32.freshSeed());
+            source.prepare(sampleRate);
+        } catch (Exception e) {
+            Log.w(TAG, "Could not create source for " + flavor, e);
+            return;
+        } finally {
+            // From here on, or if it ended without writing, the watchdog judges the loop by its writes
+            if (preparingOn == out) preparingOn = null;
+        }
+        final boolean supportsReducedRate = source.supportsReducedRate();
+
+        int frames = RenderOutput.alignToBurst(RenderProfile.INTERACTIVE.blockFrames);
+        RenderProfile appliedProfile = null;
+        int blockCount = 0;
+
+        // Layer gain, ramped across a block to avoid zipper noise
+        float layerCurrent = layerGain;
+
+        // Recovery fade-in, counted from the loop's first frame
+        final long rampInFrames = fadeInOnStart ? (long) RECOVERY_FADE_MS * baseRate / 1000L : 0L;
+        final float invRampIn = rampInFrames > 0L ? 1f / rampInFrames : 0f;
+        fadeInOnStart = false;
+
+        // Pooled tracks keep counting underruns across players; report ours only
+        int underrunBase = 0;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            try {
+                underrunBase = track.getUnderrunCount();
+            } catch (Exception ignored) {
+                // Intentionally ignored: the counter is diagnostic only
+            }
+        }
+
+        // Sample clock for the sleep timer fade
+        long framesRendered = 0L;
+        int appliedSleepSeq = sleepRequestSeq - 1;
+        long fadeStartFrame = Long.MAX_VALUE;
+        long fadeEndFrame = Long.MAX_VALUE;
+        float invFadeFrames = 0f;
+        boolean fadeNotified = false;
+
+        // Sample clock for the scene crossfade
+        int appliedSceneSeq = sceneRequestSeq - 1;
+        boolean sceneArmed = false;
+        boolean sceneIn = false;
+        long sceneStartFrame = 0L;
+        long sceneEndFrame = 0L;
+        double invSceneFrames = 0.0;
+        boolean sceneNotified = false;
+
+        while (shouldRun && out.isBound(renderLoop)) {
+            final long renderStart = System.nanoTime();
+
+            final RenderProfile profile = requestedProfile;
+            if (profile != appliedProfile) {
+                appliedProfile = profile;
+                final int rate = profile.reducedRate && supportsReducedRate ? baseRate / 2 : baseRate;
                 try {
-                    track.pause();
+                    if (rate != sampleRate) {
+                        track.setPlaybackRate(rate);
+                        sampleRate = rate;
+                        source.prepare(sampleRate);
+                    }
+                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                        final int wanted = Math.max(RenderOutput.alignToBurst(profile.blockFrames),
+                                profile.bufferMs * sampleRate / 1000);
+                        final int actual = track.setBufferSizeInFrames(wanted);
+                        if (actual > 0) outputLatencyFrames = actual;
+                    }
                 } catch (Exception ignored) {
-                    // Intentionally ignored: resource cleanup must continue even if pause fails
+                    // Intentionally ignored: keep rendering with whatever the track accepted
                 }
-                try {
-                    track.flush();
-                } catch (Exception ignored) {
-                    // Intentionally ignored: resource cleanup must continue even if flush fails
+                frames = RenderOutput.alignToBurst(profile.blockFrames);
+                // Re-derive the fade positions with the new rate and queue depth
+                appliedSleepSeq = sleepRequestSeq - 1;
+                appliedSceneSeq = sceneRequestSeq - 1;
+            }
+
+            if (appliedProfile.refillInBatches) {
+                final long napMs = RenderOutput.refillNapMs(out.queuedFrames(), frames, outputLatencyFrames, sampleRate);
+                if (napMs > 0L) {
+                    out.nap(renderLoop, napMs);
+                    stats.recordWakeup();
+                    // Binding and controls may have changed while asleep
+                    continue;
                 }
-                try {
-                    track.stop();
-                } catch (Exception ignored) {
-                    // Intentionally ignored: resource cleanup must continue even if stop fails
+            }
+
+            final int seq = sleepRequestSeq;
+            if (seq != appliedSleepSeq) {
+                appliedSleepSeq = seq;
+                final long target = sleepTargetWallMs;
+                if (target > 0L) {
+                    final long fadeFrames = Math.max(1L, (long) sleepFadeMs * sampleRate / 1000L);
+                    fadeEndFrame = frameHeardAt(target, System.currentTimeMillis(), framesRendered,
+                            sampleRate, framesQueued(out));
+                    fadeStartFrame = fadeEndFrame - fadeFrames;
+                    invFadeFrames = 1f / fadeFrames;
+                } else {
+                    fadeStartFrame = Long.MAX_VALUE;
+                    fadeEndFrame = Long.MAX_VALUE;
                 }
-                try {
-                    track.release();
-                } catch (Exception ignored) {
-                    // Intentionally ignored: resource cleanup must continue even if release fails
+                // A rebuilt output re-derives a fade that already finished; report it once
+                fadeNotified = sleepFadeComplete;
+            }
+            final boolean fading = framesRendered + frames > fadeStartFrame;
+
+            final int sceneSeq = sceneRequestSeq;
+            if (sceneSeq != appliedSceneSeq) {
+                appliedSceneSeq = sceneSeq;
+                final long start = sceneStartWallMs;
+                sceneArmed = start > 0L;
+                if (sceneArmed) {
+                    final long sceneFrames = Math.max(1L, (long) sceneFadeMs * sampleRate / 1000L);
+                    sceneIn = sceneFadeIn;
+                    sceneStartFrame = framesRendered + (start - System.currentTimeMillis()) * sampleRate / 1000L
+                            - framesQueued(out);
+                    sceneEndFrame = sceneStartFrame + sceneFrames;
+                    invSceneFrames = 1.0 / sceneFrames;
+                    sceneNotified = false;
                 }
             }
-        } finally {
-            track = null;
-        }
-    }
+            // Before, inside or after the ramp; only a block overlapping it needs per-frame curves
+            final boolean sceneRamp = sceneArmed
+                    && framesRendered + frames > sceneStartFrame && framesRendered < sceneEndFrame;
+            final float sceneHold = !sceneArmed ? 1f
+                    : (framesRendered < sceneStartFrame) == sceneIn ? 0f : 1f;
+
+            final boolean rampingIn = framesRendered < rampInFrames;
 
-    private void runLoop(int sampleRate) {
-        final Random rnd = new Random();
-        final int frames = 1024;
-        final short[] pcm = new short[frames * 2];
-
-        // Pink noise state (Paul Kellet)
-        float b0 = 0, b1 = 0, b2 = 0, b3 = 0, b4 = 0, b5 = 0, b6 = 0;
-        // Brown noise state
-        float brown = 0;
-        // Lowpass state
-        float lpL = 0, lpR = 0;
-        // Modulation time
-        double t = 0;
-        final double dt = 1.0 / sampleRate;
-
-        while (shouldRun && track != null) {
-            final boolean isWhite = flavor.contains(FLAVOR_WHITE);
-            final boolean isPink = flavor.contains(FLAVOR_PINK);
-            final boolean isBrown = flavor.contains(FLAVOR_BROWN);
-            final boolean isBoxFan = flavor.contains(FLAVOR_FAN);
-            final boolean isAirplane = flavor.contains(FLAVOR_AIRPLANE) || flavor.contains(FLAVOR_CABIN);
+            final float layerTarget = layerGain;
+            final float layerStep = (layerTarget - layerCurrent) / frames;
+
+            source.render(block, frames);
+            eq.process(block, frames, sampleRate);
 
             for (int i = 0; i < frames; i++) {
-                float x = (rnd.nextFloat() * 2f) - 1f; // white
-                float s;
-
-                if (isPink) {
-                    b0 = 0.99886f * b0 + x * 0.0555179f;
-                    b1 = 0.99332f * b1 + x * 0.0750759f;
-                    b2 = 0.96900f * b2 + x * 0.1538520f;
-                    b3 = 0.86650f * b3 + x * 0.3104856f;
-                    b4 = 0.55000f * b4 + x * 0.5329522f;
-                    b5 = -0.7616f * b5 - x * 0.0168980f;
-                    s = (b0 + b1 + b2 + b3 + b4 + b5 + b6 + x * 0.5362f);
-                    b6 = x * 0.115926f;
-                    s *= 0.11f;
-                } else if (isBrown || isAirplane) {
-                    brown = (brown + 0.02f * x) / 1.02f;
-                    s = brown * 3.5f;
-                } else {
-                    s = x;
+                layerCurrent += layerStep;
+                float trim = layerCurrent * sceneHold;
+                if (sceneRamp) {
+                    trim = layerCurrent * sceneFadeGain(framesRendered + i, sceneStartFrame, invSceneFrames, sceneIn);
                 }
 
-                if (isBoxFan || isAirplane) {
-                    double baseCutoff = isBoxFan ? 1000.0 : 2000.0;
-                    double depth = isBoxFan ? 200.0 : 0.0;
-                    double rate = isBoxFan ? 0.5 : 0.0;
-                    double cutoff = baseCutoff + (depth * Math.sin(2.0 * Math.PI * rate * t));
-                    if (cutoff < 50.0) cutoff = 50.0;
-
-                    double rc = 1.0 / (2.0 * Math.PI * cutoff);
-                    double alpha = dt / (rc + dt);
-                    lpL = (float) (lpL + alpha * (s - lpL));
-                    lpR = (float) (lpR + alpha * (s - lpR));
-                    s = lpL;
+                if (rampingIn) {
+                    trim *= Math.min(1f, (framesRendered + i) * invRampIn);
                 }
 
-                float trim;
-                if (isPink) trim = 0.9f;
-                else if (isBrown || isAirplane) trim = 0.35f;
-                else trim = 0.25f;
-
-                short v = (short) Math.max(Short.MIN_VALUE,
-                        Math.min(Short.MAX_VALUE, (int) (s * trim * 32767.0f)));
-                pcm[i * 2] = v;
-                pcm[i * 2 + 1] = v;
+                if (fading) {
+                    trim *= sleepFadeGain(framesRendered + i, fadeStartFrame, fadeEndFrame, invFadeFrames);
+                }
 
-                t += dt;
+                block[i * 2] *= trim;
+                block[i * 2 + 1] *= trim;
             }
+            layerCurrent = layerTarget;
 
+            meter.process(block, frames * 2, 2, sampleRate);
+            final long renderEnd = System.nanoTime();
+
+            final int queued = out.queuedFrames();
+            if (queued < 0 || queued + frames > outputLatencyFrames) stats.recordWakeup();
             try {
-                int wrote = track.write(pcm, 0, pcm.length);
-                if (wrote <= 0) break;
+                // Stays float until here; the output converts once if the track needs 16-bit
+                int wrote = out.write(block, frames);
+                if (wrote <= 0) {
+                    // The watchdog sees the frame count stop and rebuilds the output
+                    writeFailure = "write returned " + wrote;
+                    break;
+                }
             } catch (Exception e) {
+                writeFailure = "write threw " + e;
                 break;
             }
+
+            stats.recordBlock(renderEnd - renderStart, System.nanoTime() - renderEnd, frames);
+            framesRendered += frames;
+
+            if (!fadeNotified && framesRendered >= fadeEndFrame) {
+                fadeNotified = true;
+                sleepFadeComplete = true;
+                final Runnable listener = sleepFadeListener;
+                if (listener != null) listener.run();
+            }
+            if (sceneArmed && !sceneIn && !sceneNotified && framesRendered >= sceneEndFrame + outputLatencyFrames) {
+                // Only silence is queued now; the listener may release this layer
+                sceneNotified = true;
+                final Runnable listener = sceneFadeListener;
+                if (listener != null) listener.run();
+            }
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N && ++blockCount % UNDERRUN_POLL_BLOCKS == 0) {
+                try {
+                    stats.setUnderruns(track.getUnderrunCount() - underrunBase);
+                } catch (Exception ignored) {
+                    // Intentionally ignored: the counter is diagnostic only
+                }
+            }
         }
     }
 }
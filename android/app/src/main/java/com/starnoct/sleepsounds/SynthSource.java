@@ -0,0 +1,29 @@
+package com.starnoct.sleepsounds;
+
+/**
+ * A procedural sound generator rendered by {@link SynthPlayer}.
+ *
+ * Sources are pure Java and are only ever touched by the render thread that owns them, so
+ * they keep all DSP state in plain fields. {@link #render} must not allocate: every
+ * buffer and voice a source needs is created up front.
+ */
+interface SynthSource {
+
+    /**
+     * Called before the first block and whenever the render rate changes. Coefficients
+     * are re-derived; running state (filters, voices) carries over so the change is seamless.
+     */
+    void prepare(int sampleRate);
+
+    /**
+     * Renders {@code frames} interleaved stereo frames into {@code out}, already trimmed to
+     * a comfortable level in roughly -1..1.
+     */
+    void render(float[] out, int frames);
+
+    /**
+     * True when the content has nothing audible above a quarter of the base rate, so a
+     * reduced-rate render profile may halve the internal rate.
+     */
+    boolean supportsReducedRate();
+}
@@ -0,0 +1,48 @@
+package com.starnoct.sleepsounds;
+
+/**
+ * Picks the {@link SynthSource} for a {@code synthetic://<flavor>} URL, plus small DSP helpers
+ * shared by the sources.
+ *
+ * A patch registered under the exact flavor name wins. Otherwise flavors are matched by
+ * substring like the original noise flavors, so descriptive names such as
+ * {@code heavy-rain} or {@code calm-surf} work without a lookup table.
+ */
+final class SynthSources {
+
+    /**
+     * Creates a player's source on its render thread, so slow setup (decoding an excerpt)
+     * never blocks the caller of {@link SynthPlayer#start}.
+     */
+    interface Factory {
+        SynthSource create(int seed) throws Exception;
+    }
+
+    private SynthSources() {
+    }
+
+    static SynthSource create(String flavor, int seed) {
+        final String f = flavor == null ? "white" : flavor;
+        final SynthPatch userPatch = PatchRegistry.getInstance().get(f);
+        if (userPatch != null) {
+            return userPatch.newSource(seed);
+        }
+        if (f.contains("rain") || f.contains("downpour")) {
+            return new RainSource(f.contains("heavy") || f.contains("downpour"), seed);
+        }
+        if (f.contains("surf") || f.contains("wave") || f.contains("ocean")) {
+            return new SurfSource(f.contains("calm") || f.contains("gentle"), seed);
+        }
+        if (f.contains("fire")) {
+            return new FireSource(f.contains("small"), seed);
+        }
+        return SynthPatch.builtIn(f).newSource(seed);
+    }
+
+    /**
+     * Coefficient for {@code y += alpha * (x - y)} with the given -3 dB cutoff.
+     */
+    static float onePoleAlpha(float cutoffHz, int sampleRate) {
+        return (float) (1.0 - Math.exp(-2.0 * Math.PI * cutoffHz / sampleRate));
+    }
+}
@@ -0,0 +1,215 @@
+package com.starnoct.sleepsounds;
+
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Process-wide hashed timing wheel for sparse, coarse-grained audio events.
+ *
+ * Scheduling and cancelling are O(1). The wheel thread does not tick while nothing is due:
+ * it parks until the earliest deadline and then catches up on every slot it passed, so a
+ * layer that fires once every half minute costs one wakeup per event and nothing between.
+ * Tasks run on the wheel thread and must be short; they should hand real work elsewhere.
+ *
+ * Parking does not keep the CPU awake. Time is counted in elapsed realtime, which runs on
+ * through deep sleep, and an installed {@link Alarm} wakes the device at the earliest
+ * deadline; callers hold a wake lock only while they have work to do.
+ */
+final class TimingWheel {
+
+    static final long TICK_MS = 50L;
+    // One revolution covers ~25 s; longer delays simply stay in their slot for more rounds
+    private static final int SLOTS = 512;
+    private static final int MASK = SLOTS - 1;
+
+    // Elapsed time in ms, counting deep sleep; tests pass their own
+    interface Clock {
+        long nowMs();
+    }
+
+    /**
+     * Wakes the device and calls {@link #wake} at a deadline in {@link Clock} time.
+     */
+    interface Alarm {
+        void wakeAt(long atMs);
+
+        void cancel();
+    }
+
+    static final class Timeout {
+        private final Runnable task;
+        private final long deadlineTick;
+        private Timeout next;
+        private boolean cancelled;
+
+        private Timeout(Runnable task, long deadlineTick) {
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+        }
+    }
+
+    private static final TimingWheel INSTANCE = new TimingWheel();
+
+    static TimingWheel getInstance() {
+        return INSTANCE;
+    }
+
+    private final Object lock = new Object();
+    private final Timeout[] slots = new Timeout[SLOTS];
+    private final Clock clock;
+    private final long originMs;
+    private final ArrayList<Runnable> due = new ArrayList<>();
+    private long processedTick;
+    private long nextWakeTick = Long.MAX_VALUE;
+    private int pending;
+    private Thread thread;
+    private Alarm alarm;
+    private long alarmTick = Long.MAX_VALUE;
+
+    private TimingWheel() {
+        this(SystemClock::elapsedRealtime);
+    }
+
+    TimingWheel(Clock clock) {
+        this.clock = clock;
+        this.originMs = clock.nowMs();
+    }
+
+    /**
+     * Installs the alarm that wakes the device for deadlines, or removes it with null.
+     */
+    void setAlarm(Alarm alarm) {
+        synchronized (lock) {
+            if (this.alarm != null) this.alarm.cancel();
+            this.alarm = alarm;
+            alarmTick = Long.MAX_VALUE;
+            if (pending > 0) armAlarm(earliestDeadline());
+        }
+    }
+
+    /**
+     * Makes the wheel thread look at the clock now, e.g. once the device woke up for it.
+     */
+    void wake() {
+        synchronized (lock) {
+            if (thread != null) LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Runs {@code task} on the wheel thread after at least {@code delayMs}, rounded up to a tick.
+     */
+    Timeout schedule(Runnable task, long delayMs) {
+        synchronized (lock) {
+            final long ticks = (Math.max(0L, delayMs) + TICK_MS - 1) / TICK_MS;
+            final long deadline = Math.max(processedTick + 1, nowTick() + ticks);
+            final Timeout timeout = new Timeout(task, deadline);
+            final int index = (int) (deadline & MASK);
+            timeout.next = slots[index];
+            slots[index] = timeout;
+            pending++;
+
+            if (thread == null) {
+                thread = new Thread(this::run, "TimingWheel");
+                thread.setDaemon(true);
+                thread.start();
+            } else if (deadline < nextWakeTick) {
+                LockSupport.unpark(thread);
+            }
+            // Armed before the caller lets go of its wake lock
+            if (deadline < alarmTick) armAlarm(deadline);
+            return timeout;
+        }
+    }
+
+    /**
+     * Cancels a timeout that has not fired yet. It is unlinked when its slot comes around.
+     */
+    void cancel(Timeout timeout) {
+        if (timeout == null) return;
+        synchronized (lock) {
+            timeout.cancelled = true;
+        }
+    }
+
+    private long nowTick() {
+        return (clock.nowMs() - originMs) / TICK_MS;
+    }
+
+    // Called with the lock held
+    private void armAlarm(long deadlineTick) {
+        if (alarm == null || deadlineTick == alarmTick) return;
+        alarmTick = deadlineTick;
+        if (deadlineTick == Long.MAX_VALUE) {
+            alarm.cancel();
+        } else {
+            alarm.wakeAt(originMs + deadlineTick * TICK_MS);
+        }
+    }
+
+    private void run() {
+        while (true) {
+            long waitTicks;
+            synchronized (lock) {
+                final long now = nowTick();
+                // Visiting one full revolution reaches every slot; older deadlines are all <= now
+                final long last = Math.min(now, processedTick + SLOTS);
+                for (long tick = processedTick + 1; tick <= last; tick++) {
+                    expireSlot((int) (tick & MASK), now);
+                }
+                processedTick = now;
+
+                nextWakeTick = pending == 0 ? Long.MAX_VALUE : earliestDeadline();
+                waitTicks = nextWakeTick == Long.MAX_VALUE ? -1L : nextWakeTick - now;
+                armAlarm(nextWakeTick);
+            }
+
+            for (int i = 0; i < due.size(); i++) {
+                try {
+                    due.get(i).run();
+                } catch (Throwable ignored) {
+                    // Intentionally ignored: one failing task must not stop the wheel
+                }
+            }
+            due.clear();
+
+            if (waitTicks < 0L) {
+                LockSupport.park(this);
+            } else if (waitTicks > 0L) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(waitTicks * TICK_MS));
+            }
+        }
+    }
+
+    // Called with the lock held; moves due tasks to the run list and drops cancelled ones
+    private void expireSlot(int index, long now) {
+        Timeout prev = null;
+        Timeout t = slots[index];
+        while (t != null) {
+            final Timeout next = t.next;
+            if (t.cancelled || t.deadlineTick <= now) {
+                if (prev == null) slots[index] = next;
+                else prev.next = next;
+                pending--;
+                if (!t.cancelled) due.add(t.task);
+            } else {
+                prev = t;
+            }
+            t = next;
+        }
+    }
+
+    // Called with the lock held; only runs once per wakeup, so a full scan is cheap
+    private long earliestDeadline() {
+        long earliest = Long.MAX_VALUE;
+        for (Timeout head : slots) {
+            for (Timeout t = head; t != null; t = t.next) {
+                if (!t.cancelled && t.deadlineTick < earliest) earliest = t.deadlineTick;
+            }
+        }
+        return earliest;
+    }
+}
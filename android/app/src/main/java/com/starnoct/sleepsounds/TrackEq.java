@@ -0,0 +1,193 @@
+package com.starnoct.sleepsounds;
+
+/**
+ * Per-track tone shaping for render players: a low shelf, a high shelf and a low-pass,
+ * run as stereo biquads over each rendered block.
+ *
+ * Settings are immutable and handed over through a volatile, like {@link RenderProfile}.
+ * The render thread glides its current settings towards the requested ones in short
+ * sub-blocks and only redesigns coefficients while a glide is in progress, so steady
+ * playback costs the filters alone and a change never zips or clicks. Stages at their
+ * neutral setting are skipped, which makes a flat EQ free.
+ */
+final class TrackEq {
+
+    static final class Settings {
+        static final float MAX_SHELF_DB = 12f;
+        static final float MIN_LOW_PASS_HZ = 200f;
+        // At or above this the low-pass stage is off
+        static final float MAX_LOW_PASS_HZ = 20000f;
+
+        static final Settings FLAT = new Settings(0f, 0f, MAX_LOW_PASS_HZ);
+
+        final float lowShelfDb;
+        final float highShelfDb;
+        final float lowPassHz;
+
+        Settings(float lowShelfDb, float highShelfDb, float lowPassHz) {
+            this.lowShelfDb = clamp(lowShelfDb, -MAX_SHELF_DB, MAX_SHELF_DB);
+            this.highShelfDb = clamp(highShelfDb, -MAX_SHELF_DB, MAX_SHELF_DB);
+            // 0 (or anything non-positive) means "no low-pass"
+            this.lowPassHz = lowPassHz <= 0f ? MAX_LOW_PASS_HZ : clamp(lowPassHz, MIN_LOW_PASS_HZ, MAX_LOW_PASS_HZ);
+        }
+
+        boolean isFlat() {
+            return lowShelfDb == 0f && highShelfDb == 0f && lowPassHz >= MAX_LOW_PASS_HZ;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Settings)) return false;
+            Settings s = (Settings) o;
+            return lowShelfDb == s.lowShelfDb && highShelfDb == s.highShelfDb && lowPassHz == s.lowPassHz;
+        }
+
+        @Override
+        public int hashCode() {
+            return (Float.floatToIntBits(lowShelfDb) * 31 + Float.floatToIntBits(highShelfDb)) * 31
+                    + Float.floatToIntBits(lowPassHz);
+        }
+
+        private static float clamp(float v, float min, float max) {
+            if (Float.isNaN(v)) return 0f;
+            return Math.max(min, Math.min(max, v));
+        }
+    }
+
+    static final double LOW_SHELF_HZ = 250.0;
+    static final double HIGH_SHELF_HZ = 4000.0;
+    private static final double LOW_PASS_Q = Math.sqrt(0.5);
+
+    // Coefficients are redesigned every this many frames while gliding
+    private static final int GLIDE_STEP_FRAMES = 32;
+    // Time constant of the glide; ~99% of the way after five of these
+    private static final float GLIDE_TAU_MS = 20f;
+    private static final float SNAP_DB = 0.02f;
+    private static final float SNAP_HZ_RATIO = 0.001f;
+
+    private volatile Settings requested = Settings.FLAT;
+
+    // Render-thread state
+    private final Biquad lowL = new Biquad();
+    private final Biquad lowR = new Biquad();
+    private final Biquad highL = new Biquad();
+    private final Biquad highR = new Biquad();
+    private final Biquad lpL = new Biquad();
+    private final Biquad lpR = new Biquad();
+    private float lowDb = 0f;
+    private float highDb = 0f;
+    private float lpHz = Settings.MAX_LOW_PASS_HZ;
+    // Whether each stage ran last block; a stage coming back is primed from the signal
+    private boolean lowLive, highLive, lpLive;
+    private int designedRate = 0;
+    // Cutoffs at or above this (the design limit at the current rate) leave the low-pass off
+    private float lpLimitHz = Settings.MAX_LOW_PASS_HZ;
+    private float glideCoeff = 0f;
+
+    /**
+     * Requests new settings from any thread; the render thread glides to them.
+     */
+    void set(Settings settings) {
+        requested = settings == null ? Settings.FLAT : settings;
+    }
+
+    Settings get() {
+        return requested;
+    }
+
+    /**
+     * Filters {@code frames} interleaved stereo frames in place. Render thread only.
+     */
+    void process(float[] block, int frames, int sampleRate) {
+        final Settings target = requested;
+        if (sampleRate != designedRate) {
+            designedRate = sampleRate;
+            lpLimitHz = Math.min(Settings.MAX_LOW_PASS_HZ, sampleRate * 0.45f);
+            glideCoeff = (float) (1.0 - Math.exp(-GLIDE_STEP_FRAMES / (GLIDE_TAU_MS * 0.001 * sampleRate)));
+            design(sampleRate);
+        }
+
+        int offset = 0;
+        while (offset < frames && isGliding(target)) {
+            glideStep(target);
+            design(sampleRate);
+            final int n = Math.min(GLIDE_STEP_FRAMES, frames - offset);
+            run(block, offset, n);
+            offset += n;
+        }
+        if (offset < frames) run(block, offset, frames - offset);
+    }
+
+    private boolean isGliding(Settings t) {
+        return lowDb != t.lowShelfDb || highDb != t.highShelfDb || lpHz != t.lowPassHz;
+    }
+
+    private void glideStep(Settings t) {
+        final float k = glideCoeff;
+        lowDb = approach(lowDb, t.lowShelfDb, k);
+        highDb = approach(highDb, t.highShelfDb, k);
+        // Glide the cutoff in octaves so sweeps sound even across the range
+        if (lpHz != t.lowPassHz) {
+            final float next = (float) (lpHz * Math.pow(t.lowPassHz / lpHz, k));
+            lpHz = Math.abs(next / t.lowPassHz - 1f) < SNAP_HZ_RATIO ? t.lowPassHz : next;
+        }
+    }
+
+    private static float approach(float current, float target, float k) {
+        final float next = current + (target - current) * k;
+        return Math.abs(target - next) < SNAP_DB ? target : next;
+    }
+
+    private void design(int sampleRate) {
+        if (lowDb != 0f) {
+            lowL.setLowShelf(sampleRate, LOW_SHELF_HZ, lowDb);
+            lowR.setLowShelf(sampleRate, LOW_SHELF_HZ, lowDb);
+        }
+        if (highDb != 0f) {
+            highL.setHighShelf(sampleRate, HIGH_SHELF_HZ, highDb);
+            highR.setHighShelf(sampleRate, HIGH_SHELF_HZ, highDb);
+        }
+        if (lpHz < lpLimitHz) {
+            lpL.setLowPass(sampleRate, lpHz, LOW_PASS_Q);
+            lpR.setLowPass(sampleRate, lpHz, LOW_PASS_Q);
+        }
+    }
+
+    private void run(float[] block, int offsetFrames, int frames) {
+        final int i = offsetFrames * 2;
+        if (lowDb != 0f) {
+            if (!lowLive) {
+                lowL.primeDc(block[i]);
+                lowR.primeDc(block[i + 1]);
+                lowLive = true;
+            }
+            lowL.process(block, i, frames, 2);
+            lowR.process(block, i + 1, frames, 2);
+        } else {
+            lowLive = false;
+        }
+        if (highDb != 0f) {
+            if (!highLive) {
+                highL.primeDc(block[i]);
+                highR.primeDc(block[i + 1]);
+                highLive = true;
+            }
+            highL.process(block, i, frames, 2);
+            highR.process(block, i + 1, frames, 2);
+        } else {
+            highLive = false;
+        }
+        if (lpHz < lpLimitHz) {
+            if (!lpLive) {
+                lpL.primeDc(block[i]);
+                lpR.primeDc(block[i + 1]);
+                lpLive = true;
+            }
+            lpL.process(block, i, frames, 2);
+            lpR.process(block, i + 1, frames, 2);
+        } else {
+            lpLive = false;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.starnoct.sleepsounds;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Streams a 16-bit PCM WAV file (mono or stereo) as a {@link PcmStream}. Pure Java, so
+ * offline renders of file layers also run on a desktop JVM where MediaCodec is missing.
+ */
+final class WavReader implements PcmStream {
+
+    private final RandomAccessFile file;
+    private final int sampleRate;
+    private final int channels;
+    private final long dataStart;
+    private final long dataEnd;
+    private final byte[] bytes = new byte[4096 * 2 * 2];
+    private long position;
+
+    WavReader(File source) throws IOException {
+        file = new RandomAccessFile(source, "r");
+        try {
+            final byte[] h = new byte[12];
+            file.readFully(h);
+            if (!ascii(h, 0, "RIFF") || !ascii(h, 8, "WAVE")) throw new IOException("Not a WAV file: " + source);
+
+            int rate = 0;
+            int ch = 0;
+            int bits = 0;
+            long start = -1L;
+            long size = 0L;
+            final byte[] chunk = new byte[8];
+            while (start < 0L && file.getFilePointer() + 8 <= file.length()) {
+                file.readFully(chunk);
+                final long chunkSize = readInt(chunk, 4) & 0xFFFFFFFFL;
+                if (ascii(chunk, 0, "fmt ")) {
+                    final byte[] fmt = new byte[16];
+                    file.readFully(fmt);
+                    if (readShort(fmt, 0) != 1) throw new IOException("Only PCM WAV is supported: " + source);
+                    ch = readShort(fmt, 2);
+                    rate = readInt(fmt, 4);
+                    bits = readShort(fmt, 14);
+                    file.seek(file.getFilePointer() + chunkSize - 16 + (chunkSize & 1));
+                } else if (ascii(chunk, 0, "data")) {
+                    start = file.getFilePointer();
+                    size = Math.min(chunkSize, file.length() - start);
+                } else {
+                    file.seek(file.getFilePointer() + chunkSize + (chunkSize & 1));
+                }
+            }
+            if (start < 0L || rate <= 0 || (ch != 1 && ch != 2) || bits != 16) {
+                throw new IOException("Unsupported WAV layout: " + source);
+            }
+            sampleRate = rate;
+            channels = ch;
+            dataStart = start;
+            dataEnd = start + size - size % (ch * 2);
+            position = dataStart;
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public int sampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public int read(short[] dst, int maxFrames) throws IOException {
+        final int frameBytes = channels * 2;
+        final long left = (dataEnd - position) / frameBytes;
+        if (left <= 0L) return -1;
+        final int frames = (int) Math.min(left, Math.min(maxFrames, bytes.length / frameBytes));
+        file.seek(position);
+        file.readFully(bytes, 0, frames * frameBytes);
+        position += (long) frames * frameBytes;
+
+        for (int f = 0; f < frames; f++) {
+            final int b = f * frameBytes;
+            final short left16 = (short) ((bytes[b] & 0xFF) | (bytes[b + 1] << 8));
+            dst[f * 2] = left16;
+            dst[f * 2 + 1] = channels == 2 ? (short) ((bytes[b + 2] & 0xFF) | (bytes[b + 3] << 8)) : left16;
+        }
+        return frames;
+    }
+
+    @Override
+    public void rewind() {
+        position = dataStart;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private static boolean ascii(byte[] b, int at, String s) {
+        for (int i = 0; i < 4; i++) {
+            if (b[at + i] != (byte) s.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static int readInt(byte[] b, int at) {
+        return (b[at] & 0xFF) | (b[at + 1] & 0xFF) << 8 | (b[at + 2] & 0xFF) << 16 | (b[at + 3] & 0xFF) << 24;
+    }
+
+    private static int readShort(byte[] b, int at) {
+        return (b[at] & 0xFF) | (b[at + 1] & 0xFF) << 8;
+    }
+}
@@ -0,0 +1,108 @@
+package com.starnoct.sleepsounds;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Streams 16-bit stereo PCM to a WAV file. Sizes in the header are patched on close, so
+ * long renders never need to be held in memory. RIFF sizes are 32-bit, which caps a file
+ * at {@link #maxDurationMs}; writing past it fails rather than leaving a truncated header.
+ */
+final class WavWriter implements Closeable {
+
+    private static final int HEADER_BYTES = 44;
+    private static final int CHANNELS = 2;
+    // The RIFF size field counts the data plus the 36 header bytes after it
+    static final long MAX_DATA_BYTES = 0xFFFFFFFFL - 36L;
+
+    private final File file;
+    private final int sampleRate;
+    private final BufferedOutputStream out;
+    private final byte[] bytes = new byte[16384 * CHANNELS * 2];
+    private long dataBytes = 0L;
+
+    WavWriter(File file, int sampleRate) throws IOException {
+        this.file = file;
+        this.sampleRate = sampleRate;
+        this.out = new BufferedOutputStream(new FileOutputStream(file), 64 * 1024);
+        out.write(header(0L));
+    }
+
+    /**
+     * Longest 16-bit stereo recording at {@code sampleRate} a WAV header can describe.
+     */
+    static long maxDurationMs(int sampleRate) {
+        return MAX_DATA_BYTES / (CHANNELS * 2) * 1000L / sampleRate;
+    }
+
+    /**
+     * Appends {@code frames} interleaved stereo frames.
+     *
+     * @throws IOException if the file would outgrow the 32-bit RIFF sizes
+     */
+    void write(short[] pcm, int frames) throws IOException {
+        int offset = 0;
+        final int samples = frames * CHANNELS;
+        if (dataBytes + (long) samples * 2L > MAX_DATA_BYTES) {
+            throw new IOException("WAV data would exceed " + MAX_DATA_BYTES + " bytes");
+        }
+        while (offset < samples) {
+            final int n = Math.min(samples - offset, bytes.length / 2);
+            for (int i = 0; i < n; i++) {
+                final short s = pcm[offset + i];
+                bytes[i * 2] = (byte) s;
+                bytes[i * 2 + 1] = (byte) (s >> 8);
+            }
+            out.write(bytes, 0, n * 2);
+            offset += n;
+        }
+        dataBytes += (long) samples * 2L;
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.write(header(dataBytes));
+        }
+    }
+
+    private byte[] header(long dataSize) {
+        final long data = dataSize;
+        final byte[] h = new byte[HEADER_BYTES];
+        putAscii(h, 0, "RIFF");
+        putInt(h, 4, (int) (36L + data));
+        putAscii(h, 8, "WAVE");
+        putAscii(h, 12, "fmt ");
+        putInt(h, 16, 16);
+        putShort(h, 20, 1); // PCM
+        putShort(h, 22, CHANNELS);
+        putInt(h, 24, sampleRate);
+        putInt(h, 28, sampleRate * CHANNELS * 2);
+        putShort(h, 32, CHANNELS * 2);
+        putShort(h, 34, 16);
+        putAscii(h, 36, "data");
+        putInt(h, 40, (int) data);
+        return h;
+    }
+
+    private static void putAscii(byte[] b, int at, String s) {
+        for (int i = 0; i < 4; i++) b[at + i] = (byte) s.charAt(i);
+    }
+
+    private static void putInt(byte[] b, int at, int v) {
+        b[at] = (byte) v;
+        b[at + 1] = (byte) (v >> 8);
+        b[at + 2] = (byte) (v >> 16);
+        b[at + 3] = (byte) (v >> 24);
+    }
+
+    private static void putShort(byte[] b, int at, int v) {
+        b[at] = (byte) v;
+        b[at + 1] = (byte) (v >> 8);
+    }
+}
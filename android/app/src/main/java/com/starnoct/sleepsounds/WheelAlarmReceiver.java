@@ -0,0 +1,68 @@
+package com.starnoct.sleepsounds;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.os.PowerManager;
+
+/**
+ * Wakes the device for the {@link TimingWheel}'s next deadline, so event layers need no wake
+ * lock between events.
+ *
+ * AudioService installs {@link #alarmFor} for its lifetime. The alarm is allowed while idle;
+ * in Doze the system may still hold it back, and sparse events then simply come further apart.
+ * On receipt a short wake lock covers the wheel thread until an event takes its own.
+ */
+public class WheelAlarmReceiver extends BroadcastReceiver {
+    public static final String ACTION_WHEEL_DUE = "com.starnoct.sleepsounds.ACTION_WHEEL_DUE";
+
+    // Long enough for the wheel thread to run its due tasks
+    private static final long WAKE_GRACE_MS = 1000L;
+
+    static TimingWheel.Alarm alarmFor(Context context) {
+        final Context app = context.getApplicationContext();
+        final AlarmManager am = (AlarmManager) app.getSystemService(Context.ALARM_SERVICE);
+        return new TimingWheel.Alarm() {
+            @Override
+            public void wakeAt(long atMs) {
+                if (am == null) return;
+                try {
+                    am.setExactAndAllowWhileIdle(AlarmManager.ELAPSED_REALTIME_WAKEUP, atMs, broadcast(app));
+                } catch (SecurityException e) {
+                    // Exact alarms revoked by the user: an inexact wakeup still beats none
+                    am.setAndAllowWhileIdle(AlarmManager.ELAPSED_REALTIME_WAKEUP, atMs, broadcast(app));
+                }
+            }
+
+            @Override
+            public void cancel() {
+                if (am != null) am.cancel(broadcast(app));
+            }
+        };
+    }
+
+    private static PendingIntent broadcast(Context context) {
+        Intent intent = new Intent(context, WheelAlarmReceiver.class);
+        intent.setAction(ACTION_WHEEL_DUE);
+        return PendingIntent.getBroadcast(
+            context,
+            0,
+            intent,
+            PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+    }
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (intent == null || !ACTION_WHEEL_DUE.equals(intent.getAction())) {
+            return;
+        }
+        final PowerManager pm = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        if (pm != null) {
+            pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "SleepSounds:TimingWheel").acquire(WAKE_GRACE_MS);
+        }
+        TimingWheel.getInstance().wake();
+    }
+}
@@ -0,0 +1,102 @@
+package com.starnoct.sleepsounds;
+
+/**
+ * Scheduled wind-down: over a configurable period the mix is lowered along an
+ * equal-loudness curve and the engine steps down to cheaper render profiles.
+ *
+ * Loudness is lowered linearly (in sones) toward {@link #endLoudness}. Because the
+ * ear's loudness growth is steeper for low frequencies, bass-heavy layers need a
+ * smaller gain reduction for the same loudness drop, so each layer's gain follows
+ * {@code gain = loudness ^ (1 / (2 * exponent))} with a per-layer exponent between
+ * ~0.3 (mid/high content) and ~0.38 (low rumble).
+ */
+final class WindDownProfile {
+
+    // Stevens' loudness exponent (on pressure squared) at 1 kHz and toward ~100 Hz
+    private static final float EXPONENT_MID = 0.30f;
+    private static final float EXPONENT_LOW = 0.38f;
+
+    // A layer this far below the loudest one is masked; below the floor it is inaudible anyway
+    static final float MASKING_RATIO = 0.03f;     // about -30 dB
+    static final float INAUDIBLE_GAIN = 0.003f;   // about -50 dB
+    // Layers are only dropped once the ramp has really lowered the mix
+    static final float MASKING_MIN_PROGRESS = 0.25f;
+
+    private static final float LARGE_BUFFER_PROGRESS = 0.5f;
+    private static final float REDUCED_RATE_PROGRESS = 0.8f;
+
+    private final long startAtMs;
+    private final long durationMs;
+    private final float endLoudness;
+
+    /**
+     * @param startAtMs   elapsedRealtime at which lowering begins
+     * @param durationMs  length of the ramp
+     * @param endLoudness loudness fraction (0..1] held after the ramp
+     */
+    WindDownProfile(long startAtMs, long durationMs, float endLoudness) {
+        this.startAtMs = startAtMs;
+        this.durationMs = Math.max(1L, durationMs);
+        this.endLoudness = Math.max(0f, Math.min(1f, endLoudness));
+    }
+
+    float progress(long nowMs) {
+        if (nowMs <= startAtMs) return 0f;
+        return Math.min(1f, (float) (nowMs - startAtMs) / durationMs);
+    }
+
+    /**
+     * Gain multiplier for a layer at the given progress.
+     *
+     * @param lowFrequencyWeight 0 for broadband/hiss content, 1 for rumble-dominated content
+     */
+    float gainFor(float progress, float lowFrequencyWeight) {
+        final float loudness = 1f - progress * (1f - endLoudness);
+        if (loudness <= 0f) return 0f;
+        final float exponent = EXPONENT_MID + (EXPONENT_LOW - EXPONENT_MID) * lowFrequencyWeight;
+        return (float) Math.pow(loudness, 1.0 / (2.0 * exponent));
+    }
+
+    /**
+     * Whether a layer can be stopped as inaudible or masked. Only a layer the ramp pushed
+     * there counts: one the user set that quiet in their own mix stays, however faint.
+     *
+     * @param level       the layer's level after the wind-down gain
+     * @param loudest     the loudest layer's level after the wind-down gain
+     * @param mixLevel    the layer's level in the user's mix (its volume)
+     * @param mixLoudest  the loudest volume in the user's mix
+     */
+    static boolean isDroppable(float progress, float level, float loudest, float mixLevel, float mixLoudest) {
+        if (progress < MASKING_MIN_PROGRESS || level <= 0f || level >= loudest) return false;
+        return isMasked(level, loudest) && !isMasked(mixLevel, mixLoudest);
+    }
+
+    private static boolean isMasked(float level, float loudest) {
+        return level < INAUDIBLE_GAIN || level < loudest * MASKING_RATIO;
+    }
+
+    /**
+     * Render profile the engine may drop to at this point of the wind-down, or null.
+     */
+    RenderProfile renderProfileFor(float progress) {
+        if (progress >= REDUCED_RATE_PROGRESS) return RenderProfile.WIND_DOWN_REDUCED_RATE;
+        if (progress >= LARGE_BUFFER_PROGRESS) return RenderProfile.WIND_DOWN;
+        return null;
+    }
+
+    /**
+     * Rough spectral balance of a layer, used to pick its equal-loudness exponent.
+     * File layers are mostly broadband nature recordings and get a neutral weight.
+     */
+    static float lowFrequencyWeight(String flavor) {
+        if (flavor == null) return 0.5f;
+        if (flavor.contains("brown") || flavor.contains("airplane") || flavor.contains("cabin")) return 1f;
+        if (flavor.contains("surf") || flavor.contains("wave") || flavor.contains("ocean")) return 0.8f;
+        if (flavor.contains("fan")) return 0.7f;
+        if (flavor.contains("fire")) return 0.6f;
+        if (flavor.contains("rain") || flavor.contains("downpour")) return 0.3f;
+        if (flavor.contains("pink")) return 0.5f;
+        if (flavor.contains("white")) return 0f;
+        return 0.5f;
+    }
+}
@@ -0,0 +1,328 @@
+package com.starnoct.sleepsounds;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.Context;
+import android.content.Intent;
+import android.media.AudioManager;
+import android.os.Looper;
+import android.os.PowerManager;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.android.controller.ServiceController;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+import org.robolectric.shadows.ShadowAudioManager;
+import org.robolectric.shadows.ShadowPowerManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Replays randomized command storms and a simulated overnight session against AudioService
+ * and checks that nothing outlives it: players, render threads (one per track), Handler
+ * callbacks, the static instance, the audio focus listener and wake locks.
+ *
+ * Handler time is simulated with a paused main looper. Render threads run for real, so stops
+ * exercise the actual unbind and recycle path, but their tracks play on the simulated clock
+ * ({@link ShadowPacedAudioTrack}): time advances in steps shorter than a watchdog interval and
+ * each step waits for the threads to catch up, so the outcome does not depend on how fast the
+ * machine renders. The service is destroyed whenever it stops itself and recreated for the
+ * next command, as the system would; its onDestroy alone must end every render thread.
+ * Command handling latency percentiles are printed per action at the end.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34, shadows = ShadowPacedAudioTrack.class)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class AudioServiceSoakTest {
+
+    private static final long SEED = 0x5EEDL;
+    private static final int SEQUENCES = 20;
+    private static final int COMMANDS_PER_SEQUENCE = 200;
+    private static final long MAX_COMMAND_MS = 50L;
+    private static final long RENDER_THREAD_EXIT_MS = 2000L;
+    private static final long RENDER_THREAD_CATCH_UP_MS = 10_000L;
+    // Well inside a watchdog interval, so every check follows at least one caught-up step
+    private static final long CLOCK_STEP_MS = RenderWatchdog.CHECK_INTERVAL_MS / 3;
+
+    // id -> url; covers every player type, including ones whose content fails to load
+    private static final String[][] SOUNDS = {
+            {"white-noise", "synthetic://white"},
+            {"pink-noise", "synthetic://pink"},
+            {"brown-noise", "synthetic://brown"},
+            {"box-fan", "synthetic://fan"},
+            {"rain-synth", "synthetic://rain"},
+            {"surf-synth", "synthetic://surf"},
+            {"fire-synth", "synthetic://fire"},
+            {"rain", "/sounds/rain.mp3"},
+            {"crickets", "events:///sounds/crickets.mp3"},
+            {"stream", "granular:///sounds/stream.mp3"},
+    };
+
+    private static final Map<String, List<Long>> latencies = new HashMap<>();
+
+    private ServiceController<AudioService> controller;
+    private int startId = 0;
+
+    @After
+    public void tearDown() {
+        if (controller != null) {
+            controller.destroy();
+            controller = null;
+        }
+    }
+
+    @AfterClass
+    public static void reportLatencies() {
+        final List<String> actions = new ArrayList<>(latencies.keySet());
+        Collections.sort(actions);
+        System.out.println("Command latency (us)      count     p50     p95     p99     max");
+        for (String action : actions) {
+            final List<Long> samples = latencies.get(action);
+            Collections.sort(samples);
+            System.out.println(String.format(Locale.ROOT, "%-24s %6d %7d %7d %7d %7d", action, samples.size(),
+                    percentile(samples, 0.50), percentile(samples, 0.95), percentile(samples, 0.99),
+                    samples.get(samples.size() - 1)));
+        }
+    }
+
+    @Test
+    public void randomizedCommandStormsLeaveNothingBehind() {
+        final Random rnd = new Random(SEED);
+        for (int sequence = 0; sequence < SEQUENCES; sequence++) {
+            for (int i = 0; i < COMMANDS_PER_SEQUENCE; i++) {
+                randomCommand(rnd);
+                idle(rnd.nextInt(2000));
+            }
+            send(command("ACTION_STOP_ALL"));
+            idle(10_000L);
+            assertNothingLeaked("sequence " + sequence + " (seed " + SEED + ")");
+        }
+    }
+
+    @Test
+    public void overnightSessionWindsDownAndStops() {
+        send(command("ACTION_INITIALIZE"));
+        for (int i = 0; i < 5; i++) {
+            send(play(SOUNDS[i][0], SOUNDS[i][1], 0.8f));
+        }
+        send(command("ACTION_START_WIND_DOWN")
+                .putExtra("DELAY_MS", 30L * 60_000L)
+                .putExtra("DURATION_MS", 60L * 60_000L)
+                .putExtra("END_LOUDNESS", 0.25f));
+        send(command("ACTION_SET_SLEEP_TIMER")
+                .putExtra("TARGET_MS", System.currentTimeMillis() + 8L * 3_600_000L));
+        idle(1000L);
+        assertTrue("Layers should be playing", controller != null && controller.get().getPlayerCount() > 0);
+
+        final Context context = RuntimeEnvironment.getApplication();
+        for (int minute = 1; minute <= 8 * 60 + 1; minute++) {
+            idle(60_000L);
+            if (minute % 45 == 0) {
+                // The screen goes on and off through the night
+                context.sendBroadcast(new Intent(minute % 90 == 0 ? Intent.ACTION_SCREEN_ON : Intent.ACTION_SCREEN_OFF));
+            }
+        }
+        idle(10_000L);
+
+        assertNull("The sleep timer should have stopped the service", controller);
+        assertNothingLeaked("overnight session");
+    }
+
+    private void randomCommand(Random rnd) {
+        final String[] sound = SOUNDS[rnd.nextInt(SOUNDS.length)];
+        final int roll = rnd.nextInt(100);
+        if (roll < 26) {
+            send(play(sound[0], sound[1], rnd.nextFloat()));
+        } else if (roll < 30) {
+            send(scene(rnd));
+        } else if (roll < 45) {
+            send(command("ACTION_STOP").putExtra("SOUND_ID", sound[0]));
+        } else if (roll < 60) {
+            send(command("ACTION_SET_VOLUME").putExtra("SOUND_ID", sound[0]).putExtra("VOLUME", rnd.nextFloat()));
+        } else if (roll < 65) {
+            send(command("ACTION_SET_EQ").putExtra("SOUND_ID", sound[0])
+                    .putExtra("LOW_SHELF_DB", rnd.nextFloat() * 12f - 6f)
+                    .putExtra("HIGH_SHELF_DB", rnd.nextFloat() * 12f - 6f)
+                    .putExtra("LOW_PASS_HZ", rnd.nextBoolean() ? 0f : 500f + rnd.nextFloat() * 8000f));
+        } else if (roll < 69) {
+            send(command("ACTION_STOP_ALL"));
+        } else if (roll < 72) {
+            send(command(AudioService.ACTION_FADE_OUT_STOP));
+        } else if (roll < 76) {
+            send(command("ACTION_SET_SLEEP_TIMER")
+                    .putExtra("TARGET_MS", System.currentTimeMillis() + 1000L + rnd.nextInt(20_000)));
+        } else if (roll < 79) {
+            send(command("ACTION_CANCEL_SLEEP_TIMER"));
+        } else if (roll < 83) {
+            send(command("ACTION_START_WIND_DOWN")
+                    .putExtra("DELAY_MS", (long) rnd.nextInt(5000))
+                    .putExtra("DURATION_MS", 10_000L + rnd.nextInt(60_000))
+                    .putExtra("END_LOUDNESS", rnd.nextFloat()));
+        } else if (roll < 86) {
+            send(command("ACTION_CANCEL_WIND_DOWN"));
+        } else if (roll < 90) {
+            send(command("ACTION_INITIALIZE"));
+        } else if (roll < 93) {
+            loseAudioFocus(rnd.nextBoolean() ? AudioManager.AUDIOFOCUS_LOSS : AudioManager.AUDIOFOCUS_LOSS_TRANSIENT);
+        } else if (roll < 98) {
+            RuntimeEnvironment.getApplication().sendBroadcast(
+                    new Intent(rnd.nextBoolean() ? Intent.ACTION_SCREEN_OFF : Intent.ACTION_SCREEN_ON));
+        } else if (controller != null) {
+            // The system gives up on the foreground service while layers may still play
+            final long start = System.nanoTime();
+            controller.get().onTimeout(startId, 0);
+            record("onTimeout", System.nanoTime() - start);
+            settle();
+        }
+    }
+
+    private static Intent command(String action) {
+        return new Intent(RuntimeEnvironment.getApplication(), AudioService.class).setAction(action);
+    }
+
+    private static Intent play(String id, String url, float volume) {
+        return command("ACTION_PLAY").putExtra("SOUND_ID", id).putExtra("URL", url).putExtra("VOLUME", volume);
+    }
+
+    // A crossfade to one to four distinct sounds, some of which may already be playing
+    private static Intent scene(Random rnd) {
+        final int count = 1 + rnd.nextInt(4);
+        final int first = rnd.nextInt(SOUNDS.length);
+        final String[] ids = new String[count];
+        final String[] urls = new String[count];
+        final float[] volumes = new float[count];
+        for (int i = 0; i < count; i++) {
+            final String[] sound = SOUNDS[(first + i) % SOUNDS.length];
+            ids[i] = sound[0];
+            urls[i] = sound[1];
+            volumes[i] = rnd.nextFloat();
+        }
+        return command(AudioService.ACTION_TRANSITION_SCENE).putExtra("SOUND_IDS", ids).putExtra("URLS", urls)
+                .putExtra("VOLUMES", volumes).putExtra("FADE_MS", rnd.nextInt(5000));
+    }
+
+    /**
+     * Delivers a start command, creating the service first if it is not running.
+     */
+    private void send(Intent intent) {
+        if (controller == null) {
+            controller = Robolectric.buildService(AudioService.class).create();
+        }
+        final long start = System.nanoTime();
+        controller.get().onStartCommand(intent, 0, ++startId);
+        final long elapsed = System.nanoTime() - start;
+        record(intent.getAction(), elapsed);
+        if (elapsed > MAX_COMMAND_MS * 1_000_000L) {
+            fail(intent.getAction() + " blocked the main thread for " + elapsed / 1_000_000L + " ms");
+        }
+        settle();
+    }
+
+    private void loseAudioFocus(int focusChange) {
+        if (controller == null) return;
+        final ShadowAudioManager.AudioFocusRequest request = shadowAudioManager().getLastAudioFocusRequest();
+        if (request == null || request.listener == null) return;
+        final long start = System.nanoTime();
+        request.listener.onAudioFocusChange(focusChange);
+        record("focusLoss", System.nanoTime() - start);
+        settle();
+    }
+
+    private void idle(long ms) {
+        long left = ms;
+        while (left > 0L && controller != null) {
+            final long step = Math.min(left, CLOCK_STEP_MS);
+            shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(step));
+            left -= step;
+            // Event deadlines are on the simulated clock too; on a device an alarm wakes the wheel
+            TimingWheel.getInstance().wake();
+            assertTrue("Render threads did not catch up with the simulated clock",
+                    ShadowPacedAudioTrack.awaitRenderThreads("RenderOutput-", RENDER_THREAD_CATCH_UP_MS));
+            settle();
+        }
+        // Without a service nothing renders; the rest can pass at once
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(left));
+        settle();
+    }
+
+    // The system destroys a service once it has stopped itself; the next command starts a new one
+    private void settle() {
+        if (controller != null && shadowOf(controller.get()).isStoppedBySelf()) {
+            controller.destroy();
+            controller = null;
+            assertNull("Static instance outlived the service", AudioService.getInstance());
+        }
+    }
+
+    private void assertNothingLeaked(String when) {
+        assertNull(when + ": service still running", controller);
+        assertNull(when + ": static instance not cleared", AudioService.getInstance());
+        assertEquals(when + ": Handler callbacks still scheduled",
+                Duration.ZERO, shadowOf(Looper.getMainLooper()).getNextScheduledTaskTime());
+
+        final ShadowAudioManager.AudioFocusRequest request = shadowAudioManager().getLastAudioFocusRequest();
+        if (request != null && request.listener != null) {
+            assertEquals(when + ": audio focus listener not abandoned",
+                    request.listener, shadowAudioManager().getLastAbandonedAudioFocusListener());
+        }
+
+        // Event layers only keep the CPU awake while an event plays
+        final PowerManager.WakeLock wakeLock = ShadowPowerManager.getLatestWakeLock();
+        assertTrue(when + ": wake lock still held", wakeLock == null || !wakeLock.isHeld());
+
+        // Stopped players hand their outputs to the pool; destroying the service must drain it
+        final long deadline = System.currentTimeMillis() + RENDER_THREAD_EXIT_MS;
+        int alive;
+        while ((alive = countThreads("RenderOutput-")) > 0 && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(10L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        assertEquals(when + ": render threads (and their tracks) still alive", 0, alive);
+    }
+
+    private static ShadowAudioManager shadowAudioManager() {
+        return shadowOf((AudioManager) RuntimeEnvironment.getApplication().getSystemService(Context.AUDIO_SERVICE));
+    }
+
+    private static int countThreads(String prefix) {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.isAlive() && thread.getName().startsWith(prefix)) count++;
+        }
+        return count;
+    }
+
+    private static void record(String action, long nanos) {
+        List<Long> samples = latencies.get(action);
+        if (samples == null) {
+            samples = new ArrayList<>();
+            latencies.put(action, samples);
+        }
+        samples.add(nanos / 1000L);
+    }
+
+    private static long percentile(List<Long> sorted, double p) {
+        return sorted.get(Math.min(sorted.size() - 1, (int) Math.floor(p * sorted.size())));
+    }
+}
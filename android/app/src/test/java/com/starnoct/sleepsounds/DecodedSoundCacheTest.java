@@ -0,0 +1,142 @@
+package com.starnoct.sleepsounds;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Plans the warm-up against a budget and fills a cache directory the way the job does,
+ * including runs that are stopped part way and resumed.
+ */
+// Robolectric only for Log, which the failure path writes to
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class DecodedSoundCacheTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void plansByPlayCountWithinTheBudget() {
+        final Map<String, Long> sizes = new HashMap<>();
+        sizes.put("rain", 40L);
+        sizes.put("surf", 80L);
+        sizes.put("birds", 30L);
+        sizes.put("fire", 20L);
+        final List<String> plan = DecodedSoundCache.plan(
+                Arrays.asList("rain", "surf", "birds", "fire"), sizes::get, 100L, 8);
+
+        // surf would overrun the budget; smaller sounds further down still fit
+        assertEquals(Arrays.asList("rain", "birds", "fire"), plan);
+    }
+
+    @Test
+    public void plansNoMoreThanTheCapAndSkipsUnknownSizes() {
+        final Map<String, Long> sizes = new HashMap<>();
+        sizes.put("a", 0L);
+        sizes.put("b", 1L);
+        sizes.put("c", 1L);
+        sizes.put("d", 1L);
+        final List<String> plan = DecodedSoundCache.plan(
+                Arrays.asList("a", "b", "c", "d"), sizes::get, 100L, 2);
+        assertEquals(Arrays.asList("b", "c"), plan);
+    }
+
+    @Test
+    public void stoppedRunKeepsFinishedFilesAndResumes() throws IOException {
+        final File dir = folder.newFolder("cache");
+        final Map<String, File> planned = planned(dir, "a", "b", "c");
+        final RecordingWriter writer = new RecordingWriter();
+
+        // Stopped while writing b: a is kept, b's unfinished write is not
+        writer.stopAt = "b";
+        assertFalse(DecodedSoundCache.fill(dir, planned, writer, writer));
+        assertEquals(Collections.singletonList("a.pcm"), names(dir));
+
+        writer.stopAt = null;
+        writer.stopped = false;
+        writer.written.clear();
+        assertTrue(DecodedSoundCache.fill(dir, planned, writer, writer));
+        assertEquals(Arrays.asList("b", "c"), writer.written);
+        assertEquals(Arrays.asList("a.pcm", "b.pcm", "c.pcm"), names(dir));
+    }
+
+    @Test
+    public void deletesWhatIsNoLongerPlanned() throws IOException {
+        final File dir = folder.newFolder("cache");
+        final RecordingWriter writer = new RecordingWriter();
+        assertTrue(DecodedSoundCache.fill(dir, planned(dir, "a", "b"), writer, writer));
+        assertTrue(new File(dir, "stale.pcm.tmp").createNewFile());
+
+        assertTrue(DecodedSoundCache.fill(dir, planned(dir, "b", "c"), writer, writer));
+        assertEquals(Arrays.asList("b.pcm", "c.pcm"), names(dir));
+    }
+
+    @Test
+    public void oneBrokenSoundDoesNotKeepTheOthersOut() throws IOException {
+        final File dir = folder.newFolder("cache");
+        final RecordingWriter writer = new RecordingWriter();
+        writer.failAt = "a";
+        assertTrue(DecodedSoundCache.fill(dir, planned(dir, "a", "b"), writer, writer));
+        assertEquals(Collections.singletonList("b.pcm"), names(dir));
+    }
+
+    private static Map<String, File> planned(File dir, String... urls) {
+        final Map<String, File> planned = new LinkedHashMap<>();
+        for (String url : urls) planned.put(url, new File(dir, url + ".pcm"));
+        return planned;
+    }
+
+    private static List<String> names(File dir) {
+        final List<String> names = new ArrayList<>();
+        final File[] files = dir.listFiles();
+        if (files != null) for (File file : files) names.add(file.getName());
+        Collections.sort(names);
+        return names;
+    }
+
+    // Writes a few bytes per sound; can stop mid-write or fail like a broken asset
+    private static final class RecordingWriter implements DecodedSoundCache.Writer, DecodedSoundCache.StopSignal {
+        final List<String> written = new ArrayList<>();
+        String stopAt;
+        String failAt;
+        boolean stopped;
+
+        @Override
+        public boolean write(String url, File out, DecodedSoundCache.StopSignal stop) throws IOException {
+            try (FileOutputStream stream = new FileOutputStream(out)) {
+                stream.write(new byte[16]);
+                if (url.equals(failAt)) throw new IOException("Broken " + url);
+                if (url.equals(stopAt)) {
+                    stopped = true;
+                    return false;
+                }
+            }
+            written.add(url);
+            return true;
+        }
+
+        @Override
+        public boolean isStopped() {
+            return stopped;
+        }
+    }
+}
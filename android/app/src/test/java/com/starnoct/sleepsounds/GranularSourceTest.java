@@ -0,0 +1,80 @@
+package com.starnoct.sleepsounds;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * Resynthesizes known excerpts and checks the level, the seeding and the excerpt bounds.
+ */
+public class GranularSourceTest {
+
+    private static final int RATE = 48000;
+    private static final int FRAMES = 1024;
+
+    @Test
+    public void noiseExcerptKeepsItsLevel() {
+        final PcmClip clip = noise(4 * 44100, 8000, 1);
+        final double clipRms = rms(clip);
+        // Uncorrelated grains add in power, so the texture is about as loud as the excerpt
+        assertEquals(clipRms, rms(render(new GranularSource(clip, 1f, 7), 30)), clipRms * 0.15);
+        assertEquals(clipRms / 2, rms(render(new GranularSource(clip, 0.5f, 7), 30)), clipRms * 0.075);
+    }
+
+    @Test
+    public void seedDeterminesTheGrains() {
+        final PcmClip clip = noise(44100, 8000, 2);
+        final float[] first = render(new GranularSource(clip, 1f, 3), 5);
+        assertArrayEquals(first, render(new GranularSource(clip, 1f, 3), 5), 0f);
+        assertFalse(Arrays.equals(first, render(new GranularSource(clip, 1f, 4), 5)));
+    }
+
+    @Test
+    public void excerptTooShortForAGrainRendersSilence() {
+        // Shorter than the shortest grain: nothing may read past its end
+        final float[] out = render(new GranularSource(noise(1000, 8000, 5), 1f, 9), 2);
+        for (float sample : out) assertEquals(0f, sample, 0f);
+    }
+
+    // Lowpassed like most recordings, so reading between samples barely changes its level
+    private static PcmClip noise(int frames, int amplitude, int seed) {
+        final Mulberry32 rnd = new Mulberry32(seed);
+        final short[] samples = new short[frames * 2];
+        float l = 0f;
+        float r = 0f;
+        for (int i = 0; i < frames; i++) {
+            l += 0.1f * (rnd.nextBipolar() - l);
+            r += 0.1f * (rnd.nextBipolar() - r);
+            samples[i * 2] = (short) (l * 4f * amplitude);
+            samples[i * 2 + 1] = (short) (r * 4f * amplitude);
+        }
+        return new PcmClip(samples, frames, 44100);
+    }
+
+    private static float[] render(GranularSource source, int seconds) {
+        source.prepare(RATE);
+        final float[] out = new float[seconds * RATE / FRAMES * FRAMES * 2];
+        final float[] block = new float[FRAMES * 2];
+        for (int pos = 0; pos < out.length; pos += block.length) {
+            source.render(block, FRAMES);
+            System.arraycopy(block, 0, out, pos, block.length);
+        }
+        return out;
+    }
+
+    private static double rms(PcmClip clip) {
+        double sum = 0.0;
+        for (short s : clip.samples) sum += (s / 32768.0) * (s / 32768.0);
+        return Math.sqrt(sum / clip.samples.length);
+    }
+
+    private static double rms(float[] samples) {
+        double sum = 0.0;
+        for (float s : samples) sum += s * s;
+        return Math.sqrt(sum / samples.length);
+    }
+}
@@ -0,0 +1,80 @@
+package com.starnoct.sleepsounds;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Feeds the meter known blocks and reads back the packed rms/peak pair.
+ */
+public class LevelMeterTest {
+
+    private static final int RATE = 48000;
+    private static final int FRAMES = 1024;
+
+    @Test
+    public void steadyToneReadsBackItsRmsAndPeak() {
+        final LevelMeter meter = new LevelMeter();
+        final float[] block = square(0.5f);
+        // Several seconds: well past the 300 ms integration
+        for (int i = 0; i < RATE * 3 / FRAMES; i++) meter.process(block, block.length, 2, RATE);
+
+        final float[] levels = new float[2];
+        meter.read(levels);
+        assertEquals(0.5f, levels[0], 1e-3f);
+        assertEquals(0.5f, levels[1], 0f);
+    }
+
+    @Test
+    public void packingKeepsBothHalvesExact() {
+        final LevelMeter meter = new LevelMeter();
+        final float[] block = new float[FRAMES * 2];
+        // One sample sets the peak; the rms is a tiny, non-round number
+        block[7] = -0.8125f;
+        meter.process(block, block.length, 2, RATE);
+
+        final float[] levels = new float[2];
+        meter.read(levels);
+        assertEquals(0.8125f, levels[1], 0f);
+        final double alpha = 1.0 - Math.exp(-(double) FRAMES / RATE / 0.3);
+        assertEquals(Math.sqrt(alpha * 0.8125 * 0.8125 / block.length), levels[0], 1e-6);
+    }
+
+    @Test
+    public void gainScalesWhatIsReadAndResetClears() {
+        final LevelMeter meter = new LevelMeter();
+        final float[] block = square(0.5f);
+        meter.process(block, block.length, 2, RATE);
+        meter.setGain(0.5f);
+
+        final float[] levels = new float[2];
+        meter.read(levels);
+        assertEquals(0.25f, levels[1], 0f);
+
+        meter.reset();
+        meter.read(levels);
+        assertEquals(0f, levels[0], 0f);
+        assertEquals(0f, levels[1], 0f);
+    }
+
+    @Test
+    public void peakFallsAtTwentyDecibelsPerSecond() {
+        final LevelMeter meter = new LevelMeter();
+        final float[] loud = square(1f);
+        meter.process(loud, loud.length, 2, RATE);
+        final float[] silence = new float[FRAMES * 2];
+        final int blocks = RATE / FRAMES;
+        for (int i = 0; i < blocks; i++) meter.process(silence, silence.length, 2, RATE);
+
+        final float[] levels = new float[2];
+        meter.read(levels);
+        final double seconds = (double) blocks * FRAMES / RATE;
+        assertEquals(Math.pow(10.0, -seconds), levels[1], 1e-4);
+    }
+
+    private static float[] square(float amplitude) {
+        final float[] block = new float[FRAMES * 2];
+        for (int i = 0; i < block.length; i++) block[i] = (i / 2) % 2 == 0 ? amplitude : -amplitude;
+        return block;
+    }
+}
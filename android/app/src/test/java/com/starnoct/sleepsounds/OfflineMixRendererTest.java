@@ -0,0 +1,104 @@
+package com.starnoct.sleepsounds;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Renders small mixes to disk: exact length, fades, determinism and faster than real time.
+ *
+ * The speed floor is deliberately loose for slow CI hosts; override with
+ * -Dmix.minRealtimeFactor=N.
+ */
+public class OfflineMixRendererTest {
+
+    private static final int RATE = 44100;
+    private static final double DEFAULT_MIN_REALTIME_FACTOR = 20.0;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void writesExactlyTheRequestedLengthWithFades() throws Exception {
+        final File file = folder.newFile("mix.wav");
+        // Not a whole number of chunks, so the last chunk is short
+        final long durationMs = 2500L;
+        final OfflineMixRenderer.Result result = OfflineMixRenderer.render(mix(200, 300), durationMs, RATE, 7, file);
+
+        final long frames = durationMs * RATE / 1000L;
+        assertEquals(frames, result.frames);
+        assertEquals(44L + frames * 4L, file.length());
+
+        final short[] pcm = readAll(file, frames);
+        // Faded in from and out to silence; dither stays within a couple of LSB
+        assertTrue(Math.abs(pcm[0]) <= 2 && Math.abs(pcm[1]) <= 2);
+        assertTrue(Math.abs(pcm[pcm.length - 2]) <= 2 && Math.abs(pcm[pcm.length - 1]) <= 2);
+        assertTrue(peak(pcm, (int) frames / 2 * 2, 4096) > 1000);
+    }
+
+    @Test
+    public void theSameSeedRendersIdentically() throws Exception {
+        final File a = folder.newFile("a.wav");
+        final File b = folder.newFile("b.wav");
+        OfflineMixRenderer.render(mix(0, 0), 1000L, RATE, 42, a);
+        OfflineMixRenderer.render(mix(0, 0), 1000L, RATE, 42, b);
+        assertArrayEquals(Files.readAllBytes(a.toPath()), Files.readAllBytes(b.toPath()));
+    }
+
+    @Test
+    public void rendersFasterThanRealTime() throws Exception {
+        final double floor = Double.parseDouble(
+                System.getProperty("mix.minRealtimeFactor", String.valueOf(DEFAULT_MIN_REALTIME_FACTOR)));
+        final File file = folder.newFile("speed.wav");
+        // Warm up the JIT, then take the best of a few runs
+        OfflineMixRenderer.render(mix(0, 0), 20_000L, RATE, 1, file);
+        double best = 0.0;
+        for (int run = 0; run < 3; run++) {
+            best = Math.max(best, OfflineMixRenderer.render(mix(0, 0), 60_000L, RATE, 1, file).realtimeFactor());
+        }
+        assertTrue(String.format(Locale.ROOT, "%.1fx realtime, expected at least %.1fx", best, floor), best >= floor);
+    }
+
+    private static List<OfflineMixRenderer.Layer> mix(int fadeInMs, int fadeOutMs) {
+        return Arrays.asList(
+                layer("rain", 0.8f, fadeInMs, fadeOutMs),
+                layer("pink", 0.5f, fadeInMs, fadeOutMs),
+                layer("fire", 0.6f, fadeInMs, fadeOutMs));
+    }
+
+    private static OfflineMixRenderer.Layer layer(String flavor, float volume, int fadeInMs, int fadeOutMs) {
+        return new OfflineMixRenderer.Layer(flavor, seed -> SynthSources.create(flavor, seed), volume, fadeInMs, fadeOutMs);
+    }
+
+    private static short[] readAll(File file, long frames) throws IOException {
+        final short[] pcm = new short[(int) frames * 2];
+        try (WavReader reader = new WavReader(file)) {
+            final short[] block = new short[4096 * 2];
+            int total = 0;
+            int n;
+            while ((n = reader.read(block, 4096)) > 0) {
+                System.arraycopy(block, 0, pcm, total * 2, n * 2);
+                total += n;
+            }
+            assertEquals(frames, total);
+        }
+        return pcm;
+    }
+
+    private static int peak(short[] pcm, int from, int samples) {
+        int peak = 0;
+        for (int i = from; i < from + samples; i++) peak = Math.max(peak, Math.abs(pcm[i]));
+        return peak;
+    }
+}
@@ -0,0 +1,71 @@
+package com.starnoct.sleepsounds;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * Checks the soft clip's shape and the 16-bit conversion: dither stays within one LSB,
+ * averages out, is reproducible per seed, and hot samples saturate instead of wrapping.
+ */
+public class OutputStageTest {
+
+    private static final int SAMPLES = 48000;
+
+    @Test
+    public void softClipPassesBelowTheKneeAndBendsAbove() {
+        assertEquals(0.5f, OutputStage.softClip(0.5f), 0f);
+        assertEquals(-OutputStage.KNEE, OutputStage.softClip(-OutputStage.KNEE), 0f);
+        float previous = 0f;
+        for (float x = 0f; x < 8f; x += 0.01f) {
+            final float y = OutputStage.softClip(x);
+            assertTrue("not monotonic at " + x, y >= previous);
+            assertTrue("above full scale at " + x, y <= 1f);
+            assertEquals(-y, OutputStage.softClip(-x), 0f);
+            previous = y;
+        }
+        // No step where the bend starts
+        assertEquals(OutputStage.KNEE, OutputStage.softClip(OutputStage.KNEE + 1e-4f), 2e-4f);
+    }
+
+    @Test
+    public void ditherStaysWithinOneLsbAndAveragesOut() {
+        final short[] silence = quantize(new OutputStage(42), 0f);
+        long sum = 0L;
+        for (short s : silence) {
+            assertTrue("dither of " + s + " LSB", Math.abs(s) <= 1);
+            sum += s;
+        }
+        assertEquals(0.0, (double) sum / SAMPLES, 0.02);
+
+        final short[] half = quantize(new OutputStage(42), 0.25f);
+        sum = 0L;
+        for (short s : half) sum += s;
+        assertEquals(0.25 * 32767, (double) sum / SAMPLES, 0.02);
+    }
+
+    @Test
+    public void ditherIsReproduciblePerSeed() {
+        assertArrayEquals(quantize(new OutputStage(7), 0.1f), quantize(new OutputStage(7), 0.1f));
+        assertFalse(Arrays.equals(quantize(new OutputStage(7), 0.1f), quantize(new OutputStage(8), 0.1f)));
+    }
+
+    @Test
+    public void hotSamplesSaturateWithoutWrapping() {
+        for (short s : quantize(new OutputStage(1), 4f)) assertTrue(s > 32000);
+        for (short s : quantize(new OutputStage(1), -4f)) assertTrue(s < -32000);
+    }
+
+    private static short[] quantize(OutputStage stage, float value) {
+        final float[] in = new float[SAMPLES];
+        Arrays.fill(in, value);
+        final short[] out = new short[SAMPLES];
+        stage.quantize(in, out, SAMPLES);
+        return out;
+    }
+}
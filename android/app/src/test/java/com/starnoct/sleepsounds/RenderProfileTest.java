@@ -0,0 +1,51 @@
+package com.starnoct.sleepsounds;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Checks how profiles combine and how long a screen-off loop sleeps between batch refills.
+ */
+public class RenderProfileTest {
+
+    private static final int RATE = 48000;
+
+    @Test
+    public void mergeKeepsTheMoreRelaxedOfEach() {
+        final RenderProfile merged = RenderProfile.DEEP_BUFFER.merge(RenderProfile.REDUCED_RATE);
+        assertEquals(RenderProfile.MAX_BLOCK_FRAMES, merged.blockFrames);
+        assertEquals(RenderProfile.MAX_BUFFER_MS, merged.bufferMs);
+        assertTrue(merged.reducedRate);
+        assertTrue(merged.refillInBatches);
+        assertFalse(RenderProfile.INTERACTIVE.merge(RenderProfile.WIND_DOWN).refillInBatches);
+        assertNotEquals(RenderProfile.DEEP_BUFFER,
+                new RenderProfile(RenderProfile.MAX_BLOCK_FRAMES, RenderProfile.MAX_BUFFER_MS, false));
+    }
+
+    @Test
+    public void fullQueueSleepsUntilHalfHasPlayed() {
+        final int queue = RATE * RenderProfile.MAX_BUFFER_MS / 1000;
+        final int block = RenderProfile.MAX_BLOCK_FRAMES;
+        assertEquals(RenderProfile.MAX_BUFFER_MS / 2, RenderOutput.refillNapMs(queue, block, queue, RATE));
+        // One wakeup per refill instead of one per mixer burst, and still one per watchdog check
+        assertTrue(RenderOutput.refillNapMs(queue, block, queue, RATE) < RenderWatchdog.CHECK_INTERVAL_MS);
+        // Just too full for another block: sleeps until half the queue is left
+        assertEquals(RenderProfile.MAX_BUFFER_MS / 2 - 1000L * block / RATE,
+                RenderOutput.refillNapMs(queue - block + 1, block, queue, RATE), 1);
+    }
+
+    @Test
+    public void writesWithoutSleepingWhileTheBlockFits() {
+        final int queue = RATE * 2;
+        assertEquals(0L, RenderOutput.refillNapMs(queue - 8192, 8192, queue, RATE));
+        assertEquals(0L, RenderOutput.refillNapMs(0, 8192, queue, RATE));
+        // The track could not tell: blocking writes pace the loop instead
+        assertEquals(0L, RenderOutput.refillNapMs(-1, 8192, queue, RATE));
+        // A queue barely bigger than a block has nothing to batch
+        assertEquals(0L, RenderOutput.refillNapMs(1000, 8192, 8192, RATE));
+    }
+}
@@ -0,0 +1,42 @@
+package com.starnoct.sleepsounds;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Checks the log2 timing buckets and the percentiles read back from them.
+ */
+public class RenderStatsTest {
+
+    @Test
+    public void bucketsAreLog2OfMicroseconds() {
+        assertEquals(0, RenderStats.bucketOf(0L));
+        assertEquals(0, RenderStats.bucketOf(999L));
+        assertEquals(0, RenderStats.bucketOf(1_999L));
+        assertEquals(1, RenderStats.bucketOf(2_000L));
+        assertEquals(10, RenderStats.bucketOf(1_500_000L));
+        assertEquals(RenderStats.BUCKETS - 1, RenderStats.bucketOf(60_000_000_000L));
+    }
+
+    @Test
+    public void percentilesReportTheUpperBoundOfTheirBucket() {
+        final int[] hist = new int[RenderStats.BUCKETS];
+        hist[3] = 90; // 8..16 us
+        hist[9] = 9;  // 512..1024 us
+        hist[15] = 1; // 32..64 ms
+        assertEquals(16L, RenderStats.percentile(hist, 100L, 0.50));
+        assertEquals(1024L, RenderStats.percentile(hist, 100L, 0.95));
+        assertEquals(1024L, RenderStats.percentile(hist, 100L, 0.99));
+        assertEquals(65536L, RenderStats.percentile(hist, 100L, 1.0));
+        assertEquals(0L, RenderStats.percentile(new int[RenderStats.BUCKETS], 0L, 0.5));
+    }
+
+    @Test
+    public void blocksAddUpTheFramesWritten() {
+        final RenderStats stats = new RenderStats("rain", "synth:rain");
+        stats.markStarted();
+        for (int i = 0; i < 10; i++) stats.recordBlock(100_000L, 2_000_000L, 1024);
+        assertEquals(10240L, stats.getFramesWritten());
+    }
+}
@@ -0,0 +1,90 @@
+package com.starnoct.sleepsounds;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+/**
+ * Drives the watchdog with a fake pipeline: progress, stalls, rebuilds and giving up.
+ */
+public class RenderWatchdogTest {
+
+    private static final class FakePipeline implements RenderWatchdog.Pipeline {
+        long frames;
+        boolean running = true;
+
+        @Override
+        public long framesWritten() {
+            return frames;
+        }
+
+        @Override
+        public boolean expectsProgress() {
+            return running;
+        }
+    }
+
+    @Test
+    public void rebuildsAStalledPipelineUntilItGivesUp() {
+        final RenderWatchdog watchdog = new RenderWatchdog();
+        final FakePipeline pipeline = new FakePipeline();
+
+        // The first check only takes a baseline
+        assertEquals(RenderWatchdog.HEALTHY, watchdog.check(pipeline));
+        pipeline.frames += 4096;
+        assertEquals(RenderWatchdog.HEALTHY, watchdog.check(pipeline));
+
+        for (int attempt = 1; attempt <= RenderWatchdog.MAX_ATTEMPTS; attempt++) {
+            assertEquals(RenderWatchdog.RECOVER, watchdog.check(pipeline));
+        }
+        assertEquals(RenderWatchdog.GIVE_UP, watchdog.check(pipeline));
+    }
+
+    @Test
+    public void progressAfterARebuildResetsTheAttempts() {
+        final RenderWatchdog watchdog = new RenderWatchdog();
+        final FakePipeline pipeline = new FakePipeline();
+        watchdog.check(pipeline);
+
+        for (int round = 0; round < 3; round++) {
+            for (int attempt = 1; attempt <= RenderWatchdog.MAX_ATTEMPTS; attempt++) {
+                assertEquals(RenderWatchdog.RECOVER, watchdog.check(pipeline));
+            }
+            pipeline.frames += 1024;
+            assertEquals(RenderWatchdog.HEALTHY, watchdog.check(pipeline));
+        }
+    }
+
+    @Test
+    public void slowSourcePreparationIsNotAStall() {
+        final RenderWatchdog watchdog = new RenderWatchdog();
+        final FakePipeline pipeline = new FakePipeline();
+        // Decoding a granular excerpt can outlast several checks before the first write
+        pipeline.running = false;
+        for (int i = 0; i < RenderWatchdog.MAX_ATTEMPTS + 2; i++) {
+            assertEquals(RenderWatchdog.HEALTHY, watchdog.check(pipeline));
+        }
+        pipeline.running = true;
+        pipeline.frames += 1024;
+        assertEquals(RenderWatchdog.HEALTHY, watchdog.check(pipeline));
+    }
+
+    @Test
+    public void ignoresPipelinesThatAreNotPlaying() {
+        final RenderWatchdog watchdog = new RenderWatchdog();
+        final FakePipeline pipeline = new FakePipeline();
+        pipeline.running = false;
+        for (int i = 0; i < RenderWatchdog.MAX_ATTEMPTS + 2; i++) {
+            assertEquals(RenderWatchdog.HEALTHY, watchdog.check(pipeline));
+        }
+
+        // A pipeline that was dropped starts over with a baseline
+        pipeline.running = true;
+        watchdog.check(pipeline);
+        assertEquals(RenderWatchdog.RECOVER, watchdog.check(pipeline));
+        watchdog.retainAll(Collections.emptyList());
+        assertEquals(RenderWatchdog.HEALTHY, watchdog.check(pipeline));
+    }
+}
@@ -0,0 +1,179 @@
+package com.starnoct.sleepsounds;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Converts pure tones between common rates and measures what comes out: frequency,
+ * amplitude, and the residual after a least-squares sine fit as noise.
+ */
+public class ResamplerTest {
+
+    private static final int IN_RATE = 44100;
+    private static final int OUT_RATE = 48000;
+    private static final double AMPLITUDE = 0.5;
+    private static final int SECONDS = 2;
+
+    @Test
+    public void oneKilohertzKeepsPitchLevelAndSnrAtEveryPreset() {
+        final Resampler.Quality[] presets = {Resampler.Quality.FAST, Resampler.Quality.BALANCED, Resampler.Quality.HIGH};
+        // Measured 61, 77 and 88 dB; the floors leave a few dB for platform float differences
+        final double[] minSnrDb = {58.0, 73.0, 84.0};
+        for (int q = 0; q < presets.length; q++) {
+            final Tone tone = Tone.measure(convert(1000.0, IN_RATE, OUT_RATE, presets[q]), OUT_RATE, 1000.0);
+            final String label = String.format(Locale.ROOT, "preset %d: %s", q, tone);
+            assertEquals(label, 1000.0, tone.frequency, 0.05);
+            assertEquals(label, 0.0, tone.gainDb(), 0.05);
+            assertTrue(label, tone.snrDb >= minSnrDb[q]);
+        }
+    }
+
+    @Test
+    public void balancedPassbandIsFlatToTenKilohertz() {
+        for (double hz : new double[]{100.0, 5000.0, 10000.0}) {
+            final Tone tone = Tone.measure(convert(hz, IN_RATE, OUT_RATE, Resampler.Quality.BALANCED), OUT_RATE, hz);
+            assertEquals(tone.toString(), 0.0, tone.gainDb(), 0.2);
+        }
+    }
+
+    @Test
+    public void downsamplingRejectsWhatTheNewRateCannotHold() {
+        // Tones the new rate cannot hold must not fold back into the audible band. Just above
+        // the new Nyquist lies the filter's transition band, so test where the stopband starts.
+        final Tone balanced = Tone.measure(convert(30000.0, 96000, OUT_RATE, Resampler.Quality.BALANCED),
+                OUT_RATE, OUT_RATE - 30000.0);
+        assertTrue("alias " + balanced, balanced.gainDb() < -65.0);
+        final Tone high = Tone.measure(convert(28000.0, 96000, OUT_RATE, Resampler.Quality.HIGH),
+                OUT_RATE, OUT_RATE - 28000.0);
+        assertTrue("alias " + high, high.gainDb() < -80.0);
+    }
+
+    @Test
+    public void outputLengthFollowsTheRatio() {
+        final Resampler resampler = new Resampler(IN_RATE, OUT_RATE, Resampler.Quality.FAST);
+        assertEquals(OUT_RATE, resampler.outputFrames(IN_RATE));
+        assertEquals(2, resampler.outputFrames(1));
+        final PcmClip clip = new PcmClip(new short[IN_RATE * 2], IN_RATE, IN_RATE);
+        assertEquals(OUT_RATE, Resampler.resample(clip, OUT_RATE, Resampler.Quality.FAST).frames);
+    }
+
+    @Test
+    public void loopStreamIsTheSameWhateverTheChunks() {
+        final int frames = 10_000;
+        final short[] in = new short[frames * 2];
+        final Random rnd = new Random(3);
+        for (int i = 0; i < in.length; i++) in[i] = (short) (rnd.nextGaussian() * 4000.0);
+        assertArrayEquals(loop(in, frames, frames), loop(in, frames, 37));
+        assertArrayEquals(loop(in, frames, frames), loop(in, frames, 4096));
+        assertEquals(new Resampler(IN_RATE, OUT_RATE, Resampler.Quality.BALANCED).outputFrames(frames),
+                loop(in, frames, 1000).length / 2);
+    }
+
+    private static short[] loop(short[] in, int frames, int chunk) {
+        final Resampler.LoopStream stream = new Resampler.LoopStream(IN_RATE, OUT_RATE, Resampler.Quality.BALANCED);
+        final short[] out = new short[stream.outputFrames(frames) * 2];
+        final short[] piece = new short[chunk * 2];
+        int written = 0;
+        for (int at = 0; at < frames; at += chunk) {
+            final int n = Math.min(chunk, frames - at);
+            System.arraycopy(in, at * 2, piece, 0, n * 2);
+            written += stream.feed(piece, 0, n, out, written);
+        }
+        written += stream.finish(out, written);
+        assertEquals(out.length / 2, written);
+        return out;
+    }
+
+    private static short[] convert(double hz, int inRate, int outRate, Resampler.Quality quality) {
+        final int frames = SECONDS * inRate;
+        final short[] in = new short[frames * 2];
+        for (int i = 0; i < frames; i++) {
+            final short s = (short) Math.round(AMPLITUDE * 32767.0 * Math.sin(2.0 * Math.PI * hz * i / inRate));
+            in[i * 2] = s;
+            in[i * 2 + 1] = s;
+        }
+        return Resampler.resample(new PcmClip(in, frames, inRate), outRate, quality).samples;
+    }
+
+    private static final class Tone {
+        final double frequency;
+        final double amplitude;
+        final double snrDb;
+
+        private Tone(double frequency, double amplitude, double snrDb) {
+            this.frequency = frequency;
+            this.amplitude = amplitude;
+            this.snrDb = snrDb;
+        }
+
+        double gainDb() {
+            return 20.0 * Math.log10(amplitude / AMPLITUDE);
+        }
+
+        /**
+         * Fits a sine near {@code hz} to the left channel, away from the clip edges where
+         * the filter sees repeated edge frames.
+         */
+        static Tone measure(short[] stereo, int rate, double hz) {
+            final int frames = stereo.length / 2;
+            final int from = rate / 10;
+            final int to = frames - rate / 10;
+            final double[] x = new double[to - from];
+            for (int i = from; i < to; i++) x[i - from] = stereo[i * 2] / 32767.0;
+
+            // Refine the frequency by golden-section search on the fit residual
+            double lo = hz - 1.0;
+            double hi = hz + 1.0;
+            for (int step = 0; step < 40; step++) {
+                final double a = hi - (hi - lo) * 0.618;
+                final double b = lo + (hi - lo) * 0.618;
+                if (residual(x, rate, a) < residual(x, rate, b)) hi = b; else lo = a;
+            }
+            final double f = (lo + hi) / 2.0;
+            final double[] fit = fit(x, rate, f);
+            final double amplitude = Math.hypot(fit[0], fit[1]);
+            final double noise = fit[2] / x.length;
+            final double snr = 10.0 * Math.log10(amplitude * amplitude / 2.0 / Math.max(noise, 1e-30));
+            return new Tone(f, amplitude, snr);
+        }
+
+        private static double residual(double[] x, int rate, double hz) {
+            return fit(x, rate, hz)[2];
+        }
+
+        // Least-squares a*sin + b*cos; returns {a, b, residual energy}
+        private static double[] fit(double[] x, int rate, double hz) {
+            final double w = 2.0 * Math.PI * hz / rate;
+            double ss = 0, cc = 0, sc = 0, xs = 0, xc = 0;
+            for (int i = 0; i < x.length; i++) {
+                final double s = Math.sin(w * i);
+                final double c = Math.cos(w * i);
+                ss += s * s;
+                cc += c * c;
+                sc += s * c;
+                xs += x[i] * s;
+                xc += x[i] * c;
+            }
+            final double det = ss * cc - sc * sc;
+            final double a = (xs * cc - xc * sc) / det;
+            final double b = (xc * ss - xs * sc) / det;
+            double residual = 0.0;
+            for (int i = 0; i < x.length; i++) {
+                final double e = x[i] - a * Math.sin(w * i) - b * Math.cos(w * i);
+                residual += e * e;
+            }
+            return new double[]{a, b, residual};
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%.3f Hz, %.3f dB, SNR %.1f dB", frequency, gainDb(), snrDb);
+        }
+    }
+}
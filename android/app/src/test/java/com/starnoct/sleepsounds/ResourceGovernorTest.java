@@ -0,0 +1,152 @@
+package com.starnoct.sleepsounds;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.ComponentCallbacks2;
+
+import org.junit.Test;
+
+/**
+ * Walks the governor's admission ladder: admit, admit at reduced rate, refuse.
+ */
+public class ResourceGovernorTest {
+
+    private static final long MB = 1L << 20;
+    private static final int RATE = 48000;
+
+    @Test
+    public void refusesPastTheLayerLimitButReadmitsAPlayingLayer() {
+        final ResourceGovernor governor = new ResourceGovernor(64 * MB, 1000, 2);
+        admitAndCharge(governor, "a", loop());
+        admitAndCharge(governor, "b", loop());
+
+        final ResourceGovernor.Decision third = governor.admit("c", loop());
+        assertFalse(third.admitted);
+        assertTrue(third.reason, third.reason.contains("at most 2"));
+        // Re-playing a layer only changes its volume; it must not count twice
+        assertTrue(governor.admit("a", loop()).admitted);
+
+        governor.release("b");
+        assertTrue(governor.admit("c", loop()).admitted);
+    }
+
+    @Test
+    public void rendersAtReducedRateBeforeRefusingForCpu() {
+        // Surf renders at half rate when asked; rain cannot
+        final ResourceGovernor governor = new ResourceGovernor(64 * MB, 50, 8);
+        admitAndCharge(governor, "surf-1", synth("surf"));
+        assertFalse(governor.needsReducedRate());
+
+        final ResourceGovernor.Decision second = governor.admit("surf-2", synth("surf"));
+        assertTrue(second.admitted);
+        assertTrue(second.reducedRate);
+        assertTrue(second.degraded);
+        governor.charge("surf-2", second);
+        assertTrue(governor.needsReducedRate());
+
+        final ResourceGovernor.Decision rain = governor.admit("rain", synth("heavy-rain"));
+        assertFalse(rain.admitted);
+        assertTrue(rain.reason, rain.reason.contains("CPU"));
+
+        governor.release("surf-2");
+        assertFalse(governor.needsReducedRate());
+    }
+
+    @Test
+    public void refusesForMemoryAndTightensUnderPressure() {
+        final ResourceGovernor.Cost file = ResourceGovernor.estimate(ResourceGovernor.KIND_FILE, null, RATE);
+        final ResourceGovernor governor = new ResourceGovernor(3 * MB, 1000, 8);
+        admitAndCharge(governor, "a", file);
+        final ResourceGovernor.Decision second = governor.admit("b", file);
+        assertFalse(second.admitted);
+        assertTrue(second.reason, second.reason.contains("memory"));
+
+        governor.release("a");
+        governor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL);
+        assertFalse(governor.admit("a", file).admitted);
+        // Hiding the UI says nothing about memory
+        governor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+        assertFalse(governor.admit("a", file).admitted);
+        governor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE);
+        assertTrue(governor.admit("a", file).admitted);
+    }
+
+    @Test
+    public void pressureWearsOffWhenTheSystemNoLongerReportsIt() {
+        final ResourceGovernor.Cost file = ResourceGovernor.estimate(ResourceGovernor.KIND_FILE, null, RATE);
+        final long[] now = {0L};
+        final ResourceGovernor governor = new ResourceGovernor(3 * MB, 1000, 8, () -> now[0]);
+        governor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        now[0] += ResourceGovernor.PRESSURE_HOLD_MS - 1;
+        assertFalse(governor.admit("a", file).admitted);
+        now[0] += 1;
+        assertTrue(governor.admit("a", file).admitted);
+    }
+
+    @Test
+    public void loopsCostLessThanWhatTheyReplace() {
+        final ResourceGovernor.Cost loop = loop();
+        for (int kind : new int[]{ResourceGovernor.KIND_FILE, ResourceGovernor.KIND_GRANULAR}) {
+            final ResourceGovernor.Cost other = ResourceGovernor.estimate(kind, null, RATE);
+            assertTrue(loop.cpu < other.cpu);
+            assertTrue(loop.memoryBytes < other.memoryBytes);
+        }
+        assertTrue(loop.cpu < synth("heavy-rain").cpu);
+    }
+
+    @Test
+    public void aRetiringLayerKeepsItsChargeUntilReleased() {
+        final ResourceGovernor governor = new ResourceGovernor(64 * MB, 1000, 2);
+        admitAndCharge(governor, "a", loop());
+        admitAndCharge(governor, "b", loop());
+
+        // A scene restarting "a" while the old "a" fades out holds both mixes
+        final String ledgerKey = governor.retire("a");
+        assertFalse(governor.admit("a", loop()).admitted);
+
+        governor.release(ledgerKey);
+        assertTrue(governor.admit("a", loop()).admitted);
+        assertNull(governor.retire("never-charged"));
+    }
+
+    @Test
+    public void aSceneIsAdmittedWithoutTheLayersItReplaces() {
+        final ResourceGovernor governor = new ResourceGovernor(64 * MB, 1000, 2);
+        admitAndCharge(governor, "a", loop());
+        admitAndCharge(governor, "b", loop());
+        final ResourceGovernor.Cost[] two = {loop(), loop()};
+
+        // "a" is outgoing, "b" stays at its charge
+        final ResourceGovernor.Decision[] swap = governor.admitScene(new String[]{"b", "c"}, two);
+        assertTrue(swap[0].admitted);
+        assertTrue(swap[1].admitted);
+
+        final ResourceGovernor.Decision[] tooBig = governor.admitScene(new String[]{"b", "c", "d"},
+                new ResourceGovernor.Cost[]{loop(), loop(), loop()});
+        for (ResourceGovernor.Decision decision : tooBig) {
+            assertFalse(decision.admitted);
+            assertTrue(decision.reason, decision.reason.contains("at most 2"));
+        }
+
+        // Layers still fading out of the last scene do not count against the next one either
+        governor.retire("a");
+        governor.retire("b");
+        assertTrue(governor.admitScene(new String[]{"c", "d"}, two)[0].admitted);
+    }
+
+    private static void admitAndCharge(ResourceGovernor governor, String id, ResourceGovernor.Cost cost) {
+        final ResourceGovernor.Decision decision = governor.admit(id, cost);
+        assertTrue(id, decision.admitted);
+        governor.charge(id, decision);
+    }
+
+    private static ResourceGovernor.Cost loop() {
+        return ResourceGovernor.estimate(ResourceGovernor.KIND_LOOP, null, RATE);
+    }
+
+    private static ResourceGovernor.Cost synth(String flavor) {
+        return ResourceGovernor.estimate(ResourceGovernor.KIND_SYNTH, flavor, RATE);
+    }
+}
@@ -0,0 +1,61 @@
+package com.starnoct.sleepsounds;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Checks the scene crossfade's curves: incoming and outgoing layers sum to constant power,
+ * so a mix of uncorrelated layers keeps its level through the transition.
+ */
+public class SceneFadeTest {
+
+    private static final int RATE = 48000;
+    private static final long START = RATE / 4;
+    private static final long FRAMES = 3L * RATE;
+    private static final double INV = 1.0 / FRAMES;
+
+    @Test
+    public void curvesHoldTheirEndsOutsideTheFade() {
+        assertEquals(0f, SynthPlayer.sceneFadeGain(0L, START, INV, true), 0f);
+        assertEquals(1f, SynthPlayer.sceneFadeGain(0L, START, INV, false), 0f);
+        assertEquals(1f, SynthPlayer.sceneFadeGain(START + FRAMES, START, INV, true), 1e-6f);
+        assertEquals(0f, SynthPlayer.sceneFadeGain(START + FRAMES + RATE, START, INV, false), 1e-6f);
+        // Halfway both layers sit 3 dB down, not 6
+        assertEquals(Math.sqrt(0.5), SynthPlayer.sceneFadeGain(START + FRAMES / 2, START, INV, true), 1e-6);
+        assertEquals(Math.sqrt(0.5), SynthPlayer.sceneFadeGain(START + FRAMES / 2, START, INV, false), 1e-6);
+    }
+
+    @Test
+    public void incomingAndOutgoingPowerSumToOne() {
+        float previousIn = 0f;
+        for (long frame = 0L; frame < START + FRAMES + RATE; frame += 101L) {
+            final float in = SynthPlayer.sceneFadeGain(frame, START, INV, true);
+            final float out = SynthPlayer.sceneFadeGain(frame, START, INV, false);
+            assertEquals("frame " + frame, 1.0, in * in + out * out, 1e-5);
+            assertTrue("frame " + frame, in >= previousIn);
+            previousIn = in;
+        }
+    }
+
+    @Test
+    public void crossfadeOfUncorrelatedNoiseKeepsItsLevel() {
+        final Random outgoing = new Random(1);
+        final Random incoming = new Random(2);
+        final int window = RATE / 10;
+        double power = 0.0;
+        for (long frame = 0L; frame < START + FRAMES + RATE; frame++) {
+            final double mix = outgoing.nextGaussian() * SynthPlayer.sceneFadeGain(frame, START, INV, false)
+                    + incoming.nextGaussian() * SynthPlayer.sceneFadeGain(frame, START, INV, true);
+            power += mix * mix;
+            if ((frame + 1) % window == 0) {
+                // Unit-power layers: every 100 ms window stays at unit power, within its noise
+                assertEquals("window ending at " + frame, 0.0, 10.0 * Math.log10(power / window), 0.3);
+                power = 0.0;
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.starnoct.sleepsounds;
+
+import android.media.AudioTrack;
+import android.os.SystemClock;
+
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.annotation.RealObject;
+import org.robolectric.shadows.ShadowAudioTrack;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An AudioTrack that plays on Robolectric's simulated clock instead of accepting every write
+ * at once, so render threads idle the way they do on a device rather than spinning.
+ *
+ * Each track queues what setBufferSizeInFrames asked for, {@link #QUEUE_MS} until then; a write
+ * into a full queue blocks until the simulated clock has played enough of it, and the playback
+ * head follows the same clock. A track that was starved restarts from the current
+ * time, as a real one underruns. Writes are never held for more than {@link #MAX_BLOCK_MS} of
+ * real time while the clock stands still: the main thread may be waiting in
+ * {@link RenderOutput#stop} for the loop to leave, which a device would never refuse. Such a
+ * write is accepted without being queued.
+ *
+ * {@link #awaitRenderThreads} lets the test advance the clock in steps and wait until every
+ * render thread has caught up with it, including loops napping between batch refills, so each watchdog interval sees the progress a device
+ * would show, however fast or loaded the machine running the test is.
+ */
+@Implements(AudioTrack.class)
+public class ShadowPacedAudioTrack extends ShadowAudioTrack {
+
+    static final long QUEUE_MS = 200L;
+    private static final long MAX_BLOCK_MS = 5L;
+
+    // Render threads currently blocked on a full queue at the present simulated time
+    private static final Set<Thread> waiting = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+
+    @RealObject
+    private AudioTrack realTrack;
+
+    // Simulated time, in nanoseconds, at which everything queued so far has played
+    private long queuedUntilNanos = 0L;
+    private long framesAccepted = 0L;
+    private int queueFrames = 0;
+
+    @Implementation
+    public int setBufferSizeInFrames(int bufferSizeInFrames) {
+        queueFrames = Math.max(0, bufferSizeInFrames);
+        return queueFrames;
+    }
+
+    @Implementation
+    public int getPlaybackHeadPosition() {
+        final long now = SystemClock.uptimeMillis() * 1_000_000L;
+        final long queued = Math.max(0L, queuedUntilNanos - now) * sampleRate() / 1_000_000_000L;
+        return (int) Math.max(0L, framesAccepted - queued);
+    }
+
+    @Implementation
+    protected int write(float[] audioData, int offsetInFloats, int sizeInFloats, int writeMode) {
+        pace(sizeInFloats / Math.max(1, realTrack.getChannelCount()));
+        return sizeInFloats;
+    }
+
+    @Implementation
+    protected int write(short[] audioData, int offsetInShorts, int sizeInShorts) {
+        pace(sizeInShorts / Math.max(1, realTrack.getChannelCount()));
+        return sizeInShorts;
+    }
+
+    private void pace(int frames) {
+        final Thread self = Thread.currentThread();
+        final long heldUntil = System.nanoTime() + MAX_BLOCK_MS * 1_000_000L;
+        final long queueNanos = queueFrames > 0 ? queueFrames * 1_000_000_000L / sampleRate() : QUEUE_MS * 1_000_000L;
+        framesAccepted += frames;
+        try {
+            while (realTrack.getPlayState() == AudioTrack.PLAYSTATE_PLAYING) {
+                final long now = SystemClock.uptimeMillis() * 1_000_000L;
+                if (queuedUntilNanos < now) queuedUntilNanos = now;
+                if (queuedUntilNanos - now < queueNanos) {
+                    queuedUntilNanos += frames * 1_000_000_000L / sampleRate();
+                    return;
+                }
+                if (System.nanoTime() > heldUntil) return;
+                waiting.add(self);
+                LockSupport.parkNanos(200_000L);
+            }
+        } finally {
+            waiting.remove(self);
+        }
+    }
+
+    private int sampleRate() {
+        return Math.max(1, realTrack.getSampleRate());
+    }
+
+    /**
+     * Waits until every render thread is blocked on a full queue, napping until the simulated
+     * clock reaches its next refill, or parked without a loop, i.e. nothing is left to render
+     * at the current simulated time.
+     *
+     * @return false if some thread was still busy after {@code timeoutMs} of real time
+     */
+    static boolean awaitRenderThreads(String namePrefix, long timeoutMs) {
+        final long deadline = System.nanoTime() + timeoutMs * 1_000_000L;
+        // A nap ends on the simulated clock, which only the napping thread itself can check
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith(namePrefix)) LockSupport.unpark(thread);
+        }
+        // Two quiet polls in a row, so a thread that was just unparked has had time to run
+        int quietPolls = 0;
+        while (quietPolls < 2) {
+            if (System.nanoTime() > deadline) return false;
+            quietPolls = renderThreadsQuiet(namePrefix) ? quietPolls + 1 : 0;
+            LockSupport.parkNanos(100_000L);
+        }
+        return true;
+    }
+
+    private static boolean renderThreadsQuiet(String namePrefix) {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (!thread.isAlive() || !thread.getName().startsWith(namePrefix)) continue;
+            if (waiting.contains(thread) || thread.getState() == Thread.State.WAITING) continue;
+            if (thread.getState() != Thread.State.TIMED_WAITING || !isNapping(thread)) return false;
+        }
+        return true;
+    }
+
+    private static boolean isNapping(Thread thread) {
+        for (StackTraceElement frame : thread.getStackTrace()) {
+            if (frame.getClassName().equals(RenderOutput.class.getName()) && frame.getMethodName().equals("nap")) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,52 @@
+package com.starnoct.sleepsounds;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Places the sleep fade on a loop's sample clock and checks its gain frame by frame.
+ */
+public class SleepFadeTest {
+
+    private static final int RATE = 48000;
+
+    @Test
+    public void targetMapsToTheFrameHeardThen() {
+        // 10 s ahead, 2 s already rendered, 200 ms queued in the track
+        final long end = SynthPlayer.frameHeardAt(60_000L, 50_000L, 2L * RATE, RATE, RATE / 5);
+        assertEquals(2L * RATE + 10L * RATE - RATE / 5, end);
+        // A reduced-rate loop counts half as many frames for the same wall time
+        assertEquals(RATE / 2 * 10L, SynthPlayer.frameHeardAt(60_000L, 50_000L, 0L, RATE / 2, 0));
+    }
+
+    @Test
+    public void fadeStartsOnItsFrameAndIsSilentFromTheTarget() {
+        final long end = SynthPlayer.frameHeardAt(60_000L, 0L, 0L, RATE, 0);
+        final long fadeFrames = 30L * RATE;
+        final long start = end - fadeFrames;
+        final float inv = 1f / fadeFrames;
+
+        assertEquals(1f, SynthPlayer.sleepFadeGain(start - 1, start, end, inv), 0f);
+        assertEquals(1f, SynthPlayer.sleepFadeGain(start, start, end, inv), 0f);
+        assertTrue(SynthPlayer.sleepFadeGain(start + 1, start, end, inv) < 1f);
+        assertEquals(0.5f, SynthPlayer.sleepFadeGain(start + fadeFrames / 2, start, end, inv), 1e-6f);
+        assertTrue(SynthPlayer.sleepFadeGain(end - 1, start, end, inv) > 0f);
+        assertEquals(0f, SynthPlayer.sleepFadeGain(end, start, end, inv), 0f);
+        assertEquals(0f, SynthPlayer.sleepFadeGain(end + RATE, start, end, inv), 0f);
+    }
+
+    @Test
+    public void fadeNeverRises() {
+        final long start = RATE;
+        final long end = 3L * RATE;
+        final float inv = 1f / (end - start);
+        float previous = 1f;
+        for (long frame = 0L; frame < 4L * RATE; frame += 97L) {
+            final float gain = SynthPlayer.sleepFadeGain(frame, start, end, inv);
+            assertTrue("frame " + frame, gain <= previous);
+            previous = gain;
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package com.starnoct.sleepsounds;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Reads banks laid out the way the packSoundBank task writes them: index lookups, both
+ * codecs, and looping playback through {@link PcmLoopSource}.
+ */
+public class SoundBankTest {
+
+    private static final int BLOCK_FRAMES = 2048;
+    private static final int PAGE = 4096;
+
+    @Test
+    public void findsPackedLoopsAsSlicesOfTheImage() throws IOException {
+        final short[][] ramp = ramp(5000, 2);
+        final ByteBuffer image = bank(new Packed("public/sounds/a.mp3", SoundBank.CODEC_PCM16, 48000, 120, ramp),
+                new Packed("public/sounds/b.mp3", SoundBank.CODEC_IMA_ADPCM, 24000, 0, noise(3000, 1)));
+        final SoundBank bank = SoundBank.parse(image);
+        assertEquals(2, bank.size());
+
+        final SoundBank.Entry a = bank.find("/sounds/a.mp3");
+        assertNotNull(a);
+        assertEquals(SoundBank.CODEC_PCM16, a.codec);
+        assertEquals(2, a.channels);
+        assertEquals(48000, a.sampleRate);
+        assertEquals(5000, a.frames);
+        assertEquals(120, a.firstFrame);
+        assertEquals(3, a.blockCount());
+
+        final SoundBank.Entry b = bank.find("sounds/b.mp3");
+        assertNotNull(b);
+        assertEquals(SoundBank.CODEC_IMA_ADPCM, b.codec);
+        assertEquals(1, b.channels);
+        assertNull(bank.find("/sounds/c.mp3"));
+        assertNull(bank.find("https://example.com/sounds/a.mp3"));
+
+        // The entry reads the image in place: changing the image changes what it decodes
+        final short[] block = new short[BLOCK_FRAMES * 2];
+        a.decodeBlock(0, block);
+        assertEquals(0, block[0]);
+        image.putShort(PAGE, (short) 1234);
+        a.decodeBlock(0, block);
+        assertEquals(1234, block[0]);
+    }
+
+    @Test
+    public void decodesBothCodecs() throws IOException {
+        final short[][] stereo = noise(BLOCK_FRAMES * 2 + 700, 2);
+        final short[][] mono = noise(BLOCK_FRAMES + 1, 1);
+        final SoundBank bank = SoundBank.parse(bank(
+                new Packed("public/sounds/adpcm.mp3", SoundBank.CODEC_IMA_ADPCM, 44100, 0, stereo),
+                new Packed("public/sounds/mono.mp3", SoundBank.CODEC_IMA_ADPCM, 44100, 0, mono),
+                new Packed("public/sounds/pcm.mp3", SoundBank.CODEC_PCM16, 44100, 0, stereo)));
+
+        final short[] pcm = decodeAll(bank.find("/sounds/pcm.mp3"));
+        for (int f = 0; f < stereo[0].length; f++) {
+            assertEquals(stereo[0][f], pcm[f * 2]);
+            assertEquals(stereo[1][f], pcm[f * 2 + 1]);
+        }
+
+        // ADPCM is lossy; on band-limited noise it stays well above 20 dB SNR
+        final double stereoSnr = snrDb(stereo, decodeAll(bank.find("/sounds/adpcm.mp3")));
+        assertTrue("stereo SNR " + stereoSnr, stereoSnr > 20.0);
+        final short[] monoOut = decodeAll(bank.find("/sounds/mono.mp3"));
+        final double monoSnr = snrDb(mono, monoOut);
+        assertTrue("mono SNR " + monoSnr, monoSnr > 20.0);
+        for (int f = 0; f < mono[0].length; f++) assertEquals(monoOut[f * 2], monoOut[f * 2 + 1]);
+    }
+
+    @Test
+    public void rejectsEntriesPastTheEnd() throws IOException {
+        final ByteBuffer image = bank(new Packed("public/sounds/a.mp3", SoundBank.CODEC_PCM16, 48000, 0, ramp(5000, 2)));
+        final ByteBuffer truncated = ByteBuffer.allocate(image.capacity() - 2);
+        final ByteBuffer source = image.duplicate();
+        source.limit(truncated.capacity());
+        truncated.put(source);
+        try {
+            SoundBank.parse(truncated);
+            fail("Accepted a truncated bank");
+        } catch (IllegalArgumentException expected) {
+            // Expected
+        }
+
+        final ByteBuffer badName = ByteBuffer.allocate(image.capacity());
+        badName.put(image.duplicate());
+        badName.putShort(8 + 4, (short) 0xFFFF);
+        try {
+            SoundBank.parse(badName);
+            fail("Accepted a name past the end");
+        } catch (IllegalArgumentException expected) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void loopSourceWrapsWithoutASeam() throws IOException {
+        final short[][] ramp = ramp(BLOCK_FRAMES + 300, 2);
+        final SoundBank.Entry entry = SoundBank.parse(
+                bank(new Packed("public/sounds/ramp.mp3", SoundBank.CODEC_PCM16, 8000, 0, ramp))).find("/sounds/ramp.mp3");
+        final PcmLoopSource source = new PcmLoopSource(entry, 1f);
+        source.prepare(8000);
+
+        final int frames = ramp[0].length * 3 + 17;
+        final float[] out = new float[frames * 2];
+        source.render(out, frames);
+        for (int i = 0; i < frames; i++) {
+            final int expected = i % ramp[0].length;
+            assertEquals("frame " + i, expected, Math.round(out[i * 2] * 32768f));
+            assertEquals("frame " + i, -expected, Math.round(out[i * 2 + 1] * 32768f));
+        }
+    }
+
+    @Test
+    public void loopSourceConvertsOtherRatesWithoutASeam() throws IOException {
+        // 45 whole periods in a tenth of a second, so the loop is seamless at both rates
+        final int frames = 4410;
+        final double hz = 450.0;
+        final short[][] tone = new short[2][frames];
+        for (int f = 0; f < frames; f++) {
+            tone[0][f] = (short) Math.round(16000.0 * Math.sin(2.0 * Math.PI * hz * f / 44100));
+            tone[1][f] = tone[0][f];
+        }
+        final SoundBank.Entry entry = SoundBank.parse(
+                bank(new Packed("public/sounds/tone.mp3", SoundBank.CODEC_PCM16, 44100, 0, tone))).find("/sounds/tone.mp3");
+        final PcmLoopSource source = new PcmLoopSource(entry, 1f);
+        source.prepare(48000);
+
+        // Four passes, across three seams; a whole number of periods, so the sine fit is exact
+        final int rendered = 4 * 4800;
+        final float[] out = new float[rendered * 2];
+        source.render(out, rendered);
+        double a = 0.0;
+        double b = 0.0;
+        for (int i = 0; i < rendered; i++) {
+            a += out[i * 2] * Math.sin(2.0 * Math.PI * hz * i / 48000);
+            b += out[i * 2] * Math.cos(2.0 * Math.PI * hz * i / 48000);
+        }
+        a *= 2.0 / rendered;
+        b *= 2.0 / rendered;
+        double signal = 0.0;
+        double error = 0.0;
+        for (int i = 0; i < rendered; i++) {
+            final double fit = a * Math.sin(2.0 * Math.PI * hz * i / 48000) + b * Math.cos(2.0 * Math.PI * hz * i / 48000);
+            signal += fit * fit;
+            error += (out[i * 2] - fit) * (out[i * 2] - fit);
+        }
+        assertEquals(16000.0 / 32768.0, Math.hypot(a, b), 0.002);
+        assertTrue("SNR " + 10.0 * Math.log10(signal / error), 10.0 * Math.log10(signal / error) > 60.0);
+    }
+
+    private static short[] decodeAll(SoundBank.Entry entry) {
+        final short[] all = new short[entry.frames * 2];
+        final short[] block = new short[entry.blockFrames * 2];
+        for (int b = 0; b < entry.blockCount(); b++) {
+            final int n = entry.decodeBlock(b, block);
+            System.arraycopy(block, 0, all, b * entry.blockFrames * 2, n * 2);
+        }
+        return all;
+    }
+
+    private static double snrDb(short[][] reference, short[] decoded) {
+        double signal = 0.0;
+        double error = 0.0;
+        for (int c = 0; c < reference.length; c++) {
+            for (int f = 0; f < reference[c].length; f++) {
+                final double d = decoded[f * 2 + c] - reference[c][f];
+                signal += (double) reference[c][f] * reference[c][f];
+                error += d * d;
+            }
+        }
+        return 10.0 * Math.log10(signal / error);
+    }
+
+    private static short[][] ramp(int frames, int channels) {
+        final short[][] pcm = new short[channels][frames];
+        for (int f = 0; f < frames; f++) {
+            pcm[0][f] = (short) f;
+            if (channels > 1) pcm[1][f] = (short) -f;
+        }
+        return pcm;
+    }
+
+    // Low-passed noise, roughly what the bank holds
+    private static short[][] noise(int frames, int channels) {
+        final Random rnd = new Random(7);
+        final short[][] pcm = new short[channels][frames];
+        for (int c = 0; c < channels; c++) {
+            double y = 0.0;
+            for (int f = 0; f < frames; f++) {
+                y += 0.2 * (rnd.nextGaussian() * 8000.0 - y);
+                pcm[c][f] = (short) Math.max(-32768, Math.min(32767, Math.round(y)));
+            }
+        }
+        return pcm;
+    }
+
+    private static final class Packed {
+        final String name;
+        final int codec;
+        final int sampleRate;
+        final int firstFrame;
+        final short[][] pcm;
+
+        Packed(String name, int codec, int sampleRate, int firstFrame, short[][] pcm) {
+            this.name = name;
+            this.codec = codec;
+            this.sampleRate = sampleRate;
+            this.firstFrame = firstFrame;
+            this.pcm = pcm;
+        }
+
+        byte[] encode() throws IOException {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(bytes);
+            final int frames = pcm[0].length;
+            if (codec == SoundBank.CODEC_PCM16) {
+                for (int f = 0; f < frames; f++) {
+                    for (short[] channel : pcm) out.writeShort(channel[f]);
+                }
+                return bytes.toByteArray();
+            }
+            final int[] predictor = new int[pcm.length];
+            final int[] index = new int[pcm.length];
+            for (int c = 0; c < pcm.length; c++) {
+                predictor[c] = pcm[c][0];
+                final int span = Math.min(64, frames - 1);
+                long sum = 0;
+                for (int i = 1; i <= span; i++) sum += Math.abs(pcm[c][i] - pcm[c][i - 1]);
+                final int typical = span > 0 ? (int) (sum / span) : 0;
+                while (index[c] < 88 && STEPS[index[c]] < typical) index[c]++;
+            }
+            for (int block = 0; block * BLOCK_FRAMES < frames; block++) {
+                for (int c = 0; c < pcm.length; c++) {
+                    out.writeShort(predictor[c]);
+                    out.writeByte(index[c]);
+                    out.writeByte(0);
+                    int packed = 0;
+                    for (int i = 0; i < BLOCK_FRAMES; i++) {
+                        final int frame = Math.min(block * BLOCK_FRAMES + i, frames - 1);
+                        final int step = STEPS[index[c]];
+                        int diff = pcm[c][frame] - predictor[c];
+                        int nibble = 0;
+                        if (diff < 0) {
+                            nibble = 8;
+                            diff = -diff;
+                        }
+                        int delta = step >> 3;
+                        if (diff >= step) {
+                            nibble |= 4;
+                            diff -= step;
+                            delta += step;
+                        }
+                        if (diff >= step >> 1) {
+                            nibble |= 2;
+                            diff -= step >> 1;
+                            delta += step >> 1;
+                        }
+                        if (diff >= step >> 2) {
+                            nibble |= 1;
+                            delta += step >> 2;
+                        }
+                        predictor[c] = Math.max(-32768, Math.min(32767, predictor[c] + ((nibble & 8) != 0 ? -delta : delta)));
+                        index[c] = Math.max(0, Math.min(88, index[c] + INDEX_STEP[nibble]));
+                        if ((i & 1) == 0) {
+                            packed = nibble;
+                        } else {
+                            out.writeByte(packed | (nibble << 4));
+                        }
+                    }
+                }
+            }
+            return bytes.toByteArray();
+        }
+    }
+
+    // Entries must already be in byte order, as the build sorts them
+    private static ByteBuffer bank(Packed... entries) throws IOException {
+        final byte[][] data = new byte[entries.length][];
+        final ByteArrayOutputStream names = new ByteArrayOutputStream();
+        for (int i = 0; i < entries.length; i++) {
+            data[i] = entries[i].encode();
+            names.write(entries[i].name.getBytes(StandardCharsets.UTF_8));
+        }
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0x53424E4B);
+        out.writeShort(1);
+        out.writeShort(entries.length);
+        int nameOffset = 0;
+        int offset = align(8 + entries.length * 32 + names.size());
+        final int[] offsets = new int[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            final int nameLength = entries[i].name.getBytes(StandardCharsets.UTF_8).length;
+            offsets[i] = offset;
+            out.writeInt(nameOffset);
+            out.writeShort(nameLength);
+            out.writeByte(entries[i].codec);
+            out.writeByte(entries[i].pcm.length);
+            out.writeInt(entries[i].sampleRate);
+            out.writeInt(entries[i].pcm[0].length);
+            out.writeInt(BLOCK_FRAMES);
+            out.writeInt(offset);
+            out.writeInt(data[i].length);
+            out.writeInt(entries[i].firstFrame);
+            nameOffset += nameLength;
+            offset = align(offset + data[i].length);
+        }
+        names.writeTo(out);
+        for (int i = 0; i < entries.length; i++) {
+            while (out.size() < offsets[i]) out.writeByte(0);
+            out.write(data[i]);
+        }
+        out.flush();
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    private static int align(int offset) {
+        return (offset + PAGE - 1) / PAGE * PAGE;
+    }
+
+    private static final int[] STEPS = {
+            7, 8, 9, 10, 11, 12, 13, 14, 16, 17, 19, 21, 23, 25, 28, 31, 34, 37, 41, 45,
+            50, 55, 60, 66, 73, 80, 88, 97, 107, 118, 130, 143, 157, 173, 190, 209, 230, 253, 279, 307,
+            337, 371, 408, 449, 494, 544, 598, 658, 724, 796, 876, 963, 1060, 1166, 1282, 1411, 1552, 1707, 1878, 2066,
+            2272, 2499, 2749, 3024, 3327, 3660, 4026, 4428, 4871, 5358, 5894, 6484, 7132, 7845, 8630, 9493, 10442, 11487, 12635, 13899,
+            15289, 16818, 18500, 20350, 22385, 24623, 27086, 29794, 32767,
+    };
+    private static final int[] INDEX_STEP = {-1, -1, -1, -1, 2, 4, 6, 8, -1, -1, -1, -1, 2, 4, 6, 8};
+}
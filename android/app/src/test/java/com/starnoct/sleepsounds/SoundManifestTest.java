@@ -0,0 +1,191 @@
+package com.starnoct.sleepsounds;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads manifests laid out the way sound-manifest.gradle writes them, and checks that a
+ * stream source honours an entry's loop points and gain.
+ */
+public class SoundManifestTest {
+
+    private static final String[] NAMES = {
+            "public/sounds/crickets.mp3", "public/sounds/rain-tent.mp3", "public/sounds/rain.mp3",
+    };
+
+    @Test
+    public void findsEverySoundByItsJsUrl() throws IOException {
+        final SoundManifest manifest = SoundManifest.parse(manifest(NAMES));
+        assertEquals(NAMES.length, manifest.size());
+        for (int i = 0; i < NAMES.length; i++) {
+            final SoundManifest.Entry entry = manifest.find(NAMES[i].substring("public".length()));
+            assertNotNull(NAMES[i], entry);
+            assertEquals(NAMES[i], entry.assetPath);
+            assertEquals(44100 + i, entry.sampleRate);
+            assertEquals(2, entry.channels);
+            assertEquals(441000, entry.frames);
+            assertEquals(576, entry.encoderDelay);
+            assertEquals(1000 + i, entry.encoderPadding);
+            assertEquals(-20f - i, entry.loudnessLufs, 0f);
+            assertEquals(-1.5f, entry.peakDb, 0f);
+            assertEquals(-6f, entry.gainDb, 0f);
+            assertEquals(100 * i, entry.loopStart);
+            assertEquals(400000 + i, entry.loopEnd);
+            assertEquals(0.501f, entry.gain(), 0.001f);
+        }
+        assertEquals(10_000L, manifest.find("/sounds/crickets.mp3").durationMs());
+    }
+
+    @Test
+    public void missesUnknownAndNonAssetUrls() throws IOException {
+        final SoundManifest manifest = SoundManifest.parse(manifest(NAMES));
+        assertNull(manifest.find("/sounds/rain-tin.mp3"));
+        assertNull(manifest.find("/sounds/zzz.mp3"));
+        assertNull(manifest.find("https://example.com/sounds/rain.mp3"));
+        assertNull(manifest.find("/data/user/0/rain.mp3"));
+        assertNull(manifest.find(null));
+    }
+
+    @Test
+    public void rejectsForeignOrTruncatedImages() throws IOException {
+        final ByteBuffer valid = manifest(NAMES);
+        expectRejected(ByteBuffer.allocate(4));
+        final ByteBuffer badMagic = copy(valid);
+        badMagic.putInt(0, 0x12345678);
+        expectRejected(badMagic);
+        final ByteBuffer badVersion = copy(valid);
+        badVersion.putShort(4, (short) 9);
+        expectRejected(badVersion);
+        final ByteBuffer truncated = copy(valid);
+        truncated.limit(8 + 40 * 2);
+        expectRejected(truncated.slice());
+        final ByteBuffer badNameOffset = copy(valid);
+        badNameOffset.putInt(8 + 40, 0x7FFFFFF0);
+        expectRejected(badNameOffset);
+        final ByteBuffer badNameLength = copy(valid);
+        badNameLength.putShort(8 + 40 * 2 + 4, (short) 0xFFFF);
+        expectRejected(badNameLength);
+    }
+
+    @Test
+    public void neverBoostsASound() {
+        final SoundManifest.Entry quiet = new SoundManifest.Entry("public/sounds/quiet.mp3", 44100, 2, 441000,
+                576, 0, -30f, -12f, 11f, 0, 441000);
+        assertEquals(1f, quiet.gain(), 0f);
+        final SoundManifest.Entry loud = new SoundManifest.Entry("public/sounds/loud.mp3", 44100, 2, 441000,
+                576, 0, -10f, -0.5f, -6f, 0, 441000);
+        assertEquals(0.501f, loud.gain(), 0.001f);
+    }
+
+    @Test
+    public void streamLoopsBetweenTheEntrysLoopPoints() throws IOException {
+        // Each frame holds its own index, so the render shows exactly which frames were played
+        final int frames = 20_000;
+        final SoundManifest.Entry entry = new SoundManifest.Entry("public/sounds/ramp.mp3", 8000, 2, frames,
+                576, 0, -23f, -1f, 0f, 300, 9_000);
+        final PcmStreamSource source = new PcmStreamSource(new RampStream(frames, 8000), entry);
+        source.prepare(8000);
+
+        final float[] out = new float[2 * 25_000];
+        source.render(out, 25_000);
+
+        int expected = 0;
+        for (int i = 0; i < 25_000; i++) {
+            assertEquals("frame " + i, expected, Math.round(out[i * 2] * 32768f));
+            expected = expected + 1 == entry.loopEnd ? entry.loopStart : expected + 1;
+        }
+        source.close();
+    }
+
+    private static void expectRejected(ByteBuffer image) {
+        try {
+            SoundManifest.parse(image);
+            fail("Accepted an invalid manifest");
+        } catch (IllegalArgumentException expected) {
+            // Expected
+        }
+    }
+
+    private static ByteBuffer copy(ByteBuffer buffer) {
+        final ByteBuffer copy = ByteBuffer.allocate(buffer.capacity());
+        copy.put(buffer.duplicate());
+        return copy;
+    }
+
+    // Entries must already be in byte order, as the build sorts them
+    private static ByteBuffer manifest(String[] names) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ByteArrayOutputStream nameTable = new ByteArrayOutputStream();
+        final DataOutputStream data = new DataOutputStream(bytes);
+        data.writeInt(0x534E444D);
+        data.writeShort(1);
+        data.writeShort(names.length);
+        for (int i = 0; i < names.length; i++) {
+            final byte[] name = names[i].getBytes(StandardCharsets.UTF_8);
+            data.writeInt(nameTable.size());
+            data.writeShort(name.length);
+            data.writeShort(2);
+            data.writeInt(44100 + i);
+            data.writeInt(441000);
+            data.writeShort(576);
+            data.writeShort(1000 + i);
+            data.writeFloat(-20f - i);
+            data.writeFloat(-1.5f);
+            data.writeFloat(-6f);
+            data.writeInt(100 * i);
+            data.writeInt(400000 + i);
+            nameTable.write(name);
+        }
+        nameTable.writeTo(data);
+        data.flush();
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    private static final class RampStream implements PcmStream {
+        private final int frames;
+        private final int sampleRate;
+        private int next;
+
+        RampStream(int frames, int sampleRate) {
+            this.frames = frames;
+            this.sampleRate = sampleRate;
+        }
+
+        @Override
+        public int sampleRate() {
+            return sampleRate;
+        }
+
+        @Override
+        public int read(short[] dst, int maxFrames) {
+            if (next >= frames) return -1;
+            // Short reads, like a decoder handing out one buffer at a time
+            final int n = Math.min(Math.min(maxFrames, 1152), frames - next);
+            for (int f = 0; f < n; f++) {
+                dst[f * 2] = (short) (next + f);
+                dst[f * 2 + 1] = (short) -(next + f);
+            }
+            next += n;
+            return n;
+        }
+
+        @Override
+        public void rewind() {
+            next = 0;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.starnoct.sleepsounds;
+
+import java.util.Locale;
+
+/**
+ * Statistical and spectral summary of a rendered synth flavor, compared against golden
+ * values so DSP refactors can prove they did not change the sound.
+ *
+ * Band energies are averaged Hann-windowed power spectra of the left channel, summed per
+ * band and expressed in dB relative to the total, so they describe the tone independent
+ * of level; RMS and crest factor are taken over both channels.
+ */
+final class SynthFingerprint {
+
+    static final int SAMPLE_RATE = 44100;
+    static final int BLOCK_FRAMES = 1024;
+    // Band edges in Hz; the last band runs to Nyquist
+    static final int[] BAND_EDGES = {0, 100, 300, 1000, 3000, 8000};
+
+    private static final int FFT_SIZE = 4096;
+
+    final double rms;
+    final double crest;
+    final double[] bandDb;
+
+    private SynthFingerprint(double rms, double crest, double[] bandDb) {
+        this.rms = rms;
+        this.crest = crest;
+        this.bandDb = bandDb;
+    }
+
+    /**
+     * Renders {@code seconds} of {@code flavor} with {@code seed} and fingerprints it.
+     */
+    static SynthFingerprint of(String flavor, int seed, int seconds) throws Exception {
+        final SynthSource source = SynthSources.create(flavor, seed);
+        source.prepare(SAMPLE_RATE);
+
+        final int frames = seconds * SAMPLE_RATE;
+        final float[] left = new float[frames];
+        final float[] block = new float[BLOCK_FRAMES * 2];
+        double sumSquares = 0.0;
+        double peak = 0.0;
+        for (int pos = 0; pos < frames; pos += BLOCK_FRAMES) {
+            final int n = Math.min(BLOCK_FRAMES, frames - pos);
+            source.render(block, n);
+            for (int i = 0; i < n * 2; i++) {
+                final double s = block[i];
+                sumSquares += s * s;
+                peak = Math.max(peak, Math.abs(s));
+            }
+            for (int i = 0; i < n; i++) left[pos + i] = block[i * 2];
+        }
+        final double rms = Math.sqrt(sumSquares / (frames * 2.0));
+        return new SynthFingerprint(rms, rms > 0.0 ? peak / rms : 0.0, bandEnergies(left));
+    }
+
+    /**
+     * Formats this fingerprint as golden-file lines for {@code flavor}.
+     */
+    String toProperties(String flavor) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "%s.rms=%.5f%n", flavor, rms));
+        sb.append(String.format(Locale.ROOT, "%s.crest=%.3f%n", flavor, crest));
+        for (int b = 0; b < bandDb.length; b++) {
+            sb.append(String.format(Locale.ROOT, "%s.band%d=%.2f%n", flavor, b, bandDb[b]));
+        }
+        return sb.toString();
+    }
+
+    private static double[] bandEnergies(float[] signal) {
+        final double[] window = new double[FFT_SIZE];
+        for (int i = 0; i < FFT_SIZE; i++) {
+            window[i] = 0.5 - 0.5 * Math.cos(2.0 * Math.PI * i / FFT_SIZE);
+        }
+        final double[] power = new double[FFT_SIZE / 2];
+        final double[] re = new double[FFT_SIZE];
+        final double[] im = new double[FFT_SIZE];
+        // Half-overlapped frames
+        for (int start = 0; start + FFT_SIZE <= signal.length; start += FFT_SIZE / 2) {
+            for (int i = 0; i < FFT_SIZE; i++) {
+                re[i] = signal[start + i] * window[i];
+                im[i] = 0.0;
+            }
+            fft(re, im);
+            for (int k = 0; k < FFT_SIZE / 2; k++) {
+                power[k] += re[k] * re[k] + im[k] * im[k];
+            }
+        }
+
+        final double[] bands = new double[BAND_EDGES.length];
+        double total = 0.0;
+        for (int k = 1; k < FFT_SIZE / 2; k++) {
+            final double hz = (double) k * SAMPLE_RATE / FFT_SIZE;
+            int band = BAND_EDGES.length - 1;
+            while (band > 0 && hz < BAND_EDGES[band]) band--;
+            bands[band] += power[k];
+            total += power[k];
+        }
+        for (int b = 0; b < bands.length; b++) {
+            // Floor keeps empty bands finite and comparable
+            bands[b] = 10.0 * Math.log10(Math.max(bands[b] / total, 1e-12));
+        }
+        return bands;
+    }
+
+    // In-place iterative radix-2 FFT
+    private static void fft(double[] re, double[] im) {
+        final int n = re.length;
+        for (int i = 1, j = 0; i < n; i++) {
+            int bit = n >> 1;
+            for (; (j & bit) != 0; bit >>= 1) j ^= bit;
+            j ^= bit;
+            if (i < j) {
+                double t = re[i];
+                re[i] = re[j];
+                re[j] = t;
+                t = im[i];
+                im[i] = im[j];
+                im[j] = t;
+            }
+        }
+        for (int len = 2; len <= n; len <<= 1) {
+            final double angle = -2.0 * Math.PI / len;
+            final double wr = Math.cos(angle);
+            final double wi = Math.sin(angle);
+            for (int i = 0; i < n; i += len) {
+                double cr = 1.0;
+                double ci = 0.0;
+                for (int k = 0; k < len / 2; k++) {
+                    final int a = i + k;
+                    final int b = a + len / 2;
+                    final double xr = re[b] * cr - im[b] * ci;
+                    final double xi = re[b] * ci + im[b] * cr;
+                    re[b] = re[a] - xr;
+                    im[b] = im[a] - xi;
+                    re[a] += xr;
+                    im[a] += xi;
+                    final double nr = cr * wr - ci * wi;
+                    ci = cr * wi + ci * wr;
+                    cr = nr;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.starnoct.sleepsounds;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Renders every built-in flavor with a fixed seed and compares its fingerprint with
+ * synth-golden.properties. Tolerances absorb float reassociation from refactors but not
+ * audible changes. After an intentional change to the sound, replace the flavor's lines
+ * with the ones printed in the failure message.
+ */
+public class SynthGoldenTest {
+
+    static final String[] FLAVORS = {
+            "white", "pink", "brown", "box-fan", "airplane-cabin",
+            "rain", "heavy-rain", "surf", "calm-surf", "fire",
+            // Compound names combine colour and filter, e.g. pink noise through the fan lowpass
+            "pink-fan", "brown-fan",
+    };
+
+    private static final int SEED = 20240601;
+    private static final int SECONDS = 8;
+
+    private static final double RMS_TOLERANCE = 0.02;   // relative
+    private static final double CREST_TOLERANCE = 0.10; // relative
+    private static final double BAND_TOLERANCE_DB = 0.5;
+
+    private static Properties golden;
+
+    @BeforeClass
+    public static void loadGolden() throws Exception {
+        golden = new Properties();
+        try (InputStream in = SynthGoldenTest.class.getClassLoader().getResourceAsStream("synth-golden.properties")) {
+            assertNotNull("synth-golden.properties missing from test resources", in);
+            golden.load(in);
+        }
+    }
+
+    @Test
+    public void everyFlavorMatchesGolden() throws Exception {
+        final StringBuilder failures = new StringBuilder();
+        for (String flavor : FLAVORS) {
+            final SynthFingerprint actual = SynthFingerprint.of(flavor, SEED, SECONDS);
+            final String mismatch = compare(flavor, actual);
+            if (mismatch != null) {
+                failures.append(mismatch).append('\n').append(actual.toProperties(flavor));
+            }
+        }
+        if (failures.length() > 0) {
+            fail("Synth output changed:\n" + failures);
+        }
+    }
+
+    private static String compare(String flavor, SynthFingerprint actual) {
+        final Double rms = value(flavor + ".rms");
+        if (rms == null) return flavor + ": no golden values";
+        if (Math.abs(actual.rms - rms) > rms * RMS_TOLERANCE) {
+            return String.format(Locale.ROOT, "%s: rms %.5f, expected %.5f", flavor, actual.rms, rms);
+        }
+        final Double crest = value(flavor + ".crest");
+        if (crest == null || Math.abs(actual.crest - crest) > crest * CREST_TOLERANCE) {
+            return String.format(Locale.ROOT, "%s: crest %.3f, expected %s", flavor, actual.crest, crest);
+        }
+        for (int b = 0; b < actual.bandDb.length; b++) {
+            final Double band = value(flavor + ".band" + b);
+            if (band == null || Math.abs(actual.bandDb[b] - band) > BAND_TOLERANCE_DB) {
+                return String.format(Locale.ROOT, "%s: band %d (from %d Hz) %.2f dB, expected %s",
+                        flavor, b, SynthFingerprint.BAND_EDGES[b], actual.bandDb[b], band);
+            }
+        }
+        return null;
+    }
+
+    private static Double value(String key) {
+        final String v = golden.getProperty(key);
+        return v == null ? null : Double.valueOf(v);
+    }
+}
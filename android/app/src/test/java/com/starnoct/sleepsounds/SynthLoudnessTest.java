@@ -0,0 +1,127 @@
+package com.starnoct.sleepsounds;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Measures the built-in flavors like the build measures bundled sounds (ITU-R BS.1770
+ * integrated loudness) and pins each to the level it has always had.
+ *
+ * Saved mixes store per-layer volumes that users balanced by ear against these levels, so
+ * a DSP change must not move them. Bringing the flavors to {@link SoundManifest#TARGET_LUFS}
+ * would need a migration that rescales stored volumes along with the trims.
+ */
+public class SynthLoudnessTest {
+
+    private static final int SAMPLE_RATE = 48000;
+    private static final int SECONDS = 20;
+    private static final int SEED = 20240601;
+
+    // flavor, integrated loudness in LUFS
+    private static final Object[][] LEVELS = {
+            {"white", -10.7}, {"pink", -12.5}, {"brown", -21.6},
+            {"box-fan", -25.0}, {"airplane-cabin", -22.4},
+            {"pink-fan", -17.8}, {"brown-fan", -23.0}, {"pink-cabin", -16.5},
+            {"rain", -15.9}, {"heavy-rain", -10.1},
+            {"surf", -18.9}, {"calm-surf", -18.5},
+            {"fire", -18.5}, {"small-fire", -22.9},
+    };
+
+    private static final double TOLERANCE_LU = 0.3;
+
+    @Test
+    public void flavorsKeepTheLoudnessSavedMixesWereBalancedAt() {
+        final StringBuilder moved = new StringBuilder();
+        for (Object[] level : LEVELS) {
+            final String flavor = (String) level[0];
+            final double expected = (Double) level[1];
+            final double lufs = integratedLoudness(render(flavor));
+            if (Math.abs(lufs - expected) > TOLERANCE_LU) {
+                moved.append(String.format(Locale.ROOT, "%s at %.1f LUFS, was %.1f%n", flavor, lufs, expected));
+            }
+        }
+        assertTrue(moved.toString(), moved.length() == 0);
+    }
+
+    private static float[][] render(String flavor) {
+        final SynthSource source = SynthSources.create(flavor, SEED);
+        source.prepare(SAMPLE_RATE);
+        final int frames = SAMPLE_RATE * SECONDS;
+        final float[][] pcm = new float[2][frames];
+        final float[] block = new float[1024 * 2];
+        for (int done = 0; done < frames; done += 1024) {
+            final int n = Math.min(1024, frames - done);
+            source.render(block, n);
+            for (int i = 0; i < n; i++) {
+                pcm[0][done + i] = block[i * 2];
+                pcm[1][done + i] = block[i * 2 + 1];
+            }
+        }
+        return pcm;
+    }
+
+    // BS.1770-4: K-weighted power in 400 ms blocks (75% overlap), absolute then relative gate
+    private static double integratedLoudness(float[][] pcm) {
+        final int block = SAMPLE_RATE * 4 / 10;
+        final int hop = block / 4;
+        final int frames = pcm[0].length;
+        final double[][] weighted = new double[pcm.length][];
+        for (int c = 0; c < pcm.length; c++) weighted[c] = kWeighted(pcm[c]);
+
+        final List<Double> powers = new ArrayList<>();
+        for (int start = 0; start + block <= frames; start += hop) {
+            double power = 0.0;
+            for (double[] channel : weighted) {
+                double sum = 0.0;
+                for (int i = start; i < start + block; i++) sum += channel[i] * channel[i];
+                power += sum / block;
+            }
+            powers.add(power);
+        }
+        final double absoluteGated = gatedMean(powers, -70.0);
+        return loudness(gatedMean(powers, loudness(absoluteGated) - 10.0));
+    }
+
+    private static double gatedMean(List<Double> powers, double gateLufs) {
+        double sum = 0.0;
+        int count = 0;
+        for (double power : powers) {
+            if (loudness(power) > gateLufs) {
+                sum += power;
+                count++;
+            }
+        }
+        return count > 0 ? sum / count : 0.0;
+    }
+
+    private static double loudness(double power) {
+        return -0.691 + 10.0 * Math.log10(power);
+    }
+
+    // The standard's pre-filter (high shelf) and RLB highpass, as given for 48 kHz
+    private static double[] kWeighted(float[] x) {
+        final double[] y = new double[x.length];
+        biquad(x, y, 1.53512485958697, -2.69169618940638, 1.19839281085285, -1.69065929318241, 0.73248077421585);
+        final float[] shelved = new float[x.length];
+        for (int i = 0; i < x.length; i++) shelved[i] = (float) y[i];
+        biquad(shelved, y, 1.0, -2.0, 1.0, -1.99004745483398, 0.99007225036621);
+        return y;
+    }
+
+    private static void biquad(float[] x, double[] y, double b0, double b1, double b2, double a1, double a2) {
+        double x1 = 0.0, x2 = 0.0, y1 = 0.0, y2 = 0.0;
+        for (int i = 0; i < x.length; i++) {
+            final double out = b0 * x[i] + b1 * x1 + b2 * x2 - a1 * y1 - a2 * y2;
+            x2 = x1;
+            x1 = x[i];
+            y2 = y1;
+            y1 = out;
+            y[i] = out;
+        }
+    }
+}
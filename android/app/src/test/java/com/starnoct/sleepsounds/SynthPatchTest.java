@@ -0,0 +1,79 @@
+package com.starnoct.sleepsounds;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+/**
+ * Compiles node graphs with the builder: cycles and dangling references are refused,
+ * shared inputs are not cycles, and nodes the output does not reach are dropped.
+ */
+public class SynthPatchTest {
+
+    @Test
+    public void rejectsCyclesThroughInputs() {
+        assertRejected("Cycle", new SynthPatch.Builder()
+                .noise("n", "white")
+                .sum("mix", "n", "loop")
+                .gain("loop", "mix", 0.5)
+                .output("mix"));
+        assertRejected("Cycle", new SynthPatch.Builder()
+                .gain("self", "self", 1.0)
+                .output("self"));
+    }
+
+    @Test
+    public void rejectsCyclesThroughParameters() {
+        // The filter's cutoff is modulated by its own output
+        assertRejected("Cycle", new SynthPatch.Builder()
+                .noise("n", "pink")
+                .onePole("f", "lowpass", "n", "depth")
+                .gain("depth", "f", 1000.0)
+                .output("f"));
+    }
+
+    @Test
+    public void rejectsDanglingAndDuplicateIds() {
+        assertRejected("unknown node 'missing'", new SynthPatch.Builder()
+                .gain("g", "missing", 1.0)
+                .output("g"));
+        assertRejected("Unknown output", new SynthPatch.Builder()
+                .noise("n", "white")
+                .output("nowhere"));
+        assertRejected("Duplicate", new SynthPatch.Builder()
+                .noise("n", "white")
+                .noise("n", "brown")
+                .output("n"));
+    }
+
+    @Test
+    public void sharedInputsCompileAndUnreachableNodesAreDropped() {
+        final SynthPatch patch = new SynthPatch.Builder()
+                .noise("n", "white")
+                .lfo("wobble", 0.1, 200.0, 800.0)
+                .onePole("low", "lowpass", "n", "wobble")
+                .onePole("high", "highpass", "n", 2000.0)
+                .sum("mix", "low", "high")
+                .noise("unused", "brown")
+                .output("mix")
+                .build();
+        assertEquals(5, patch.nodeCount());
+
+        final SynthSource source = patch.newSource(1);
+        source.prepare(48000);
+        final float[] block = new float[512 * 2];
+        source.render(block, 512);
+        for (float sample : block) assertTrue(Float.isFinite(sample));
+    }
+
+    private static void assertRejected(String reason, SynthPatch.Builder builder) {
+        try {
+            builder.build();
+            fail("Compiled a graph that should fail with " + reason);
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(reason));
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.starnoct.sleepsounds;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+/**
+ * Guards the render hot path: each flavor must render well inside a CPU budget, and the
+ * per-block work SynthPlayer does (source, EQ, gain, meter, output conversion) must not
+ * allocate once warmed up.
+ *
+ * The budget is deliberately loose for slow CI hosts; it catches regressions that cost
+ * multiples, not percent. Override with -Dsynth.budgetMsPerSec=N.
+ */
+public class SynthRenderBudgetTest {
+
+    private static final int SAMPLE_RATE = SynthFingerprint.SAMPLE_RATE;
+    private static final int BLOCK_FRAMES = SynthFingerprint.BLOCK_FRAMES;
+    private static final double DEFAULT_BUDGET_MS_PER_SEC = 25.0;
+    private static final int WARMUP_SECONDS = 20;
+    private static final int MEASURE_SECONDS = 5;
+    private static final int RUNS = 5;
+    // A per-block allocation over the measured blocks would be far above this
+    private static final long ALLOCATION_SLACK_BYTES = 1024L;
+
+    @Test
+    public void everyFlavorRendersWithinBudget() throws Exception {
+        final double budget = Double.parseDouble(
+                System.getProperty("synth.budgetMsPerSec", String.valueOf(DEFAULT_BUDGET_MS_PER_SEC)));
+        final StringBuilder over = new StringBuilder();
+        for (String flavor : SynthGoldenTest.FLAVORS) {
+            final RenderPath path = new RenderPath(flavor);
+            path.renderSeconds(WARMUP_SECONDS);
+
+            // Best of several runs: the floor is the cost, the rest is scheduler noise
+            long best = Long.MAX_VALUE;
+            for (int run = 0; run < RUNS; run++) {
+                final long start = System.nanoTime();
+                path.renderSeconds(MEASURE_SECONDS);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            final double msPerSec = best / 1e6 / MEASURE_SECONDS;
+            if (msPerSec > budget) {
+                over.append(String.format(Locale.ROOT, "%s: %.2f ms per second of audio%n", flavor, msPerSec));
+            }
+        }
+        assertTrue("Over the " + budget + " ms/s render budget:\n" + over, over.length() == 0);
+    }
+
+    @Test
+    public void renderPathDoesNotAllocateAfterWarmup() throws Exception {
+        final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue("Per-thread allocation counters unavailable",
+                bean instanceof com.sun.management.ThreadMXBean
+                        && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported());
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        threads.setThreadAllocatedMemoryEnabled(true);
+        final long threadId = Thread.currentThread().getId();
+
+        final StringBuilder allocating = new StringBuilder();
+        for (String flavor : SynthGoldenTest.FLAVORS) {
+            final RenderPath path = new RenderPath(flavor);
+            path.renderSeconds(WARMUP_SECONDS);
+
+            final long before = threads.getThreadAllocatedBytes(threadId);
+            path.renderSeconds(MEASURE_SECONDS);
+            final long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+            if (allocated > ALLOCATION_SLACK_BYTES) {
+                allocating.append(String.format(Locale.ROOT, "%s: %d bytes%n", flavor, allocated));
+            }
+        }
+        assertTrue("Render path allocated after warm-up:\n" + allocating, allocating.length() == 0);
+    }
+
+    /**
+     * SynthPlayer's per-block work without the AudioTrack: render, EQ (with its settings
+     * changing, so coefficient redesign is covered), layer gain, metering and 16-bit output.
+     */
+    private static final class RenderPath {
+        private final SynthSource source;
+        private final TrackEq eq = new TrackEq();
+        private final LevelMeter meter = new LevelMeter();
+        private final OutputStage stage = new OutputStage(1);
+        private final float[] block = new float[BLOCK_FRAMES * 2];
+        private final short[] pcm = new short[BLOCK_FRAMES * 2];
+        private final TrackEq.Settings[] eqSettings = {
+                TrackEq.Settings.FLAT,
+                new TrackEq.Settings(4f, -6f, 6000f),
+        };
+        private int blocks;
+
+        RenderPath(String flavor) throws Exception {
+            source = SynthSources.create(flavor, 1);
+            source.prepare(SAMPLE_RATE);
+        }
+
+        void renderSeconds(int seconds) {
+            final int total = seconds * SAMPLE_RATE / BLOCK_FRAMES;
+            for (int b = 0; b < total; b++) {
+                if (++blocks % 50 == 0) eq.set(eqSettings[(blocks / 50) % eqSettings.length]);
+                source.render(block, BLOCK_FRAMES);
+                eq.process(block, BLOCK_FRAMES, SAMPLE_RATE);
+                for (int i = 0; i < BLOCK_FRAMES * 2; i++) block[i] *= 0.8f;
+                meter.process(block, BLOCK_FRAMES * 2, 2, SAMPLE_RATE);
+                stage.quantize(block, pcm, BLOCK_FRAMES * 2);
+            }
+        }
+    }
+}
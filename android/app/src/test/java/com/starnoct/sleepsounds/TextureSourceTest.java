@@ -0,0 +1,90 @@
+package com.starnoct.sleepsounds;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+/**
+ * Checks the procedural rain, surf and fire textures: a seed fully determines what they
+ * render, their blocks never allocate, and a rate change mid-stream keeps them in range.
+ */
+public class TextureSourceTest {
+
+    private static final String[] TEXTURES = {"rain", "heavy-rain", "surf", "calm-surf", "fire", "small-fire"};
+    private static final int RATE = 48000;
+    private static final int FRAMES = 1024;
+    private static final int SEED = 0x5EED;
+
+    @Test
+    public void seedDeterminesTheOutput() {
+        for (String texture : TEXTURES) {
+            final float[] first = render(texture, SEED, 10);
+            assertArrayEquals(texture, first, render(texture, SEED, 10), 0f);
+            assertFalse(texture + " ignores its seed", Arrays.equals(first, render(texture, SEED + 1, 10)));
+        }
+    }
+
+    @Test
+    public void blocksDoNotAllocateOnceWarm() {
+        final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue("Per-thread allocation counters unavailable",
+                bean instanceof com.sun.management.ThreadMXBean
+                        && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported());
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        threads.setThreadAllocatedMemoryEnabled(true);
+        final long threadId = Thread.currentThread().getId();
+
+        final float[] block = new float[FRAMES * 2];
+        for (String texture : TEXTURES) {
+            final SynthSource source = SynthSources.create(texture, SEED);
+            source.prepare(RATE);
+            // Long enough for every voice pool and wave to have been through a full cycle
+            for (int i = 0; i < 60 * RATE / FRAMES; i++) source.render(block, FRAMES);
+
+            final long before = threads.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < 30 * RATE / FRAMES; i++) source.render(block, FRAMES);
+            final long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+            // The counter itself may cost a few bytes; one allocation per block would be far more
+            assertTrue(texture + " allocated " + allocated + " bytes", allocated < 1024L);
+        }
+    }
+
+    @Test
+    public void staysInRangeAcrossARateChange() {
+        final float[] block = new float[FRAMES * 2];
+        for (String texture : TEXTURES) {
+            final SynthSource source = SynthSources.create(texture, SEED);
+            source.prepare(RATE);
+            final int reduced = source.supportsReducedRate() ? RATE / 2 : RATE;
+            for (int second = 0; second < 30; second++) {
+                // Switch back and forth like a screen-off profile would
+                final int rate = second % 10 < 5 ? RATE : reduced;
+                if (second % 5 == 0) source.prepare(rate);
+                for (int i = 0; i < rate / FRAMES; i++) {
+                    source.render(block, FRAMES);
+                    for (float sample : block) {
+                        assertTrue(texture + " rendered " + sample, Math.abs(sample) <= 1.5f);
+                    }
+                }
+            }
+        }
+    }
+
+    private static float[] render(String texture, int seed, int seconds) {
+        final SynthSource source = SynthSources.create(texture, seed);
+        source.prepare(RATE);
+        final float[] out = new float[seconds * RATE / FRAMES * FRAMES * 2];
+        final float[] block = new float[FRAMES * 2];
+        for (int pos = 0; pos < out.length; pos += block.length) {
+            source.render(block, FRAMES);
+            System.arraycopy(block, 0, out, pos, block.length);
+        }
+        return out;
+    }
+}
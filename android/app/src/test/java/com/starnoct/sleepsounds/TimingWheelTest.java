@@ -0,0 +1,114 @@
+package com.starnoct.sleepsounds;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives a wheel on a fake clock: tasks fire in deadline order once the clock passes them,
+ * cancelled ones never do, and the alarm always stands at the earliest live deadline.
+ */
+public class TimingWheelTest {
+
+    private final AtomicLong now = new AtomicLong(1_000L);
+    private final TimingWheel wheel = new TimingWheel(now::get);
+    private final List<Object> log = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    public void firesInDeadlineOrderOnceTheClockPasses() throws Exception {
+        final CountDownLatch first = new CountDownLatch(1);
+        final CountDownLatch all = new CountDownLatch(4);
+        // Past one revolution of the wheel, and scheduled out of order
+        wheel.schedule(record(4, all), 60_000L);
+        wheel.schedule(record(3, all), 3_000L);
+        wheel.schedule(() -> {
+            record(1, all).run();
+            first.countDown();
+        }, 100L);
+        wheel.schedule(record(2, all), 1_200L);
+
+        advanceTo(1_150L);
+        assertTrue(first.await(2, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList((Object) 1), new ArrayList<>(log));
+
+        advanceTo(100_000L);
+        assertTrue(all.await(2, TimeUnit.SECONDS));
+        assertEquals(Arrays.<Object>asList(1, 2, 3, 4), new ArrayList<>(log));
+    }
+
+    @Test
+    public void cancelledTasksNeverFire() throws Exception {
+        final CountDownLatch kept = new CountDownLatch(1);
+        final TimingWheel.Timeout cancelled = wheel.schedule(record("cancelled", kept), 500L);
+        wheel.schedule(record("kept", kept), 1_000L);
+        wheel.cancel(cancelled);
+
+        advanceTo(5_000L);
+        assertTrue(kept.await(2, TimeUnit.SECONDS));
+        // Give a wrongly kept task the chance to run too
+        Thread.sleep(100L);
+        assertEquals(Collections.singletonList((Object) "kept"), new ArrayList<>(log));
+    }
+
+    @Test
+    public void alarmStandsAtTheEarliestDeadline() throws Exception {
+        final CountDownLatch cancelled = new CountDownLatch(1);
+        wheel.setAlarm(new TimingWheel.Alarm() {
+            @Override
+            public void wakeAt(long atMs) {
+                log.add(atMs);
+            }
+
+            @Override
+            public void cancel() {
+                log.add("cancel");
+                cancelled.countDown();
+            }
+        });
+        final CountDownLatch fired = new CountDownLatch(2);
+        wheel.schedule(fired::countDown, 5_000L);
+        wheel.schedule(fired::countDown, 2_000L);
+        assertEquals(Arrays.<Object>asList(6_000L, 3_000L), new ArrayList<>(log));
+
+        // After the first fires the alarm moves on to the second, then goes once nothing is left
+        advanceTo(3_000L);
+        advanceTo(6_000L);
+        assertTrue(fired.await(2, TimeUnit.SECONDS));
+        assertTrue(cancelled.await(2, TimeUnit.SECONDS));
+        assertEquals(Arrays.<Object>asList(6_000L, 3_000L, 6_000L, "cancel"), new ArrayList<>(log));
+    }
+
+    @Test
+    public void eventWakeLockOutlastsTheDrainTimeout() {
+        final int rate = 48000;
+        final int clip = rate * 2;
+        final int queue = rate / 5;
+        // EventLayerPlayer hands the output back a tick after the queue drained, rounded up to a tick
+        final long handBackMs = 2_000L + 200L + TimingWheel.TICK_MS;
+        final long wakeMs = EventLayerPlayer.eventWakeMs(clip, queue, rate);
+        assertTrue(wakeMs >= handBackMs + TimingWheel.TICK_MS - 1);
+        assertTrue(wakeMs < handBackMs + 1_000L);
+    }
+
+    private Runnable record(Object value, CountDownLatch latch) {
+        return () -> {
+            log.add(value);
+            latch.countDown();
+        };
+    }
+
+    private void advanceTo(long ms) throws InterruptedException {
+        now.set(ms);
+        wheel.wake();
+        Thread.sleep(50L);
+    }
+}
@@ -0,0 +1,84 @@
+package com.starnoct.sleepsounds;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Measures the settled EQ on sine tones: flat is bit-exact, each shelf lifts its own end of
+ * the spectrum, and the low-pass cuts above its cutoff.
+ */
+public class TrackEqTest {
+
+    private static final int RATE = 48000;
+    private static final int FRAMES = 1024;
+
+    @Test
+    public void flatLeavesTheSignalUntouched() {
+        final TrackEq eq = new TrackEq();
+        final float[] block = sine(1000.0, 0);
+        final float[] copy = block.clone();
+        eq.process(block, FRAMES, RATE);
+        assertArrayEquals(copy, block, 0f);
+    }
+
+    @Test
+    public void shelvesLiftTheirOwnBand() {
+        final TrackEq.Settings bass = new TrackEq.Settings(6f, 0f, 0f);
+        assertEquals(6.0, gainDb(bass, 50.0), 0.3);
+        assertEquals(0.0, gainDb(bass, 10_000.0), 0.3);
+
+        final TrackEq.Settings treble = new TrackEq.Settings(0f, -6f, 0f);
+        assertEquals(0.0, gainDb(treble, 50.0), 0.3);
+        assertEquals(-6.0, gainDb(treble, 16_000.0), 0.5);
+    }
+
+    @Test
+    public void lowPassCutsAboveItsCutoff() {
+        final TrackEq.Settings dark = new TrackEq.Settings(0f, 0f, 1000f);
+        assertEquals(0.0, gainDb(dark, 100.0), 0.3);
+        assertEquals(-3.0, gainDb(dark, 1000.0), 0.5);
+        // Second order: about 12 dB per octave further up
+        assertTrue(gainDb(dark, 8000.0) < -30.0);
+    }
+
+    @Test
+    public void settingsAreClampedAndZeroLowPassIsOff() {
+        final TrackEq.Settings wild = new TrackEq.Settings(40f, -40f, 50f);
+        assertEquals(TrackEq.Settings.MAX_SHELF_DB, wild.lowShelfDb, 0f);
+        assertEquals(-TrackEq.Settings.MAX_SHELF_DB, wild.highShelfDb, 0f);
+        assertEquals(TrackEq.Settings.MIN_LOW_PASS_HZ, wild.lowPassHz, 0f);
+        assertTrue(new TrackEq.Settings(0f, 0f, 0f).isFlat());
+    }
+
+    // Gain of the settled EQ at one frequency, once the glide and the filters' transients are over
+    private static double gainDb(TrackEq.Settings settings, double hz) {
+        final TrackEq eq = new TrackEq();
+        eq.set(settings);
+        double in = 0.0;
+        double out = 0.0;
+        for (int b = 0; b < RATE / FRAMES * 2; b++) {
+            final float[] block = sine(hz, b * FRAMES);
+            final float[] dry = block.clone();
+            eq.process(block, FRAMES, RATE);
+            if (b < RATE / FRAMES) continue;
+            for (int i = 0; i < block.length; i++) {
+                in += dry[i] * dry[i];
+                out += block[i] * block[i];
+            }
+        }
+        return 10.0 * Math.log10(out / in);
+    }
+
+    private static float[] sine(double hz, int startFrame) {
+        final float[] block = new float[FRAMES * 2];
+        for (int i = 0; i < FRAMES; i++) {
+            final float s = (float) (0.25 * Math.sin(2.0 * Math.PI * hz * (startFrame + i) / RATE));
+            block[i * 2] = s;
+            block[i * 2 + 1] = s;
+        }
+        return block;
+    }
+}
@@ -0,0 +1,79 @@
+package com.starnoct.sleepsounds;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Writes WAV files and reads them back: header fields, sample data and the 32-bit size limit.
+ */
+public class WavWriterTest {
+
+    private static final int RATE = 44100;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void headerAndSamplesRoundTrip() throws IOException {
+        final File file = folder.newFile("round-trip.wav");
+        final int frames = 10000;
+        final short[] pcm = new short[frames * 2];
+        for (int i = 0; i < pcm.length; i++) pcm[i] = (short) (i * 7919);
+        try (WavWriter wav = new WavWriter(file, RATE)) {
+            // Odd split across calls, as the renderer's last chunk is short
+            wav.write(pcm, 4096);
+            final short[] rest = new short[(frames - 4096) * 2];
+            System.arraycopy(pcm, 4096 * 2, rest, 0, rest.length);
+            wav.write(rest, frames - 4096);
+        }
+
+        assertEquals(44L + frames * 4L, file.length());
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            final byte[] h = new byte[44];
+            raf.readFully(h);
+            assertEquals(36 + frames * 4, intAt(h, 4));
+            assertEquals(RATE, intAt(h, 24));
+            assertEquals(RATE * 4, intAt(h, 28));
+            assertEquals(frames * 4, intAt(h, 40));
+        }
+
+        try (WavReader reader = new WavReader(file)) {
+            assertEquals(RATE, reader.sampleRate());
+            final short[] read = new short[frames * 2];
+            int total = 0;
+            final short[] block = new short[1000 * 2];
+            int n;
+            while ((n = reader.read(block, 1000)) > 0) {
+                System.arraycopy(block, 0, read, total * 2, n * 2);
+                total += n;
+            }
+            assertEquals(frames, total);
+            for (int i = 0; i < pcm.length; i++) {
+                if (read[i] != pcm[i]) fail("Sample " + i + " is " + read[i] + ", wrote " + pcm[i]);
+            }
+            assertEquals(-1, reader.read(block, 1000));
+        }
+    }
+
+    @Test
+    public void theLongestAllowedMixFitsTheHeader() {
+        final long sixHours = 6L * 60L * 60L * 1000L;
+        assertTrue(WavWriter.maxDurationMs(RATE) > sixHours);
+        assertTrue(WavWriter.maxDurationMs(RATE) * RATE / 1000L * 4L <= WavWriter.MAX_DATA_BYTES);
+        // The next whole second would not
+        assertTrue((WavWriter.maxDurationMs(RATE) / 1000L + 1L) * RATE * 4L > WavWriter.MAX_DATA_BYTES);
+    }
+
+    private static int intAt(byte[] b, int at) {
+        return (b[at] & 0xFF) | (b[at + 1] & 0xFF) << 8 | (b[at + 2] & 0xFF) << 16 | (b[at + 3] & 0xFF) << 24;
+    }
+}
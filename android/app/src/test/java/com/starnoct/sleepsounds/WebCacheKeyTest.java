@@ -0,0 +1,37 @@
+package com.starnoct.sleepsounds;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import org.junit.Test;
+
+/**
+ * Checks when the WebView cache key changes, i.e. when a launch clears the cache.
+ */
+public class WebCacheKeyTest {
+
+    private static final String HASH = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+
+    @Test
+    public void sameBuildKeepsTheCache() {
+        assertEquals(MainActivity.webCacheKey("1.4.0-41", HASH, 1000L),
+                MainActivity.webCacheKey("1.4.0-41", HASH, 1000L));
+        // With a hash, reinstalling the same build does not throw the cache away
+        assertEquals(MainActivity.webCacheKey("1.4.0-41", HASH, 1000L),
+                MainActivity.webCacheKey("1.4.0-41", HASH, 2000L));
+    }
+
+    @Test
+    public void newWebBuildOrAppVersionClearsIt() {
+        final String key = MainActivity.webCacheKey("1.4.0-41", HASH, 1000L);
+        assertNotEquals(key, MainActivity.webCacheKey("1.4.0-41", HASH.replace('9', '8'), 1000L));
+        assertNotEquals(key, MainActivity.webCacheKey("1.4.1-42", HASH, 1000L));
+    }
+
+    @Test
+    public void withoutAHashEveryUpdateClearsIt() {
+        final String key = MainActivity.webCacheKey("1.4.0-41", null, 1000L);
+        assertEquals(key, MainActivity.webCacheKey("1.4.0-41", null, 1000L));
+        assertNotEquals(key, MainActivity.webCacheKey("1.4.0-41", null, 2000L));
+    }
+}
@@ -0,0 +1,76 @@
+package com.starnoct.sleepsounds;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Checks the wind-down's ramp and profile steps, and which layers it may drop as masked:
+ * only those the ramp pushed under.
+ */
+public class WindDownProfileTest {
+
+    private final WindDownProfile profile = new WindDownProfile(0L, 1000L, 0.05f);
+
+    @Test
+    public void progressIsClampedToTheRamp() {
+        final WindDownProfile later = new WindDownProfile(5000L, 2000L, 0.05f);
+        assertEquals(0f, later.progress(0L), 0f);
+        assertEquals(0f, later.progress(5000L), 0f);
+        assertEquals(0.5f, later.progress(6000L), 0f);
+        assertEquals(1f, later.progress(9000L), 0f);
+    }
+
+    @Test
+    public void gainFollowsLoudnessWithLessCutForBass() {
+        assertEquals(1f, profile.gainFor(0f, 0f), 0f);
+        assertEquals(1f, profile.gainFor(0f, 1f), 0f);
+
+        // Half the loudness: gain = 0.5^(1/(2*0.3)) for hiss, 0.5^(1/(2*0.38)) for rumble
+        final WindDownProfile toSilence = new WindDownProfile(0L, 1000L, 0f);
+        assertEquals(Math.pow(0.5, 1.0 / 0.6), toSilence.gainFor(0.5f, 0f), 1e-5);
+        assertEquals(Math.pow(0.5, 1.0 / 0.76), toSilence.gainFor(0.5f, 1f), 1e-5);
+        assertTrue(toSilence.gainFor(0.5f, 1f) > toSilence.gainFor(0.5f, 0f));
+        assertEquals(0f, toSilence.gainFor(1f, 0.5f), 0f);
+
+        // The end loudness is held, not overshot
+        assertEquals(Math.pow(0.05, 1.0 / 0.6), profile.gainFor(1f, 0f), 1e-5);
+    }
+
+    @Test
+    public void stepsDownTheRenderProfileLateInTheRamp() {
+        assertNull(profile.renderProfileFor(0f));
+        assertNull(profile.renderProfileFor(0.49f));
+        assertEquals(RenderProfile.WIND_DOWN, profile.renderProfileFor(0.5f));
+        assertEquals(RenderProfile.WIND_DOWN_REDUCED_RATE, profile.renderProfileFor(0.8f));
+        assertEquals(RenderProfile.WIND_DOWN_REDUCED_RATE, profile.renderProfileFor(1f));
+    }
+
+    @Test
+    public void keepsAQuietLayerTheUserChose() {
+        // A faint bed at 2% under rain at full volume is masked in the user's own mix
+        for (float progress : new float[]{0f, 0.5f, 1f}) {
+            final float rain = profile.gainFor(progress, WindDownProfile.lowFrequencyWeight("rain"));
+            final float birds = profile.gainFor(progress, 0.5f) * 0.02f;
+            assertFalse(WindDownProfile.isDroppable(progress, birds, rain, 0.02f, 1f));
+        }
+    }
+
+    @Test
+    public void dropsOnlyOnceTheRampIsUnderWay() {
+        // Ramped levels that are masked, from a mix where the layer was clearly audible
+        assertFalse(WindDownProfile.isDroppable(0f, 0.01f, 1f, 0.5f, 1f));
+        assertFalse(WindDownProfile.isDroppable(WindDownProfile.MASKING_MIN_PROGRESS / 2, 0.01f, 1f, 0.5f, 1f));
+        assertTrue(WindDownProfile.isDroppable(WindDownProfile.MASKING_MIN_PROGRESS, 0.01f, 1f, 0.5f, 1f));
+        assertTrue(WindDownProfile.isDroppable(1f, 0.002f, 0.004f, 0.5f, 1f));
+    }
+
+    @Test
+    public void neverDropsTheLoudestOrAFadeInThatHasNotStarted() {
+        assertFalse(WindDownProfile.isDroppable(1f, 0.001f, 0.001f, 1f, 1f));
+        assertFalse(WindDownProfile.isDroppable(1f, 0f, 1f, 0.5f, 1f));
+    }
+}
@@ -1,8 +1,58 @@
 import { Capacitor, registerPlugin, Plugin } from '@capacitor/core';
 import { audioEventBus } from '../core/audio/AudioEventBus';
 
+// Linear (0..1) RMS and peak level of a track or of the master mix
+export interface AudioLevel {
+  rms: number;
+  peak: number;
+}
+
+// Payload of the 'levels' event. Only tracks rendered by the native engine are metered.
+export interface AudioLevels {
+  master: AudioLevel;
+  tracks: Record<string, AudioLevel>;
+}
+
+// One layer of an offline render; url follows the same conventions as play()
+export interface MixLayer {
+  url: string;
+  volume?: number;
+  fadeInMs?: number;
+  fadeOutMs?: number;
+}
+
+// Synth patch graph. Numeric parameters take a constant or the id of a modulating node.
+export type SynthPatchNode =
+  | { id: string; type: 'noise'; color?: 'white' | 'pink' | 'brown' }
+  | { id: string; type: 'lfo'; rate: number; depth: number; offset?: number }
+  | { id: string; type: 'onepole'; mode?: 'lowpass' | 'highpass'; input: string; cutoff: number | string }
+  | { id: string; type: 'biquad'; mode?: 'lowpass' | 'highpass' | 'bandpass'; input: string; freq: number; q?: number }
+  | { id: string; type: 'gain'; input: string; gain: number | string }
+  | { id: string; type: 'sum'; inputs: string[] };
+
+export interface SynthPatch {
+  nodes: SynthPatchNode[];
+  output: string;
+  reducedRate?: boolean;
+}
+
+// Admission budgets for concurrent layers; estimates, not measurements
+export interface ResourceBudget {
+  memoryBudgetMb: number;
+  cpuBudgetPercent: number;
+  maxLayers: number;
+  layers: number;
+  memoryMb: number;
+  cpuPercent: number;
+  reducedRate: boolean;
+  memoryPressure: boolean;
+  degradations: number;
+  refusals: number;
+}
+
 export interface AudioControlPlugin extends Plugin {
-  // Play a specific sound file (or synthetic ID)
+  // Play a specific sound file (or synthetic ID). Rejects with code RESOURCE_BUDGET when the
+  // layer does not fit; a refusal decided later arrives as a 'playback_refused' event.
   play(options: { soundId: string; url: string; volume: number; loop?: boolean }): Promise<void>;
 
   // Stop a specific sound
@@ -11,9 +61,27 @@ export interface AudioControlPlugin extends Plugin {
   // Stop ALL sounds (used when app is paused or reset)
   stopAll(): Promise<void>;
 
+  // Crossfade to a whole new mix; sounds in both mixes keep playing and glide to their new
+  // volume, outgoing ones fade out and then report 'playback_terminated'. Rejects with code
+  // RESOURCE_BUDGET when the new mix does not fit; the current one then keeps playing
+  transitionScene(options: {
+    layers: { soundId: string; url: string; volume?: number }[];
+    durationMs?: number;
+  }): Promise<void>;
+
   // Update volume for a specific running sound
   setVolume(options: { soundId: string; volume: number }): Promise<void>;
 
+  // Per-track tone shaping for rendered layers (shelves in dB, lowPassHz 0 = off).
+  // applied is false when the sound is not playing through a render stage (file and event
+  // layers have none); the setting is kept for the next time it does
+  setEq(options: {
+    soundId: string;
+    lowShelfDb?: number;
+    highShelfDb?: number;
+    lowPassHz?: number;
+  }): Promise<{ applied: boolean }>;
+
   // The Nuclear Option: Set the native Android alarm
   setSleepTimer(options: { durationSec: number }): Promise<void>;
 
@@ -45,6 +113,35 @@ export interface AudioControlPlugin extends Plugin {
 
   // Initialize MediaSession and request Audio Focus
   initializeSession(): Promise<void>;
+
+  // Start/stop throttled 'levels' events (AudioLevels payload)
+  startLevelUpdates(options?: { intervalMs?: number }): Promise<void>;
+  stopLevelUpdates(): Promise<void>;
+
+  // Progressive wind-down: lowers the mix over time and sheds DSP load as the night goes on
+  startWindDown(options: { delayMinutes?: number; durationMinutes?: number; endLoudness?: number }): Promise<void>;
+  cancelWindDown(): Promise<void>;
+
+  // Native engine instrumentation snapshot (render/write histograms, underruns, heap samples)
+  getEngineMetrics(): Promise<Record<string, unknown>>;
+
+  // Override layer admission budgets; omitted or 0 restores the device default
+  setResourceBudget(options: { memoryMb?: number; cpuPercent?: number; maxLayers?: number }): Promise<ResourceBudget>;
+
+  // Toggle the rolling engine-metrics.jsonl dump used for bug reports
+  setMetricsDump(options: { enabled: boolean }): Promise<void>;
+
+  // Faster-than-realtime render of a mix to a WAV file in the app's files dir
+  renderMix(options: {
+    layers: MixLayer[];
+    durationSec: number;
+    fileName?: string;
+    seed?: number;
+  }): Promise<{ path: string; durationMs: number; renderMs: number; realtimeFactor: number }>;
+
+  // User-defined DSP patches, played as synthetic://<name>
+  registerPatch(options: { name: string; patch: SynthPatch }): Promise<void>;
+  unregisterPatch(options: { name: string }): Promise<void>;
 }
 
 const AudioControl = Capacitor.isNativePlatform()
@@ -53,7 +150,9 @@ const AudioControl = Capacitor.isNativePlatform()
       play: async () => {},
       stop: async () => {},
       stopAll: async () => {},
+      transitionScene: async () => {},
       setVolume: async () => {},
+      setEq: async () => ({ applied: false }),
       setSleepTimer: async () => {},
       getPersistedTimestamp: async () => ({ value: 0 }),
       getServiceStatus: async () => ({ isPlaying: false, timeLeft: 0, isRunning: false }),
@@ -62,6 +161,27 @@ const AudioControl = Capacitor.isNativePlatform()
       openEmail: async () => {},
       openStore: async () => {},
       initializeSession: async () => {},
+      startLevelUpdates: async () => {},
+      stopLevelUpdates: async () => {},
+      startWindDown: async () => {},
+      cancelWindDown: async () => {},
+      getEngineMetrics: async () => ({}),
+      setResourceBudget: async () => ({
+        memoryBudgetMb: 0,
+        cpuBudgetPercent: 0,
+        maxLayers: 0,
+        layers: 0,
+        memoryMb: 0,
+        cpuPercent: 0,
+        reducedRate: false,
+        memoryPressure: false,
+        degradations: 0,
+        refusals: 0,
+      }),
+      setMetricsDump: async () => {},
+      renderMix: async () => ({ path: '', durationMs: 0, renderMs: 0, realtimeFactor: 0 }),
+      registerPatch: async () => {},
+      unregisterPatch: async () => {},
       addListener: () => ({ remove: () => {} }),
       removeAllListeners: async () => {},
     } as unknown as AudioControlPlugin;
@@ -71,6 +191,10 @@ if (Capacitor.isNativePlatform()) {
   AudioControl.addListener('playback_terminated', (data: any) => {
     audioEventBus.emit('playback_terminated', { soundId: data.soundId });
   });
+  AudioControl.addListener('playback_refused', (data: any) => {
+    audioEventBus.emit('loading_error', { soundId: data.soundId, error: data.reason });
+    audioEventBus.emit('playback_terminated', { soundId: data.soundId });
+  });
 }
 
 export { AudioControl };